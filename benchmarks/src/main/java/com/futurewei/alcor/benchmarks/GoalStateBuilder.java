@@ -0,0 +1,131 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks;
+
+import com.futurewei.alcor.schema.*;
+
+/**
+ * Builds cluster wide GoalStateV2 messages shaped like the ones DPM sends to NCM:
+ * one vpc and subnet, portsPerHost ports on every host, and an L2 neighbor for
+ * every port that is referenced by all hosts.
+ */
+public class GoalStateBuilder {
+    public static final String VPC_ID = "vpc0";
+    public static final String SUBNET_ID = "subnet0";
+
+    public static String hostIp(int host) {
+        return "192.168." + (host / 250) + "." + (host % 250 + 1);
+    }
+
+    public static String portId(int host, int port) {
+        return "port-" + host + "-" + port;
+    }
+
+    public static String portIp(int host, int port) {
+        int index = host * 1000 + port;
+        return "10." + (index >> 16) + "." + ((index >> 8) & 0xff) + "." + (index & 0xff);
+    }
+
+    public static String portMac(int host, int port) {
+        int index = host * 1000 + port;
+        return String.format("aa:bb:cc:%02x:%02x:%02x", (index >> 16) & 0xff, (index >> 8) & 0xff, index & 0xff);
+    }
+
+    private static Goalstate.ResourceIdType resource(Common.ResourceType type, String id) {
+        return Goalstate.ResourceIdType.newBuilder().setType(type).setId(id).build();
+    }
+
+    public static Port.PortState buildPortState(int host, int port) {
+        Port.PortConfiguration.Builder portConfigBuilder = Port.PortConfiguration.newBuilder()
+                .setRevisionNumber(1)
+                .setId(portId(host, port))
+                .setVpcId(VPC_ID)
+                .setName(portId(host, port))
+                .setMacAddress(portMac(host, port))
+                .setAdminStateUp(true)
+                .addFixedIps(Port.PortConfiguration.FixedIp.newBuilder()
+                        .setSubnetId(SUBNET_ID)
+                        .setIpAddress(portIp(host, port)));
+
+        return Port.PortState.newBuilder()
+                .setOperationType(Common.OperationType.CREATE)
+                .setConfiguration(portConfigBuilder)
+                .build();
+    }
+
+    public static Neighbor.NeighborState buildNeighborState(int host, int port) {
+        Neighbor.NeighborConfiguration.Builder neighborConfigBuilder = Neighbor.NeighborConfiguration.newBuilder()
+                .setRevisionNumber(1)
+                .setId(portId(host, port))
+                .setVpcId(VPC_ID)
+                .setMacAddress(portMac(host, port))
+                .setHostIpAddress(hostIp(host))
+                .addFixedIps(Neighbor.NeighborConfiguration.FixedIp.newBuilder()
+                        .setNeighborType(Neighbor.NeighborType.L2)
+                        .setSubnetId(SUBNET_ID)
+                        .setIpAddress(portIp(host, port)));
+
+        return Neighbor.NeighborState.newBuilder()
+                .setOperationType(Common.OperationType.CREATE)
+                .setConfiguration(neighborConfigBuilder)
+                .build();
+    }
+
+    public static Goalstate.GoalStateV2 buildGoalState(int hostNum, int portsPerHost) {
+        Goalstate.GoalStateV2.Builder goalStateBuilder = Goalstate.GoalStateV2.newBuilder();
+
+        goalStateBuilder.putVpcStates(VPC_ID, Vpc.VpcState.newBuilder()
+                .setOperationType(Common.OperationType.INFO)
+                .setConfiguration(Vpc.VpcConfiguration.newBuilder()
+                        .setRevisionNumber(1)
+                        .setId(VPC_ID)
+                        .setCidr("10.0.0.0/8")
+                        .setTunnelId(21))
+                .build());
+        goalStateBuilder.putSubnetStates(SUBNET_ID, Subnet.SubnetState.newBuilder()
+                .setOperationType(Common.OperationType.INFO)
+                .setConfiguration(Subnet.SubnetConfiguration.newBuilder()
+                        .setRevisionNumber(1)
+                        .setId(SUBNET_ID)
+                        .setVpcId(VPC_ID)
+                        .setCidr("10.0.0.0/8")
+                        .setTunnelId(21))
+                .build());
+
+        Goalstate.HostResources.Builder neighborResources = Goalstate.HostResources.newBuilder();
+        for (int host = 0; host < hostNum; host++) {
+            for (int port = 0; port < portsPerHost; port++) {
+                String portId = portId(host, port);
+                goalStateBuilder.putPortStates(portId, buildPortState(host, port));
+                goalStateBuilder.putNeighborStates(portId, buildNeighborState(host, port));
+                neighborResources.addResources(resource(Common.ResourceType.NEIGHBOR, portId));
+            }
+        }
+
+        for (int host = 0; host < hostNum; host++) {
+            Goalstate.HostResources.Builder hostResources = Goalstate.HostResources.newBuilder()
+                    .addResources(resource(Common.ResourceType.VPC, VPC_ID))
+                    .addResources(resource(Common.ResourceType.SUBNET, SUBNET_ID));
+            for (int port = 0; port < portsPerHost; port++) {
+                hostResources.addResources(resource(Common.ResourceType.PORT, portId(host, port)));
+            }
+            hostResources.addAllResources(neighborResources.getResourcesList());
+            goalStateBuilder.putHostResources(hostIp(host), hostResources.build());
+        }
+
+        return goalStateBuilder.build();
+    }
+}
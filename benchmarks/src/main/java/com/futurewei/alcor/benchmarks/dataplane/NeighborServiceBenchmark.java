@@ -0,0 +1,99 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.dataplane;
+
+import com.futurewei.alcor.benchmarks.GoalStateBuilder;
+import com.futurewei.alcor.benchmarks.MockCacheFactory;
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.dataplane.cache.NeighborCache;
+import com.futurewei.alcor.dataplane.cache.NodeInfoCache;
+import com.futurewei.alcor.dataplane.cache.PortHostInfoCache;
+import com.futurewei.alcor.dataplane.entity.MulticastGoalStateV2;
+import com.futurewei.alcor.dataplane.entity.UnicastGoalStateV2;
+import com.futurewei.alcor.dataplane.service.impl.NeighborService;
+import com.futurewei.alcor.schema.Common;
+import com.futurewei.alcor.schema.Goalstate;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+import com.futurewei.alcor.web.entity.port.PortHostInfo;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * L2 neighbor build for one new port in a subnet whose ports are spread over
+ * hostNum hosts, with the DPM caches backed by MockCache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeighborServiceBenchmark {
+    @Param({"10", "100"})
+    public int hostNum;
+
+    @Param({"10", "50"})
+    public int portsPerHost;
+
+    private NeighborService neighborService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        CacheFactory cacheFactory = MockCacheFactory.newCacheFactory();
+        PortHostInfoCache portHostInfoCache = new PortHostInfoCache(cacheFactory);
+        NodeInfoCache nodeInfoCache = new NodeInfoCache(cacheFactory);
+
+        Map<String, PortHostInfo> portHostInfos = new HashMap<>();
+        for (int host = 0; host < hostNum; host++) {
+            String hostIp = GoalStateBuilder.hostIp(host);
+            NodeInfo nodeInfo = new NodeInfo("node" + host, "node" + host, hostIp,
+                    GoalStateBuilder.portMac(host, 999));
+            nodeInfo.setDataPathIp(hostIp);
+            nodeInfoCache.addNodeInfo(nodeInfo);
+
+            for (int port = 0; port < portsPerHost; port++) {
+                String portIp = GoalStateBuilder.portIp(host, port);
+                portHostInfos.put(GoalStateBuilder.SUBNET_ID + cacheFactory.KEY_DELIMITER + portIp,
+                        new PortHostInfo(GoalStateBuilder.portId(host, port), portIp,
+                                GoalStateBuilder.portMac(host, port), "node" + host, hostIp,
+                                GoalStateBuilder.SUBNET_ID));
+            }
+        }
+        portHostInfoCache.updatePortHostInfo(portHostInfos);
+
+        neighborService = new NeighborService();
+        ReflectionTestUtils.setField(neighborService, "portHostInfoCache", portHostInfoCache);
+        ReflectionTestUtils.setField(neighborService, "nodeInfoCache", nodeInfoCache);
+        ReflectionTestUtils.setField(neighborService, "neighborCache", new NeighborCache(cacheFactory));
+    }
+
+    @Benchmark
+    public Goalstate.GoalStateV2.Builder buildNeighborStatesL2() throws Exception {
+        // The new port is the first port of the first host
+        String portId = GoalStateBuilder.portId(0, 0);
+        UnicastGoalStateV2 unicastGoalState = new UnicastGoalStateV2(GoalStateBuilder.hostIp(0),
+                Goalstate.GoalStateV2.newBuilder().putPortStates(portId, GoalStateBuilder.buildPortState(0, 0)));
+        MulticastGoalStateV2 multicastGoalState = new MulticastGoalStateV2();
+
+        neighborService.buildNeighborStatesL2(unicastGoalState, multicastGoalState, Common.OperationType.CREATE);
+
+        return multicastGoalState.getGoalStateBuilder();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.db;
+
+import com.futurewei.alcor.common.db.AbstractDistributedLock;
+import com.futurewei.alcor.common.db.IDistributedLock;
+import com.futurewei.alcor.common.exception.DistributedLockException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock/unlock of one hot key by 8 threads spread over nodes, comparing the former
+ * putIfAbsent + sleep(tryInterval) spin lock against AbstractDistributedLock.
+ * Both run over an in-memory store which charges roundTripMicros per call to
+ * stand in for the cache cluster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class DistributedLockBenchmark {
+    private static final String LOCK_KEY = "key";
+    private static final int TRY_INTERVAL = 10;
+
+    @Param({"spin", "notify"})
+    public String lockType;
+
+    @Param({"1", "2"})
+    public int nodes;
+
+    @Param({"200"})
+    public int roundTripMicros;
+
+    private final Map<String, String> store = new ConcurrentHashMap<>();
+    private final List<IDistributedLock> nodeLocks = new ArrayList<>();
+    private final AtomicInteger nextNode = new AtomicInteger();
+
+    private void roundTrip() {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+    }
+
+    private class SpinLock implements IDistributedLock {
+        @Override
+        public void lock(String lockKey) throws DistributedLockException {
+            try {
+                while (!tryLock(lockKey)) {
+                    Thread.sleep(TRY_INTERVAL);
+                }
+            } catch (InterruptedException e) {
+                throw new DistributedLockException(e.getMessage());
+            }
+        }
+
+        @Override
+        public void unlock(String lockKey) {
+            roundTrip();
+            store.remove(getRealKey(lockKey));
+        }
+
+        @Override
+        public Boolean tryLock(String lockKey) {
+            roundTrip();
+            return store.putIfAbsent(getRealKey(lockKey), "lock") == null;
+        }
+
+        @Override
+        public boolean tryLock(String lockKey, long timeout, TimeUnit unit) throws DistributedLockException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            try {
+                while (!tryLock(lockKey)) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    Thread.sleep(Math.min(TRY_INTERVAL, remaining));
+                }
+            } catch (InterruptedException e) {
+                throw new DistributedLockException(e.getMessage());
+            }
+
+            return true;
+        }
+
+        @Override
+        public String getLockPrefix() {
+            return "SpinLock";
+        }
+    }
+
+    private class NotifyLock extends AbstractDistributedLock {
+        private NotifyLock() {
+            super("NotifyLock", 1000, TimeUnit.SECONDS.toMillis(120));
+        }
+
+        @Override
+        protected boolean acquire(String realKey) {
+            roundTrip();
+            return store.putIfAbsent(realKey, owner) == null;
+        }
+
+        @Override
+        protected boolean renew(String realKey) {
+            roundTrip();
+            return owner.equals(store.get(realKey));
+        }
+
+        @Override
+        protected void release(String realKey) {
+            roundTrip();
+            store.remove(realKey, owner);
+            for (IDistributedLock lock : nodeLocks) {
+                ((NotifyLock) lock).onReleased(realKey);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class NodeState {
+        private IDistributedLock lock;
+
+        @Setup(Level.Trial)
+        public void setUp(DistributedLockBenchmark benchmark) {
+            lock = benchmark.nodeLocks.get(benchmark.nextNode.getAndIncrement() % benchmark.nodes);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < nodes; i++) {
+            nodeLocks.add("spin".equals(lockType) ? new SpinLock() : new NotifyLock());
+        }
+    }
+
+    @Benchmark
+    public void lockUnlock(NodeState nodeState) throws Exception {
+        nodeState.lock.lock(LOCK_KEY);
+        nodeState.lock.unlock(LOCK_KEY);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.macmanager;
+
+import com.futurewei.alcor.benchmarks.MockCacheFactory;
+import com.futurewei.alcor.macmanager.dao.MacRangeMappingRepository;
+import com.futurewei.alcor.macmanager.pool.impl.RandomMacPoolImpl;
+import com.futurewei.alcor.web.entity.mac.MacRange;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single and bulk mac allocation from RandomMacPoolImpl on a range filled up to
+ * usedPercent. Allocated macs are released again so the load stays constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomMacPoolBenchmark {
+    private static final String OUI = "aa:bb:cc";
+    private static final String RANGE_ID = "range0";
+    private static final int BULK_SIZE = 100;
+
+    @Param({"0", "50", "90"})
+    public int usedPercent;
+
+    private RandomMacPoolImpl macPool;
+    private MacRange macRange;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        MacRangeMappingRepository macRangeMappingRepository =
+                new MacRangeMappingRepository(MockCacheFactory.newCacheFactory());
+
+        macPool = new RandomMacPoolImpl();
+        ReflectionTestUtils.setField(macPool, "macRangeMappingRepository", macRangeMappingRepository);
+        ReflectionTestUtils.setField(macPool, "lowRequestNumbers", 10);
+        ReflectionTestUtils.setField(macPool, "middleRequestNumbers", 20);
+        ReflectionTestUtils.setField(macPool, "highRequestNumbers", 60);
+        ReflectionTestUtils.setField(macPool, "topRequestNumbers", 400);
+        ReflectionTestUtils.setField(macPool, "nRetryLimit", 1000L);
+
+        macRange = new MacRange(RANGE_ID, "aa:bb:cc:00:00:00", "aa:bb:cc:00:ff:ff", "Active");
+
+        long usedNum = macRange.getCapacity() * usedPercent / 100;
+        for (long i = 0; i < usedNum; i++) {
+            macRangeMappingRepository.addItem(RANGE_ID, i * 100 / usedPercent);
+        }
+    }
+
+    @Benchmark
+    public String allocateRelease() throws Exception {
+        String mac = macPool.allocate(OUI, macRange);
+        macPool.release(RANGE_ID, OUI, mac);
+        return mac;
+    }
+
+    @Benchmark
+    public Set<String> allocateReleaseBulk() throws Exception {
+        Set<String> macs = macPool.allocateBulk(OUI, macRange, BULK_SIZE);
+        for (String mac : macs) {
+            macPool.release(RANGE_ID, OUI, mac);
+        }
+        return macs;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.netwconfigmanager;
+
+import com.futurewei.alcor.benchmarks.GoalStateBuilder;
+import com.futurewei.alcor.common.db.*;
+import com.futurewei.alcor.netwconfigmanager.cache.ResourceStateCache;
+import com.futurewei.alcor.netwconfigmanager.cache.VpcResourceCache;
+import com.futurewei.alcor.netwconfigmanager.entity.HostGoalState;
+import com.futurewei.alcor.netwconfigmanager.entity.ResourceMeta;
+import com.futurewei.alcor.netwconfigmanager.service.impl.OnDemandServiceImpl;
+import com.futurewei.alcor.schema.Goalstate;
+import com.futurewei.alcor.schema.Goalstateprovisioner;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * On-demand goal state retrieval of NCM for a first packet between two ports of
+ * the same VPC. Every round trip to the cache cluster costs roundTripMicros.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OnDemandRetrieveGoalStateBenchmark {
+    @Param({"10"})
+    public int hostNum;
+
+    @Param({"100"})
+    public int portsPerHost;
+
+    @Param({"100"})
+    public int roundTripMicros;
+
+    private OnDemandServiceImpl onDemandService;
+
+    private static class RemoteCache<K, V> extends MockCache<K, V> {
+        private final long roundTripNanos;
+
+        private RemoteCache(long roundTripNanos) {
+            this.roundTripNanos = roundTripNanos;
+        }
+
+        @Override
+        public V get(K key) throws CacheException {
+            LockSupport.parkNanos(roundTripNanos);
+            return super.get(key);
+        }
+
+        @Override
+        public Map<K, V> getAll(Set<K> keys) throws CacheException {
+            LockSupport.parkNanos(roundTripNanos);
+            return super.getAll(keys);
+        }
+
+        @Override
+        public void put(K key, V value) throws CacheException {
+            LockSupport.parkNanos(roundTripNanos);
+            super.put(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> items) throws CacheException {
+            LockSupport.parkNanos(roundTripNanos);
+            super.putAll(items);
+        }
+    }
+
+    private class RemoteCacheFactory implements ICacheFactory {
+        @Override
+        public <K, V> ICache<K, V> getCache(Class<V> v) {
+            return new RemoteCache<>(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+        }
+
+        @Override
+        public <K, V> ICache<K, V> getCache(Class<V> v, String cacheName) {
+            return getCache(v);
+        }
+
+        @Override
+        public <K, V> ICache<K, V> getCache(Class<V> v, CacheConfiguration cacheConfig) {
+            return getCache(v);
+        }
+
+        @Override
+        public <K, V> ICache<K, V> getExpireCache(Class<V> v, long timeout, TimeUnit timeUnit) {
+            return getCache(v);
+        }
+
+        @Override
+        public <T> IDistributedLock getDistributedLock(Class<T> t) {
+            return null;
+        }
+
+        @Override
+        public Transaction getTransaction() {
+            return null;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // The retrieval path logs every request and goal state at INFO
+        java.util.logging.Logger.getGlobal().setLevel(java.util.logging.Level.WARNING);
+
+        CacheFactory cacheFactory = new CacheFactory();
+        ReflectionTestUtils.setField(cacheFactory, "iCacheFactory", new RemoteCacheFactory());
+
+        ResourceStateCache<String, Object> resourceStateCache = new ResourceStateCache<>(cacheFactory);
+        VpcResourceCache vpcResourceCache = new VpcResourceCache(cacheFactory);
+
+        Goalstate.GoalStateV2 goalState = GoalStateBuilder.buildGoalState(hostNum, portsPerHost);
+        TreeMap<String, Object> resourceStates = new TreeMap<>();
+        resourceStates.putAll(goalState.getVpcStatesMap());
+        resourceStates.putAll(goalState.getSubnetStatesMap());
+        resourceStates.putAll(goalState.getPortStatesMap());
+        goalState.getNeighborStatesMap().forEach((id, state) -> resourceStates.put(id + "_n", state));
+        resourceStateCache.addResourceStates(resourceStates);
+
+        Map<String, ResourceMeta> resourceMetas = new HashMap<>();
+        for (int host = 0; host < hostNum; host++) {
+            for (int port = 0; port < portsPerHost; port++) {
+                String portId = GoalStateBuilder.portId(host, port);
+                resourceMetas.put(GoalStateBuilder.portIp(host, port), new ResourceMeta(portId)
+                        .addVpcId(GoalStateBuilder.VPC_ID)
+                        .addSubnetId(GoalStateBuilder.SUBNET_ID)
+                        .addPortId(portId));
+            }
+        }
+        vpcResourceCache.addResourceMetas("21", resourceMetas);
+
+        onDemandService = new OnDemandServiceImpl();
+        ReflectionTestUtils.setField(onDemandService, "resourceStateCache", resourceStateCache);
+        ReflectionTestUtils.setField(onDemandService, "vpcResourceCache", vpcResourceCache);
+    }
+
+    @Benchmark
+    public HostGoalState retrieveGoalState() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sourceHost = random.nextInt(hostNum);
+        int destinationHost = random.nextInt(hostNum);
+        Goalstateprovisioner.HostRequest.ResourceStateRequest request =
+                Goalstateprovisioner.HostRequest.ResourceStateRequest.newBuilder()
+                        .setTunnelId(21)
+                        .setSourceIp(GoalStateBuilder.portIp(sourceHost, random.nextInt(portsPerHost)))
+                        .setDestinationIp(GoalStateBuilder.portIp(destinationHost, random.nextInt(portsPerHost)))
+                        .build();
+
+        return onDemandService.retrieveGoalState(request, GoalStateBuilder.hostIp(sourceHost));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.netwconfigmanager;
+
+import com.futurewei.alcor.benchmarks.GoalStateBuilder;
+import com.futurewei.alcor.netwconfigmanager.entity.HostGoalState;
+import com.futurewei.alcor.netwconfigmanager.util.NetworkConfigManagerUtil;
+import com.futurewei.alcor.schema.Goalstate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Split of a cluster GoalStateV2 into per host goal states, as done by NCM for
+ * every goal state DPM pushes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitHostGoalStateBenchmark {
+    @Param({"1", "10", "100"})
+    public int hostNum;
+
+    @Param({"10", "100"})
+    public int portsPerHost;
+
+    private Goalstate.GoalStateV2 goalState;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        goalState = GoalStateBuilder.buildGoalState(hostNum, portsPerHost);
+    }
+
+    @Benchmark
+    public Map<String, HostGoalState> splitClusterToHostGoalState() {
+        return NetworkConfigManagerUtil.splitClusterToHostGoalState(goalState);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.privateipmanager;
+
+import com.futurewei.alcor.privateipmanager.allocator.IpAddrAllocator;
+import com.futurewei.alcor.privateipmanager.allocator.Ipv4AddrAllocator;
+import com.futurewei.alcor.privateipmanager.allocator.Ipv6AddrAllocator;
+import com.futurewei.alcor.privateipmanager.utils.Ipv4AddrUtil;
+import com.futurewei.alcor.privateipmanager.utils.Ipv6Addr;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single and bulk allocate/release on ipv4 and ipv6 allocators that are already
+ * filled up to usedPercent, the way a long lived subnet looks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpAddrAllocatorBenchmark {
+    private static final int IP_NUM = 65534;
+    private static final int BULK_SIZE = 256;
+
+    @Param({"ipv4", "ipv6"})
+    public String ipVersion;
+
+    @Param({"0", "50", "90"})
+    public int usedPercent;
+
+    private IpAddrAllocator allocator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if ("ipv4".equals(ipVersion)) {
+            allocator = new Ipv4AddrAllocator(Ipv4AddrUtil.ipv4ToLong("10.0.0.1"),
+                    Ipv4AddrUtil.ipv4ToLong("10.0.255.254"));
+        } else {
+            Ipv6Addr firstAddr = Ipv6Addr.parse("2001:db8::1");
+            allocator = new Ipv6AddrAllocator(firstAddr, firstAddr.add(IP_NUM - 1));
+        }
+
+        int usedNum = (int) ((long) IP_NUM * usedPercent / 100);
+        if (usedNum > 0) {
+            allocator.allocateBulk(usedNum);
+        }
+    }
+
+    @Benchmark
+    public String allocateRelease() throws Exception {
+        String ipAddr = allocator.allocate(null);
+        allocator.release(ipAddr);
+        return ipAddr;
+    }
+
+    @Benchmark
+    public List<String> allocateReleaseBulk() throws Exception {
+        List<String> ipAddrs = allocator.allocateBulk(BULK_SIZE);
+        allocator.releaseBulk(ipAddrs);
+        return ipAddrs;
+    }
+}
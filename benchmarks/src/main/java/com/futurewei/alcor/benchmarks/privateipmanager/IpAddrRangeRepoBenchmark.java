@@ -0,0 +1,126 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.privateipmanager;
+
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrAlloc;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrRange;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrRangeChunk;
+import com.futurewei.alcor.privateipmanager.entity.VpcIpRange;
+import com.futurewei.alcor.privateipmanager.repo.IpAddrRangeRepo;
+import com.futurewei.alcor.web.entity.ip.IpAddrRangeRequest;
+import com.futurewei.alcor.web.entity.ip.IpAddrRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocate/release through IpAddrRangeRepo from one and from eight threads, each
+ * thread on its own ip range. Commits sleep for commitLatencyMs like an Ignite round
+ * trip, so allocations queueing behind each other show up as lost throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpAddrRangeRepoBenchmark {
+    private static final int RANGE_NUM = 16;
+    private static final int IP_VERSION = 4;
+
+    @Param({"0", "1"})
+    public long commitLatencyMs;
+
+    private IpAddrRangeRepo ipAddrRangeRepo;
+    private final List<String> rangeIds = new ArrayList<>();
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private class LatencyTransaction implements Transaction {
+        @Override
+        public Transaction start() {
+            return this;
+        }
+
+        @Override
+        public void commit() {
+            if (commitLatencyMs == 0) {
+                return;
+            }
+            try {
+                Thread.sleep(commitLatencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void rollback() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRange {
+        private String rangeId;
+
+        @Setup(Level.Trial)
+        public void setUp(IpAddrRangeRepoBenchmark benchmark) {
+            rangeId = benchmark.rangeIds.get(benchmark.threadCount.getAndIncrement() % RANGE_NUM);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ipAddrRangeRepo = new IpAddrRangeRepo(new MockCache<String, IpAddrRange>(new LatencyTransaction()),
+                new MockCache<String, VpcIpRange>(), new MockCache<String, IpAddrRangeChunk>());
+
+        String vpcId = UUID.randomUUID().toString();
+        for (int i = 0; i < RANGE_NUM; i++) {
+            String rangeId = UUID.randomUUID().toString();
+            ipAddrRangeRepo.createIpAddrRange(new IpAddrRangeRequest(rangeId, vpcId,
+                    UUID.randomUUID().toString(), IP_VERSION, "10." + i + ".0.1", "10." + i + ".255.254"));
+            rangeIds.add(rangeId);
+        }
+    }
+
+    private IpAddrAlloc allocateRelease(ThreadRange range) throws Exception {
+        IpAddrAlloc ipAddrAlloc = ipAddrRangeRepo.allocateIpAddr(
+                new IpAddrRequest(IP_VERSION, null, null, range.rangeId, null, null));
+        ipAddrRangeRepo.releaseIpAddr(range.rangeId, ipAddrAlloc.getIpAddr());
+        return ipAddrAlloc;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public IpAddrAlloc allocateReleaseSingleThread(ThreadRange range) throws Exception {
+        return allocateRelease(range);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public IpAddrAlloc allocateReleaseEightThreads(ThreadRange range) throws Exception {
+        return allocateRelease(range);
+    }
+}
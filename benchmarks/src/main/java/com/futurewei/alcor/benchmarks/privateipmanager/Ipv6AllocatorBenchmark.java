@@ -0,0 +1,72 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.privateipmanager;
+
+import com.futurewei.alcor.privateipmanager.allocator.Ipv6AddrAllocator;
+import com.futurewei.alcor.privateipmanager.utils.Ipv6Addr;
+import com.futurewei.alcor.privateipmanager.utils.Ipv6AddrUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk allocate and release of 10k ipv6 addresses, with the BigInteger conversions
+ * the ipv6 allocator used before against the two-long Ipv6Addr.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Ipv6AllocatorBenchmark {
+    private static final String FIRST_IP = "2001:db8::";
+    private static final String LAST_IP = "2001:db8::ffff";
+    private static final int IP_NUM = 10000;
+
+    @Benchmark
+    public List<String> bigIntegerAllocateRelease() {
+        BigInteger firstIp = Ipv6AddrUtil.ipv6ToBitInt(FIRST_IP);
+        BitSet bitSet = new BitSet();
+        List<String> ips = new ArrayList<>(IP_NUM);
+
+        for (int i = 0; i < IP_NUM; i++) {
+            int freeBit = bitSet.nextClearBit(0);
+            bitSet.set(freeBit);
+            ips.add(Ipv6AddrUtil.bigIntToIpv6(firstIp.add(BigInteger.valueOf(freeBit))));
+        }
+
+        for (String ip : ips) {
+            bitSet.clear(Ipv6AddrUtil.ipv6ToBitInt(ip).subtract(firstIp).intValue());
+        }
+
+        return ips;
+    }
+
+    @Benchmark
+    public List<String> ipv6AddrAllocateRelease() throws Exception {
+        Ipv6AddrAllocator allocator = new Ipv6AddrAllocator(Ipv6Addr.parse(FIRST_IP), Ipv6Addr.parse(LAST_IP));
+
+        List<String> ips = allocator.allocateBulk(IP_NUM);
+        allocator.releaseBulk(ips);
+
+        return ips;
+    }
+}
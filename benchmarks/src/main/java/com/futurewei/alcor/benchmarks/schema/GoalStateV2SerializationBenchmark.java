@@ -0,0 +1,58 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.schema;
+
+import com.futurewei.alcor.benchmarks.GoalStateBuilder;
+import com.futurewei.alcor.schema.Goalstate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protobuf serialization and parsing of a cluster GoalStateV2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GoalStateV2SerializationBenchmark {
+    @Param({"1", "10", "100"})
+    public int hostNum;
+
+    @Param({"10", "100"})
+    public int portsPerHost;
+
+    private Goalstate.GoalStateV2 goalState;
+    private byte[] goalStateBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        goalState = GoalStateBuilder.buildGoalState(hostNum, portsPerHost);
+        goalStateBytes = goalState.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return goalState.toByteArray();
+    }
+
+    @Benchmark
+    public Goalstate.GoalStateV2 parse() throws Exception {
+        return Goalstate.GoalStateV2.parseFrom(goalStateBytes);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.benchmarks.vpcmanager;
+
+import com.futurewei.alcor.vpcmanager.allocator.NetworkKeyAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocate and release one network key on an allocator filled up to usedPercent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkKeyAllocatorBenchmark {
+    private static final int FIRST_KEY = 1;
+    private static final int LAST_KEY = 65535;
+
+    @Param({"0", "50", "90"})
+    public int usedPercent;
+
+    private NetworkKeyAllocator allocator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        allocator = new NetworkKeyAllocator(FIRST_KEY, LAST_KEY);
+
+        int usedNum = (LAST_KEY - FIRST_KEY + 1) * usedPercent / 100;
+        for (int i = 0; i < usedNum; i++) {
+            allocator.allocate();
+        }
+    }
+
+    @Benchmark
+    public Long allocateRelease() throws Exception {
+        Long key = allocator.allocate();
+        allocator.release(key);
+        return key;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.common.db;
+
+import com.futurewei.alcor.common.exception.DistributedLockException;
+import com.futurewei.alcor.common.logging.Logger;
+import com.futurewei.alcor.common.logging.LoggerFactory;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+
+/**
+ * Base of the distributed locks. Threads of this process queue for a key in FIFO
+ * order on a local fair semaphore, so only the head of the queue talks to the
+ * backend. While it holds the backend lock, unlock hands it over to the next local
+ * waiter without a round trip, up to MAX_LOCAL_HANDOFFS times in a row so that
+ * other nodes are not starved. Waiters for a lock held by another node sleep until
+ * the backend reports the key removed or expired (onReleased), rechecking every
+ * retryInterval in case a notification is lost. The backend entry has a lease of
+ * leaseTime, renewed in the background while it is held.
+ */
+public abstract class AbstractDistributedLock implements IDistributedLock {
+    private static final Logger logger = LoggerFactory.getLogger();
+
+    public static final int MAX_LOCAL_HANDOFFS = 16;
+
+    private static final ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "distributed-lock-lease-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class LocalLock {
+        private final Semaphore semaphore = new Semaphore(1, true);
+        private int users;
+        private long releaseCount;
+        private boolean held;
+        private int handoffs;
+        private ScheduledFuture<?> renewal;
+    }
+
+    protected final String name;
+    protected final String owner = UUID.randomUUID().toString();
+    protected final long retryInterval;
+    protected final long leaseTime;
+    private final Map<String, LocalLock> localLocks = new ConcurrentHashMap<>();
+
+    protected AbstractDistributedLock(String name, long retryInterval, long leaseTime) {
+        this.name = name;
+        this.retryInterval = retryInterval;
+        this.leaseTime = leaseTime;
+    }
+
+    /**
+     * Create the backend entry of realKey with value owner and a lease of
+     * leaseTime milliseconds, if it does not exist yet.
+     */
+    protected abstract boolean acquire(String realKey) throws Exception;
+
+    /**
+     * Extend the lease of realKey, if it is still held by owner.
+     */
+    protected abstract boolean renew(String realKey) throws Exception;
+
+    /**
+     * Remove the backend entry of realKey if it is held by owner, and notify the
+     * waiters on the other nodes.
+     */
+    protected abstract void release(String realKey) throws Exception;
+
+    /**
+     * Called by the backend notification when realKey was removed or expired.
+     */
+    protected void onReleased(String realKey) {
+        LocalLock localLock = localLocks.get(realKey);
+        if (localLock != null) {
+            synchronized (localLock) {
+                localLock.releaseCount++;
+                localLock.notifyAll();
+            }
+        }
+    }
+
+    private LocalLock reference(String realKey) {
+        return localLocks.compute(realKey, (k, v) -> {
+            LocalLock localLock = v != null ? v : new LocalLock();
+            localLock.users++;
+            return localLock;
+        });
+    }
+
+    private void dereference(String realKey) {
+        LocalLock[] removed = new LocalLock[1];
+        localLocks.computeIfPresent(realKey, (k, v) -> {
+            if (--v.users > 0) {
+                return v;
+            }
+            removed[0] = v;
+            return null;
+        });
+
+        // The local waiter the backend lock was handed over to gave up
+        if (removed[0] != null && removed[0].held) {
+            releaseRemote(realKey, removed[0]);
+        }
+    }
+
+    private void releaseRemote(String realKey, LocalLock localLock) {
+        localLock.held = false;
+        localLock.handoffs = 0;
+        localLock.renewal.cancel(false);
+        try {
+            release(realKey);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Release distributed lock error:" + e.getMessage());
+        }
+    }
+
+    private void renewLease(String realKey) {
+        try {
+            if (!renew(realKey)) {
+                logger.log(Level.WARNING, "Lost distributed lock " + realKey);
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Renew distributed lock error:" + e.getMessage());
+        }
+    }
+
+    private boolean acquireRemote(String realKey, LocalLock localLock, long deadline) throws Exception {
+        while (true) {
+            long releaseCount;
+            synchronized (localLock) {
+                releaseCount = localLock.releaseCount;
+            }
+
+            if (acquire(realKey)) {
+                long renewInterval = Math.max(leaseTime / 3, 1);
+                localLock.held = true;
+                localLock.renewal = leaseRenewer.scheduleAtFixedRate(() -> renewLease(realKey),
+                        renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+                return true;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+
+            synchronized (localLock) {
+                if (localLock.releaseCount == releaseCount) {
+                    TimeUnit.NANOSECONDS.timedWait(localLock,
+                            Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(retryInterval)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void lock(String lockKey) throws DistributedLockException {
+        if (!tryLock(lockKey, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+            throw new DistributedLockException("Lock " + getRealKey(lockKey) + " failed");
+        }
+    }
+
+    @Override
+    public Boolean tryLock(String lockKey) {
+        try {
+            return tryLock(lockKey, 0, TimeUnit.NANOSECONDS);
+        } catch (DistributedLockException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, long timeout, TimeUnit unit) throws DistributedLockException {
+        String realKey = getRealKey(lockKey);
+        long timeoutNanos = unit.toNanos(timeout);
+        long deadline = timeoutNanos >= Long.MAX_VALUE / 2 ?
+                System.nanoTime() + Long.MAX_VALUE / 2 : System.nanoTime() + timeoutNanos;
+        LocalLock localLock = reference(realKey);
+        boolean localLocked = false;
+        boolean locked = false;
+
+        try {
+            localLocked = localLock.semaphore.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (!localLocked) {
+                return false;
+            }
+
+            // The previous holder on this node handed the backend lock over
+            locked = localLock.held || acquireRemote(realKey, localLock, deadline);
+            return locked;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DistributedLockException(e.getMessage());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Distributed lock error:" + e.getMessage());
+            throw new DistributedLockException(e.getMessage());
+        } finally {
+            if (!locked) {
+                if (localLocked) {
+                    localLock.semaphore.release();
+                }
+                dereference(realKey);
+            }
+        }
+    }
+
+    @Override
+    public void unlock(String lockKey) throws DistributedLockException {
+        String realKey = getRealKey(lockKey);
+        LocalLock localLock = localLocks.get(realKey);
+        if (localLock == null || !localLock.held) {
+            throw new DistributedLockException("Lock " + realKey + " is not held");
+        }
+
+        if (localLock.semaphore.hasQueuedThreads() && localLock.handoffs < MAX_LOCAL_HANDOFFS) {
+            localLock.handoffs++;
+        } else {
+            localLock.held = false;
+            localLock.handoffs = 0;
+            localLock.renewal.cancel(false);
+        }
+
+        try {
+            if (!localLock.held) {
+                release(realKey);
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Distributed unlock error:" + e.getMessage());
+            throw new DistributedLockException(e.getMessage());
+        } finally {
+            localLock.semaphore.release();
+            dereference(realKey);
+        }
+    }
+
+    @Override
+    public String getLockPrefix() {
+        return this.name;
+    }
+}
@@ -69,6 +69,18 @@ public interface ICache<K, V> {
 
     boolean remove(K var1) throws CacheException;
 
+    /**
+     * Remove multiple keys, in one round trip where the cache db supports it
+     *
+     * @param keys
+     * @throws CacheException
+     */
+    default void removeAll(Set<K> keys) throws CacheException {
+        for (K key : keys) {
+            remove(key);
+        }
+    }
+
     /**
      * db cache size
      *
@@ -1,52 +1,63 @@
-/*
-MIT License
-Copyright(c) 2020 Futurewei Cloud
-    Permission is hereby granted,
-    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
-    The above copyright notice and this permission notice shall be included in all copies
-    or
-    substantial portions of the Software.
-    THE SOFTWARE IS PROVIDED "AS IS",
-    WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
-    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
-    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
-    DAMAGES OR OTHER
-    LIABILITY,
-    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
-    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
-    SOFTWARE.
-*/
-
-package com.futurewei.alcor.common.db;
-
-import com.futurewei.alcor.common.exception.DistributedLockException;
-
-public interface IDistributedLock {
-
-    void lock(String lockKey) throws DistributedLockException;
-
-    void unlock(String lockKey) throws DistributedLockException;
-
-    /**
-     * try lock once, return immediately
-     * @param lockKey
-     * @return true if locked success else return false
-     */
-    Boolean tryLock(String lockKey);
-
-    /**
-     * a prefix for each lock
-     * @return
-     */
-    String getLockPrefix();
-
-    /**
-     * return a combine real key for distribution lock
-     * @param key
-     * @return
-     */
-    default String getRealKey(String key) {
-        return getLockPrefix() + " lock:" + key;
-    }
-
-}
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+    The above copyright notice and this permission notice shall be included in all copies
+    or
+    substantial portions of the Software.
+    THE SOFTWARE IS PROVIDED "AS IS",
+    WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+    AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+    DAMAGES OR OTHER
+    LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+    OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+    SOFTWARE.
+*/
+
+package com.futurewei.alcor.common.db;
+
+import com.futurewei.alcor.common.exception.DistributedLockException;
+
+import java.util.concurrent.TimeUnit;
+
+public interface IDistributedLock {
+
+    void lock(String lockKey) throws DistributedLockException;
+
+    void unlock(String lockKey) throws DistributedLockException;
+
+    /**
+     * try lock once, return immediately
+     * @param lockKey
+     * @return true if locked success else return false
+     */
+    Boolean tryLock(String lockKey);
+
+    /**
+     * try lock until it is acquired or the timeout elapses
+     * @param lockKey
+     * @param timeout
+     * @param unit
+     * @return true if locked success else return false
+     */
+    boolean tryLock(String lockKey, long timeout, TimeUnit unit) throws DistributedLockException;
+
+    /**
+     * a prefix for each lock
+     * @return
+     */
+    String getLockPrefix();
+
+    /**
+     * return a combine real key for distribution lock
+     * @param key
+     * @return
+     */
+    default String getRealKey(String key) {
+        return getLockPrefix() + " lock:" + key;
+    }
+
+}
@@ -24,7 +24,7 @@ import java.lang.reflect.Field;
 import java.util.*;
 
 public class MockCache<K, V> implements ICache<K, V> {
-    private Map<K, V> cache = new HashMap<>();
+    private Map<K, V> cache = Collections.synchronizedMap(new HashMap<>());
     private Transaction transaction;
 
     public MockCache(Transaction transaction) {
@@ -65,9 +65,14 @@ public class MockCache<K, V> implements ICache<K, V> {
         return true;
     }
 
+    @Override
+    public void removeAll(Set<K> keys) throws CacheException {
+        cache.keySet().removeAll(keys);
+    }
+
     @Override
     public Boolean putIfAbsent(K var1, V var2) throws CacheException {
-        return cache.putIfAbsent(var1, var2).equals(var2);
+        return cache.putIfAbsent(var1, var2) == null;
     }
 
     @Override
@@ -0,0 +1,54 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.common.db;
+
+import com.futurewei.alcor.common.logging.Logger;
+import com.futurewei.alcor.common.logging.LoggerFactory;
+
+import java.util.logging.Level;
+
+/**
+ * Runs a transaction again from the start when its commit fails with a
+ * TransactionConflictException, at most MAX_ATTEMPTS times in all. Only optimistic
+ * transactions, such as a RedisTransaction, fail this way; others run once.
+ */
+public class TransactionRetry {
+    private static final Logger logger = LoggerFactory.getLogger();
+
+    public static final int MAX_ATTEMPTS = 3;
+
+    @FunctionalInterface
+    public interface TransactionBody<T> {
+        /**
+         * Read, write and commit in tx. Runs once per attempt, so anything it
+         * collects outside the caches must be reset at its start.
+         */
+        T run(Transaction tx) throws Exception;
+    }
+
+    public static <T> T run(Transaction transaction, TransactionBody<T> body) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try (Transaction tx = transaction.start()) {
+                return body.run(tx);
+            } catch (TransactionConflictException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                logger.log(Level.INFO, "Transaction conflict, attempt " + attempt + " of " + MAX_ATTEMPTS);
+            }
+        }
+    }
+}
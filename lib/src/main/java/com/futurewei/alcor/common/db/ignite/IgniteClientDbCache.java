@@ -215,6 +215,16 @@ public class IgniteClientDbCache<K, V> implements IgniteICache<K, V> {
         }
     }
 
+    @Override
+    public void removeAll(Set<K> keys) throws CacheException {
+        try {
+            cache.removeAll(keys);
+        } catch (ClientException e) {
+            logger.log(Level.WARNING, "IgniteCache removeAll operation error: " + e.getMessage());
+            throw new CacheException(e.getMessage());
+        }
+    }
+
     @Override
     public V get(Map<String, Object[]> filterParams) throws CacheException {
         if (checkForSqlFieldsQuery(filterParams)) {
@@ -35,7 +35,9 @@ public class IgniteClientTransaction implements Transaction {
     private static final Logger logger = LoggerFactory.getLogger();
 
     private final IgniteClient igniteClient;
-    private ClientTransaction clientTransaction;
+    // Ignite transactions are bound to the thread that started them, and one instance
+    // of this class is shared by every caller of a cache, so keep the handle per thread.
+    private final ThreadLocal<ClientTransaction> clientTransaction = new ThreadLocal<>();
 
     public IgniteClientTransaction(IgniteClient igniteClient) {
         this.igniteClient = igniteClient;
@@ -44,7 +46,7 @@ public class IgniteClientTransaction implements Transaction {
     @Override
     public Transaction start() throws CacheException {
         try{
-            clientTransaction = igniteClient.transactions().txStart(PESSIMISTIC, SERIALIZABLE);
+            clientTransaction.set(igniteClient.transactions().txStart(PESSIMISTIC, SERIALIZABLE));
         } catch (ClientServerError | ClientException e) {
             logger.log(Level.WARNING, "IgniteTransaction start error:" + e.getMessage());
             throw new CacheException("IgniteTransaction start error:" + e.getMessage());
@@ -56,7 +58,7 @@ public class IgniteClientTransaction implements Transaction {
     @Override
     public void commit() throws CacheException {
         try{
-            clientTransaction.commit();
+            clientTransaction.get().commit();
         } catch (ClientServerError | ClientException e) {
             logger.log(Level.WARNING, "IgniteTransaction commit error:" + e.getMessage());
             throw new CacheException("IgniteTransaction commit error:" + e.getMessage());
@@ -66,7 +68,7 @@ public class IgniteClientTransaction implements Transaction {
     @Override
     public void rollback() throws CacheException {
         try{
-            clientTransaction.rollback();
+            clientTransaction.get().rollback();
         } catch (ClientServerError | ClientException e) {
             logger.log(Level.WARNING, "IgniteTransaction rollback error:" + e.getMessage());
             throw new CacheException("IgniteTransaction rollback error:" + e.getMessage());
@@ -75,8 +77,10 @@ public class IgniteClientTransaction implements Transaction {
 
     @Override
     public void close() {
-        if (clientTransaction != null) {
-            clientTransaction.close();
+        ClientTransaction tx = clientTransaction.get();
+        if (tx != null) {
+            clientTransaction.remove();
+            tx.close();
         }
     }
 }
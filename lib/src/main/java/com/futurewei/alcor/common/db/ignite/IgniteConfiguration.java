@@ -80,7 +80,7 @@ public class IgniteConfiguration {
     @Value("${ignite.thin.client.enable: #{true}}")
     private boolean thinClientEnable;
 
-    @Value("${lock.try.interval:10}")
+    @Value("${lock.try.interval:1000}")
     private int tryLockInterval;
 
     @Value("${lock.expire.time:120}")
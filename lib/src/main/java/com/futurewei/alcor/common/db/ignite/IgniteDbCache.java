@@ -167,6 +167,16 @@ public class IgniteDbCache<K, V> implements IgniteICache<K, V> {
         }
     }
 
+    @Override
+    public void removeAll(Set<K> keys) throws CacheException {
+        try {
+            cache.removeAll(keys);
+        } catch (IgniteException e) {
+            logger.log(Level.WARNING, "IgniteCache removeAll operation error:" + e.getMessage());
+            throw new CacheException(e.getMessage());
+        }
+    }
+
     @Override
     public V get(Map<String, Object[]> filterParams) throws CacheException {
         IgniteBiPredicate<String, BinaryObject> predicate = MapPredicate.getInstance(filterParams);
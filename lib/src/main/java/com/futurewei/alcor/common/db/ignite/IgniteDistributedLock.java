@@ -16,94 +16,76 @@ Copyright(c) 2020 Futurewei Cloud
     OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
     SOFTWARE.
 */
-
-package com.futurewei.alcor.common.db.ignite;
-
-import com.futurewei.alcor.common.db.IDistributedLock;
-import com.futurewei.alcor.common.exception.DistributedLockException;
-import com.futurewei.alcor.common.logging.Logger;
-import com.futurewei.alcor.common.logging.LoggerFactory;
-import org.apache.ignite.Ignite;
-import org.apache.ignite.IgniteCache;
-import org.apache.ignite.client.ClientException;
-import org.apache.ignite.configuration.CacheConfiguration;
-import org.springframework.util.Assert;
-
-import javax.cache.expiry.CreatedExpiryPolicy;
-import javax.cache.expiry.Duration;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.logging.Level;
-
-public class IgniteDistributedLock implements IDistributedLock {
-    private static final Logger logger = LoggerFactory.getLogger();
-    private final String name;
-    private IgniteCache<String, String> cache;
-    private int tryInterval;
-
-    public IgniteDistributedLock(Ignite ignite, String name, int tryInterval, int expireTime) {
-        this.name = name;
-
-        try {
-            CacheConfiguration<String, String> cfg = new CacheConfiguration<>();
-            cfg.setName(name);
-            cfg.setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, expireTime)));
-            cache = ignite.getOrCreateCache(cfg);
-            this.tryInterval = tryInterval;
-        } catch (ClientException e) {
-            logger.log(Level.WARNING, "Create distributed lock cache failed:" + e.getMessage());
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Unexpected failure:" + e.getMessage());
-        }
-
-        Assert.notNull(ignite, "Create distributed lock failed");
-    }
-
-    @Override
-    public void lock(String lockKey) throws DistributedLockException {
-        boolean locked = false;
-        String lockKeyWithPrefix = getRealKey(lockKey);
-
-        try {
-            while (!locked) {
-                locked = cache.putIfAbsent(lockKeyWithPrefix, "lock");
-                if (!locked) {
-                    Thread.sleep(this.tryInterval);
-                }
-            }
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Ignite lock error:" + e.getMessage());
-            throw new DistributedLockException(e.getMessage());
-        }
-    }
-
-    @Override
-    public Boolean tryLock(String lockKey){
-        String lockKeyWithPrefix = getRealKey(lockKey);
-        try {
-            return cache.putIfAbsent(lockKeyWithPrefix, "lock");
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Ignite lock error:" + e.getMessage());
-            return false;
-        }
-    }
-
-    @Override
-    public String getLockPrefix() {
-        return this.name;
-    }
-
-    @Override
-    public void unlock(String lockKey) throws DistributedLockException {
-        String lockKeyWithPrefix = getRealKey(lockKey);
-
-        try {
-            cache.remove(lockKeyWithPrefix);
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Ignite unlock error:" + e.getMessage());
-            throw new DistributedLockException(e.getMessage());
-        }
-
-
-    }
-}
+
+package com.futurewei.alcor.common.db.ignite;
+
+import com.futurewei.alcor.common.db.AbstractDistributedLock;
+import com.futurewei.alcor.common.logging.Logger;
+import com.futurewei.alcor.common.logging.LoggerFactory;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.query.ContinuousQuery;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.client.ClientException;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.springframework.util.Assert;
+
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.EventType;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+public class IgniteDistributedLock extends AbstractDistributedLock {
+    private static final Logger logger = LoggerFactory.getLogger();
+    private IgniteCache<String, String> cache;
+    private IgniteCache<String, String> leaseCache;
+    private QueryCursor<?> releaseQuery;
+
+    public IgniteDistributedLock(Ignite ignite, String name, int tryInterval, int expireTime) {
+        super(name, tryInterval, TimeUnit.SECONDS.toMillis(expireTime));
+
+        try {
+            CacheConfiguration<String, String> cfg = new CacheConfiguration<>();
+            cfg.setName(name);
+            cfg.setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, expireTime)));
+            cache = ignite.getOrCreateCache(cfg);
+            // Renewing a lease is an update, which the created policy of the cache ignores
+            leaseCache = cache.withExpiryPolicy(new ModifiedExpiryPolicy(new Duration(TimeUnit.SECONDS, expireTime)));
+
+            ContinuousQuery<String, String> query = new ContinuousQuery<>();
+            query.setIncludeExpired(true);
+            query.setLocalListener(events -> {
+                for (CacheEntryEvent<? extends String, ? extends String> event : events) {
+                    if (event.getEventType() == EventType.REMOVED || event.getEventType() == EventType.EXPIRED) {
+                        onReleased(event.getKey());
+                    }
+                }
+            });
+            releaseQuery = cache.query(query);
+        } catch (ClientException e) {
+            logger.log(Level.WARNING, "Create distributed lock cache failed:" + e.getMessage());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Unexpected failure:" + e.getMessage());
+        }
+
+        Assert.notNull(ignite, "Create distributed lock failed");
+    }
+
+    @Override
+    protected boolean acquire(String realKey) {
+        return leaseCache.putIfAbsent(realKey, owner);
+    }
+
+    @Override
+    protected boolean renew(String realKey) {
+        return leaseCache.replace(realKey, owner, owner);
+    }
+
+    @Override
+    protected void release(String realKey) {
+        cache.remove(realKey, owner);
+    }
+}
@@ -32,7 +32,9 @@ public class IgniteTransaction implements Transaction {
     private static final Logger logger = LoggerFactory.getLogger();
 
     private final Ignite client;
-    private org.apache.ignite.transactions.Transaction transaction;
+    // Ignite transactions are bound to the thread that started them, and one instance
+    // of this class is shared by every caller of a cache, so keep the handle per thread.
+    private final ThreadLocal<org.apache.ignite.transactions.Transaction> transaction = new ThreadLocal<>();
 
     public IgniteTransaction(Ignite client) {
         this.client = client;
@@ -40,14 +42,14 @@ public class IgniteTransaction implements Transaction {
 
     @Override
     public Transaction start() throws CacheException {
-        transaction = client.transactions().txStart(PESSIMISTIC, SERIALIZABLE);
+        transaction.set(client.transactions().txStart(PESSIMISTIC, SERIALIZABLE));
         return this;
     }
 
     @Override
     public void commit() throws CacheException {
         try {
-            transaction.commit();
+            transaction.get().commit();
         } catch (IgniteException e) {
             logger.log(Level.WARNING, "IgniteTransaction commit error:" + e.getMessage());
             throw new CacheException("IgniteTransaction commit error:" + e.getMessage());
@@ -57,7 +59,7 @@ public class IgniteTransaction implements Transaction {
     @Override
     public void rollback() throws CacheException {
         try {
-            transaction.rollback();
+            transaction.get().rollback();
         } catch (IgniteException e) {
             logger.log(Level.WARNING, "IgniteTransaction rollback error:" + e.getMessage());
             throw new CacheException("IgniteTransaction rollback error:" + e.getMessage());
@@ -66,9 +68,11 @@ public class IgniteTransaction implements Transaction {
 
     @Override
     public void close() throws CacheException {
-        if (transaction != null) {
+        org.apache.ignite.transactions.Transaction tx = transaction.get();
+        if (tx != null) {
+            transaction.remove();
             try {
-                transaction.close();
+                tx.close();
             } catch (IgniteException e) {
                 logger.log(Level.WARNING, "IgniteTransaction close error: " + e.getMessage());
                 throw new CacheException("IgniteTransaction close error: " + e.getMessage());
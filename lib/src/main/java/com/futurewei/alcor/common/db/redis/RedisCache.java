@@ -16,36 +16,318 @@ Copyright(c) 2020 Futurewei Cloud
 
 package com.futurewei.alcor.common.db.redis;
 
-import com.futurewei.alcor.common.db.query.CachePredicate;
 import com.futurewei.alcor.common.db.ICache;
 import com.futurewei.alcor.common.db.Transaction;
 import com.futurewei.alcor.common.db.CacheException;
 import com.futurewei.alcor.common.logging.Logger;
 import com.futurewei.alcor.common.logging.LoggerFactory;
-import org.apache.ignite.lang.IgniteBiPredicate;
+import com.futurewei.alcor.common.utils.ControllerUtil;
+import org.apache.ignite.cache.query.annotations.QuerySqlField;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.logging.Level;
 
+/**
+ * A cache stored in one redis hash. Fields of the value class annotated with
+ * QuerySqlField(index = true) get secondary indexes: one redis set of entry keys per
+ * field value, plus a hash recording the index sets of each entry. Entries and their
+ * indexes are written and removed together by lua scripts, so they never disagree.
+ * Filters on indexed fields are answered from the index sets, filters on other
+ * fields scan the hash.
+ *
+ * Every write also bumps a version key per entry written, and a remove deletes it.
+ * Within a RedisTransaction writes are queued until the commit, reads of given keys
+ * watch the version keys of those entries, and reads scanning the cache (getAll,
+ * filters, size) watch the whole hash.
+ *
+ * The scripts touch index sets and version keys that are not passed in KEYS, as the
+ * old index sets of an entry are only known from its record. Every key of a cache
+ * other than the hash is therefore hash-tagged with the cache name, "{name}:...",
+ * which redis cluster places in the same slot as the hash "name" itself.
+ */
 public class RedisCache<K, V> implements ICache<K, V> {
     private static final Logger logger = LoggerFactory.getLogger();
+    private static final String NON_SCALAR_ROWSET = "too many rows found!";
+    private static final int SCAN_COUNT = 1000;
+    // entries written or removed by one script call
+    private static final int SCRIPT_BATCH_SIZE = 500;
+    // script arguments are serialized before they are handed to the template, key names are strings
+    private static final RedisSerializer<Object> ARGS_SERIALIZER = new RedisSerializer<Object>() {
+        @Override
+        public byte[] serialize(Object arg) {
+            return arg instanceof byte[] ? (byte[]) arg : String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+    private static final RedisSerializer<Long> RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
+    // KEYS: hash, index record hash. ARGV: only if absent, version key prefix, then for
+    // each entry its key, value, number of index sets and index sets. Returns the number
+    // of entries written.
+    private static final RedisScript<Long> PUT_SCRIPT = new DefaultRedisScript<>(
+            "local written = 0\n" +
+            "local i = 3\n" +
+            "while i <= #ARGV do\n" +
+            "  local key, value, count = ARGV[i], ARGV[i + 1], tonumber(ARGV[i + 2])\n" +
+            "  local indexKeys = {}\n" +
+            "  for j = 1, count do indexKeys[j] = ARGV[i + 2 + j] end\n" +
+            "  i = i + 3 + count\n" +
+            "  if ARGV[1] ~= '1' or redis.call('HEXISTS', KEYS[1], key) == 0 then\n" +
+            "    local old = redis.call('HGET', KEYS[2], key)\n" +
+            "    if old then\n" +
+            "      for _, indexKey in ipairs(cjson.decode(old)) do redis.call('SREM', indexKey, key) end\n" +
+            "    end\n" +
+            "    redis.call('HSET', KEYS[1], key, value)\n" +
+            "    redis.call('INCR', ARGV[2] .. key)\n" +
+            "    if count > 0 then\n" +
+            "      for _, indexKey in ipairs(indexKeys) do redis.call('SADD', indexKey, key) end\n" +
+            "      redis.call('HSET', KEYS[2], key, cjson.encode(indexKeys))\n" +
+            "    elseif old then\n" +
+            "      redis.call('HDEL', KEYS[2], key)\n" +
+            "    end\n" +
+            "    written = written + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "return written", Long.class);
 
+    // KEYS: hash, index record hash. ARGV: version key prefix, then the keys to remove.
+    // Returns the number of entries removed. The version key of a removed entry is bumped
+    // before it is deleted, so its watchers see the remove even if it had none yet.
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>(
+            "local removed = 0\n" +
+            "for i = 2, #ARGV do\n" +
+            "  local key = ARGV[i]\n" +
+            "  local old = redis.call('HGET', KEYS[2], key)\n" +
+            "  if old then\n" +
+            "    for _, indexKey in ipairs(cjson.decode(old)) do redis.call('SREM', indexKey, key) end\n" +
+            "    redis.call('HDEL', KEYS[2], key)\n" +
+            "  end\n" +
+            "  if redis.call('HDEL', KEYS[1], key) == 1 then\n" +
+            "    redis.call('INCR', ARGV[1] .. key)\n" +
+            "    redis.call('DEL', ARGV[1] .. key)\n" +
+            "    removed = removed + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "return removed", Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
     private final HashOperations<String, K, V> hashOperations;
     private final RedisTransaction transaction;
     private final String name;
+    private final String indexName;
+    private final String indexSetPrefix;
+    private final String versionPrefix;
+    private final Map<String, Field> indexedFields = new HashMap<>();
+    private final Map<String, Field> fields = new HashMap<>();
 
     public RedisCache(RedisTemplate<String, Object> redisTemplate, String name) {
+        this(redisTemplate, name, null);
+    }
+
+    public RedisCache(RedisTemplate<String, Object> redisTemplate, String name, Class<V> valueClass) {
+        this.redisTemplate = redisTemplate;
         hashOperations = redisTemplate.<K, V>opsForHash();
         this.name = name;
+        this.indexName = "{" + name + "}:index";
+        this.indexSetPrefix = "{" + name + "}:idx:";
+        this.versionPrefix = "{" + name + "}:ver:";
+
+        if (valueClass != null) {
+            for (Field field : ControllerUtil.getAllDeclaredFields(valueClass)) {
+                field.setAccessible(true);
+                fields.putIfAbsent(field.getName(), field);
+                QuerySqlField annotation = field.getAnnotation(QuerySqlField.class);
+                if (annotation != null && annotation.index()) {
+                    indexedFields.put(field.getName(), field);
+                }
+            }
+        }
 
         transaction = new RedisTransaction(redisTemplate);
     }
 
+    private String getIndexKey(String fieldName, Object fieldValue) {
+        return indexSetPrefix + fieldName + ":" + fieldValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeKey(K key) {
+        return ((RedisSerializer<K>) redisTemplate.getHashKeySerializer()).serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K deserializeKey(byte[] key) {
+        return ((RedisSerializer<K>) redisTemplate.getHashKeySerializer()).deserialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeValue(V value) {
+        return ((RedisSerializer<V>) redisTemplate.getHashValueSerializer()).serialize(value);
+    }
+
+    private RedisTransaction.Context getTransactionContext() {
+        return RedisTransaction.current(redisTemplate.getRequiredConnectionFactory());
+    }
+
+    /**
+     * Watch the whole hash if the calling thread is in a transaction, before it is
+     * scanned. Any write to the cache then fails the commit.
+     */
+    private RedisTransaction.Context watchHash() {
+        RedisTransaction.Context context = getTransactionContext();
+        if (context != null) {
+            context.watch(name.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return context;
+    }
+
+    /**
+     * Watch the version keys of the entries of keys if the calling thread is in a
+     * transaction, before they are read. Only writes to those entries fail the commit.
+     */
+    private RedisTransaction.Context watchEntries(Collection<K> keys) {
+        RedisTransaction.Context context = getTransactionContext();
+        if (context != null) {
+            byte[] prefix = versionPrefix.getBytes(StandardCharsets.UTF_8);
+            for (K key : keys) {
+                byte[] entryKey = serializeKey(key);
+                byte[] versionKey = Arrays.copyOf(prefix, prefix.length + entryKey.length);
+                System.arraycopy(entryKey, 0, versionKey, prefix.length, entryKey.length);
+                context.watch(versionKey);
+            }
+        }
+
+        return context;
+    }
+
+    /**
+     * Apply the writes of the transaction of the calling thread to values read from the hash
+     */
+    @SuppressWarnings("unchecked")
+    private Map<K, V> applyPendingValues(RedisTransaction.Context context, Map<K, V> values,
+                                         Map<String, Object[]> filterParams) throws IllegalAccessException {
+        if (context == null) {
+            return values;
+        }
+
+        for (Map.Entry<Object, Object> pending : context.getPendingValues(name).entrySet()) {
+            values.remove(pending.getKey());
+            V value = (V) pending.getValue();
+            if (value != null && (filterParams == null || matches(value, filterParams))) {
+                values.put((K) pending.getKey(), value);
+            }
+        }
+
+        return values;
+    }
+
+    private void putInTransaction(RedisTransaction.Context context, Map<? extends K, ? extends V> items)
+            throws IllegalAccessException {
+        items.forEach((key, value) -> context.setPendingValue(name, key, value));
+        putEntries(items, false, context);
+    }
+
+    private long putEntries(Map<? extends K, ? extends V> items, boolean onlyIfAbsent) throws IllegalAccessException {
+        return putEntries(items, onlyIfAbsent, null);
+    }
+
+    private long putEntries(Map<? extends K, ? extends V> items, boolean onlyIfAbsent,
+                            RedisTransaction.Context context) throws IllegalAccessException {
+        long written = 0;
+        List<byte[]> args = new ArrayList<>();
+        int count = 0;
+        for (Map.Entry<? extends K, ? extends V> item : items.entrySet()) {
+            List<String> indexKeys = new ArrayList<>();
+            for (Map.Entry<String, Field> field : indexedFields.entrySet()) {
+                Object fieldValue = field.getValue().get(item.getValue());
+                if (fieldValue != null) {
+                    indexKeys.add(getIndexKey(field.getKey(), fieldValue));
+                }
+            }
+
+            args.add(serializeKey(item.getKey()));
+            args.add(serializeValue(item.getValue()));
+            args.add(String.valueOf(indexKeys.size()).getBytes(StandardCharsets.UTF_8));
+            indexKeys.forEach(indexKey -> args.add(indexKey.getBytes(StandardCharsets.UTF_8)));
+
+            if (++count >= SCRIPT_BATCH_SIZE) {
+                written += executeScript(PUT_SCRIPT, onlyIfAbsent, args, context);
+                args.clear();
+                count = 0;
+            }
+        }
+
+        if (count > 0) {
+            written += executeScript(PUT_SCRIPT, onlyIfAbsent, args, context);
+        }
+
+        return written;
+    }
+
+    private long executeScript(RedisScript<Long> script, boolean onlyIfAbsent, List<byte[]> args,
+                               RedisTransaction.Context context) {
+        List<byte[]> scriptArgs = new ArrayList<>(args.size() + 2);
+        scriptArgs.add((onlyIfAbsent ? "1" : "0").getBytes(StandardCharsets.UTF_8));
+        scriptArgs.add(versionPrefix.getBytes(StandardCharsets.UTF_8));
+        scriptArgs.addAll(args);
+        return executeScript(script, scriptArgs, context);
+    }
+
+    private long removeEntries(Collection<K> keys, RedisTransaction.Context context) {
+        List<byte[]> scriptArgs = new ArrayList<>(keys.size() + 1);
+        scriptArgs.add(versionPrefix.getBytes(StandardCharsets.UTF_8));
+        keys.forEach(key -> scriptArgs.add(serializeKey(key)));
+        return executeScript(REMOVE_SCRIPT, scriptArgs, context);
+    }
+
+    /**
+     * Run script now, or queue it for the commit of the transaction context, in which
+     * case 0 is returned
+     */
+    private long executeScript(RedisScript<Long> script, List<byte[]> args, RedisTransaction.Context context) {
+        if (context != null) {
+            List<byte[]> keysAndArgs = new ArrayList<>(args.size() + 2);
+            keysAndArgs.add(name.getBytes(StandardCharsets.UTF_8));
+            keysAndArgs.add(indexName.getBytes(StandardCharsets.UTF_8));
+            keysAndArgs.addAll(args);
+            byte[] scriptBytes = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+            context.queue(connection -> connection.eval(scriptBytes, ReturnType.INTEGER, 2,
+                    keysAndArgs.toArray(new byte[0][])));
+            return 0;
+        }
+
+        Long result = redisTemplate.execute(script, ARGS_SERIALIZER, RESULT_SERIALIZER,
+                Arrays.asList(name, indexName), args.toArray());
+        return result == null ? 0 : result;
+    }
+
     @Override
+    @SuppressWarnings("unchecked")
     public V get(K key) throws CacheException {
         try {
+            RedisTransaction.Context context = getTransactionContext();
+            if (context != null && context.getPendingValues(name).containsKey(key)) {
+                return (V) context.getPendingValues(name).get(key);
+            }
+
+            watchEntries(Collections.singleton(key));
             return hashOperations.get(name, key);
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisCache get operation error:" + e.getMessage());
@@ -56,7 +338,12 @@ public class RedisCache<K, V> implements ICache<K, V> {
     @Override
     public void put(K key, V value) throws CacheException {
         try {
-            hashOperations.put(name, key, value);
+            RedisTransaction.Context context = getTransactionContext();
+            if (context != null) {
+                putInTransaction(context, Collections.singletonMap(key, value));
+            } else {
+                putEntries(Collections.singletonMap(key, value), false);
+            }
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisCache put operation error:" + e.getMessage());
             throw new CacheException(e.getMessage());
@@ -66,7 +353,15 @@ public class RedisCache<K, V> implements ICache<K, V> {
     @Override
     public Boolean putIfAbsent(K var1, V var2) throws CacheException {
         try {
-            return hashOperations.putIfAbsent(name, var1, var2);
+            RedisTransaction.Context context = getTransactionContext();
+            if (context != null) {
+                if (containsKey(var1)) {
+                    return false;
+                }
+                putInTransaction(context, Collections.singletonMap(var1, var2));
+                return true;
+            }
+            return putEntries(Collections.singletonMap(var1, var2), true) == 1;
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisCache put operation error:" + e.getMessage());
             throw new CacheException(e.getMessage());
@@ -76,6 +371,12 @@ public class RedisCache<K, V> implements ICache<K, V> {
     @Override
     public boolean containsKey(K key) throws CacheException {
         try {
+            RedisTransaction.Context context = getTransactionContext();
+            if (context != null && context.getPendingValues(name).containsKey(key)) {
+                return context.getPendingValues(name).get(key) != null;
+            }
+
+            watchEntries(Collections.singleton(key));
             return hashOperations.hasKey(name, key);
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisCache containsKey operation error:" + e.getMessage());
@@ -84,30 +385,63 @@ public class RedisCache<K, V> implements ICache<K, V> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public Map<K, V> getAll(Set<K> keys) throws CacheException {
         Map<K, V> map = new HashMap<>();
+        RedisTransaction.Context context = watchEntries(keys);
         List<V> values = hashOperations.multiGet(name, keys);
         Iterator<K> it = keys.iterator();
         for(V value: values){
             map.put(it.next(), value);
         }
+        if (context != null) {
+            context.getPendingValues(name).forEach((key, value) -> {
+                if (map.containsKey(key)) {
+                    map.put((K) key, (V) value);
+                }
+            });
+        }
         return map;
     }
 
+    /**
+     * Get all entries, scanning the hash SCAN_COUNT entries at a time instead of
+     * reading it with a single HGETALL
+     */
     @Override
     public Map<K, V> getAll() throws CacheException {
         try {
-            return hashOperations.entries(name);
+            RedisTransaction.Context context = watchHash();
+            return applyPendingValues(context, scan(null), null);
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisCache getAll operation error:" + e.getMessage());
             throw new CacheException(e.getMessage());
         }
     }
 
+    private Map<K, V> scan(Map<String, Object[]> filterParams) throws Exception {
+        Map<K, V> result = new HashMap<>();
+        try (Cursor<Map.Entry<K, V>> cursor = hashOperations.scan(name, ScanOptions.scanOptions().count(SCAN_COUNT).build())) {
+            while (cursor.hasNext()) {
+                Map.Entry<K, V> entry = cursor.next();
+                if (filterParams == null || matches(entry.getValue(), filterParams)) {
+                    result.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return result;
+    }
+
     @Override
     public void putAll(Map<? extends K, ? extends V> items) throws CacheException {
         try {
-            hashOperations.putAll(name, items);
+            RedisTransaction.Context context = getTransactionContext();
+            if (context != null) {
+                putInTransaction(context, items);
+            } else {
+                putEntries(items, false);
+            }
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisCache putAll operation error:" + e.getMessage());
             throw new CacheException(e.getMessage());
@@ -117,25 +451,142 @@ public class RedisCache<K, V> implements ICache<K, V> {
     @Override
     public boolean remove(K key) throws CacheException {
         try {
-            return hashOperations.delete(name, key) == 1;
+            RedisTransaction.Context context = getTransactionContext();
+            if (context != null) {
+                boolean removed = containsKey(key);
+                context.setPendingValue(name, key, null);
+                removeEntries(Collections.singleton(key), context);
+                return removed;
+            }
+            return removeEntries(Collections.singleton(key), null) == 1;
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisCache remove operation error:" + e.getMessage());
             throw new CacheException(e.getMessage());
         }
     }
 
+    @Override
+    public void removeAll(Set<K> keys) throws CacheException {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        try {
+            RedisTransaction.Context context = getTransactionContext();
+            if (context != null) {
+                keys.forEach(key -> context.setPendingValue(name, key, null));
+            }
+            removeEntries(keys, context);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "RedisCache removeAll operation error:" + e.getMessage());
+            throw new CacheException(e.getMessage());
+        }
+    }
+
     @Override
     public V get(Map<String, Object[]> filterParams) throws CacheException {
-        return null;
+        Map<K, V> values = getAll(filterParams);
+        if (values.size() > 1) {
+            throw new CacheException(NON_SCALAR_ROWSET);
+        }
+
+        return values.isEmpty() ? null : values.values().iterator().next();
     }
 
+    /**
+     * Get the entries matching every filter parameter, a parameter matching when the
+     * field equals any of its values. Parameters naming no field of the value are ignored.
+     */
     @Override
     public <E1, E2> Map<K, V> getAll(Map<String, Object[]> filterParams) throws CacheException {
-        return null;
+        try {
+            RedisTransaction.Context context = watchHash();
+            return applyPendingValues(context, query(filterParams), filterParams);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "RedisCache getAll operation error:" + e.getMessage());
+            throw new CacheException(e.getMessage());
+        }
+    }
+
+    private Map<K, V> query(Map<String, Object[]> filterParams) throws Exception {
+        Set<byte[]> keys = null;
+        boolean scanNeeded = false;
+        for (Map.Entry<String, Object[]> param : filterParams.entrySet()) {
+            if (!indexedFields.containsKey(param.getKey())) {
+                scanNeeded |= fields.containsKey(param.getKey());
+                continue;
+            }
+
+            Set<byte[]> paramKeys = getIndexedKeys(param.getKey(), param.getValue());
+            keys = keys == null ? paramKeys : intersect(keys, paramKeys);
+            if (keys.isEmpty()) {
+                return new HashMap<>();
+            }
+        }
+
+        if (keys == null) {
+            return scan(filterParams);
+        }
+
+        Set<K> entryKeys = new HashSet<>();
+        keys.forEach(key -> entryKeys.add(deserializeKey(key)));
+        Map<K, V> result = new HashMap<>();
+        for (Map.Entry<K, V> entry : getAll(entryKeys).entrySet()) {
+            if (entry.getValue() != null && (!scanNeeded || matches(entry.getValue(), filterParams))) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    private Set<byte[]> getIndexedKeys(String fieldName, Object[] fieldValues) {
+        List<String> indexKeys = new ArrayList<>();
+        for (Object fieldValue : fieldValues) {
+            indexKeys.add(getIndexKey(fieldName, fieldValue));
+        }
+
+        Set<byte[]> keys = redisTemplate.execute(connection -> connection.sUnion(
+                indexKeys.stream().map(indexKey -> indexKey.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new)), true);
+        return keys == null ? Collections.emptySet() : keys;
+    }
+
+    private static Set<byte[]> intersect(Set<byte[]> keys, Set<byte[]> otherKeys) {
+        Set<ByteBuffer> other = new HashSet<>();
+        otherKeys.forEach(key -> other.add(ByteBuffer.wrap(key)));
+        Set<byte[]> result = new HashSet<>();
+        for (byte[] key : keys) {
+            if (other.contains(ByteBuffer.wrap(key))) {
+                result.add(key);
+            }
+        }
+
+        return result;
+    }
+
+    private boolean matches(V value, Map<String, Object[]> filterParams) throws IllegalAccessException {
+        for (Map.Entry<String, Object[]> param : filterParams.entrySet()) {
+            Field field = fields.get(param.getKey());
+            if (field == null) {
+                continue;
+            }
+
+            String fieldValue = String.valueOf(field.get(value));
+            boolean fieldMatch = false;
+            for (Object paramValue : param.getValue()) {
+                fieldMatch |= String.valueOf(paramValue).equals(fieldValue);
+            }
+            if (!fieldMatch) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     @Override
     public long size() {
+        watchHash();
         return hashOperations.size(name);
     }
 
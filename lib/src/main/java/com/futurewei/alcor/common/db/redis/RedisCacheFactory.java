@@ -45,13 +45,13 @@ public class RedisCacheFactory implements ICacheFactory {
     @Override
     public <K, V> ICache<K, V> getCache(Class<V> v) {
         RedisTemplate<String, Object> template = getRedisTemplate(v);
-        return new RedisCache<>(template, v.getName());
+        return new RedisCache<>(template, v.getName(), v);
     }
 
     @Override
     public <K, V> ICache<K, V> getCache(Class<V> v, String cacheName) {
         RedisTemplate<String, Object> template = getRedisTemplate(v);
-        return new RedisCache<>(template, cacheName);
+        return new RedisCache<>(template, cacheName, v);
     }
 
     @Override
@@ -82,6 +82,7 @@ public class RedisCacheFactory implements ICacheFactory {
     public <V> IDistributedLock getDistributedLock(Class<V> t) {
         StringRedisTemplate template = new StringRedisTemplate();
         template.setConnectionFactory(lettuceConnectionFactory);
+        template.afterPropertiesSet();
 
         return new RedisDistributedLock(template, LOCK_PREFIX + t.getName(), tryLockInterval, expireTime);
     }
@@ -43,7 +43,7 @@ public class RedisConfiguration {
     @Value("${spring.redis.port}")
     private int redisHostPort;
 
-    @Value("${lock.try.interval:10}")
+    @Value("${lock.try.interval:1000}")
     private int tryLockInterval;
 
     @Value("${lock.expire.time:120}")
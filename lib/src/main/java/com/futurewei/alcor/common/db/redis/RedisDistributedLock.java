@@ -15,82 +15,68 @@ Copyright(c) 2020 Futurewei Cloud
     WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
     OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
     SOFTWARE.
-*/
-
-
-package com.futurewei.alcor.common.db.redis;
-
-import com.futurewei.alcor.common.db.IDistributedLock;
-import com.futurewei.alcor.common.exception.DistributedLockException;
-import com.futurewei.alcor.common.logging.Logger;
-import com.futurewei.alcor.common.logging.LoggerFactory;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.util.Assert;
-
-import java.util.concurrent.TimeUnit;
-import java.util.logging.Level;
-
-public class RedisDistributedLock implements IDistributedLock {
-    private static final Logger logger = LoggerFactory.getLogger();
-
-    private final StringRedisTemplate redisTemplate;
-    private final String name;
-    private final int tryInterval;
-    private final int expireTime;
-
-    public RedisDistributedLock(StringRedisTemplate redisTemplate, String name, int tryInterval, int expireTime) {
-        this.redisTemplate = redisTemplate;
-        this.name = name;
-        this.tryInterval = tryInterval;
-        this.expireTime = expireTime;
-    }
-
-    @Override
-    public void lock(String lockKey) throws DistributedLockException {
-        Boolean locked = false;
-        String lockKeyWithPrefix = getRealKey(lockKey);
-
-        try {
-            while (!locked) {
-                locked = redisTemplate.opsForValue().setIfAbsent(lockKeyWithPrefix, "lock",
-                        this.expireTime, TimeUnit.SECONDS);
-                Assert.notNull(locked, "Redis lock should not run within a transaction");
-                if (!locked) {
-                    Thread.sleep(this.tryInterval);
-                }
-            }
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Redis lock error:" + e.getMessage());
-            throw new DistributedLockException(e.getMessage());
-        }
-    }
-
-    @Override
-    public void unlock(String lockKey) throws DistributedLockException {
-        String lockKeyWithPrefix = getRealKey(lockKey);
-
-        try {
-            redisTemplate.delete(lockKeyWithPrefix);
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Redis unlock error:" + e.getMessage());
-            throw new DistributedLockException(e.getMessage());
-        }
-    }
-
-    @Override
-    public Boolean tryLock(String lockKey){
-        String lockKeyWithPrefix = getRealKey(lockKey);
-        try {
-            return redisTemplate.opsForValue().setIfAbsent(lockKeyWithPrefix, "lock",
-                    this.expireTime, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Redis lock error:" + e.getMessage());
-            return false;
-        }
-    }
-
-    @Override
-    public String getLockPrefix() {
-        return this.name;
-    }
-}
+*/
+
+
+package com.futurewei.alcor.common.db.redis;
+
+import com.futurewei.alcor.common.db.AbstractDistributedLock;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Releases are published on the channel named after the lock. Redis does not
+ * publish expired keys unless keyspace notifications are enabled, so waiters
+ * notice an expired lease on their next recheck.
+ */
+public class RedisDistributedLock extends AbstractDistributedLock {
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "return redis.call('pexpire', KEYS[1], ARGV[2]) end return 0", Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "redis.call('del', KEYS[1]) redis.call('publish', ARGV[2], KEYS[1]) return 1 end return 0", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public RedisDistributedLock(StringRedisTemplate redisTemplate, String name, int tryInterval, int expireTime) {
+        super(name, tryInterval, TimeUnit.SECONDS.toMillis(expireTime));
+        this.redisTemplate = redisTemplate;
+
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisTemplate.getRequiredConnectionFactory());
+        listenerContainer.addMessageListener((message, pattern) ->
+                onReleased(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(name));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @Override
+    protected boolean acquire(String realKey) {
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(realKey, owner, leaseTime, TimeUnit.MILLISECONDS);
+        Assert.notNull(locked, "Redis lock should not run within a transaction");
+        return locked;
+    }
+
+    @Override
+    protected boolean renew(String realKey) {
+        Long renewed = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(realKey),
+                owner, String.valueOf(leaseTime));
+        return renewed != null && renewed == 1;
+    }
+
+    @Override
+    protected void release(String realKey) {
+        redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(realKey), owner, name);
+    }
+}
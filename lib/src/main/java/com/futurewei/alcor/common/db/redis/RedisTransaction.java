@@ -13,31 +13,70 @@ Copyright(c) 2020 Futurewei Cloud
     FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
     WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 */
-
 package com.futurewei.alcor.common.db.redis;
 
 import com.futurewei.alcor.common.db.Transaction;
 import com.futurewei.alcor.common.db.CacheException;
+import com.futurewei.alcor.common.db.TransactionConflictException;
 import com.futurewei.alcor.common.logging.Logger;
 import com.futurewei.alcor.common.logging.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
-
+/**
+ * An optimistic transaction over the RedisCaches of the calling thread. What the
+ * transaction reads is WATCHed on a connection held by the transaction, and writes
+ * are queued instead of being sent. Commit sends MULTI, the queued writes and EXEC
+ * in one pipeline, so redis applies all of them or, when a watched key was changed
+ * by someone else, none of them. The commit then fails with a
+ * TransactionConflictException and the caller may retry with TransactionRetry.
+ *
+ * Reads of given keys (get, containsKey, putIfAbsent, remove, getAll of keys) watch
+ * only the entries read, so a commit fails only when another writer changed one of
+ * those entries in the meantime. Reads scanning a cache (getAll, filters, size) watch
+ * the whole cache, and any write to it fails the commit.
+ *
+ * Transactions incrementing entries shared by many requests run through
+ * TransactionRetry: ip address, mac and network key allocation and release, and the
+ * DPM port counts. The other transactions read and write the entries of the resource
+ * they work on, so they only fail, with a TransactionConflictException, when another
+ * instance changes the same resource at the same time.
+ */
 public class RedisTransaction implements Transaction {
     private static final Logger logger = LoggerFactory.getLogger();
 
-    private RedisTemplate redisTemplate;
+    // Like Ignite transactions, a transaction spans every cache used by the thread
+    // that started it, whichever cache or factory handed out the Transaction.
+    private static final ThreadLocal<Context> current = new ThreadLocal<>();
+
+    private final RedisConnectionFactory connectionFactory;
 
     public RedisTransaction(RedisTemplate redisTemplate) {
-        this.redisTemplate = redisTemplate;
+        this.connectionFactory = redisTemplate.getRequiredConnectionFactory();
+    }
+
+    /**
+     * The transaction started by the calling thread on connectionFactory, null if none
+     */
+    static Context current(RedisConnectionFactory connectionFactory) {
+        Context context = current.get();
+        return context != null && context.connectionFactory == connectionFactory ? context : null;
     }
 
+    @Override
     public Transaction start() throws CacheException {
-        redisTemplate.setEnableTransactionSupport(true);
+        if (current.get() != null) {
+            throw new CacheException("RedisTransaction start error: transaction already started");
+        }
+
         try {
-            redisTemplate.multi();
+            current.set(new Context(connectionFactory, connectionFactory.getConnection()));
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisTransaction start error:" + e.getMessage());
             throw new CacheException(e.getMessage());
@@ -46,18 +85,27 @@ public class RedisTransaction implements Transaction {
         return this;
     }
 
+    @Override
     public void commit() throws CacheException {
+        Context context = getContext();
         try {
-            redisTemplate.exec();
+            context.commit();
+        } catch (TransactionConflictException e) {
+            logger.log(Level.INFO, "RedisTransaction commit conflict:" + e.getMessage());
+            throw e;
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisTransaction commit error:" + e.getMessage());
             throw new CacheException(e.getMessage());
+        } finally {
+            context.reset();
         }
     }
 
+    @Override
     public void rollback() throws CacheException {
+        Context context = getContext();
         try {
-            redisTemplate.discard();
+            context.reset();
         } catch (Exception e) {
             logger.log(Level.WARNING, "RedisTransaction rollback error:" + e.getMessage());
             throw new CacheException(e.getMessage());
@@ -66,6 +114,114 @@ public class RedisTransaction implements Transaction {
 
     @Override
     public void close() {
-        //Do nothing
+        Context context = current.get();
+        if (context == null) {
+            return;
+        }
+
+        current.remove();
+        try {
+            context.reset();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "RedisTransaction close error:" + e.getMessage());
+        } finally {
+            context.connection.close();
+        }
+    }
+
+    private Context getContext() throws CacheException {
+        Context context = current.get();
+        if (context == null) {
+            throw new CacheException("RedisTransaction not started");
+        }
+
+        return context;
+    }
+
+    /**
+     * State of the transaction of one thread: its connection, the hashes it watches,
+     * the queued writes, and those writes by cache so reads in the transaction see them.
+     */
+    static class Context {
+        private final RedisConnectionFactory connectionFactory;
+        private final RedisConnection connection;
+        private final Set<ByteBuffer> watchedKeys = new HashSet<>();
+        private final List<Consumer<RedisConnection>> writes = new ArrayList<>();
+        private final Map<String, Map<Object, Object>> pendingValues = new HashMap<>();
+
+        private Context(RedisConnectionFactory connectionFactory, RedisConnection connection) {
+            this.connectionFactory = connectionFactory;
+            this.connection = connection;
+        }
+
+        /**
+         * Watch key before it is read, a later change by someone else fails the commit
+         */
+        void watch(byte[] key) {
+            if (watchedKeys.add(ByteBuffer.wrap(key))) {
+                connection.watch(key);
+            }
+        }
+
+        /**
+         * Queue a write, it is sent on commit
+         */
+        void queue(Consumer<RedisConnection> write) {
+            writes.add(write);
+        }
+
+        /**
+         * Record what reads of key in cacheName return until the commit, null for a removed key
+         */
+        void setPendingValue(String cacheName, Object key, Object value) {
+            pendingValues.computeIfAbsent(cacheName, k -> new HashMap<>()).put(key, value);
+        }
+
+        /**
+         * The values written to cacheName in the transaction by key, a null value for a
+         * removed key
+         */
+        Map<Object, Object> getPendingValues(String cacheName) {
+            return pendingValues.getOrDefault(cacheName, Collections.emptyMap());
+        }
+
+        private void commit() throws CacheException {
+            if (writes.isEmpty()) {
+                return;
+            }
+
+            connection.openPipeline();
+            List<Object> results;
+            try {
+                connection.multi();
+                writes.forEach(write -> write.accept(connection));
+                connection.exec();
+            } finally {
+                results = connection.closePipeline();
+            }
+
+            // The EXEC reply is the last one, null when a watched key was changed
+            Object execResult = results.isEmpty() ? null : results.get(results.size() - 1);
+            if (!(execResult instanceof List)) {
+                watchedKeys.clear();
+                throw new TransactionConflictException("watched keys were changed");
+            }
+            for (Object result : (List<?>) execResult) {
+                if (result instanceof Exception) {
+                    throw new CacheException(((Exception) result).getMessage());
+                }
+            }
+
+            watchedKeys.clear();
+        }
+
+        private void reset() {
+            writes.clear();
+            pendingValues.clear();
+            if (!watchedKeys.isEmpty()) {
+                watchedKeys.clear();
+                connection.unwatch();
+            }
+        }
     }
 }
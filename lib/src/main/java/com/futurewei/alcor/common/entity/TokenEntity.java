@@ -64,6 +64,10 @@ public class TokenEntity implements Serializable {
         this.token = token;
     }
 
+    public Date getExpireAt() {
+        return expireAt;
+    }
+
     public void setExpireAt(Date expireAt) {
         this.expireAt = expireAt;
     }
@@ -15,35 +15,43 @@ Copyright(c) 2020 Futurewei Cloud
 */
 package com.futurewei.alcor.common.stats;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Measures a code block between begin() and end() on the same thread, and
+ * records it like @DurationStatistics does, with the description as method tag.
+ */
 public class DurationCalculator {
     private static final Logger LOG = LoggerFactory.getLogger(DurationCalculator.class);
 
-    private static Map<Long, Long> startTimes = new HashMap<>();
+    private static final ThreadLocal<Long> startTimes = new ThreadLocal<>();
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
 
     public static void begin() {
-        long id = Thread.currentThread().getId();
-        startTimes.put(id, System.nanoTime());
+        startTimes.set(System.nanoTime());
     }
 
     public static void end(String description) {
-        long id = Thread.currentThread().getId();
         long endTime = System.nanoTime();
-        long startTime;
-        if (startTimes.containsKey(id)) {
-            startTime = startTimes.get(id);
-        } else {
-            startTime = endTime;
+        Long startTime = startTimes.get();
+        startTimes.remove();
+        if (startTime == null) {
+            return;
         }
 
         long duration = endTime - startTime;
+        timers.computeIfAbsent(description, d -> DurationMetrics.timer(Metrics.globalRegistry, d))
+                .record(duration, TimeUnit.NANOSECONDS);
 
-        LOG.info("{} startTime: {}ns, endTime: {}ns, duration: {}ms",
-                description, startTime, endTime, duration/1000000);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("{} startTime: {}ns, duration: {}us", description, startTime, duration / 1000);
+        }
     }
 }
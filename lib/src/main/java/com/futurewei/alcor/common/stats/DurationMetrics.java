@@ -0,0 +1,42 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.common.stats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Duration metrics recorded by @DurationStatistics and DurationCalculator. Each
+ * method gets a timer tagged with its signature, each DurationCalculator
+ * description one tagged with the description; services add their own service tag
+ * with management.metrics.tags.service. Percentiles come from an HdrHistogram
+ * recorder, so recording does not take locks.
+ */
+public final class DurationMetrics {
+    public static final String METRIC_NAME = "alcor.duration";
+    public static final String METHOD_TAG = "method";
+
+    private DurationMetrics() {
+    }
+
+    public static Timer timer(MeterRegistry registry, String method) {
+        return Timer.builder(METRIC_NAME)
+                .description("Duration of the methods annotated with @DurationStatistics")
+                .tag(METHOD_TAG, method)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+    }
+}
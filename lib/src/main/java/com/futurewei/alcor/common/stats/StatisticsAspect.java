@@ -15,44 +15,77 @@ Copyright(c) 2020 Futurewei Cloud
 */
 package com.futurewei.alcor.common.stats;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Component;
 
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Records the duration of every @DurationStatistics method into a per method
+ * timer, tagged with the method signature, see DurationMetrics. Logging each call is opt-in: enable DEBUG for
+ * this class.
+ */
 @Aspect
 @Component
 public class StatisticsAspect {
     private static final Logger LOG = LoggerFactory.getLogger(StatisticsAspect.class);
 
-    @Pointcut("@annotation(com.futurewei.alcor.common.stats.DurationStatistics)")
-    public void annotationPointCut() {
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
 
+    public StatisticsAspect(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
     }
 
-    @Around("annotationPointCut()")
-    public Object durationStatistics(ProceedingJoinPoint pjp) throws Throwable {
-        long startTime = 0;
-        long endTime = 0;
-        long duration = 0;
+    @Pointcut("@annotation(com.futurewei.alcor.common.stats.DurationStatistics)")
+    public void annotationPointCut() {
 
-        LOG.debug("Calculating duration of {}.{}()...",
-                pjp.getSignature().getDeclaringTypeName(), pjp.getSignature().getName());
+    }
 
-        startTime = System.nanoTime();
+    private Timer getTimer(Method method) {
+        return timers.computeIfAbsent(method, m -> DurationMetrics.timer(meterRegistry, methodTag(m)));
+    }
 
-        Object object = pjp.proceed();
+    /**
+     * Fully qualified class, method name and parameter types, e.g.
+     * com.futurewei.alcor.dataplane.cache.NodeInfoCache.getNodeInfo(String), so
+     * classes of the same simple name and overloads get timers of their own
+     */
+    static String methodTag(Method method) {
+        return method.getDeclaringClass().getName() + "." + method.getName() + "(" + Arrays.stream(
+                method.getParameterTypes()).map(Class::getSimpleName).collect(Collectors.joining(",")) + ")";
+    }
 
-        endTime = System.nanoTime();
-        duration = endTime- startTime;
+    @Around("annotationPointCut()")
+    public Object durationStatistics(ProceedingJoinPoint pjp) throws Throwable {
+        long startTime = System.nanoTime();
 
-        LOG.info("{}.{}() startTime: {}ns, endTime: {}ns, duration: {}ms",
-                pjp.getSignature().getDeclaringTypeName(),
-                pjp.getSignature().getName(), startTime, endTime, duration/1000000);
+        try {
+            return pjp.proceed();
+        } finally {
+            long duration = System.nanoTime() - startTime;
+            getTimer(((MethodSignature) pjp.getSignature()).getMethod()).record(duration, TimeUnit.NANOSECONDS);
 
-        return object;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{}.{}() startTime: {}ns, duration: {}us",
+                        pjp.getSignature().getDeclaringTypeName(),
+                        pjp.getSignature().getName(), startTime, duration / 1000);
+            }
+        }
     }
 }
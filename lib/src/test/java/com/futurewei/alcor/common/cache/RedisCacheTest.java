@@ -0,0 +1,307 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package com.futurewei.alcor.common.cache;
+
+import com.futurewei.alcor.common.cache.entity.TestIndexedEntity;
+import com.futurewei.alcor.common.db.CacheException;
+import com.futurewei.alcor.common.db.ICache;
+import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.common.db.TransactionConflictException;
+import com.futurewei.alcor.common.db.TransactionRetry;
+import com.futurewei.alcor.common.db.redis.MockRedisServer;
+import com.futurewei.alcor.common.db.redis.RedisCacheFactory;
+import com.google.common.collect.ImmutableMap;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RedisCacheTest extends MockRedisServer {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private ICache<String, TestIndexedEntity> cache;
+
+    @BeforeClass
+    public static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", MockRedisServer.getListenPort()));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @Before
+    public void setUp() throws CacheException {
+        connectionFactory.getConnection().flushAll();
+        cache = new RedisCacheFactory(connectionFactory, 10, 120).getCache(TestIndexedEntity.class);
+
+        Map<String, TestIndexedEntity> map = new HashMap<>();
+        map.put("portA", new TestIndexedEntity("1", "portA", "resourceA", "vpc1", 4));
+        map.put("portB", new TestIndexedEntity("1", "portB", "resourceB", "vpc1", 6));
+        map.put("portC", new TestIndexedEntity("2", "portC", "resourceC", "vpc2", 4));
+        map.put("portD", new TestIndexedEntity("2", "portD", "resourceD", "vpc3", 4));
+        cache.putAll(map);
+    }
+
+    @Test
+    public void indexedFilterTest() throws CacheException {
+        Map<String, Object[]> params =
+                new ImmutableMap.Builder<String, Object[]>().put("vpcId", new String[]{"vpc1", "vpc2"}).build();
+        Assert.assertEquals(3, cache.getAll(params).size());
+
+        Map<String, Object[]> params1 = new ImmutableMap.Builder<String, Object[]>()
+                .put("vpcId", new String[]{"vpc1", "vpc2"}).put("ipVersion", new Integer[]{4}).build();
+        Map<String, TestIndexedEntity> entities = cache.getAll(params1);
+        Assert.assertEquals(2, entities.size());
+        Assert.assertTrue(entities.containsKey("portA"));
+        Assert.assertTrue(entities.containsKey("portC"));
+
+        Map<String, Object[]> params2 = new ImmutableMap.Builder<String, Object[]>()
+                .put("vpcId", new String[]{"vpc1"}).put("name", new String[]{"resourceB"}).build();
+        Assert.assertEquals("portB", cache.get(params2).getId());
+
+        Map<String, Object[]> params3 =
+                new ImmutableMap.Builder<String, Object[]>().put("vpcId", new String[]{"vpc4"}).build();
+        Assert.assertTrue(cache.getAll(params3).isEmpty());
+        Assert.assertNull(cache.get(params3));
+    }
+
+    @Test
+    public void nonIndexedFilterTest() throws CacheException {
+        Map<String, Object[]> params =
+                new ImmutableMap.Builder<String, Object[]>().put("projectId", new String[]{"2"}).build();
+        Assert.assertEquals(2, cache.getAll(params).size());
+
+        Map<String, Object[]> params1 = new ImmutableMap.Builder<String, Object[]>()
+                .put("name", new String[]{"resourceC"}).put("unknownField", new String[]{"x"}).build();
+        Assert.assertEquals("portC", cache.get(params1).getId());
+    }
+
+    @Test(expected = CacheException.class)
+    public void tooManyRowsTest() throws CacheException {
+        Map<String, Object[]> params =
+                new ImmutableMap.Builder<String, Object[]>().put("vpcId", new String[]{"vpc1"}).build();
+        cache.get(params);
+    }
+
+    @Test
+    public void updateAndRemoveTest() throws CacheException {
+        cache.put("portA", new TestIndexedEntity("1", "portA", "resourceA", "vpc3", 4));
+        Assert.assertFalse(cache.putIfAbsent("portA", new TestIndexedEntity("1", "portA", "resourceA", "vpc2", 4)));
+
+        Map<String, Object[]> params =
+                new ImmutableMap.Builder<String, Object[]>().put("vpcId", new String[]{"vpc1"}).build();
+        Assert.assertEquals("portB", cache.get(params).getId());
+
+        Map<String, Object[]> params1 =
+                new ImmutableMap.Builder<String, Object[]>().put("vpcId", new String[]{"vpc3"}).build();
+        Assert.assertEquals(2, cache.getAll(params1).size());
+
+        Assert.assertTrue(cache.remove("portD"));
+        Assert.assertFalse(cache.remove("portD"));
+        Assert.assertEquals("portA", cache.get(params1).getId());
+        Assert.assertEquals(3, cache.size());
+
+        cache.removeAll(new HashSet<>(Arrays.asList("portA", "portB")));
+        Assert.assertNull(cache.get(params1));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void keysShareHashSlotTest() {
+        String name = TestIndexedEntity.class.getName();
+        Set<byte[]> keys = connectionFactory.getConnection().keys("*".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(keys.size() > 2);
+        for (byte[] key : keys) {
+            String keyName = new String(key, StandardCharsets.UTF_8);
+            Assert.assertTrue(keyName, keyName.equals(name) || keyName.startsWith("{" + name + "}:"));
+        }
+    }
+
+    @Test
+    public void getAllTest() throws CacheException {
+        Map<String, TestIndexedEntity> entities = cache.getAll();
+        Assert.assertEquals(4, entities.size());
+        Assert.assertEquals("vpc3", entities.get("portD").getVpcId());
+    }
+
+    @Test
+    public void transactionCommitTest() throws Exception {
+        Map<String, Object[]> params =
+                new ImmutableMap.Builder<String, Object[]>().put("vpcId", new String[]{"vpc4"}).build();
+        try (Transaction tx = cache.getTransaction().start()) {
+            TestIndexedEntity entity = cache.get("portA");
+            entity.setVpcId("vpc4");
+            cache.put("portA", entity);
+            cache.remove("portB");
+            Assert.assertTrue(cache.putIfAbsent("portE", new TestIndexedEntity("3", "portE", "resourceE", "vpc4", 4)));
+
+            Assert.assertEquals("vpc4", cache.get("portA").getVpcId());
+            Assert.assertNull(cache.get("portB"));
+            Assert.assertEquals(2, cache.getAll(params).size());
+            Assert.assertEquals(4, cache.getAll().size());
+            Assert.assertEquals(0, (int) CompletableFuture.supplyAsync(() -> getAll(params).size()).get());
+            tx.commit();
+        }
+
+        Assert.assertEquals(2, cache.getAll(params).size());
+        Assert.assertFalse(cache.containsKey("portB"));
+        Assert.assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void transactionConflictTest() throws Exception {
+        try (Transaction tx = cache.getTransaction().start()) {
+            TestIndexedEntity entity = cache.get("portA");
+            entity.setName("resourceX");
+            cache.put("portA", entity);
+
+            CompletableFuture.runAsync(() -> put(new TestIndexedEntity("1", "portA", "resourceY", "vpc1", 4))).get();
+            tx.commit();
+            Assert.fail("commit should fail on a conflict");
+        } catch (TransactionConflictException e) {
+            Assert.assertEquals("resourceY", cache.get("portA").getName());
+        }
+
+        try (Transaction tx = cache.getTransaction().start()) {
+            cache.put("portA", new TestIndexedEntity("1", "portA", "resourceZ", "vpc1", 4));
+        }
+        Assert.assertEquals("resourceY", cache.get("portA").getName());
+    }
+
+    @Test
+    public void writeToAnotherKeyTest() throws Exception {
+        try (Transaction tx = cache.getTransaction().start()) {
+            TestIndexedEntity entity = cache.get("portA");
+            entity.setName("resourceX");
+            cache.put("portA", entity);
+
+            CompletableFuture.runAsync(() -> put(new TestIndexedEntity("1", "portB", "resourceY", "vpc1", 6))).get();
+            tx.commit();
+        }
+
+        Assert.assertEquals("resourceX", cache.get("portA").getName());
+        Assert.assertEquals("resourceY", cache.get("portB").getName());
+    }
+
+    @Test
+    public void removeConflictTest() throws Exception {
+        try (Transaction tx = cache.getTransaction().start()) {
+            Assert.assertTrue(cache.containsKey("portA"));
+            cache.put("portE", new TestIndexedEntity("3", "portE", "resourceE", "vpc4", 4));
+
+            CompletableFuture.runAsync(() -> remove("portA")).get();
+            tx.commit();
+            Assert.fail("commit should fail on a remove of an entry read");
+        } catch (TransactionConflictException e) {
+            Assert.assertFalse(cache.containsKey("portE"));
+        }
+    }
+
+    @Test
+    public void scanConflictTest() throws Exception {
+        try (Transaction tx = cache.getTransaction().start()) {
+            Assert.assertEquals(4, cache.getAll().size());
+            cache.put("portE", new TestIndexedEntity("3", "portE", "resourceE", "vpc4", 4));
+
+            CompletableFuture.runAsync(() -> put(new TestIndexedEntity("1", "portF", "resourceF", "vpc1", 6))).get();
+            tx.commit();
+            Assert.fail("commit should fail on a write to a scanned cache");
+        } catch (TransactionConflictException e) {
+            Assert.assertFalse(cache.containsKey("portE"));
+        }
+    }
+
+    @Test
+    public void transactionRetryTest() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        String name = TransactionRetry.run(cache.getTransaction(), tx -> {
+            TestIndexedEntity entity = cache.get("portA");
+            entity.setName(entity.getName() + "X");
+            cache.put("portA", entity);
+            if (attempts.incrementAndGet() == 1) {
+                CompletableFuture.runAsync(() -> put(new TestIndexedEntity("1", "portA", "resourceY", "vpc1", 4))).get();
+            }
+
+            tx.commit();
+            return entity.getName();
+        });
+
+        Assert.assertEquals(2, attempts.get());
+        Assert.assertEquals("resourceYX", name);
+        Assert.assertEquals("resourceYX", cache.get("portA").getName());
+    }
+
+    @Test
+    public void transactionRetryGivesUpTest() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            TransactionRetry.run(cache.getTransaction(), tx -> {
+                cache.get("portA");
+                cache.put("portA", new TestIndexedEntity("1", "portA", "resourceX", "vpc1", 4));
+                CompletableFuture.runAsync(() -> put(new TestIndexedEntity("1", "portA",
+                        "resource" + attempts.incrementAndGet(), "vpc1", 4))).get();
+
+                tx.commit();
+                return null;
+            });
+            Assert.fail("retry should give up");
+        } catch (TransactionConflictException e) {
+            Assert.assertEquals(TransactionRetry.MAX_ATTEMPTS, attempts.get());
+            Assert.assertEquals("resource" + attempts.get(), cache.get("portA").getName());
+        }
+    }
+
+    private Map<String, TestIndexedEntity> getAll(Map<String, Object[]> params) {
+        try {
+            return cache.getAll(params);
+        } catch (CacheException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void put(TestIndexedEntity entity) {
+        try {
+            cache.put(entity.getId(), entity);
+        } catch (CacheException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void remove(String key) {
+        try {
+            cache.remove(key);
+        } catch (CacheException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @AfterClass
+    public static void disconnect() {
+        connectionFactory.destroy();
+    }
+}
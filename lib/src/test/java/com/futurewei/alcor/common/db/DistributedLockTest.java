@@ -0,0 +1,218 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.common.db;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DistributedLockTest {
+    private static final String LOCK_KEY = "test";
+
+    /**
+     * Nodes sharing one in-memory backend, which notifies every node on release.
+     */
+    private static class Backend {
+        private final Map<String, String> entries = new ConcurrentHashMap<>();
+        private final List<MemoryLock> nodes = new ArrayList<>();
+        private final AtomicInteger acquireCount = new AtomicInteger();
+        private volatile boolean notify = true;
+
+        private MemoryLock newNode(long retryInterval) {
+            MemoryLock lock = new MemoryLock(this, retryInterval);
+            nodes.add(lock);
+            return lock;
+        }
+    }
+
+    private static class MemoryLock extends AbstractDistributedLock {
+        private final Backend backend;
+
+        private MemoryLock(Backend backend, long retryInterval) {
+            super("TestLock", retryInterval, TimeUnit.SECONDS.toMillis(120));
+            this.backend = backend;
+        }
+
+        @Override
+        protected boolean acquire(String realKey) {
+            backend.acquireCount.incrementAndGet();
+            return backend.entries.putIfAbsent(realKey, owner) == null;
+        }
+
+        @Override
+        protected boolean renew(String realKey) {
+            return owner.equals(backend.entries.get(realKey));
+        }
+
+        @Override
+        protected void release(String realKey) {
+            if (backend.entries.remove(realKey, owner) && backend.notify) {
+                backend.nodes.forEach(node -> node.onReleased(realKey));
+            }
+        }
+    }
+
+    @Test
+    public void mutualExclusionTest() throws Exception {
+        Backend backend = new Backend();
+        MemoryLock node1 = backend.newNode(1000);
+        MemoryLock node2 = backend.newNode(1000);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger violations = new AtomicInteger();
+        int[] counter = new int[1];
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            MemoryLock lock = i % 2 == 0 ? node1 : node2;
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 200; j++) {
+                    try {
+                        lock.lock(LOCK_KEY);
+                        if (inside.incrementAndGet() != 1) {
+                            violations.incrementAndGet();
+                        }
+                        counter[0]++;
+                        inside.decrementAndGet();
+                        lock.unlock(LOCK_KEY);
+                    } catch (Exception e) {
+                        violations.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(0, violations.get());
+        Assert.assertEquals(8 * 200, counter[0]);
+        Assert.assertTrue(backend.entries.isEmpty());
+    }
+
+    @Test
+    public void tryLockTimeoutTest() throws Exception {
+        Backend backend = new Backend();
+        MemoryLock node1 = backend.newNode(10);
+        MemoryLock node2 = backend.newNode(10);
+
+        Assert.assertTrue(node1.tryLock(LOCK_KEY));
+        Assert.assertFalse(node2.tryLock(LOCK_KEY));
+
+        long start = System.nanoTime();
+        Assert.assertFalse(node2.tryLock(LOCK_KEY, 50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        node1.unlock(LOCK_KEY);
+        Assert.assertTrue(node2.tryLock(LOCK_KEY, 50, TimeUnit.MILLISECONDS));
+        node2.unlock(LOCK_KEY);
+    }
+
+    @Test
+    public void releaseNotificationTest() throws Exception {
+        Backend backend = new Backend();
+        // A waiter only wakes up early if it is notified
+        MemoryLock node1 = backend.newNode(TimeUnit.MINUTES.toMillis(1));
+        MemoryLock node2 = backend.newNode(TimeUnit.MINUTES.toMillis(1));
+        node1.lock(LOCK_KEY);
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                node2.lock(LOCK_KEY);
+                acquired.countDown();
+                node2.unlock(LOCK_KEY);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        waiter.start();
+
+        Thread.sleep(50);
+        int acquireCount = backend.acquireCount.get();
+        node1.unlock(LOCK_KEY);
+
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(backend.acquireCount.get() - acquireCount <= 2);
+        waiter.join();
+    }
+
+    @Test
+    public void recheckWithoutNotificationTest() throws Exception {
+        Backend backend = new Backend();
+        backend.notify = false;
+        MemoryLock node1 = backend.newNode(10);
+        MemoryLock node2 = backend.newNode(10);
+        node1.lock(LOCK_KEY);
+
+        Thread unlocker = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                node1.unlock(LOCK_KEY);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        unlocker.start();
+
+        Assert.assertTrue(node2.tryLock(LOCK_KEY, 5, TimeUnit.SECONDS));
+        node2.unlock(LOCK_KEY);
+        unlocker.join();
+    }
+
+    @Test
+    public void localHandoffTest() throws Exception {
+        Backend backend = new Backend();
+        MemoryLock node = backend.newNode(1000);
+        node.lock(LOCK_KEY);
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                node.lock(LOCK_KEY);
+                acquired.countDown();
+                node.unlock(LOCK_KEY);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        node.unlock(LOCK_KEY);
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+
+        // The waiter got the lock without going to the backend
+        Assert.assertEquals(1, backend.acquireCount.get());
+        Assert.assertTrue(backend.entries.isEmpty());
+    }
+
+    @Test(expected = Exception.class)
+    public void unlockWithoutLockTest() throws Exception {
+        new Backend().newNode(1000).unlock(LOCK_KEY);
+    }
+}
@@ -16,11 +16,14 @@ Copyright(c) 2020 Futurewei Cloud
 package com.futurewei.alcor.common.db.redis;
 
 
-import ai.grakn.redismock.RedisServer;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
-import java.io.IOException;
+import redis.embedded.RedisServer;
 
+/**
+ * Runs an embedded redis server for tests. It is a real redis-server, so hashes,
+ * scans and lua scripts used by RedisCache behave as they do in deployments.
+ */
 public class MockRedisServer {
     private static RedisServer redisServer = null;
     private static int ListenPort = 6380;
@@ -28,15 +31,20 @@ public class MockRedisServer {
     @BeforeClass
     public static void init() {
         if (redisServer == null) {
-            try {
-                redisServer = RedisServer.newRedisServer(ListenPort);
-                redisServer.start();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            redisServer = RedisServer.builder()
+                    .port(ListenPort)
+                    .setting("bind 127.0.0.1")
+                    .setting("save \"\"")
+                    .build();
+            redisServer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(redisServer::stop));
         }
     }
 
+    public static int getListenPort() {
+        return ListenPort;
+    }
+
     @AfterClass
     public static void close() {
     }
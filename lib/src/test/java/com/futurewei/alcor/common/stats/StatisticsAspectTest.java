@@ -0,0 +1,83 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.common.stats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.Collections;
+
+public class StatisticsAspectTest {
+
+    public static class TimedService {
+        @DurationStatistics
+        public String echo(String value) {
+            return value;
+        }
+
+        @DurationStatistics
+        public String echo(String value, int times) {
+            return String.join("", Collections.nCopies(times, value));
+        }
+
+        @DurationStatistics
+        public void fail() {
+            throw new IllegalStateException();
+        }
+    }
+
+    private TimedService buildProxy(MeterRegistry registry) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", registry);
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new TimedService());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new StatisticsAspect(beanFactory.getBeanProvider(MeterRegistry.class)));
+        return proxyFactory.getProxy();
+    }
+
+    @Test
+    public void recordDurationTest() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        TimedService service = buildProxy(registry);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("alcor", service.echo("alcor"));
+        }
+        Assert.assertEquals("alcoralcor", service.echo("alcor", 2));
+        try {
+            service.fail();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+
+        String className = TimedService.class.getName();
+        Timer echoTimer = registry.get(DurationMetrics.METRIC_NAME)
+                .tag(DurationMetrics.METHOD_TAG, className + ".echo(String)").timer();
+        Timer echoTimesTimer = registry.get(DurationMetrics.METRIC_NAME)
+                .tag(DurationMetrics.METHOD_TAG, className + ".echo(String,int)").timer();
+        Timer failTimer = registry.get(DurationMetrics.METRIC_NAME)
+                .tag(DurationMetrics.METHOD_TAG, className + ".fail()").timer();
+        Assert.assertEquals(10, echoTimer.count());
+        Assert.assertEquals(1, echoTimesTimer.count());
+        Assert.assertEquals(1, failTimer.count());
+    }
+}
@@ -30,13 +30,16 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.*;
-import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import static com.futurewei.alcor.common.utils.DateUtil.getKeystoneDateFormat;
@@ -101,16 +104,38 @@ public class KeystoneClient {
     @Value("${keystone.auth_url}")
     private String authUrl;
 
+    @Value("${keystone.token_cache_size:100000}")
+    private int tokenCacheSize;
+
+    @Value("${keystone.token_cache_ttl:300}")
+    private long tokenCacheTtl;
+
+    @Value("${keystone.invalid_token_cache_size:10000}")
+    private int invalidTokenCacheSize;
+
+    @Value("${keystone.invalid_token_cache_ttl:30}")
+    private long invalidTokenCacheTtl;
+
     private final RestTemplate restTemplate;
+    private final WebClient webClient;
+
+    // shared by all the api gateway instances, a second level behind tokenCache
     private ICache<String, TokenEntity> cache;
+    private LocalTokenCache tokenCache;
+    private LocalTokenCache invalidTokenCache;
+    private final Map<String, Mono<TokenEntity>> pendingVerifications = new ConcurrentHashMap<>();
 
     public KeystoneClient(CacheFactory cacheFactory, RestTemplateBuilder restTemplateBuilder){
         this.restTemplate = restTemplateBuilder.build();
+        this.webClient = WebClient.builder().build();
         this.cache = cacheFactory.getExpireCache(TokenEntity.class, CACHE_EXPIRE_HOUR, TimeUnit.HOURS);
     }
 
     @PostConstruct
     public void setUp() {
+        tokenCache = new LocalTokenCache(tokenCacheSize, TimeUnit.SECONDS.toMillis(tokenCacheTtl));
+        invalidTokenCache = new LocalTokenCache(invalidTokenCacheSize, TimeUnit.SECONDS.toMillis(invalidTokenCacheTtl));
+
         try {
             checkEndPoints();
             getLocalToken();
@@ -185,87 +210,155 @@ public class KeystoneClient {
     }
 
     /**
-     * verify client request token, and cache the token info which get from keystone
+     * verify client request token, and cache the token info which get from keystone.
+     * A token is looked up in the local cache, then in the shared cache, and only then
+     * verified by keystone. Concurrent verifications of one token share a keystone call.
      *
      * @param token the customer request token in 'X-Auth-Token'
-     * @return a token project id from keystone
+     * @return the token info from keystone, or empty if the token is invalid or expired
      *
      * @see <a href="https://docs.openstack.org/api-ref/identity/v3/index.html?expanded=password-authentication-with-scoped-authorization-detail#identity-api-operations">Keystone api operations</a>
      */
-    public Optional<TokenEntity> verifyToken(String token){
-        try {
+    public Mono<TokenEntity> verifyToken(String token){
+        TokenEntity tokenEntity = tokenCache.get(token);
+        if(tokenEntity != null){
+            return Mono.just(tokenEntity);
+        }
+        if(invalidTokenCache.get(token) != null){
+            return Mono.empty();
+        }
 
-            TokenEntity tokenEntity = cache.get(token);
-            if(tokenEntity != null){
-                LOG.debug("fetch the token from cache {}", tokenEntity);
-                return tokenEntity.isExpired() ? Optional.empty() : Optional.of(tokenEntity);
-            }
+        return pendingVerifications.computeIfAbsent(token, t -> loadToken(t)
+                .doFinally(signal -> pendingVerifications.remove(t))
+                .cache());
+    }
 
+    private Mono<TokenEntity> loadToken(String token){
+        return Mono.fromCallable(() -> cache.get(token))
+                .subscribeOn(Schedulers.elastic())
+                .doOnNext(te -> LOG.debug("fetch the token from cache {}", te))
+                .map(te -> te.isExpired() ? new TokenEntity(token, true) : te)
+                .onErrorResume(CacheException.class, e -> {
+                    LOG.warn("fetch the token from cache failed, {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.defer(() -> requestToken(token)))
+                .flatMap(te -> {
+                    if(te.isInvalid()){
+                        invalidTokenCache.put(token, te, Long.MAX_VALUE);
+                        return Mono.empty();
+                    }
+
+                    tokenCache.put(token, te, te.getExpireAt() != null ? te.getExpireAt().getTime() : Long.MAX_VALUE);
+                    return Mono.just(te);
+                });
+    }
+
+    private Mono<String> getLocalTokenAsync(){
+        if(!"".equals(baseUrl) && !"".equals(localToken) &&
+                (localTokenExpireDate == null || localTokenExpireDate.after(new Date()))){
+            return Mono.just(localToken);
+        }
+
+        return Mono.fromCallable(() -> {
             checkEndPoints();
             getLocalToken();
+            return localToken;
+        }).subscribeOn(Schedulers.elastic());
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-            headers.set(VALIDATE_TOKEN_HEADER, token);
-            headers.set(AUTH_TOKEN_HEADER, localToken);
+    private Mono<TokenEntity> requestToken(String token){
+        return getLocalTokenAsync()
+                .flatMap(authToken -> webClient.get()
+                        .uri(baseUrl + TOKEN_URL + AUTH_URL_QUERY_PARAM)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(VALIDATE_TOKEN_HEADER, token)
+                        .header(AUTH_TOKEN_HEADER, authToken)
+                        .exchange())
+                .flatMap(response -> response.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .flatMap(body -> parseResponse(token, response.statusCode(), body)))
+                .doOnNext(te -> Schedulers.elastic().schedule(() -> {
+                    try {
+                        cache.put(token, te);
+                    } catch (CacheException e) {
+                        LOG.warn("cache the token failed, {}", e.getMessage());
+                    }
+                }))
+                .onErrorResume(e -> {
+                    LOG.error("verify token failed, {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>(null, headers);
-            ResponseEntity<String> response = restTemplate.exchange(baseUrl + TOKEN_URL + AUTH_URL_QUERY_PARAM,
-                    HttpMethod.GET, entity, String.class);
+    private Mono<TokenEntity> parseResponse(String token, HttpStatus status, String body){
+        if(status == HttpStatus.UNAUTHORIZED){
+            // our own token was rejected, get a new one for the next verification
+            LOG.warn("verify token {} failed, the alcor token is not authorized", token);
+            localToken = "";
+            return Mono.empty();
+        }
 
-            // check headers
-            if(response.getStatusCode().equals(HttpStatus.OK)){
+        if(status == HttpStatus.NOT_FOUND || status == HttpStatus.BAD_REQUEST){
+            LOG.warn("verify token failed {}, keystone return http status {}", token, status);
+            return Mono.just(new TokenEntity(token, true));
+        }
 
-                String resultStr = response.getBody();
-                JsonNode result = json2Map(resultStr);
-                JsonNode tokenNode = result.path(JSON_TOKEN_KEY);
+        if(!status.equals(HttpStatus.OK)){
+            LOG.warn("verify token failed {}, keystone return http status {}", token, status);
+            return Mono.empty();
+        }
 
-                TokenEntity te = new TokenEntity(token,false);
-                JsonNode user = tokenNode.path(JSON_USER_KEY);
-                te.setUser(user.path(JSON_NAME_KEY).asText(""));
-                te.setUserId(user.path(JSON_ID_KEY).asText(""));
+        try {
+            return Mono.justOrEmpty(parseToken(token, body));
+        } catch (IOException | ParseException e) {
+            LOG.error("verify token failed, {}", e.getMessage());
+            return Mono.empty();
+        }
+    }
 
-                String expireDateStr = tokenNode.path(JSON_EXPIRES_AT_KEY).asText();
-                expireDateStr = expireDateStr.replace("000Z", "+0000");
+    private TokenEntity parseToken(String token, String resultStr) throws IOException, ParseException {
+        JsonNode result = json2Map(resultStr);
+        JsonNode tokenNode = result.path(JSON_TOKEN_KEY);
 
-                Date expireDate = getKeystoneDateFormat().parse(expireDateStr);
+        TokenEntity te = new TokenEntity(token,false);
+        JsonNode user = tokenNode.path(JSON_USER_KEY);
+        te.setUser(user.path(JSON_NAME_KEY).asText(""));
+        te.setUserId(user.path(JSON_ID_KEY).asText(""));
 
-                te.setExpireAt(expireDate);
+        String expireDateStr = tokenNode.path(JSON_EXPIRES_AT_KEY).asText();
+        expireDateStr = expireDateStr.replace("000Z", "+0000");
 
-                if(tokenNode.has(JSON_ROLES_KEY)){
-                    JsonNode roles = tokenNode.path(JSON_ROLES_KEY);
-                    Iterator<JsonNode> rolesIt = roles.elements();
-                    List<String> roleNames = new ArrayList<>();
-                    rolesIt.forEachRemaining(role -> roleNames.add(role.path(JSON_NAME_KEY).asText("")));
-                    te.setRoles(roleNames);
-                }
+        Date expireDate = getKeystoneDateFormat().parse(expireDateStr);
 
-                if(tokenNode.has(JSON_PROJECT_KEY)){
-                    JsonNode project = tokenNode.path(JSON_PROJECT_KEY);
-                    String projectId = project.path(JSON_ID_KEY).asText();
+        te.setExpireAt(expireDate);
 
-                    if(project.has(JSON_DOMAIN_KEY)){
-                        JsonNode domain = project.path(JSON_DOMAIN_KEY);
-                        te.setDomainId(domain.path(JSON_ID_KEY).asText(""));
-                        te.setDomainName(domain.path(JSON_NAME_KEY).asText(""));
-                    }
+        if(tokenNode.has(JSON_ROLES_KEY)){
+            JsonNode roles = tokenNode.path(JSON_ROLES_KEY);
+            Iterator<JsonNode> rolesIt = roles.elements();
+            List<String> roleNames = new ArrayList<>();
+            rolesIt.forEachRemaining(role -> roleNames.add(role.path(JSON_NAME_KEY).asText("")));
+            te.setRoles(roleNames);
+        }
 
-                    //projectId = transformProjectIdToUuid(projectId);
-                    te.setProjectId(projectId);
-                    te.setProjectName(project.path(JSON_NAME_KEY).asText(""));
-                    cache.put(token, te);
-                    LOG.debug("verify token {} success, token info: [{}]", token, te);
-                    return Optional.of(te);
-                }
-            }else{
-                LOG.warn("verify token failed {}, keystone return http status {}", token, response.getStatusCode());
-                cache.put(token, new TokenEntity(token,true));
-            }
-        } catch (IOException | CacheException | ParseException | HttpClientErrorException e) {
-            LOG.error("verify token failed, {}", e.getMessage());
+        if(!tokenNode.has(JSON_PROJECT_KEY)){
+            return null;
         }
-        return Optional.empty();
+
+        JsonNode project = tokenNode.path(JSON_PROJECT_KEY);
+        String projectId = project.path(JSON_ID_KEY).asText();
+
+        if(project.has(JSON_DOMAIN_KEY)){
+            JsonNode domain = project.path(JSON_DOMAIN_KEY);
+            te.setDomainId(domain.path(JSON_ID_KEY).asText(""));
+            te.setDomainName(domain.path(JSON_NAME_KEY).asText(""));
+        }
+
+        //projectId = transformProjectIdToUuid(projectId);
+        te.setProjectId(projectId);
+        te.setProjectName(project.path(JSON_NAME_KEY).asText(""));
+        LOG.debug("verify token {} success, token info: [{}]", token, te);
+        return te;
     }
 
     private String transformProjectIdToUuid(String projectId){
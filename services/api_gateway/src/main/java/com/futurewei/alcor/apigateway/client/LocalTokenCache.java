@@ -0,0 +1,99 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package com.futurewei.alcor.apigateway.client;
+
+import com.futurewei.alcor.common.entity.TokenEntity;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process cache of token verification results, bounded to maxSize entries.
+ * An entry lives until the token expires, but no longer than ttl.
+ */
+public class LocalTokenCache {
+
+    private static class Entry {
+        private final TokenEntity tokenEntity;
+        private final long expireAt;
+
+        private Entry(TokenEntity tokenEntity, long expireAt) {
+            this.tokenEntity = tokenEntity;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlMillis;
+
+    public LocalTokenCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public TokenEntity get(String token) {
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            entries.remove(token, entry);
+            return null;
+        }
+
+        return entry.tokenEntity;
+    }
+
+    /**
+     * @param expireAt when the token expires in milliseconds, or Long.MAX_VALUE if unknown
+     */
+    public void put(String token, TokenEntity tokenEntity, long expireAt) {
+        long now = System.currentTimeMillis();
+        expireAt = Math.min(expireAt, now + ttlMillis);
+        if (expireAt <= now || maxSize <= 0) {
+            return;
+        }
+
+        if (entries.size() >= maxSize) {
+            evict(now);
+        }
+
+        entries.put(token, new Entry(tokenEntity, expireAt));
+    }
+
+    public void remove(String token) {
+        entries.remove(token);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.expireAt <= now);
+
+        // Still full of live entries, drop a tenth of them rather than one per put
+        Iterator<Entry> it = entries.values().iterator();
+        for (int i = entries.size() - maxSize * 9 / 10; i > 0 && it.hasNext(); i--) {
+            it.next();
+            it.remove();
+        }
+    }
+}
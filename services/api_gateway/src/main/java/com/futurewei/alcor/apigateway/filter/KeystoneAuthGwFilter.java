@@ -63,14 +63,21 @@ public class KeystoneAuthGwFilter implements GlobalFilter, Ordered {
             exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
             return exchange.getResponse().setComplete();
         }
-        Optional<TokenEntity> tokenEntityOptional = keystoneClient.verifyToken(token);
-        if(tokenEntityOptional.isEmpty()){
-            LOG.warn("parsed token {} project id failed", token);
-            exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
-            return exchange.getResponse().setComplete();
-        }
+        return keystoneClient.verifyToken(token)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(tokenEntityOptional -> {
+                    if(tokenEntityOptional.isEmpty()){
+                        LOG.warn("parsed token {} project id failed", token);
+                        exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+                        return exchange.getResponse().setComplete();
+                    }
+
+                    return filter(exchange, chain, token, tokenEntityOptional.get());
+                });
+    }
 
-        TokenEntity tokenEntity = tokenEntityOptional.get();
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain, String token, TokenEntity tokenEntity) {
         String projectId = tokenEntity.getProjectId();
         LOG.debug("parsed token {} project id success, project id:[{}]", token, projectId);
 
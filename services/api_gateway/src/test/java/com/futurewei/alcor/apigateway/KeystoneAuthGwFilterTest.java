@@ -36,7 +36,6 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
-import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -63,8 +62,8 @@ public class KeystoneAuthGwFilterTest {
         ReflectionTestUtils.setField(filter, "neutronUrlPrefix", "/v2.0");
         TokenEntity tokenEntity = new TokenEntity(TEST_TOKEN, false);
         tokenEntity.setProjectId(TEST_PROJECT_ID);
-        when(keystoneClient.verifyToken(TEST_TOKEN)).thenReturn(Optional.of(tokenEntity));
-        when(keystoneClient.verifyToken(TEST_ERROR_TOKEN)).thenReturn(Optional.empty());
+        when(keystoneClient.verifyToken(TEST_TOKEN)).thenReturn(Mono.just(tokenEntity));
+        when(keystoneClient.verifyToken(TEST_ERROR_TOKEN)).thenReturn(Mono.empty());
     }
 
     @Test
@@ -117,7 +116,7 @@ public class KeystoneAuthGwFilterTest {
         ArgumentCaptor<ServerWebExchange> captor = ArgumentCaptor.forClass(ServerWebExchange.class);
         when(filterChain.filter(captor.capture())).thenReturn(Mono.empty());
 
-        filter.filter(exchange, filterChain);
+        filter.filter(exchange, filterChain).block();
         verify(filterChain).filter(captor.capture());
         return captor.getValue();
     }
@@ -129,6 +128,6 @@ public class KeystoneAuthGwFilterTest {
         exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
 
         GatewayFilterChain filterChain = mock(GatewayFilterChain.class);
-        filter.filter(exchange, filterChain);
+        filter.filter(exchange, filterChain).block();
     }
 }
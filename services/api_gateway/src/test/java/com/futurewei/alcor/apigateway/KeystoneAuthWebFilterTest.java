@@ -31,8 +31,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.reactive.server.WebTestClient;
-
-import java.util.Optional;
+import reactor.core.publisher.Mono;
 
 import static org.mockito.Mockito.when;
 
@@ -63,8 +62,8 @@ public class KeystoneAuthWebFilterTest {
         ReflectionTestUtils.setField(keystoneAuthGwFilter, "keystoneClient", keystoneClient);
         TokenEntity tokenEntity = new TokenEntity(TEST_TOKEN, false);
         tokenEntity.setProjectId(TEST_PROJECT_ID);
-        when(keystoneClient.verifyToken(TEST_TOKEN)).thenReturn(Optional.of(tokenEntity));
-        when(keystoneClient.verifyToken(TEST_ERROR_TOKEN)).thenReturn(Optional.empty());
+        when(keystoneClient.verifyToken(TEST_TOKEN)).thenReturn(Mono.just(tokenEntity));
+        when(keystoneClient.verifyToken(TEST_ERROR_TOKEN)).thenReturn(Mono.empty());
     }
 
     @Test
@@ -0,0 +1,153 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.apigateway;
+
+import com.futurewei.alcor.apigateway.client.KeystoneClient;
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.ICache;
+import com.futurewei.alcor.common.entity.TokenEntity;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Many concurrent verifications against a keystone stub which answers after
+ * KEYSTONE_DELAY and counts its calls.
+ */
+public class KeystoneClientLoadTest {
+
+    private static final String VALIDATE_TOKEN_HEADER = "X-Subject-Token";
+    private static final String VALID_TOKEN_PREFIX = "valid";
+    private static final String INVALID_TOKEN_PREFIX = "invalid";
+    private static final String SLOW_TOKEN = "valid-slow";
+    private static final String TEST_PROJECT_ID = "aaaaaaaabbbbccccddddeeeeeeeeeeee";
+    private static final Duration KEYSTONE_DELAY = Duration.ofMillis(50);
+
+    private static final String TOKEN_RESPONSE = "{" +
+            " \"token\": {" +
+            "      \"expires_at\": \"2100-06-01T08:16:01.000000Z\"," +
+            "      \"project\": {" +
+            "          \"id\": \"" + TEST_PROJECT_ID + "\"," +
+            "          \"name\": \"demo\"" +
+            "      }," +
+            "      \"user\": {" +
+            "          \"id\": \"ccebc2b4ea484bc2bf309bb163efdb5e\"," +
+            "          \"name\": \"demo\"" +
+            "      }" +
+            "}}";
+
+    private KeystoneClient keystoneClient;
+    private AtomicInteger keystoneCalls;
+
+    @Before
+    public void setUp() throws Exception {
+        CacheFactory cacheFactory = Mockito.mock(CacheFactory.class);
+        ICache<String, TokenEntity> cache = Mockito.mock(ICache.class);
+        when(cacheFactory.getExpireCache(TokenEntity.class, 2, TimeUnit.HOURS)).thenReturn((ICache) cache);
+
+        keystoneCalls = new AtomicInteger();
+        ExchangeFunction keystone = request -> {
+            keystoneCalls.incrementAndGet();
+            String token = request.headers().getFirst(VALIDATE_TOKEN_HEADER);
+            ClientResponse response = token.startsWith(VALID_TOKEN_PREFIX) ?
+                    ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(TOKEN_RESPONSE).build() :
+                    ClientResponse.create(HttpStatus.NOT_FOUND).build();
+            Duration delay = SLOW_TOKEN.equals(token) ? Duration.ofSeconds(5) : KEYSTONE_DELAY;
+            return Mono.delay(delay).thenReturn(response);
+        };
+
+        keystoneClient = new KeystoneClient(cacheFactory, new RestTemplateBuilder());
+        ReflectionTestUtils.setField(keystoneClient, "webClient", WebClient.builder().exchangeFunction(keystone).build());
+        ReflectionTestUtils.setField(keystoneClient, "baseUrl", "http://localhost/identity/v3");
+        ReflectionTestUtils.setField(keystoneClient, "localToken", "localtoken");
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.DAY_OF_MONTH, 1);
+        ReflectionTestUtils.setField(keystoneClient, "localTokenExpireDate", c.getTime());
+        ReflectionTestUtils.setField(keystoneClient, "tokenCacheSize", 1000);
+        ReflectionTestUtils.setField(keystoneClient, "tokenCacheTtl", 300L);
+        ReflectionTestUtils.setField(keystoneClient, "invalidTokenCacheSize", 1000);
+        ReflectionTestUtils.setField(keystoneClient, "invalidTokenCacheTtl", 30L);
+        keystoneClient.setUp();
+    }
+
+    @Test
+    public void concurrentVerifyTest() {
+        int tokenNum = 20;
+        int requestNum = 5000;
+
+        List<TokenEntity> tokenEntities = Flux.range(0, requestNum)
+                .flatMap(i -> keystoneClient.verifyToken(VALID_TOKEN_PREFIX + (i % tokenNum)), 512)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertEquals(requestNum, tokenEntities.size());
+        tokenEntities.forEach(tokenEntity -> assertEquals(TEST_PROJECT_ID, tokenEntity.getProjectId()));
+        // one keystone call per token, the rest were answered by the pending call or the local cache
+        assertEquals(tokenNum, keystoneCalls.get());
+    }
+
+    @Test
+    public void concurrentVerifyInvalidTest() {
+        int tokenNum = 10;
+        int requestNum = 2000;
+
+        for (int round = 0; round < 2; round++) {
+            Long verified = Flux.range(0, requestNum)
+                    .flatMap(i -> keystoneClient.verifyToken(INVALID_TOKEN_PREFIX + (i % tokenNum)), 512)
+                    .count()
+                    .block(Duration.ofSeconds(30));
+            assertEquals(0, verified.longValue());
+        }
+
+        assertEquals(tokenNum, keystoneCalls.get());
+    }
+
+    @Test
+    public void slowKeystoneTest() {
+        String token = VALID_TOKEN_PREFIX + "0";
+        assertNotNull(keystoneClient.verifyToken(token).block(Duration.ofSeconds(5)));
+
+        // a slow verification does not hold up the verification of cached tokens
+        keystoneClient.verifyToken(SLOW_TOKEN).subscribe();
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull(keystoneClient.verifyToken(token).block(Duration.ofMillis(100)));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, keystoneCalls.get());
+    }
+}
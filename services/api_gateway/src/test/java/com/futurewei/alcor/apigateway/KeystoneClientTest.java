@@ -38,6 +38,10 @@ import org.springframework.http.*;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -211,27 +215,30 @@ public class KeystoneClientTest {
                 "      }" +
                 "}}";
 
-        when(restTemplate.exchange(Mockito.eq(url),
-                Mockito.eq(HttpMethod.GET), any(HttpEntity.class), Mockito.eq(String.class))).then(new Answer<ResponseEntity<String>>() {
-            public ResponseEntity<String> answer(InvocationOnMock invocation) throws Throwable {
-               HttpEntity<String> httpEntity = (HttpEntity<String>)invocation.getArguments()[2];
-               String authToken = httpEntity.getHeaders().getFirst(AUTH_TOKEN_HEADER);
-               String validateAuthToken = httpEntity.getHeaders().getFirst(VALIDATE_TOKEN_HEADER);
-               if (TEST_LOCAL_TOKEN.equals(authToken)){
-                   if(TEST_TOKEN.equals(validateAuthToken) || TEST_NOCACHE_TOKEN.equals(validateAuthToken)){
-                       return ResponseEntity.ok(customerTokenResponse);
-                   }else if (TEST_INVALID_TOKEN.equals(validateAuthToken)){
-                       return ResponseEntity.badRequest().build();
-                   }else{
-                       return ResponseEntity.notFound().build();
-                   }
-               }
-               return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        ExchangeFunction keystone = request -> {
+            String authToken = request.headers().getFirst(AUTH_TOKEN_HEADER);
+            String validateAuthToken = request.headers().getFirst(VALIDATE_TOKEN_HEADER);
+            if (!url.equals(request.url().toString())) {
+                return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
             }
-        });
+            if (TEST_LOCAL_TOKEN.equals(authToken)){
+                if(TEST_TOKEN.equals(validateAuthToken) || TEST_NOCACHE_TOKEN.equals(validateAuthToken)){
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(customerTokenResponse).build());
+                }else if (TEST_INVALID_TOKEN.equals(validateAuthToken)){
+                    return Mono.just(ClientResponse.create(HttpStatus.BAD_REQUEST).build());
+                }else{
+                    return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+                }
+            }
+            return Mono.just(ClientResponse.create(HttpStatus.UNAUTHORIZED).build());
+        };
 
         ReflectionTestUtils.setField(keystoneClient, "restTemplate", restTemplate);
+        ReflectionTestUtils.setField(keystoneClient, "webClient", WebClient.builder().exchangeFunction(keystone).build());
         ReflectionTestUtils.setField(keystoneClient, "cache", cache);
+        keystoneClient.setUp();
     }
 
     @Test
@@ -401,22 +408,24 @@ public class KeystoneClientTest {
 
     @Test
     public void verifyTokenTest(){
-        Optional<TokenEntity> tokenEntityOptional = keystoneClient.verifyToken(TEST_TOKEN);
+        Optional<TokenEntity> tokenEntityOptional = keystoneClient.verifyToken(TEST_TOKEN).blockOptional();
         assertTrue(tokenEntityOptional.isPresent());
         assertEquals(TEST_PROJECT_ID, tokenEntityOptional.get().getProjectId());
 
-        Optional<TokenEntity> emptyTokenEntityOptional = keystoneClient.verifyToken(TEST_EXPIRED_TOKEN);
+        Optional<TokenEntity> emptyTokenEntityOptional = keystoneClient.verifyToken(TEST_EXPIRED_TOKEN).blockOptional();
         assertTrue(emptyTokenEntityOptional.isEmpty());
 
-        Optional<TokenEntity> empty2TokenEntityOptional = keystoneClient.verifyToken(TEST_INVALID_TOKEN);
+        Optional<TokenEntity> empty2TokenEntityOptional = keystoneClient.verifyToken(TEST_INVALID_TOKEN).blockOptional();
         assertTrue(empty2TokenEntityOptional.isEmpty());
 
-        Optional<TokenEntity> noCacheTokenEntityOptional = keystoneClient.verifyToken(TEST_NOCACHE_TOKEN);
+        Optional<TokenEntity> noCacheTokenEntityOptional = keystoneClient.verifyToken(TEST_NOCACHE_TOKEN).blockOptional();
         assertTrue(noCacheTokenEntityOptional.isPresent());
         assertEquals(TEST_PROJECT_ID, noCacheTokenEntityOptional.get().getProjectId());
 
+        // drop the local cache so keystone is asked again
+        keystoneClient.setUp();
         ReflectionTestUtils.setField(keystoneClient, "localToken", TEST_INVALID_LOCAL_TOKEN);
-        Optional<TokenEntity> empty3TokenEntityOptional = keystoneClient.verifyToken(TEST_NOCACHE_TOKEN);
+        Optional<TokenEntity> empty3TokenEntityOptional = keystoneClient.verifyToken(TEST_NOCACHE_TOKEN).blockOptional();
         assertTrue(empty3TokenEntityOptional.isEmpty());
     }
 
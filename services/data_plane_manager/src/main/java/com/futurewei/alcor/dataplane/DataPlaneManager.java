@@ -17,6 +17,7 @@ Copyright(c) 2020 Futurewei Cloud
 package com.futurewei.alcor.dataplane;
 
 import com.futurewei.alcor.common.tracer.TracerConfiguration;
+import com.futurewei.alcor.web.changelog.NodeInfoReplicaConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -28,7 +29,7 @@ import java.util.concurrent.Executors;
 
 @SpringBootApplication
 @EnableAsync
-@Import(TracerConfiguration.class)
+@Import({NodeInfoReplicaConfiguration.class, TracerConfiguration.class})
 public class DataPlaneManager {
 
   public static void main(String[] args) {
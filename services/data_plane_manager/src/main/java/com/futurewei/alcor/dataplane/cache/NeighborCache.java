@@ -23,31 +23,98 @@ import com.futurewei.alcor.schema.Neighbor;
 import com.futurewei.alcor.web.entity.dataplane.NeighborEntry;
 import com.futurewei.alcor.web.entity.dataplane.NeighborInfo;
 import com.futurewei.alcor.web.entity.subnet.InternalSubnetPorts;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Repository;
 
-import java.util.HashMap;
+import javax.annotation.PreDestroy;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Neighbor states are written behind: they are buffered locally and flushed to the
+ * distributed cache with one putAll every flush interval, or right away by the writer
+ * which finds the buffer full. Reads through this instance see the buffered states.
+ */
 @Repository
 @ComponentScan(value="com.futurewei.alcor.common.db")
 public class NeighborCache {
+    private static final Logger LOG = LoggerFactory.getLogger(NeighborCache.class);
+    private static final long DEFAULT_FLUSH_INTERVAL = 100;
+    private static final int DEFAULT_MAX_PENDING = 10000;
+
     // The cache is a map(subnetId, subnetPorts)
     private ICache<String, Neighbor.NeighborState> neighborCache;
 
-    @Autowired
+    // Neighbor states not written to neighborCache yet, map(ip, neighborState)
+    private final Map<String, Neighbor.NeighborState> pendingNeighborStates = new ConcurrentHashMap<>();
+
+    private final int maxPending;
+
+    private final ScheduledExecutorService flusher;
+
     public NeighborCache(CacheFactory cacheFactory) {
+        this(cacheFactory, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_PENDING);
+    }
+
+    @Autowired
+    public NeighborCache(CacheFactory cacheFactory,
+                         @Value("${dataplane.neighbor-cache.flush-interval:" + DEFAULT_FLUSH_INTERVAL + "}") long flushInterval,
+                         @Value("${dataplane.neighbor-cache.max-pending:" + DEFAULT_MAX_PENDING + "}") int maxPending) {
         neighborCache = cacheFactory.getCache(Neighbor.NeighborState.class);
+        this.maxPending = maxPending;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("neighbor-cache-flusher", true));
+        this.flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                LOG.warn("Flush neighbor states failed: " + e.getMessage());
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
     }
 
     @DurationStatistics
     public Neighbor.NeighborState getNeiborByIP(String ip) throws Exception {
-        return neighborCache.get(ip);
+        Neighbor.NeighborState neighborState = pendingNeighborStates.get(ip);
+        return neighborState != null ? neighborState : neighborCache.get(ip);
     }
 
     public void setNeighborState(Neighbor.NeighborState neighborState) throws Exception {
         //TODO support multiple FixIps
-        neighborCache.put(neighborState.toBuilder().getConfiguration().getFixedIps(0).getIpAddress(), neighborState);
+        pendingNeighborStates.put(neighborState.getConfiguration().getFixedIps(0).getIpAddress(), neighborState);
+        if (pendingNeighborStates.size() >= maxPending) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all buffered neighbor states with one putAll. A state replaced while
+     * the putAll is in flight stays buffered for the next flush.
+     */
+    @DurationStatistics
+    public synchronized void flush() throws Exception {
+        if (pendingNeighborStates.isEmpty()) {
+            return;
+        }
+
+        Map<String, Neighbor.NeighborState> neighborStates = new TreeMap<>(pendingNeighborStates);
+        neighborCache.putAll(neighborStates);
+        for (Map.Entry<String, Neighbor.NeighborState> entry : neighborStates.entrySet()) {
+            pendingNeighborStates.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        flusher.shutdown();
+        flush();
     }
 }
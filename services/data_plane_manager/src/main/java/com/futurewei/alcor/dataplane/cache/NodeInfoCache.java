@@ -21,32 +21,101 @@ import com.futurewei.alcor.common.db.Transaction;
 import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.common.utils.SpringContextUtil;
 import com.futurewei.alcor.dataplane.exception.NodeInfoNotFound;
+import com.futurewei.alcor.web.changelog.NodeInfoReplica;
 import com.futurewei.alcor.web.entity.node.NodeInfo;
 import com.futurewei.alcor.web.entity.node.NodesWebJson;
 import com.futurewei.alcor.web.restclient.NodeManagerRestClient;
 import org.apache.kafka.common.protocol.types.Field;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Repository
 @ComponentScan(value = "com.futurewei.alcor.common.db")
 public class NodeInfoCache {
+    private static final long DEFAULT_NODE_IP_INDEX_TTL = 60;
+
     private ICache<String, NodeInfo> nodeInfoCache;
 
     @Autowired
     private NodeManagerRestClient nodeManagerRestClient;
 
-    @Autowired
+    // Nodes replicated from the node change log, present when node.change-log.enabled
+    // is true. Once it is ready lookups are served from it, a miss only asks node manager,
+    // which covers nodes not replicated yet. The distributed cache and the index below are
+    // not read then, they are not told about deleted nodes and would bring them back.
+    @Autowired(required = false)
+    private NodeInfoReplica nodeInfoReplica;
+
+    // Local index of node infos by node ip. Nodes created, updated or deleted through this
+    // instance are indexed right away, the others are loaded on a miss and reloaded after ttl.
+    private final Map<String, IndexEntry> nodeIpIndex = new ConcurrentHashMap<>();
+
+    // Reverse of nodeIpIndex, map(nodeId, nodeIp), so a node is unindexed without scanning every ip
+    private final Map<String, String> nodeIpById = new ConcurrentHashMap<>();
+
+    private final long nodeIpIndexTtl;
+
+    private static class IndexEntry {
+        private final List<NodeInfo> nodeInfos;
+        private final long expireAt;
+
+        private IndexEntry(List<NodeInfo> nodeInfos, long expireAt) {
+            this.nodeInfos = nodeInfos;
+            this.expireAt = expireAt;
+        }
+    }
+
     public NodeInfoCache(CacheFactory cacheFactory) {
+        this(cacheFactory, DEFAULT_NODE_IP_INDEX_TTL);
+    }
+
+    @Autowired
+    public NodeInfoCache(CacheFactory cacheFactory,
+                         @Value("${dataplane.node-ip-index.ttl:" + DEFAULT_NODE_IP_INDEX_TTL + "}") long nodeIpIndexTtl) {
         nodeInfoCache = cacheFactory.getCache(NodeInfo.class, "dpm_nodeinfo_cache");
+        this.nodeIpIndexTtl = TimeUnit.SECONDS.toMillis(nodeIpIndexTtl);
+    }
+
+    private void indexNodeInfo(NodeInfo nodeInfo) {
+        unindexNodeInfo(nodeInfo.getId());
+        if (nodeInfo.getLocalIp() == null) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + nodeIpIndexTtl;
+        nodeIpIndex.compute(nodeInfo.getLocalIp(), (ip, entry) -> {
+            List<NodeInfo> nodeInfos = entry == null ? new ArrayList<>() : new ArrayList<>(entry.nodeInfos);
+            nodeInfos.add(new NodeInfo(nodeInfo));
+            return new IndexEntry(Collections.unmodifiableList(nodeInfos), expireAt);
+        });
+        nodeIpById.put(nodeInfo.getId(), nodeInfo.getLocalIp());
+    }
+
+    private void unindexNodeInfo(String nodeId) {
+        String nodeIp = nodeIpById.remove(nodeId);
+        if (nodeIp == null) {
+            return;
+        }
+        nodeIpIndex.computeIfPresent(nodeIp, (ip, entry) -> {
+            if (entry.nodeInfos.stream().noneMatch(nodeInfo -> nodeId.equals(nodeInfo.getId()))) {
+                return entry;
+            }
+            List<NodeInfo> nodeInfos = entry.nodeInfos.stream()
+                    .filter(nodeInfo -> !nodeId.equals(nodeInfo.getId()))
+                    .collect(Collectors.toList());
+            return nodeInfos.isEmpty() ? null : new IndexEntry(Collections.unmodifiableList(nodeInfos), entry.expireAt);
+        });
     }
 
 
@@ -54,6 +123,19 @@ public class NodeInfoCache {
     public NodeInfo getNodeInfo(String nodeId) throws Exception {
         NodeInfo nodeInfo = null;
 
+        if (nodeInfoReplica != null && nodeInfoReplica.isReady()) {
+            nodeInfo = nodeInfoReplica.getNodeInfo(nodeId);
+            if (nodeInfo != null) {
+                return nodeInfo;
+            }
+
+            try {
+                return nodeManagerRestClient.getNodeInfo(nodeId).getNodeInfo();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
         nodeInfo = nodeInfoCache.get(nodeId);
 
         if (nodeInfo == null) {
@@ -75,26 +157,64 @@ public class NodeInfoCache {
     @DurationStatistics
     public void addNodeInfo(NodeInfo nodeInfo) throws Exception {
         nodeInfoCache.put(nodeInfo.getId(), nodeInfo);
+        indexNodeInfo(nodeInfo);
     }
 
     @DurationStatistics
     public void addNodeInfoBulk(List<NodeInfo> nodeInfos) throws Exception {
         Map<String, NodeInfo> nodeInfoMap = nodeInfos.stream().collect(Collectors.toMap(NodeInfo::getId, Function.identity()));
         nodeInfoCache.putAll(nodeInfoMap);
+        nodeInfos.forEach(this::indexNodeInfo);
     }
 
     @DurationStatistics
     public void updateNodeInfo(NodeInfo nodeInfo) throws Exception {
         nodeInfoCache.put(nodeInfo.getId(), nodeInfo);
+        indexNodeInfo(nodeInfo);
     }
 
     @DurationStatistics
     public void deleteNodeInfo(String nodeId) throws Exception {
         nodeInfoCache.remove(nodeId);
+        unindexNodeInfo(nodeId);
     }
 
+    /**
+     * Get the node infos of a node ip from the node replica or the local index, the
+     * distributed cache and node manager are only queried on a miss or after the entry expired.
+     * With a ready replica only node manager is queried on a miss.
+     */
     @DurationStatistics
     public List<NodeInfo> getNodeInfoByNodeIp(String nodeIp) throws Exception {
+        if (nodeInfoReplica != null && nodeInfoReplica.isReady()) {
+            List<NodeInfo> nodeInfos = nodeInfoReplica.getNodeInfosByIp(nodeIp);
+            if (!nodeInfos.isEmpty()) {
+                return nodeInfos;
+            }
+
+            nodeInfos = nodeManagerRestClient.getNodeInfoByNodeIp(nodeIp);
+            if (nodeInfos == null || nodeInfos.isEmpty()) {
+                throw new NodeInfoNotFound("Could not get corresponding node with NodeIp: " + nodeIp + " from NodeManager");
+            }
+            return nodeInfos;
+        }
+
+        IndexEntry entry = nodeIpIndex.get(nodeIp);
+        if (entry != null && entry.expireAt > System.currentTimeMillis()) {
+            return entry.nodeInfos;
+        }
+
+        List<NodeInfo> result = loadNodeInfoByNodeIp(nodeIp);
+        // Not found is not indexed, the node may be created through another instance any time
+        if (!result.isEmpty()) {
+            nodeIpIndex.put(nodeIp, new IndexEntry(Collections.unmodifiableList(result),
+                    System.currentTimeMillis() + nodeIpIndexTtl));
+            result.forEach(nodeInfo -> nodeIpById.put(nodeInfo.getId(), nodeIp));
+        }
+        return result;
+    }
+
+    private List<NodeInfo> loadNodeInfoByNodeIp(String nodeIp) throws Exception {
             List<NodeInfo> result = new ArrayList<>();
 
             Map<String, Object[]> queryParams = new HashMap<>();
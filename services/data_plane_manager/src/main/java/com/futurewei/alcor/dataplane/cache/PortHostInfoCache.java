@@ -25,6 +25,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -63,8 +64,20 @@ public class PortHostInfoCache {
         return portHostInfoMap;
     }
 
-    public void updatePortHostInfo(Map<String, PortHostInfo> portHostInfoMap) throws CacheException {
+    /**
+     * Put the port host infos and return those which were not in the cache yet
+     */
+    public List<PortHostInfo> updatePortHostInfo(Map<String, PortHostInfo> portHostInfoMap) throws CacheException {
+        Map<String, PortHostInfo> existingPortHostInfos = portHostInfoCache.getAll(portHostInfoMap.keySet());
+        List<PortHostInfo> addedPortHostInfos = new ArrayList<>();
+        for (Map.Entry<String, PortHostInfo> entry : portHostInfoMap.entrySet()) {
+            if (existingPortHostInfos == null || existingPortHostInfos.get(entry.getKey()) == null) {
+                addedPortHostInfos.add(entry.getValue());
+            }
+        }
+
         portHostInfoCache.putAll(portHostInfoMap);
+        return addedPortHostInfos;
     }
 
     public synchronized Collection<PortHostInfo> getPortHostInfos(String subnetId) throws CacheException {
@@ -64,6 +64,16 @@ public class SubnetPortsCacheV2 {
         return subnetPortsCache.getAll(queryParams);
     }
 
+    @DurationStatistics
+    public Map<String, InternalSubnetPorts> getSubnetPortsByVpcId(String vpcId) throws CacheException {
+        Map<String, Object[]> queryParams = new HashMap<>();
+        Object[] values = new Object[1];
+        values[0] = vpcId;
+        queryParams.put("vpcId", values);
+        // Use sql index
+        return subnetPortsCache.getAll(queryParams);
+    }
+
     @DurationStatistics
     public Map<String, InternalSubnetPorts> getAllSubnetPorts() throws CacheException {
         return subnetPortsCache.getAll();
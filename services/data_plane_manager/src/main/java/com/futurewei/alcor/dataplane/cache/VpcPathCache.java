@@ -21,7 +21,7 @@ public class VpcPathCache {
     }
 
     @DurationStatistics
-    public boolean getCurrentPathByVpcId(String vpcId) throws Exception{
+    public Boolean getCurrentPathByVpcId(String vpcId) throws Exception{
         return vpcPathCache.get(vpcId);
     }
 
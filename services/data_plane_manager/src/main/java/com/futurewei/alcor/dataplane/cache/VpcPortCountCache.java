@@ -0,0 +1,111 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.cache;
+
+import com.futurewei.alcor.common.db.CacheException;
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.ICache;
+import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.web.entity.port.PortHostInfo;
+import com.futurewei.alcor.web.entity.subnet.InternalSubnetPorts;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Port counters of vpcs, so the size of a vpc is read without loading the ports of its
+ * subnets. The counters live in a cache shared by all DPM instances. A vpc is counted
+ * from the caches the first time it is asked for, after that its counter is incremented
+ * in the transaction which adds the ports, so a port is counted either by the first count
+ * or by the increment, never by both.
+ */
+@Repository
+public class VpcPortCountCache {
+    private final SubnetPortsCacheV2 subnetPortsCache;
+    private final PortHostInfoCache portHostInfoCache;
+
+    // Key: vpcId, value: number of ports in the vpc
+    private final ICache<String, Integer> vpcPortCounts;
+
+    @Autowired
+    public VpcPortCountCache(CacheFactory cacheFactory, SubnetPortsCacheV2 subnetPortsCache,
+                             PortHostInfoCache portHostInfoCache) {
+        this.subnetPortsCache = subnetPortsCache;
+        this.portHostInfoCache = portHostInfoCache;
+        this.vpcPortCounts = cacheFactory.getCache(Integer.class, "dpm_vpc_port_count_cache");
+    }
+
+    public int getVpcPortCount(String vpcId) throws Exception {
+        Integer portCount = vpcPortCounts.get(vpcId);
+        if (portCount == null) {
+            portCount = loadVpcPortCount(vpcId);
+        }
+
+        return portCount;
+    }
+
+    /**
+     * Count ports newly put into the port host info cache. Must be called in the
+     * transaction which puts them, before it commits.
+     * @param subnetPorts Subnets of the ports, key: subnetId
+     * @param addedPorts Ports which were not in the cache before
+     */
+    public void addPorts(Map<String, InternalSubnetPorts> subnetPorts, Collection<PortHostInfo> addedPorts) throws CacheException {
+        // Sorted, so concurrent transactions lock the counters in the same order
+        Map<String, Integer> addedPortCounts = new TreeMap<>();
+        for (PortHostInfo portHostInfo : addedPorts) {
+            InternalSubnetPorts subnet = subnetPorts.get(portHostInfo.getSubnetId());
+            if (subnet != null) {
+                addedPortCounts.merge(subnet.getVpcId(), 1, Integer::sum);
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : addedPortCounts.entrySet()) {
+            // A vpc not counted yet reads these ports from the caches when it is first asked for
+            Integer portCount = vpcPortCounts.get(entry.getKey());
+            if (portCount != null) {
+                vpcPortCounts.put(entry.getKey(), portCount + entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reading the counter first locks it, so a transaction adding ports of the vpc either
+     * commits before the ports are counted, or increments the counter stored here.
+     */
+    private int loadVpcPortCount(String vpcId) throws Exception {
+        try (Transaction tx = vpcPortCounts.getTransaction().start()) {
+            Integer portCount = vpcPortCounts.get(vpcId);
+            if (portCount == null) {
+                portCount = 0;
+                Map<String, InternalSubnetPorts> subnetPorts = subnetPortsCache.getSubnetPortsByVpcId(vpcId);
+                if (subnetPorts != null) {
+                    for (String subnetId : subnetPorts.keySet()) {
+                        portCount += portHostInfoCache.getPortHostInfos(subnetId).size();
+                    }
+                }
+
+                vpcPortCounts.put(vpcId, portCount);
+            }
+
+            tx.commit();
+            return portCount;
+        }
+    }
+}
@@ -73,6 +73,9 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
     @Value("${microservices.connectTimeout:300}")
     private String connectTimeout;
 
+    // goal states larger than this amount of bytes are streamed to NCM in chunks
+    private int goalStateChunkBytes;
+
     private ConcurrentHashMap<String, ArrayList<GrpcChannelStub>> hostIpGrpcChannelStubMap;
 
     @Override
@@ -85,9 +88,11 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
         }
         if (arionGatwayEnabled) {
             doSendGoalStateToArionMaster(goalStateBuilder);
+            goalStateBuilder.clearNeighborStates();
         }
-        System.out.println(goalStateBuilder.build());
-        doSendGoalState(goalStateBuilder.build(), finishLatch, results);
+
+        Goalstate.GoalStateV2 goalState = goalStateBuilder.setEndOfBatch(true).build();
+        doSendGoalState(GoalStateSplitter.split(goalState, goalStateChunkBytes), finishLatch, results);
 
         if (!finishLatch.await(Integer.parseInt(connectTimeout), TimeUnit.SECONDS)) {
             LOG.warn("Send goal states can not finish within %s seconds", connectTimeout);
@@ -126,6 +131,7 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
         LOG.info("Done printing out all monitorHosts");
         this.numberOfGrpcChannelPerHost = globalConfig.numberOfGrpcChannelPerHost;
         this.numberOfWarmupsPerChannel = globalConfig.numberOfWarmupsPerChannel;
+        this.goalStateChunkBytes = globalConfig.goalStateChunkBytes;
         this.hostAgentPort = 9016;
 
         this.executor = new ThreadPoolExecutor(100,
@@ -272,7 +278,7 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
         return null;
     }
 
-    private String doSendGoalState(Goalstate.GoalStateV2 goalStateV2, CountDownLatch finishLatch, List<String> replies) {
+    private String doSendGoalState(List<Goalstate.GoalStateV2> goalStateChunks, CountDownLatch finishLatch, List<String> replies) {
         String hostIp = netwconfigmanagerGrpcServiceUrl;
         long start = System.currentTimeMillis();
         GrpcChannelStub channelStub = getOrCreateGrpcChannel(hostIp, hostAgentPort);
@@ -309,12 +315,11 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
             }
         };
         StreamObserver<Goalstate.GoalStateV2> requestObserver = asyncStub.pushGoalStatesStream(responseObserver);
-        if (arionGatwayEnabled) {
-            goalStateV2 = goalStateV2.toBuilder().clearNeighborStates().build();
-        }
-
         try {
-            requestObserver.onNext(goalStateV2);
+            // the last chunk carries end_of_batch, NCM applies all chunks of the batch together
+            for (Goalstate.GoalStateV2 goalStateChunk : goalStateChunks) {
+                requestObserver.onNext(goalStateChunk);
+            }
         } catch (RuntimeException e) {
             // Cancel RPC
             LOG.warn("[doSendGoalState] Sending GS, but error happened | " + e.getMessage());
@@ -322,7 +327,7 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
             throw e;
         }
         // Mark the end of requests
-        LOG.info("Sending GS to Host " + hostIp + " is completed");
+        LOG.info("Sending GS to Host " + hostIp + " in " + goalStateChunks.size() + " chunks is completed");
 
         // comment out onCompleted so that the same channel/stub and keep sending next time.
         requestObserver.onCompleted();
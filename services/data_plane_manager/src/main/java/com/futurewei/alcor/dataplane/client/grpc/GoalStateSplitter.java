@@ -0,0 +1,195 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.client.grpc;
+
+import com.futurewei.alcor.schema.*;
+import com.google.protobuf.Message;
+
+import java.util.*;
+
+/**
+ * Splits a goal state into chunks of at most maxChunkBytes serialized bytes, walking
+ * the resources host by host and type by type so related states travel together.
+ * Every resource state is carried by exactly one chunk, the receiver rebuilds the
+ * goal state by merging all chunks up to the one marked as end of batch.
+ * A single state larger than the budget gets a chunk of its own.
+ */
+final class GoalStateSplitter {
+    // map entry tags, lengths and keys on top of the serialized states, rounded up
+    private static final int ENTRY_OVERHEAD_BYTES = 16;
+    // format_version and end_of_batch of every chunk
+    private static final int CHUNK_HEADER_BYTES = 8;
+
+    private final Goalstate.GoalStateV2 goalState;
+    private final int maxChunkBytes;
+    private final List<Goalstate.GoalStateV2> chunks = new ArrayList<>();
+    private final Set<String> addedStates = new HashSet<>();
+    private Goalstate.GoalStateV2.Builder chunkBuilder;
+    private Map<String, Goalstate.HostResources.Builder> chunkHostResources;
+    private int chunkBytes;
+
+    private GoalStateSplitter(Goalstate.GoalStateV2 goalState, int maxChunkBytes) {
+        this.goalState = goalState;
+        this.maxChunkBytes = maxChunkBytes;
+        newChunk();
+    }
+
+    /**
+     * Split goalState, which must have end_of_batch set, into chunks. A goal state within
+     * the budget is returned as it is, without being copied.
+     */
+    static List<Goalstate.GoalStateV2> split(Goalstate.GoalStateV2 goalState, int maxChunkBytes) {
+        if (maxChunkBytes <= 0 || goalState.getSerializedSize() <= maxChunkBytes) {
+            return Collections.singletonList(goalState);
+        }
+
+        return new GoalStateSplitter(goalState, maxChunkBytes).split();
+    }
+
+    private List<Goalstate.GoalStateV2> split() {
+        for (Map.Entry<String, Goalstate.HostResources> entry : goalState.getHostResourcesMap().entrySet()) {
+            List<Goalstate.ResourceIdType> resources = new ArrayList<>(entry.getValue().getResourcesList());
+            resources.sort(Comparator.comparingInt(Goalstate.ResourceIdType::getTypeValue));
+            for (Goalstate.ResourceIdType resource : resources) {
+                addHostResource(entry.getKey(), resource);
+            }
+        }
+
+        // States no host refers to, e.g. neighbor states
+        addStates(Common.ResourceType.VPC, goalState.getVpcStatesMap());
+        addStates(Common.ResourceType.SUBNET, goalState.getSubnetStatesMap());
+        addStates(Common.ResourceType.PORT, goalState.getPortStatesMap());
+        addStates(Common.ResourceType.NEIGHBOR, goalState.getNeighborStatesMap());
+        addStates(Common.ResourceType.SECURITYGROUP, goalState.getSecurityGroupStatesMap());
+        addStates(Common.ResourceType.DHCP, goalState.getDhcpStatesMap());
+        addStates(Common.ResourceType.ROUTER, goalState.getRouterStatesMap());
+        addStates(Common.ResourceType.GATEWAY, goalState.getGatewayStatesMap());
+
+        emitChunk(true);
+        return chunks;
+    }
+
+    private void addHostResource(String hostIp, Goalstate.ResourceIdType resource) {
+        String stateKey = resource.getType() + "/" + resource.getId();
+        Message state = addedStates.contains(stateKey) ? null : getState(resource.getType(), resource.getId());
+
+        int bytes = resource.getSerializedSize() + ENTRY_OVERHEAD_BYTES;
+        if (state != null) {
+            bytes += resource.getId().length() + state.getSerializedSize() + ENTRY_OVERHEAD_BYTES;
+        }
+        if (!chunkHostResources.containsKey(hostIp)) {
+            bytes += hostIp.length() + ENTRY_OVERHEAD_BYTES;
+        }
+
+        reserve(bytes);
+        chunkHostResources.computeIfAbsent(hostIp, k -> Goalstate.HostResources.newBuilder())
+                .addResources(resource);
+        if (state != null) {
+            putState(resource.getType(), resource.getId(), state);
+            addedStates.add(stateKey);
+        }
+    }
+
+    private void addStates(Common.ResourceType type, Map<String, ? extends Message> states) {
+        for (Map.Entry<String, ? extends Message> entry : states.entrySet()) {
+            if (!addedStates.add(type + "/" + entry.getKey())) {
+                continue;
+            }
+
+            reserve(entry.getKey().length() + entry.getValue().getSerializedSize() + ENTRY_OVERHEAD_BYTES);
+            putState(type, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Message getState(Common.ResourceType type, String id) {
+        switch (type) {
+            case VPC:
+                return goalState.getVpcStatesMap().get(id);
+            case SUBNET:
+                return goalState.getSubnetStatesMap().get(id);
+            case PORT:
+                return goalState.getPortStatesMap().get(id);
+            case NEIGHBOR:
+                return goalState.getNeighborStatesMap().get(id);
+            case SECURITYGROUP:
+                return goalState.getSecurityGroupStatesMap().get(id);
+            case DHCP:
+                return goalState.getDhcpStatesMap().get(id);
+            case ROUTER:
+                return goalState.getRouterStatesMap().get(id);
+            case GATEWAY:
+                return goalState.getGatewayStatesMap().get(id);
+            default:
+                return null;
+        }
+    }
+
+    private void putState(Common.ResourceType type, String id, Message state) {
+        switch (type) {
+            case VPC:
+                chunkBuilder.putVpcStates(id, (Vpc.VpcState) state);
+                break;
+            case SUBNET:
+                chunkBuilder.putSubnetStates(id, (Subnet.SubnetState) state);
+                break;
+            case PORT:
+                chunkBuilder.putPortStates(id, (Port.PortState) state);
+                break;
+            case NEIGHBOR:
+                chunkBuilder.putNeighborStates(id, (Neighbor.NeighborState) state);
+                break;
+            case SECURITYGROUP:
+                chunkBuilder.putSecurityGroupStates(id, (SecurityGroup.SecurityGroupState) state);
+                break;
+            case DHCP:
+                chunkBuilder.putDhcpStates(id, (DHCP.DHCPState) state);
+                break;
+            case ROUTER:
+                chunkBuilder.putRouterStates(id, (Router.RouterState) state);
+                break;
+            case GATEWAY:
+                chunkBuilder.putGatewayStates(id, (Gateway.GatewayState) state);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Emit the current chunk first if bytes more would take it over the budget
+     */
+    private void reserve(int bytes) {
+        if (chunkBytes > 0 && CHUNK_HEADER_BYTES + chunkBytes + bytes > maxChunkBytes) {
+            emitChunk(false);
+        }
+
+        chunkBytes += bytes;
+    }
+
+    private void emitChunk(boolean endOfBatch) {
+        chunkHostResources.forEach((hostIp, resources) -> chunkBuilder.putHostResources(hostIp, resources.build()));
+        chunks.add(chunkBuilder.setFormatVersion(goalState.getFormatVersion())
+                .setEndOfBatch(endOfBatch)
+                .build());
+        newChunk();
+    }
+
+    private void newChunk() {
+        chunkBuilder = Goalstate.GoalStateV2.newBuilder();
+        chunkHostResources = new LinkedHashMap<>();
+        chunkBytes = 0;
+    }
+}
@@ -1,37 +1,133 @@
 /*
- *
- * MIT License
- * Copyright(c) 2020 Futurewei Cloud
- *
- *     Permission is hereby granted,
- *     free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
- *     including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
- *     to whom the Software is furnished to do so, subject to the following conditions:
- *
- *     The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
- *
- *     THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
- *     FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
- *     WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
- * /
- */
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
 
 package com.futurewei.alcor.dataplane.client.kafka;
 
 import com.futurewei.alcor.dataplane.client.DataPlaneClient;
 import com.futurewei.alcor.dataplane.entity.MulticastGoalStateV2;
 import com.futurewei.alcor.dataplane.entity.UnicastGoalStateV2;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Future;
 
+/**
+ * Unicast goal states go to the unicast topic keyed by host ip, so all goal
+ * states of a host land in one partition in order. A multicast goal state is
+ * written once to the multicast topic, with the hosts it is meant for in the
+ * HOST_IPS_HEADER header. Values are the GoalStateV2 protobuf bytes.
+ */
+@Service("mqDataPlaneClient")
+@ConditionalOnProperty(prefix = "mq", name = "type", havingValue = "kafka")
 public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2, MulticastGoalStateV2> {
+    private static final Logger LOG = LoggerFactory.getLogger(DataPlaneClientImplV2.class);
+
+    public static final String HOST_IPS_HEADER = "host-ips";
+
+    private final Producer<String, byte[]> producer;
+    private final String unicastTopic;
+    private final String multicastTopic;
+
+    @Autowired
+    public DataPlaneClientImplV2(Producer<String, byte[]> kafkaGoalStateProducer, KafkaConfiguration configuration) {
+        this(kafkaGoalStateProducer, configuration.getUnicastTopic(), configuration.getMulticastTopic());
+    }
+
+    public DataPlaneClientImplV2(Producer<String, byte[]> producer, String unicastTopic, String multicastTopic) {
+        this.producer = producer;
+        this.unicastTopic = unicastTopic;
+        this.multicastTopic = multicastTopic;
+    }
+
+    private static class PendingSend {
+        private final Collection<String> hostIps;
+        private final Future<RecordMetadata> future;
+
+        private PendingSend(Collection<String> hostIps, Future<RecordMetadata> future) {
+            this.hostIps = hostIps;
+            this.future = future;
+        }
+    }
+
+    private void createGoalStates(List<UnicastGoalStateV2> unicastGoalStates, List<PendingSend> pendingSends) {
+        for (UnicastGoalStateV2 unicastGoalState: unicastGoalStates) {
+            String hostIp = unicastGoalState.getHostIp();
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(
+                    unicastTopic, hostIp, unicastGoalState.getGoalState().toByteArray());
+
+            pendingSends.add(new PendingSend(Collections.singletonList(hostIp), producer.send(record)));
+        }
+    }
+
+    private void createGoalState(MulticastGoalStateV2 multicastGoalState, List<PendingSend> pendingSends) {
+        if (multicastGoalState == null || multicastGoalState.getGoalState() == null ||
+                multicastGoalState.getHostIps().isEmpty()) {
+            return;
+        }
+
+        List<String> hostIps = new ArrayList<>(multicastGoalState.getHostIps());
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(
+                multicastTopic, null, multicastGoalState.getGoalState().toByteArray());
+        record.headers().add(HOST_IPS_HEADER, String.join(",", hostIps).getBytes(StandardCharsets.UTF_8));
+
+        pendingSends.add(new PendingSend(hostIps, producer.send(record)));
+    }
+
+    private List<String> waitForSends(List<PendingSend> pendingSends) {
+        List<String> failedHosts = new ArrayList<>();
+
+        for (PendingSend pendingSend: pendingSends) {
+            try {
+                RecordMetadata metadata = pendingSend.future.get();
+                LOG.debug("Send goalState to topic:{} partition:{} success, hosts: {}",
+                        metadata.topic(), metadata.partition(), pendingSend.hostIps);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failedHosts.addAll(pendingSend.hostIps);
+            } catch (Exception e) {
+                LOG.error("Send goalState to hosts:{} failed: ", pendingSend.hostIps, e);
+                failedHosts.addAll(pendingSend.hostIps);
+            }
+        }
+
+        return failedHosts;
+    }
+
     @Override
     public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates) throws Exception {
-        return null;
+        List<PendingSend> pendingSends = new ArrayList<>();
+        createGoalStates(unicastGoalStates, pendingSends);
+
+        return waitForSends(pendingSends);
     }
 
     @Override
     public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates, MulticastGoalStateV2 multicastGoalState) throws Exception {
-        return null;
+        List<PendingSend> pendingSends = new ArrayList<>();
+        createGoalStates(unicastGoalStates, pendingSends);
+        createGoalState(multicastGoalState, pendingSends);
+
+        return waitForSends(pendingSends);
     }
 }
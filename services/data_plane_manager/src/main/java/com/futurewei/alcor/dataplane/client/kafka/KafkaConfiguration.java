@@ -0,0 +1,80 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package com.futurewei.alcor.dataplane.client.kafka;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(prefix = "mq", name = "type", havingValue = "kafka")
+public class KafkaConfiguration {
+    @Value("${kafka.bootstrap.servers:localhost:9092}")
+    private String bootstrapServers;
+
+    @Value("${kafka.producer.compression.type:lz4}")
+    private String compressionType;
+
+    @Value("${kafka.producer.linger.ms:5}")
+    private int lingerMs;
+
+    @Value("${kafka.producer.batch.size:65536}")
+    private int batchSize;
+
+    @Value("${kafka.unicast.topic:alcor-goal-state}")
+    private String unicastTopic;
+
+    @Value("${kafka.multicast.topic:alcor-goal-state-multicast}")
+    private String multicastTopic;
+
+    public static Map<String, Object> producerConfigs(String bootstrapServers, String compressionType,
+                                                      int lingerMs, int batchSize) {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configs.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configs.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        // Retries must not reorder or duplicate the goal states of a host
+        configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configs.put(ProducerConfig.ACKS_CONFIG, "all");
+        configs.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        configs.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        configs.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        return configs;
+    }
+
+    @Bean(destroyMethod = "close")
+    public Producer<String, byte[]> kafkaGoalStateProducer() {
+        return new KafkaProducer<>(producerConfigs(bootstrapServers, compressionType, lingerMs, batchSize));
+    }
+
+    public String getUnicastTopic() {
+        return unicastTopic;
+    }
+
+    public String getMulticastTopic() {
+        return multicastTopic;
+    }
+}
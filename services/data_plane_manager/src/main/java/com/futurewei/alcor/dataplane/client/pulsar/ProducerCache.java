@@ -0,0 +1,156 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package com.futurewei.alcor.dataplane.client.pulsar;
+
+import org.apache.pulsar.client.api.BatcherBuilder;
+import org.apache.pulsar.client.api.HashingScheme;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batching producers of one schema, created on first use of a topic and
+ * closed once they have been idle for idleTimeout with no send in flight.
+ * Used by both the vpc mode and the group node mode pulsar clients.
+ */
+public class ProducerCache<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(ProducerCache.class);
+
+    private static class PooledProducer<T> {
+        private final CompletableFuture<Producer<T>> producer;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long lastUsed = System.nanoTime();
+
+        private PooledProducer(CompletableFuture<Producer<T>> producer) {
+            this.producer = producer;
+        }
+    }
+
+    private final PulsarClient pulsarClient;
+    private final Schema<T> schema;
+    private final BatcherBuilder batcherBuilder;
+    private final HashingScheme hashingScheme;
+    private final long maxPublishDelayMicros;
+    private final long idleTimeoutNanos;
+    private final Map<String, PooledProducer<T>> producers = new ConcurrentHashMap<>();
+    private volatile long lastEviction = System.nanoTime();
+
+    public ProducerCache(PulsarClient pulsarClient, Schema<T> schema,
+                         long maxPublishDelayMicros, long idleTimeout, TimeUnit unit) {
+        this(pulsarClient, schema, BatcherBuilder.DEFAULT, HashingScheme.JavaStringHash,
+                maxPublishDelayMicros, idleTimeout, unit);
+    }
+
+    /**
+     * Producers batching and routing by message key, for sends with a key
+     */
+    public ProducerCache(PulsarClient pulsarClient, Schema<T> schema,
+                         BatcherBuilder batcherBuilder, HashingScheme hashingScheme,
+                         long maxPublishDelayMicros, long idleTimeout, TimeUnit unit) {
+        this.pulsarClient = pulsarClient;
+        this.schema = schema;
+        this.batcherBuilder = batcherBuilder;
+        this.hashingScheme = hashingScheme;
+        this.maxPublishDelayMicros = maxPublishDelayMicros;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    }
+
+    private PooledProducer<T> createProducer(String topic) {
+        return new PooledProducer<>(pulsarClient.newProducer(schema)
+                .topic(topic)
+                .enableBatching(true)
+                .batcherBuilder(batcherBuilder)
+                .hashingScheme(hashingScheme)
+                .batchingMaxPublishDelay(maxPublishDelayMicros, TimeUnit.MICROSECONDS)
+                .blockIfQueueFull(true)
+                .createAsync());
+    }
+
+    public CompletableFuture<MessageId> sendAsync(String topic, T value) {
+        return sendAsync(topic, null, value);
+    }
+
+    /**
+     * Send value to topic with a message key, null for none
+     */
+    public CompletableFuture<MessageId> sendAsync(String topic, String key, T value) {
+        evictIdle();
+
+        // The producer is marked in use within compute, which eviction of the topic is
+        // serialized with, so it can not be closed under this send
+        PooledProducer<T> pooled = producers.compute(topic, (pooledTopic, current) -> {
+            PooledProducer<T> result = current != null ? current : createProducer(pooledTopic);
+            result.inFlight.incrementAndGet();
+            result.lastUsed = System.nanoTime();
+            return result;
+        });
+
+        return pooled.producer
+                .whenComplete((producer, e) -> {
+                    if (e != null) {
+                        // Let the next send to this topic create the producer again
+                        producers.remove(topic, pooled);
+                    }
+                })
+                .thenCompose(producer -> key == null ? producer.sendAsync(value)
+                        : producer.newMessage().key(key).value(value).sendAsync())
+                .whenComplete((messageId, e) -> {
+                    pooled.lastUsed = System.nanoTime();
+                    pooled.inFlight.decrementAndGet();
+                });
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        if (now - lastEviction < idleTimeoutNanos / 2) {
+            return;
+        }
+        lastEviction = now;
+
+        for (String topic : producers.keySet()) {
+            List<PooledProducer<T>> evicted = new ArrayList<>(1);
+            producers.computeIfPresent(topic, (key, pooled) -> {
+                if (pooled.inFlight.get() > 0 || now - pooled.lastUsed <= idleTimeoutNanos) {
+                    return pooled;
+                }
+                evicted.add(pooled);
+                return null;
+            });
+
+            for (PooledProducer<T> pooled : evicted) {
+                LOG.info("Close idle producer of topic:{}", topic);
+                pooled.producer.thenCompose(Producer::closeAsync);
+            }
+        }
+    }
+
+    public void close() {
+        producers.forEach((topic, pooled) -> pooled.producer.thenCompose(Producer::closeAsync));
+        producers.clear();
+    }
+}
@@ -17,25 +17,30 @@ Copyright(c) 2020 Futurewei Cloud
 package com.futurewei.alcor.dataplane.client.pulsar.group_node_mode;
 import com.futurewei.alcor.dataplane.cache.NodeTopicCache;
 import com.futurewei.alcor.dataplane.client.DataPlaneClient;
+import com.futurewei.alcor.dataplane.client.pulsar.ProducerCache;
 import com.futurewei.alcor.dataplane.entity.*;
 import com.futurewei.alcor.dataplane.exception.GroupTopicNotFound;
 import com.futurewei.alcor.dataplane.exception.MulticastTopicNotFound;
 import com.futurewei.alcor.web.entity.dataplane.MulticastGoalStateByte;
 import com.futurewei.alcor.web.entity.dataplane.UnicastGoalStateByte;
-import org.apache.pulsar.client.api.Producer;
+import com.futurewei.alcor.web.entity.topic.NodeTopicInfo;
+import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.impl.schema.JSONSchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2, MulticastGoalStateV2> {
     private static final Logger LOG = LoggerFactory.getLogger(DataPlaneClientImplV2.class);
@@ -47,116 +52,173 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
     @Autowired
     NodeTopicCache nodeTopicCache;
 
-    private Map<String, List<String>> getMulticastTopics(List<String> hostIps) throws Exception {
-        Map<String, List<String>> multicastTopics = new HashMap<>();
+    @Value("${pulsar.producer.batching.max.publish.delay:1000}")
+    private long maxPublishDelayMicros;
+
+    @Value("${pulsar.producer.idle.timeout:300}")
+    private long producerIdleTimeout;
+
+    /**
+     * Goal states sent straight to the group topic of a host, which the host
+     * consumes as protobuf bytes.
+     */
+    private ProducerCache<byte[]> goalStateProducers;
+
+    /**
+     * Goal states sent through the unicast and multicast functions, which need
+     * the wrapper to know the next topics.
+     */
+    private ProducerCache<UnicastGoalStateByte> unicastProducers;
+    private ProducerCache<MulticastGoalStateByte> multicastProducers;
+
+    private static class PendingSend {
+        private final String topic;
+        private final Collection<String> hostIps;
+        private final CompletableFuture<MessageId> future;
+
+        private PendingSend(String topic, Collection<String> hostIps, CompletableFuture<MessageId> future) {
+            this.topic = topic;
+            this.hostIps = hostIps;
+            this.future = future;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        goalStateProducers = new ProducerCache<>(pulsarClient, Schema.BYTES,
+                maxPublishDelayMicros, producerIdleTimeout, TimeUnit.SECONDS);
+        unicastProducers = new ProducerCache<>(pulsarClient, JSONSchema.of(UnicastGoalStateByte.class),
+                maxPublishDelayMicros, producerIdleTimeout, TimeUnit.SECONDS);
+        multicastProducers = new ProducerCache<>(pulsarClient, JSONSchema.of(MulticastGoalStateByte.class),
+                maxPublishDelayMicros, producerIdleTimeout, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        goalStateProducers.close();
+        unicastProducers.close();
+        multicastProducers.close();
+    }
+
+    private NodeTopicInfo getNodeTopicInfo(String hostIp, Map<String, NodeTopicInfo> nodeTopicInfos) throws Exception {
+        NodeTopicInfo nodeTopicInfo = nodeTopicInfos.get(hostIp);
+        if (nodeTopicInfo == null) {
+            nodeTopicInfo = nodeTopicCache.getNodeTopicInfoByNodeIp(hostIp);
+            nodeTopicInfos.put(hostIp, nodeTopicInfo);
+        }
+
+        if (StringUtils.isEmpty(nodeTopicInfo.getGroupTopic())) {
+            LOG.error("Can not find group topic by host ip:{}", hostIp);
+            throw new GroupTopicNotFound();
+        }
+
+        return nodeTopicInfo;
+    }
+
+    /**
+     * Group the hosts by multicast topic, mapping each host to its group topic.
+     */
+    private Map<String, Map<String, String>> getMulticastTopics(Collection<String> hostIps,
+                                                               Map<String, NodeTopicInfo> nodeTopicInfos) throws Exception {
+        Map<String, Map<String, String>> multicastTopics = new HashMap<>();
         for (String hostIp : hostIps) {
-            String groupTopic = nodeTopicCache.getNodeTopicInfoByNodeIp(hostIp).getGroupTopic();
-            if (StringUtils.isEmpty(groupTopic)) {
-                LOG.error("Can not find group topic by host ip:{}", hostIp);
-                throw new GroupTopicNotFound();
-            }
+            NodeTopicInfo nodeTopicInfo = getNodeTopicInfo(hostIp, nodeTopicInfos);
 
-            String multicastTopic = nodeTopicCache.getNodeTopicInfoByNodeIp(hostIp).getMulticastTopic();
+            String multicastTopic = nodeTopicInfo.getMulticastTopic();
             if (StringUtils.isEmpty(multicastTopic)) {
                 LOG.error("Can not find multicast topic by host ip:{}", hostIp);
                 throw new MulticastTopicNotFound();
             }
 
-            if (!multicastTopics.containsKey(multicastTopic)) {
-                multicastTopics.put(multicastTopic, new ArrayList<>());
-            }
-
-            multicastTopics.get(multicastTopic).add(groupTopic);
+            multicastTopics.computeIfAbsent(multicastTopic, k -> new LinkedHashMap<>())
+                    .put(hostIp, nodeTopicInfo.getGroupTopic());
         }
 
         return multicastTopics;
     }
 
-    private List<String> createGoalState(MulticastGoalStateV2 multicastGoalState) throws Exception {
-        List<String> failedHosts = new ArrayList<>();
+    private void createGoalState(MulticastGoalStateV2 multicastGoalState, Map<String, NodeTopicInfo> nodeTopicInfos,
+                                 List<PendingSend> pendingSends) throws Exception {
+        if (multicastGoalState == null || multicastGoalState.getHostIps() == null) {
+            return;
+        }
 
-        Map<String, List<String>> multicastTopics = getMulticastTopics(new ArrayList<>(multicastGoalState.getHostIps()));
+        Map<String, Map<String, String>> multicastTopics =
+                getMulticastTopics(multicastGoalState.getHostIps(), nodeTopicInfos);
 
-        for (Map.Entry<String, List<String>> entry: multicastTopics.entrySet()) {
+        for (Map.Entry<String, Map<String, String>> entry: multicastTopics.entrySet()) {
             String multicastTopic = entry.getKey();
-            List<String> groupTopics = entry.getValue();
+            List<String> groupTopics = new ArrayList<>(entry.getValue().values());
 
             FunctionMulticastGoalStateV2 functionMulticastGoalStateV2 = new FunctionMulticastGoalStateV2(
                     multicastGoalState.getGoalState(),
                     groupTopics
             );
 
-            try {
-                Producer<MulticastGoalStateByte> producer = pulsarClient
-                        .newProducer(JSONSchema.of(MulticastGoalStateByte.class))
-                        .topic(multicastTopic)
-                        .enableBatching(false)
-                        .create();
-
-                producer.send(functionMulticastGoalStateV2.getMulticastGoalStateByte());
-            } catch (Exception e) {
-                LOG.error("Send multicastGoalState to topic:{} failed: ", multicastTopic, e);
-                failedHosts.addAll(multicastGoalState.getHostIps());
-                continue;
-            }
-
-            LOG.info("Send multicastGoalState to topic:{} success, " +
-                            "groupTopics: {}, unicastGoalStates: {}",
-                    multicastTopic, groupTopics, multicastGoalState);
+            pendingSends.add(new PendingSend(multicastTopic, entry.getValue().keySet(),
+                    multicastProducers.sendAsync(multicastTopic,
+                            functionMulticastGoalStateV2.getMulticastGoalStateByte())));
         }
-
-        return failedHosts;
     }
 
-    @Override
-    public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates) throws Exception {
-        List<String> failedHosts = new ArrayList<>();
-
+    private void createGoalStates(List<UnicastGoalStateV2> unicastGoalStates, Map<String, NodeTopicInfo> nodeTopicInfos,
+                                  List<PendingSend> pendingSends) throws Exception {
         for (UnicastGoalStateV2 unicastGoalState: unicastGoalStates) {
-            String nextTopic = nodeTopicCache.getNodeTopicInfoByNodeIp(unicastGoalState.getHostIp()).getGroupTopic();
-            if (StringUtils.isEmpty(nextTopic)) {
-                LOG.error("Can not find next topic by host ip:{}", unicastGoalState.getHostIp());
-                throw new GroupTopicNotFound();
-            }
-
-            String topic = nextTopic;
-            String unicastTopic = nodeTopicCache.getNodeTopicInfoByNodeIp(unicastGoalState.getHostIp()).getUnicastTopic();
-
-            FunctionUnicastGoalStateV2 functionUnicastGoalStateV2 = new FunctionUnicastGoalStateV2(unicastGoalState.getGoalState());
+            String hostIp = unicastGoalState.getHostIp();
+            NodeTopicInfo nodeTopicInfo = getNodeTopicInfo(hostIp, nodeTopicInfos);
+            String nextTopic = nodeTopicInfo.getGroupTopic();
+            String unicastTopic = nodeTopicInfo.getUnicastTopic();
 
+            CompletableFuture<MessageId> future;
+            String topic;
             if (!StringUtils.isEmpty(unicastTopic)) {
-                functionUnicastGoalStateV2.setTopic(nextTopic);
+                FunctionUnicastGoalStateV2 functionUnicastGoalStateV2 =
+                        new FunctionUnicastGoalStateV2(unicastGoalState.getGoalState(), nextTopic);
                 topic = unicastTopic;
+                future = unicastProducers.sendAsync(topic, functionUnicastGoalStateV2.getUnicastGoalStateByte());
+            } else {
+                topic = nextTopic;
+                future = goalStateProducers.sendAsync(topic, unicastGoalState.getGoalState().toByteArray());
             }
 
-            try {
-                Producer<UnicastGoalStateByte> producer = pulsarClient
-                        .newProducer(JSONSchema.of(UnicastGoalStateByte.class))
-                        .topic(topic)
-                        .enableBatching(false)
-                        .create();
+            pendingSends.add(new PendingSend(topic, Collections.singletonList(hostIp), future));
+        }
+    }
+
+    private List<String> waitForSends(List<PendingSend> pendingSends) {
+        List<String> failedHosts = new ArrayList<>();
 
-                producer.send(functionUnicastGoalStateV2.getUnicastGoalStateByte());
+        for (PendingSend pendingSend: pendingSends) {
+            try {
+                pendingSend.future.join();
             } catch (Exception e) {
-                LOG.error("Send unicastGoalStates to topic:{} failed: ", topic, e);
-                failedHosts.add(unicastGoalState.getHostIp());
+                LOG.error("Send goalState to topic:{} failed: ", pendingSend.topic, e);
+                failedHosts.addAll(pendingSend.hostIps);
                 continue;
             }
 
-            LOG.info("Send unicastGoalStates to topic:{} success, " +
-                    "unicastGoalStates: {}", nextTopic, unicastGoalState);
+            LOG.debug("Send goalState to topic:{} success, hosts: {}", pendingSend.topic, pendingSend.hostIps);
         }
 
         return failedHosts;
     }
 
+    @Override
+    public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates) throws Exception {
+        List<PendingSend> pendingSends = new ArrayList<>();
+        createGoalStates(unicastGoalStates, new HashMap<>(), pendingSends);
+
+        return waitForSends(pendingSends);
+    }
+
     @Override
     public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates, MulticastGoalStateV2 multicastGoalState) throws Exception {
-        List<String> failedHosts = new ArrayList<>();
+        Map<String, NodeTopicInfo> nodeTopicInfos = new HashMap<>();
+        List<PendingSend> pendingSends = new ArrayList<>();
 
-        failedHosts.addAll(sendGoalStates(unicastGoalStates));
-        failedHosts.addAll(createGoalState(multicastGoalState));
+        createGoalStates(unicastGoalStates, nodeTopicInfos, pendingSends);
+        createGoalState(multicastGoalState, nodeTopicInfos, pendingSends);
 
-        return failedHosts;
+        return waitForSends(pendingSends);
     }
 }
@@ -19,31 +19,38 @@
 package com.futurewei.alcor.dataplane.client.pulsar.vpc_mode;
 
 import com.futurewei.alcor.dataplane.client.DataPlaneClient;
+import com.futurewei.alcor.dataplane.client.pulsar.ProducerCache;
 import com.futurewei.alcor.dataplane.entity.MulticastGoalStateV2;
 import com.futurewei.alcor.dataplane.entity.UnicastGoalStateV2;
 import com.futurewei.alcor.schema.Subscribeinfoprovisioner.NodeSubscribeInfo;
-import com.futurewei.alcor.web.entity.dataplane.MulticastGoalStateByte;
-import com.futurewei.alcor.web.entity.topic.VpcTopicInfo;
 import org.apache.pulsar.client.api.BatcherBuilder;
 import org.apache.pulsar.client.api.HashingScheme;
-import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.PulsarClient;
-import org.apache.pulsar.client.impl.schema.JSONSchema;
+import org.apache.pulsar.client.api.Schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-@Service("pulsarDataPlaneClient")
-@ConditionalOnProperty(prefix = "protobuf.goal-state-message", name = "version", havingValue = "102")
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The message queue client of goal state version 102 when mq.type is pulsar. It shares
+ * the mqDataPlaneClient bean name with the kafka client, only one of them is registered.
+ * Producers are pooled per topic and the goal states of one call are sent together,
+ * then waited for.
+ */
+@Service("mqDataPlaneClient")
+@ConditionalOnExpression("'${protobuf.goal-state-message.version:}' == '102' and '${mq.type:pulsar}' == 'pulsar'")
 public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2, MulticastGoalStateV2> {
-    private static final Logger LOG = LoggerFactory.getLogger(DataPlaneClientImpl.class);
+    private static final Logger LOG = LoggerFactory.getLogger(DataPlaneClientImplV2.class);
 
     @Autowired
     private PulsarClient pulsarClient;
@@ -51,50 +58,59 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
     @Autowired
     private TopicManager topicManager;
 
-    private List<String> createGoalState(MulticastGoalStateV2 multicastGoalState) throws Exception {
-        List<String> failedHosts = new ArrayList<>();
-        if (multicastGoalState != null &&
-                multicastGoalState.getHostIps().size() != 0 &&
-                multicastGoalState.getGoalState() != null) {
-            Map<String, Set<String>> hostVpcMap = multicastGoalState.getHostVpcMap();
-            for (Map.Entry<String, Set<String>> hostVpcPair : hostVpcMap.entrySet()) {
-                String hostIp = hostVpcPair.getKey();
-                for (String vpcId : hostVpcPair.getValue()) {
-                    NodeSubscribeInfo nodeSubscribeInfo = topicManager.getNodeSubscribeInfoByVpcId(vpcId, hostIp);
-                    String multicastTopic = nodeSubscribeInfo.getTopic();
-                    String multicastKey = nodeSubscribeInfo.getKey();
-
-                    try {
-                        Producer<byte[]> producer = pulsarClient
-                                .newProducer()
-                                .topic(multicastTopic)
-                                .batcherBuilder(BatcherBuilder.KEY_BASED)
-                                .hashingScheme(HashingScheme.Murmur3_32Hash)
-                                .create();
-                        producer.newMessage()
-                                .key(multicastKey)
-                                .value(multicastGoalState.getGoalState().toByteArray())
-                                .send();
-                    } catch (Exception e) {
-                        LOG.error("Send multicastGoalState to topic:{} failed: ", multicastTopic, e);
-                        failedHosts.addAll(multicastGoalState.getHostIps());
-                        continue;
-                    }
-
-                    LOG.info("Send multicastGoalState to topic:{} success, " +
-                                    " unicastGoalStates: {}",
-                            multicastTopic, multicastGoalState);
-                }
-            }
+    @Value("${pulsar.producer.batching.max.publish.delay:1000}")
+    private long maxPublishDelayMicros;
+
+    @Value("${pulsar.producer.idle.timeout:300}")
+    private long producerIdleTimeout;
+
+    private ProducerCache<byte[]> goalStateProducers;
+
+    private static class PendingSend {
+        private final String topic;
+        private final Collection<String> hostIps;
+        private final CompletableFuture<MessageId> future;
+
+        private PendingSend(String topic, Collection<String> hostIps, CompletableFuture<MessageId> future) {
+            this.topic = topic;
+            this.hostIps = hostIps;
+            this.future = future;
         }
+    }
 
-        return failedHosts;
+    @PostConstruct
+    public void init() {
+        goalStateProducers = new ProducerCache<>(pulsarClient, Schema.BYTES,
+                BatcherBuilder.KEY_BASED, HashingScheme.Murmur3_32Hash,
+                maxPublishDelayMicros, producerIdleTimeout, TimeUnit.SECONDS);
     }
 
-    @Override
-    public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates) throws Exception {
-        List<String> failedHosts = new ArrayList<>();
+    @PreDestroy
+    public void close() {
+        goalStateProducers.close();
+    }
+
+    private void createGoalState(MulticastGoalStateV2 multicastGoalState, List<PendingSend> pendingSends) throws Exception {
+        if (multicastGoalState == null ||
+                multicastGoalState.getHostIps().size() == 0 ||
+                multicastGoalState.getGoalState() == null) {
+            return;
+        }
 
+        byte[] goalState = multicastGoalState.getGoalState().toByteArray();
+        Map<String, Set<String>> hostVpcMap = multicastGoalState.getHostVpcMap();
+        for (Map.Entry<String, Set<String>> hostVpcPair : hostVpcMap.entrySet()) {
+            String hostIp = hostVpcPair.getKey();
+            for (String vpcId : hostVpcPair.getValue()) {
+                NodeSubscribeInfo nodeSubscribeInfo = topicManager.getNodeSubscribeInfoByVpcId(vpcId, hostIp);
+                String multicastTopic = nodeSubscribeInfo.getTopic();
+                pendingSends.add(new PendingSend(multicastTopic, multicastGoalState.getHostIps(),
+                        goalStateProducers.sendAsync(multicastTopic, nodeSubscribeInfo.getKey(), goalState)));
+            }
+        }
+    }
+
+    private void createGoalStates(List<UnicastGoalStateV2> unicastGoalStates, List<PendingSend> pendingSends) throws Exception {
         for (UnicastGoalStateV2 unicastGoalState : unicastGoalStates) {
             if (unicastGoalState.getVpcId() == null) {
                 throw new Exception("The VpcId of unicast goalState is null.");
@@ -102,39 +118,44 @@ public class DataPlaneClientImplV2 implements DataPlaneClient<UnicastGoalStateV2
 
             NodeSubscribeInfo nodeSubscribeInfo = topicManager.getNodeSubscribeInfoByVpcId(unicastGoalState.getVpcId(), unicastGoalState.getHostIp());
             String unicastTopic = nodeSubscribeInfo.getTopic();
-            String unicastKey = nodeSubscribeInfo.getKey();
+            pendingSends.add(new PendingSend(unicastTopic, Collections.singletonList(unicastGoalState.getHostIp()),
+                    goalStateProducers.sendAsync(unicastTopic, nodeSubscribeInfo.getKey(),
+                            unicastGoalState.getGoalState().toByteArray())));
+        }
+    }
+
+    private List<String> waitForSends(List<PendingSend> pendingSends) {
+        Set<String> failedHosts = new LinkedHashSet<>();
 
+        for (PendingSend pendingSend: pendingSends) {
             try {
-                Producer<byte[]> producer = pulsarClient
-                        .newProducer()
-                        .topic(unicastTopic)
-                        .batcherBuilder(BatcherBuilder.KEY_BASED)
-                        .hashingScheme(HashingScheme.Murmur3_32Hash)
-                        .create();
-                producer.newMessage()
-                        .key(unicastKey)
-                        .value(unicastGoalState.getGoalState().toByteArray())
-                        .send();
+                pendingSend.future.join();
             } catch (Exception e) {
-                LOG.error("Send unicastGoalStates to topic:{} failed: ", unicastTopic, e);
-                failedHosts.add(unicastGoalState.getHostIp());
+                LOG.error("Send goalState to topic:{} failed: ", pendingSend.topic, e);
+                failedHosts.addAll(pendingSend.hostIps);
                 continue;
             }
 
-            LOG.info("Send unicastGoalStates to topic:{} success, " +
-                    "unicastGoalStates: {}", unicastTopic, unicastGoalState);
+            LOG.debug("Send goalState to topic:{} success, hosts: {}", pendingSend.topic, pendingSend.hostIps);
         }
 
-        return failedHosts;
+        return new ArrayList<>(failedHosts);
     }
 
     @Override
-    public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates, MulticastGoalStateV2 multicastGoalState) throws Exception {
-        List<String> failedHosts = new ArrayList<>();
+    public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates) throws Exception {
+        List<PendingSend> pendingSends = new ArrayList<>();
+        createGoalStates(unicastGoalStates, pendingSends);
+
+        return waitForSends(pendingSends);
+    }
 
-        failedHosts.addAll(sendGoalStates(unicastGoalStates));
-        failedHosts.addAll(createGoalState(multicastGoalState));
+    @Override
+    public List<String> sendGoalStates(List<UnicastGoalStateV2> unicastGoalStates, MulticastGoalStateV2 multicastGoalState) throws Exception {
+        List<PendingSend> pendingSends = new ArrayList<>();
+        createGoalStates(unicastGoalStates, pendingSends);
+        createGoalState(multicastGoalState, pendingSends);
 
-        return failedHosts;
+        return waitForSends(pendingSends);
     }
 }
@@ -50,6 +50,14 @@ public class Config {
   @Value("${protobuf.goal-state-message.version}")
   public int goalStateMessageVersion;
 
+  // unicast goal states of different hosts are built in parallel on this amount of threads
+  @Value("${dataplane.goal-state-build-threads:16}")
+  public int goalStateBuildThreads;
+
+  // hosts waiting for a build thread, beyond this the requesting thread builds its hosts itself
+  @Value("${dataplane.goal-state-build-queue-size:1024}")
+  public int goalStateBuildQueueSize;
+
   // each host_ip should have this amount of gRPC channels.
   @Value("${grpc.number-of-channels-per-host:1}")
   public int numberOfGrpcChannelPerHost;
@@ -58,6 +66,10 @@ public class Config {
   @Value("${grpc.number-of-warmups-per-channel:1}")
   public int numberOfWarmupsPerChannel;
 
+  // goal states pushed to NCM are split into chunks of at most this amount of bytes, 0 disables splitting
+  @Value("${grpc.goal-state-chunk-bytes:1048576}")
+  public int goalStateChunkBytes;
+
   @Value("${grpc.monitor-hosts}")
   public ArrayList<String> monitorHosts;
 
@@ -15,7 +15,7 @@ Copyright(c) 2020 Futurewei Cloud
 */
 package com.futurewei.alcor.dataplane.service.impl;
 
-import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.common.db.TransactionRetry;
 import com.futurewei.alcor.dataplane.cache.*;
 import com.futurewei.alcor.dataplane.client.DataPlaneClient;
 import com.futurewei.alcor.dataplane.client.ZetaGatewayClient;
@@ -32,14 +32,18 @@ import com.futurewei.alcor.web.entity.route.InternalRouterInfo;
 import com.futurewei.alcor.web.entity.route.InternalSubnetRoutingTable;
 import com.futurewei.alcor.web.entity.subnet.InternalSubnetPorts;
 import com.futurewei.alcor.web.restclient.DataPlaneManagerRestClient;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 @Service
@@ -69,10 +73,12 @@ public class DpmServiceImplV2 implements DpmService {
     private SubnetPortsCacheV2 subnetPortsCache;
 
     @Autowired
+    @Qualifier("grpcDataPlaneClient")
     private DataPlaneClient<UnicastGoalStateV2, MulticastGoalStateV2> grpcDataPlaneClient;
 
     @Autowired
-    private DataPlaneClient<UnicastGoalStateV2, MulticastGoalStateV2> pulsarDataPlaneClient;
+    @Qualifier("mqDataPlaneClient")
+    private DataPlaneClient<UnicastGoalStateV2, MulticastGoalStateV2> mqDataPlaneClient;
 
     @Autowired
     private VpcService vpcService;
@@ -107,17 +113,41 @@ public class DpmServiceImplV2 implements DpmService {
     @Autowired
     private PortHostInfoCache portHostInfoCache;
 
+    @Autowired
+    private VpcPortCountCache vpcPortCountCache;
+
     @Autowired
     private ArionWingService arionWingService;
 
+    // unicast goal states of the hosts of a NetworkConfiguration are built in parallel on this pool,
+    // once its queue is full the requesting thread builds the host itself
+    private final ThreadPoolExecutor goalStateBuildExecutor;
+
     @Autowired
-    private DpmServiceImplV2(Config globalConfig) {
+    DpmServiceImplV2(Config globalConfig) {
         this.goalStateMessageVersion = globalConfig.goalStateMessageVersion;
+        int threads = Math.max(globalConfig.goalStateBuildThreads, 1);
+        this.goalStateBuildExecutor = new ThreadPoolExecutor(threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(globalConfig.goalStateBuildQueueSize, 1)),
+                new DefaultThreadFactory("goal-state-build-pool"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        goalStateBuildExecutor.shutdown();
+        if (!goalStateBuildExecutor.awaitTermination(Config.SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+            goalStateBuildExecutor.shutdownNow();
+        }
     }
 
     private UnicastGoalStateV2 buildUnicastGoalState(NetworkConfiguration networkConfig, String hostIp,
                                                    List<InternalPortEntity> portEntities,
-                                                   MulticastGoalStateV2 multicastGoalState) throws Exception {
+                                                   MulticastGoalStateV2 multicastGoalState,
+                                                   SharedResourceStates sharedStates) throws Exception {
         UnicastGoalStateV2 unicastGoalState = new UnicastGoalStateV2();
         unicastGoalState.setHostIp(hostIp);
         unicastGoalState.getGoalStateBuilder().setFormatVersion(this.goalStateMessageVersion);
@@ -126,13 +156,9 @@ public class DpmServiceImplV2 implements DpmService {
             portService.buildPortState(networkConfig, portEntities, unicastGoalState);
         }
 
-        Map<String, InternalSubnetPorts> internalSubnetPorts = subnetPortsCache.getSubnetPorts(networkConfig);
-        Map<String, PortHostInfo> portHostInfoMap = portHostInfoCache.getPortHostInfo(networkConfig);
-        insertPorts(internalSubnetPorts, portHostInfoMap);
-
-        vpcService.buildVpcStates(networkConfig, unicastGoalState);
-        subnetService.buildSubnetStates(networkConfig, unicastGoalState);
-        securityGroupService.buildSecurityGroupStates(networkConfig, unicastGoalState);
+        vpcService.buildVpcStates(networkConfig, unicastGoalState, sharedStates.vpcStates);
+        subnetService.buildSubnetStates(networkConfig, unicastGoalState, sharedStates.subnetStates);
+        securityGroupService.buildSecurityGroupStates(networkConfig, unicastGoalState, sharedStates.securityGroupStates);
         dhcpService.buildDhcpStates(networkConfig, unicastGoalState);
         routerService.buildRouterStates(networkConfig, unicastGoalState);
 
@@ -147,31 +173,75 @@ public class DpmServiceImplV2 implements DpmService {
 
         unicastGoalState.setGoalState(unicastGoalState.getGoalStateBuilder().build());
         unicastGoalState.setGoalStateBuilder(null);
-        multicastGoalState.setGoalState(multicastGoalState.getGoalStateBuilder().build());
-        multicastGoalState.setGoalStateBuilder(null);
 
         return unicastGoalState;
     }
 
-    private synchronized void insertPorts(Map<String, InternalSubnetPorts> internalSubnetPorts, Map<String, PortHostInfo> portHostInfoMap) {
-        try(Transaction tx = subnetPortsCache.getTransaction().start()) {
+    /**
+     * Resource states which are the same for every host of a NetworkConfiguration,
+     * built once by the first host needing them and shared as immutable messages.
+     */
+    private static class SharedResourceStates {
+        private final Map<String, Vpc.VpcState> vpcStates = new ConcurrentHashMap<>();
+        private final Map<String, Subnet.SubnetState> subnetStates = new ConcurrentHashMap<>();
+        private final Map<String, SecurityGroup.SecurityGroupState> securityGroupStates = new ConcurrentHashMap<>();
+    }
+
+    private synchronized void insertPorts(NetworkConfiguration networkConfig) throws Exception {
+        Map<String, InternalSubnetPorts> internalSubnetPorts = subnetPortsCache.getSubnetPorts(networkConfig);
+        Map<String, PortHostInfo> portHostInfoMap = portHostInfoCache.getPortHostInfo(networkConfig);
+        // Port counts are read and incremented, so a commit may conflict with another
+        // instance adding ports of the same vpc. It is retried, then fails the call.
+        TransactionRetry.run(subnetPortsCache.getTransaction(), tx -> {
             subnetPortsCache.updateSubnetPorts(internalSubnetPorts);
-            portHostInfoCache.updatePortHostInfo(portHostInfoMap);
+            List<PortHostInfo> addedPorts = portHostInfoCache.updatePortHostInfo(portHostInfoMap);
+            vpcPortCountCache.addPorts(internalSubnetPorts, addedPorts);
             tx.commit();
-        } catch (Exception e) {
-            LOG.info(e.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Merge the multicast goal state built for one host into the one sent to all hosts,
+     * the host resources of a host are the union of those of every partial goal state.
+     */
+    static void mergeMulticastGoalState(MulticastGoalStateV2 multicastGoalState,
+                                        MulticastGoalStateV2 hostMulticastGoalState) throws Exception {
+        Goalstate.GoalStateV2.Builder goalStateBuilder = multicastGoalState.getGoalStateBuilder();
+        Goalstate.GoalStateV2.Builder hostGoalStateBuilder = hostMulticastGoalState.getGoalStateBuilder();
+
+        for (Map.Entry<String, Goalstate.HostResources> entry : hostGoalStateBuilder.getHostResourcesMap().entrySet()) {
+            Goalstate.HostResources existing = goalStateBuilder.getHostResourcesMap().get(entry.getKey());
+            if (existing == null) {
+                goalStateBuilder.putHostResources(entry.getKey(), entry.getValue());
+            } else {
+                Set<Goalstate.ResourceIdType> resources = new LinkedHashSet<>(existing.getResourcesList());
+                resources.addAll(entry.getValue().getResourcesList());
+                goalStateBuilder.putHostResources(entry.getKey(),
+                        Goalstate.HostResources.newBuilder().addAllResources(resources).build());
+            }
+        }
+        goalStateBuilder.mergeFrom(hostGoalStateBuilder.clearHostResources().build());
+
+        for (Map.Entry<String, Set<String>> entry : hostMulticastGoalState.getHostVpcMap().entrySet()) {
+            for (String vpcId : entry.getValue()) {
+                multicastGoalState.addHostVpcPair(entry.getKey(), vpcId);
+            }
         }
     }
 
     private List<String> doCreatePortConfiguration(NetworkConfiguration networkConfig,
                                                    Map<String, List<InternalPortEntity>> hostPortEntities,
                                                    DataPlaneClient dataPlaneClient) throws Exception {
-        List<UnicastGoalStateV2> unicastGoalStates = new ArrayList<>();
         MulticastGoalStateV2 multicastGoalState = new MulticastGoalStateV2();
+        SharedResourceStates sharedStates = new SharedResourceStates();
 
         ZetaPortGoalState zetaPortsGoalState = new ZetaPortGoalState();
         List<String> failedZetaPorts = new ArrayList<>();
 
+        // Every host gets its own multicast goal state while the hosts are built in parallel
+        List<MulticastGoalStateV2> hostMulticastGoalStates = new ArrayList<>(hostPortEntities.size());
+        List<Future<UnicastGoalStateV2>> futures = new ArrayList<>(hostPortEntities.size());
         for (Map.Entry<String, List<InternalPortEntity>> entry : hostPortEntities.entrySet()) {
             String hostIp = entry.getKey();
             List<InternalPortEntity> portEntities = entry.getValue();
@@ -182,9 +252,26 @@ public class DpmServiceImplV2 implements DpmService {
                 }
             }
 
-            unicastGoalStates.add(buildUnicastGoalState(
-                    networkConfig, hostIp, portEntities, multicastGoalState));
+            MulticastGoalStateV2 hostMulticastGoalState = new MulticastGoalStateV2();
+            hostMulticastGoalStates.add(hostMulticastGoalState);
+            futures.add(goalStateBuildExecutor.submit(() -> buildUnicastGoalState(
+                    networkConfig, hostIp, portEntities, hostMulticastGoalState, sharedStates)));
+        }
+
+        List<UnicastGoalStateV2> unicastGoalStates = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                unicastGoalStates.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+            mergeMulticastGoalState(multicastGoalState, hostMulticastGoalStates.get(i));
         }
+        multicastGoalState.setGoalState(multicastGoalState.getGoalStateBuilder().build());
+        multicastGoalState.setGoalStateBuilder(null);
         // portEntities in the same unicastGoalStates should have the same opType
 
 //        TODO: Enable zetaGatewayClient support GSV2
@@ -236,6 +323,9 @@ public class DpmServiceImplV2 implements DpmService {
             }
         }
 
+        // The subnet ports and port host infos are the same for every host, write them once
+        insertPorts(networkConfig);
+
         List<String> statusList = new ArrayList<>();
 
         if (grpcHostPortEntities.size() != 0) {
@@ -245,7 +335,7 @@ public class DpmServiceImplV2 implements DpmService {
 
         if (pulsarHostPortEntities.size() != 0) {
             statusList.addAll(doCreatePortConfiguration(
-                    networkConfig, pulsarHostPortEntities, pulsarDataPlaneClient));
+                    networkConfig, pulsarHostPortEntities, mqDataPlaneClient));
         }
 
         localCache.updateLocalCache(networkConfig);
@@ -283,7 +373,7 @@ public class DpmServiceImplV2 implements DpmService {
             if (pathManagerService.isFastPath()) {
                 failedHosts.addAll(grpcDataPlaneClient.sendGoalStates(new ArrayList<>(unicastGoalStates.values()), multicastGoalState));
             } else {
-                failedHosts.addAll(pulsarDataPlaneClient.sendGoalStates(new ArrayList<>(unicastGoalStates.values()), multicastGoalState));
+                failedHosts.addAll(mqDataPlaneClient.sendGoalStates(new ArrayList<>(unicastGoalStates.values()), multicastGoalState));
             }
         }
         return failedHosts;
@@ -117,8 +117,9 @@ public class NeighborService extends ResourceService {
         fixedIpBuilder.setSubnetId(portHostInfo.getSubnetId());
         fixedIpBuilder.setIpAddress(portHostInfo.getPortIp());
         fixedIpBuilder.setNeighborType(neighborType);
-        if (nodeInfoCache.getNodeInfoByNodeIp(portHostInfo.getHostIp()).size() > 0) {
-            NodeInfo nodeInfo = nodeInfoCache.getNodeInfoByNodeIp(portHostInfo.getHostIp()).get(0);
+        List<NodeInfo> nodeInfos = nodeInfoCache.getNodeInfoByNodeIp(portHostInfo.getHostIp());
+        if (nodeInfos.size() > 0) {
+            NodeInfo nodeInfo = nodeInfos.get(0);
             neighborConfigBuilder.setHostMacAddress(nodeInfo.getMacAddress());
             neighborConfigBuilder.setHostIpAddress(nodeInfo.getDataPathIp());
         } else {
@@ -169,6 +170,69 @@ public class NeighborService extends ResourceService {
         return neighborInfos;
     }
 
+    private static class L2Neighbors {
+        private final Set<NeighborInfo> remoteNeighbors = new LinkedHashSet<>();
+        private final Set<NeighborInfo> localNeighbors = new LinkedHashSet<>();
+    }
+
+    /**
+     * Expand the subnet scoped L2 neighbor sets for the ports on one host. Each subnet
+     * is walked once per host, so the host gets every remote neighbor once instead of
+     * once per local port, and every local port that has remote neighbors is returned
+     * for the multicast goal state.
+     */
+    private L2Neighbors getL2Neighbors(Map<String, Set<String>> l2NeighborSets,
+                                       Map<String, NeighborInfo> neighborInfos,
+                                       String hostIp,
+                                       List<Port.PortState> portStates) throws Exception {
+        L2Neighbors l2Neighbors = new L2Neighbors();
+        if (l2NeighborSets == null || l2NeighborSets.size() == 0) {
+            return l2Neighbors;
+        }
+
+        Map<String, List<String>> subnetLocalIps = new HashMap<>();
+        for (Port.PortState portState: portStates) {
+            for (Port.PortConfiguration.FixedIp fixedIp: portState.getConfiguration().getFixedIpsList()) {
+                if (l2NeighborSets.containsKey(fixedIp.getSubnetId())) {
+                    subnetLocalIps.computeIfAbsent(fixedIp.getSubnetId(), k -> new ArrayList<>())
+                            .add(fixedIp.getIpAddress());
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<String>> entry: subnetLocalIps.entrySet()) {
+            boolean hasRemoteNeighbor = false;
+            for (String neighborIp: l2NeighborSets.get(entry.getKey())) {
+                NeighborInfo neighborInfo = neighborInfos.get(neighborIp);
+                if (neighborInfo == null) {
+                    throw new NeighborInfoNotFound();
+                }
+
+                if (hostIp.equals(neighborInfo.getHostIp())) {
+                    continue;
+                }
+
+                l2Neighbors.remoteNeighbors.add(neighborInfo);
+                hasRemoteNeighbor = true;
+            }
+
+            if (!hasRemoteNeighbor) {
+                continue;
+            }
+
+            for (String localIp: entry.getValue()) {
+                NeighborInfo localInfo = neighborInfos.get(localIp);
+                if (localInfo == null) {
+                    throw new NeighborInfoNotFound();
+                }
+
+                l2Neighbors.localNeighbors.add(localInfo);
+            }
+        }
+
+        return l2Neighbors;
+    }
+
     public void buildNeighborStates(Map<String, NeighborInfo> neighborInfos,
                                     UnicastGoalState unicastGoalState,
                                     MulticastGoalState multicastGoalState) throws Exception
@@ -203,7 +267,9 @@ public class NeighborService extends ResourceService {
         }
 
         Map<String, List<NeighborEntry>> neighborTable = networkConfig.getNeighborTable();
-        if (neighborTable == null || neighborTable.size() == 0) {
+        Map<String, Set<String>> l2NeighborSets = networkConfig.getL2NeighborSets();
+        if ((neighborTable == null || neighborTable.size() == 0) &&
+                (l2NeighborSets == null || l2NeighborSets.size() == 0)) {
             return;
         }
 
@@ -220,9 +286,14 @@ public class NeighborService extends ResourceService {
             }
 
             for (Port.PortConfiguration.FixedIp fixedIp: fixedIps) {
-                List<NeighborEntry> neighborEntries = neighborTable.get(fixedIp.getIpAddress());
+                List<NeighborEntry> neighborEntries = neighborTable != null ?
+                        neighborTable.get(fixedIp.getIpAddress()) : null;
                 if (neighborEntries == null) {
-                    throw new NeighborInfoNotFound();
+                    if (l2NeighborSets == null || !l2NeighborSets.containsKey(fixedIp.getSubnetId())) {
+                        throw new NeighborInfoNotFound();
+                    }
+
+                    continue;
                 }
 
                 for (NeighborEntry neighborEntry: neighborEntries) {
@@ -262,6 +333,23 @@ public class NeighborService extends ResourceService {
                 neighborInfoSet.add(neighborInfo1);
             }
         }
+
+        L2Neighbors l2Neighbors = getL2Neighbors(l2NeighborSets, neighborInfos, hostIp, portStates);
+        for (NeighborInfo neighborInfo: l2Neighbors.remoteNeighbors) {
+            unicastGoalState.getGoalStateBuilder().addNeighborStates(buildNeighborState(
+                    NeighborEntry.NeighborType.L2, neighborInfo, networkConfig.getOpType()));
+
+            if (!multicastGoalState.getHostIps().contains(neighborInfo.getHostIp())) {
+                multicastGoalState.getHostIps().add(neighborInfo.getHostIp());
+            }
+        }
+
+        for (NeighborInfo localInfo: l2Neighbors.localNeighbors) {
+            if (neighborInfoSet.add(localInfo)) {
+                multicastGoalState.getGoalStateBuilder().addNeighborStates(buildNeighborState(
+                        NeighborEntry.NeighborType.L2, localInfo, networkConfig.getOpType()));
+            }
+        }
     }
 
     public void buildNeighborStates(NetworkConfiguration networkConfig, String hostIp,
@@ -284,7 +372,9 @@ public class NeighborService extends ResourceService {
         }
 
         Map<String, List<NeighborEntry>> neighborTable = networkConfig.getNeighborTable();
-        if (neighborTable == null || neighborTable.size() == 0) {
+        Map<String, Set<String>> l2NeighborSets = networkConfig.getL2NeighborSets();
+        if ((neighborTable == null || neighborTable.size() == 0) &&
+                (l2NeighborSets == null || l2NeighborSets.size() == 0)) {
             return;
         }
 
@@ -301,9 +391,14 @@ public class NeighborService extends ResourceService {
             }
 
             for (Port.PortConfiguration.FixedIp fixedIp: fixedIps) {
-                List<NeighborEntry> neighborEntries = neighborTable.get(fixedIp.getIpAddress());
+                List<NeighborEntry> neighborEntries = neighborTable != null ?
+                        neighborTable.get(fixedIp.getIpAddress()) : null;
                 if (neighborEntries == null) {
-                    throw new NeighborInfoNotFound();
+                    if (l2NeighborSets == null || !l2NeighborSets.containsKey(fixedIp.getSubnetId())) {
+                        throw new NeighborInfoNotFound();
+                    }
+
+                    continue;
                 }
 
                 for (NeighborEntry neighborEntry: neighborEntries) {
@@ -343,7 +438,24 @@ public class NeighborService extends ResourceService {
                 neighborInfoSet.add(neighborInfo1);
             }
         }
+
+        L2Neighbors l2Neighbors = getL2Neighbors(l2NeighborSets, neighborInfos, hostIp, portStates);
+        for (NeighborInfo neighborInfo: l2Neighbors.remoteNeighbors) {
+            Neighbor.NeighborState neighborState = buildNeighborState(NeighborEntry.NeighborType.L2, neighborInfo, networkConfig.getOpType());
+            unicastGoalState.getGoalStateBuilder().putNeighborStates(neighborState.getConfiguration().getId(), neighborState);
+
+            if (!multicastGoalState.getHostIps().contains(neighborInfo.getHostIp())) {
+                multicastGoalState.addHostVpcPair(neighborInfo.getHostIp(), neighborInfo.getVpcId());
+            }
+        }
+
+        for (NeighborInfo localInfo: l2Neighbors.localNeighbors) {
+            if (neighborInfoSet.add(localInfo)) {
+                Neighbor.NeighborState neighborState = buildNeighborState(NeighborEntry.NeighborType.L2, localInfo, networkConfig.getOpType());
+                multicastGoalState.getGoalStateBuilder().putNeighborStates(neighborState.getConfiguration().getId(), neighborState);
+            }
         }
+    }
 
     public List<Neighbor.NeighborState> getAllNeighbors (Set<String> ips) throws Exception
     {
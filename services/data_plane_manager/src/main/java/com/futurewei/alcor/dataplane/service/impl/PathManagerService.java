@@ -18,31 +18,20 @@
 
 package com.futurewei.alcor.dataplane.service.impl;
 
-import com.futurewei.alcor.dataplane.cache.SubnetPortsCacheV2;
 import com.futurewei.alcor.dataplane.cache.VpcPathCache;
-import com.futurewei.alcor.dataplane.cache.VpcSubnetsCache;
+import com.futurewei.alcor.dataplane.cache.VpcPortCountCache;
 import com.futurewei.alcor.dataplane.exception.InvalidPathModeException;
 import com.futurewei.alcor.web.entity.port.PortEntity;
-import com.futurewei.alcor.web.entity.subnet.InternalSubnetPorts;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-
 @Service
 @Configuration
 public class PathManagerService {
     @Autowired
-    private VpcSubnetsCache vpcSubnetsCache;
-
-    @Autowired
-    private SubnetPortsCacheV2 subnetPortsCache;
+    private VpcPortCountCache vpcPortCountCache;
 
     @Autowired
     private VpcPathCache vpcPathCache;
@@ -82,47 +71,19 @@ public class PathManagerService {
 
         String vpcId = portEntity.getVpcId();
 
-        // TODO: Pending to calculate by the cache service
-
         // Get VPC size - number of ports
-        AtomicInteger atomicNumberOfPorts = new AtomicInteger();
-        List<String> subnetIds;
-        subnetIds = vpcSubnetsCache.getVpcSubnets(vpcId).getSubnetIds();
-        subnetIds.stream().forEach(subnetId -> {
-            try {
-                InternalSubnetPorts internalSubnetPorts = subnetPortsCache.getSubnetPorts(subnetId);
-                atomicNumberOfPorts.addAndGet(internalSubnetPorts.getPorts().size());
-            } catch (Exception e) {
-
-            }
-        });
-
-        int numberOfPorts = atomicNumberOfPorts.get();
+        int numberOfPorts = vpcPortCountCache.getVpcPortCount(vpcId);
 
-        // Get the current path for this path
-        boolean currentPath;
-        try {
-            currentPath = vpcPathCache.getCurrentPathByVpcId(vpcId);
-        } catch (NullPointerException e) {
-            // Handle new VPC
-            if (numberOfPorts > UPPER_VPC_SIZE) {
-                // For large VPC size
-                vpcPathCache.setPath(vpcId, USE_MQ);
-                return USE_MQ;
-            } else {
-                // For small VPC size
-                vpcPathCache.setPath(vpcId, USE_GRPC);
-                return USE_GRPC;
-            }
-
-        } catch (Exception e) {
-            throw e;
-        }
+        // Get the current path for this VPC
+        Boolean currentPath = vpcPathCache.getCurrentPathByVpcId(vpcId);
 
         // Path switch logic
         boolean chosenPath;
 
-        if (currentPath == USE_GRPC) {
+        if (currentPath == null) {
+            // New VPC, MQ for large VPC size
+            chosenPath = numberOfPorts > UPPER_VPC_SIZE ? USE_MQ : USE_GRPC;
+        } else if (currentPath == USE_GRPC) {
             // Current path is gRPC
             if (numberOfPorts > UPPER_VPC_SIZE) {
                 // For large VPC size
@@ -139,7 +100,7 @@ public class PathManagerService {
             }
         }
 
-        if (! currentPath == chosenPath) {
+        if (currentPath == null || currentPath != chosenPath) {
             vpcPathCache.setPath(vpcId, chosenPath);
         }
 
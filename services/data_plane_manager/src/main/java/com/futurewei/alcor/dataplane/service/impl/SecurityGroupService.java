@@ -31,8 +31,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -170,6 +172,15 @@ public class SecurityGroupService extends ResourceService {
     }
 
     public void buildSecurityGroupStates(NetworkConfiguration networkConfig, UnicastGoalStateV2 unicastGoalState) throws Exception {
+        buildSecurityGroupStates(networkConfig, unicastGoalState, new HashMap<>());
+    }
+
+    /**
+     * Build the security group states of the ports in unicastGoalState, reusing the states in
+     * securityGroupStates which are shared by all hosts of the same NetworkConfiguration.
+     */
+    public void buildSecurityGroupStates(NetworkConfiguration networkConfig, UnicastGoalStateV2 unicastGoalState,
+                                         Map<String, com.futurewei.alcor.schema.SecurityGroup.SecurityGroupState> securityGroupStates) throws Exception {
         List<Port.PortState> portStates = new ArrayList<Port.PortState>(unicastGoalState.getGoalStateBuilder().getPortStatesMap().values());
         if (portStates == null || portStates.size() == 0) {
             return;
@@ -186,54 +197,63 @@ public class SecurityGroupService extends ResourceService {
         }
 
         for (String securityGroupId: securityGroupIds) {
-            SecurityGroup securityGroup = getSecurityGroup(networkConfig, securityGroupId);
-            com.futurewei.alcor.schema.SecurityGroup.SecurityGroupConfiguration.Builder securityGroupConfigBuilder = com.futurewei.alcor.schema.SecurityGroup.SecurityGroupConfiguration.newBuilder();
-            securityGroupConfigBuilder.setRevisionNumber(FORMAT_REVISION_NUMBER);
-            securityGroupConfigBuilder.setId(securityGroup.getId());
-            //securityGroupConfigBuilder.setVpcId();
-            securityGroupConfigBuilder.setName(securityGroup.getName());
-
-            if (securityGroup.getSecurityGroupRules() == null) {
-                throw new SecurityGroupRuleNotFound();
+            com.futurewei.alcor.schema.SecurityGroup.SecurityGroupState securityGroupState = securityGroupStates.get(securityGroupId);
+            if (securityGroupState == null) {
+                securityGroupState = buildSecurityGroupState(networkConfig, securityGroupId);
+                securityGroupStates.put(securityGroupId, securityGroupState);
             }
+            unicastGoalState.getGoalStateBuilder().putSecurityGroupStates(securityGroupState.getConfiguration().getId(), securityGroupState);
+        }
+    }
 
-            for (SecurityGroupRule securityGroupRule: securityGroup.getSecurityGroupRules()) {
-                com.futurewei.alcor.schema.SecurityGroup.SecurityGroupConfiguration.SecurityGroupRule.Builder securityGroupRuleBuilder =
-                        com.futurewei.alcor.schema.SecurityGroup.SecurityGroupConfiguration.SecurityGroupRule.newBuilder();
-                securityGroupRuleBuilder.setSecurityGroupId(securityGroup.getId());
-                securityGroupRuleBuilder.setId(securityGroupRule.getId());
-                securityGroupRuleBuilder.setDirection(transformDirection(securityGroupRule.getDirection()));
-                securityGroupRuleBuilder.setEthertype(transformEtherType(securityGroupRule.getEtherType()));
-
-                if (securityGroupRule.getProtocol() != null) {
-                    securityGroupRuleBuilder.setProtocol(transformProtocol(securityGroupRule.getProtocol()));
-                }
+    private com.futurewei.alcor.schema.SecurityGroup.SecurityGroupState buildSecurityGroupState(NetworkConfiguration networkConfig,
+                                                                                                String securityGroupId) throws Exception {
+        SecurityGroup securityGroup = getSecurityGroup(networkConfig, securityGroupId);
+        com.futurewei.alcor.schema.SecurityGroup.SecurityGroupConfiguration.Builder securityGroupConfigBuilder = com.futurewei.alcor.schema.SecurityGroup.SecurityGroupConfiguration.newBuilder();
+        securityGroupConfigBuilder.setRevisionNumber(FORMAT_REVISION_NUMBER);
+        securityGroupConfigBuilder.setId(securityGroup.getId());
+        //securityGroupConfigBuilder.setVpcId();
+        securityGroupConfigBuilder.setName(securityGroup.getName());
+
+        if (securityGroup.getSecurityGroupRules() == null) {
+            throw new SecurityGroupRuleNotFound();
+        }
 
-                if (securityGroupRule.getPortRangeMin() != null) {
-                    securityGroupRuleBuilder.setPortRangeMin(securityGroupRule.getPortRangeMin());
-                }
+        for (SecurityGroupRule securityGroupRule: securityGroup.getSecurityGroupRules()) {
+            com.futurewei.alcor.schema.SecurityGroup.SecurityGroupConfiguration.SecurityGroupRule.Builder securityGroupRuleBuilder =
+                    com.futurewei.alcor.schema.SecurityGroup.SecurityGroupConfiguration.SecurityGroupRule.newBuilder();
+            securityGroupRuleBuilder.setSecurityGroupId(securityGroup.getId());
+            securityGroupRuleBuilder.setId(securityGroupRule.getId());
+            securityGroupRuleBuilder.setDirection(transformDirection(securityGroupRule.getDirection()));
+            securityGroupRuleBuilder.setEthertype(transformEtherType(securityGroupRule.getEtherType()));
 
-                if (securityGroupRule.getPortRangeMax() != null) {
-                    securityGroupRuleBuilder.setPortRangeMax(securityGroupRule.getPortRangeMax());
-                }
+            if (securityGroupRule.getProtocol() != null) {
+                securityGroupRuleBuilder.setProtocol(transformProtocol(securityGroupRule.getProtocol()));
+            }
 
-                if (securityGroupRule.getRemoteIpPrefix() != null) {
-                    securityGroupRuleBuilder.setRemoteIpPrefix(securityGroupRule.getRemoteIpPrefix());
-                }
+            if (securityGroupRule.getPortRangeMin() != null) {
+                securityGroupRuleBuilder.setPortRangeMin(securityGroupRule.getPortRangeMin());
+            }
 
-                if (securityGroupRule.getRemoteGroupId() != null) {
-                    securityGroupRuleBuilder.setRemoteGroupId(securityGroupRule.getRemoteGroupId());
-                }
+            if (securityGroupRule.getPortRangeMax() != null) {
+                securityGroupRuleBuilder.setPortRangeMax(securityGroupRule.getPortRangeMax());
+            }
 
-                securityGroupConfigBuilder.addSecurityGroupRules(securityGroupRuleBuilder.build());
+            if (securityGroupRule.getRemoteIpPrefix() != null) {
+                securityGroupRuleBuilder.setRemoteIpPrefix(securityGroupRule.getRemoteIpPrefix());
             }
 
-            com.futurewei.alcor.schema.SecurityGroup.SecurityGroupState.Builder securityGroupStateBuilder = com.futurewei.alcor.schema.SecurityGroup.SecurityGroupState.newBuilder();
-            securityGroupStateBuilder.setOperationType(networkConfig.getOpType());
-            securityGroupStateBuilder.setConfiguration(securityGroupConfigBuilder.build());
+            if (securityGroupRule.getRemoteGroupId() != null) {
+                securityGroupRuleBuilder.setRemoteGroupId(securityGroupRule.getRemoteGroupId());
+            }
 
-            com.futurewei.alcor.schema.SecurityGroup.SecurityGroupState securityGroupState = securityGroupStateBuilder.build();
-            unicastGoalState.getGoalStateBuilder().putSecurityGroupStates(securityGroupState.getConfiguration().getId(), securityGroupState);
+            securityGroupConfigBuilder.addSecurityGroupRules(securityGroupRuleBuilder.build());
         }
+
+        com.futurewei.alcor.schema.SecurityGroup.SecurityGroupState.Builder securityGroupStateBuilder = com.futurewei.alcor.schema.SecurityGroup.SecurityGroupState.newBuilder();
+        securityGroupStateBuilder.setOperationType(networkConfig.getOpType());
+        securityGroupStateBuilder.setConfiguration(securityGroupConfigBuilder.build());
+
+        return securityGroupStateBuilder.build();
     }
 }
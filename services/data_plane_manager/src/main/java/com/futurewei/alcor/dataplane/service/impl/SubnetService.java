@@ -32,6 +32,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -272,56 +273,66 @@ public class SubnetService extends ResourceService {
     }
 
     public void buildSubnetStates(NetworkConfiguration networkConfig, UnicastGoalStateV2 unicastGoalState) throws Exception {
+        buildSubnetStates(networkConfig, unicastGoalState, new HashMap<>());
+    }
+
+    /**
+     * Build the subnet states of the ports in unicastGoalState, reusing the states in
+     * subnetStates which are shared by all hosts of the same NetworkConfiguration.
+     */
+    public void buildSubnetStates(NetworkConfiguration networkConfig, UnicastGoalStateV2 unicastGoalState,
+                                  Map<String, Subnet.SubnetState> subnetStates) throws Exception {
         Map<String, Port.PortState> portStateMap = unicastGoalState.getGoalStateBuilder().getPortStatesMap();
         List<Port.PortState> portStates = new ArrayList<Port.PortState>(portStateMap.values());
         if (portStates == null || portStates.size() == 0) {
             return;
         }
 
-        List<InternalSubnetEntity> subnetEntities = new ArrayList<>();
         for (Port.PortState portState: portStates) {
             for (Port.PortConfiguration.FixedIp fixedIp: portState.getConfiguration().getFixedIpsList()) {
-                InternalSubnetEntity internalSubnetEntity = getInternalSubnetEntity(
-                        networkConfig, fixedIp.getSubnetId());
-                subnetEntities.add(internalSubnetEntity);
+                // check if subnet state already exists in the unicastGoalState
+                if (unicastGoalState.getGoalStateBuilder().getSubnetStatesMap().containsKey(fixedIp.getSubnetId())) {
+                    continue;
+                }
+                Subnet.SubnetState subnetState = subnetStates.get(fixedIp.getSubnetId());
+                if (subnetState == null) {
+                    subnetState = buildSubnetState(getInternalSubnetEntity(networkConfig, fixedIp.getSubnetId()));
+                    subnetStates.put(fixedIp.getSubnetId(), subnetState);
+                }
+                unicastGoalState.getGoalStateBuilder().putSubnetStates(subnetState.getConfiguration().getId(), subnetState);
             }
         }
+    }
 
-        for (InternalSubnetEntity subnetEntity: subnetEntities) {
-            // check if subnet state already exists in the unicastGoalState
-            if (unicastGoalState.getGoalStateBuilder().getSubnetStatesMap().containsKey(subnetEntity.getId())) {
-                continue;
-            }
-            Subnet.SubnetConfiguration.Builder subnetConfigBuilder = Subnet.SubnetConfiguration.newBuilder();
-            subnetConfigBuilder.setRevisionNumber(FORMAT_REVISION_NUMBER)
-                    .setId(subnetEntity.getId())
-                    .setNetworkType(Common.NetworkType.VXLAN)
-                    .setVpcId(subnetEntity.getVpcId())
-                    .setName(subnetEntity.getName())
-                    .setCidr(subnetEntity.getCidr())
-                    .setTunnelId(subnetEntity.getTunnelId());
-
-            Subnet.SubnetConfiguration.Gateway.Builder gatewayBuilder = Subnet.SubnetConfiguration.Gateway.newBuilder();
-            gatewayBuilder.setIpAddress(subnetEntity.getGatewayIp());
-            gatewayBuilder.setMacAddress(subnetEntity.getGatewayPortDetail().getGatewayMacAddress());
-            subnetConfigBuilder.setGateway(gatewayBuilder.build());
-
-            if (subnetEntity.getDhcpEnable() != null) {
-                subnetConfigBuilder.setDhcpEnable(subnetEntity.getDhcpEnable());
-            }
+    private Subnet.SubnetState buildSubnetState(InternalSubnetEntity subnetEntity) {
+        Subnet.SubnetConfiguration.Builder subnetConfigBuilder = Subnet.SubnetConfiguration.newBuilder();
+        subnetConfigBuilder.setRevisionNumber(FORMAT_REVISION_NUMBER)
+                .setId(subnetEntity.getId())
+                .setNetworkType(Common.NetworkType.VXLAN)
+                .setVpcId(subnetEntity.getVpcId())
+                .setName(subnetEntity.getName())
+                .setCidr(subnetEntity.getCidr())
+                .setTunnelId(subnetEntity.getTunnelId());
 
-            // TODO: need to set DNS based on latest contract
+        Subnet.SubnetConfiguration.Gateway.Builder gatewayBuilder = Subnet.SubnetConfiguration.Gateway.newBuilder();
+        gatewayBuilder.setIpAddress(subnetEntity.getGatewayIp());
+        gatewayBuilder.setMacAddress(subnetEntity.getGatewayPortDetail().getGatewayMacAddress());
+        subnetConfigBuilder.setGateway(gatewayBuilder.build());
 
-            if (subnetEntity.getAvailabilityZone() != null) {
-                subnetConfigBuilder.setAvailabilityZone(subnetEntity.getAvailabilityZone());
-            }
+        if (subnetEntity.getDhcpEnable() != null) {
+            subnetConfigBuilder.setDhcpEnable(subnetEntity.getDhcpEnable());
+        }
 
-            Subnet.SubnetState.Builder subnetStateBuilder = Subnet.SubnetState.newBuilder();
-            subnetStateBuilder.setOperationType(Common.OperationType.INFO);
+        // TODO: need to set DNS based on latest contract
 
-            subnetStateBuilder.setConfiguration(subnetConfigBuilder.build());
-            Subnet.SubnetState subnetState = subnetStateBuilder.build();
-            unicastGoalState.getGoalStateBuilder().putSubnetStates(subnetState.getConfiguration().getId(), subnetState);
+        if (subnetEntity.getAvailabilityZone() != null) {
+            subnetConfigBuilder.setAvailabilityZone(subnetEntity.getAvailabilityZone());
         }
+
+        Subnet.SubnetState.Builder subnetStateBuilder = Subnet.SubnetState.newBuilder();
+        subnetStateBuilder.setOperationType(Common.OperationType.INFO);
+
+        subnetStateBuilder.setConfiguration(subnetConfigBuilder.build());
+        return subnetStateBuilder.build();
     }
 }
@@ -27,6 +27,7 @@ import com.futurewei.alcor.web.entity.vpc.VpcEntity;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -79,6 +80,15 @@ public class VpcService extends ResourceService {
     }
 
     public void buildVpcStates(NetworkConfiguration networkConfig, UnicastGoalStateV2 unicastGoalState) throws Exception {
+        buildVpcStates(networkConfig, unicastGoalState, new HashMap<>());
+    }
+
+    /**
+     * Build the vpc states of the ports in unicastGoalState, reusing the states in
+     * vpcStates which are shared by all hosts of the same NetworkConfiguration.
+     */
+    public void buildVpcStates(NetworkConfiguration networkConfig, UnicastGoalStateV2 unicastGoalState,
+                               Map<String, Vpc.VpcState> vpcStates) throws Exception {
         Map<String, Port.PortState> portStateMap = unicastGoalState.getGoalStateBuilder().getPortStatesMap();
         List<Port.PortState> portStates = new ArrayList<Port.PortState>(portStateMap.values());
         if (portStates == null || portStates.size() == 0) {
@@ -86,28 +96,37 @@ public class VpcService extends ResourceService {
         }
 
         for (Port.PortState portState : portStates) {
-            VpcEntity vpcEntity = getVpcEntity(networkConfig, portState.getConfiguration().getVpcId());
-            Vpc.VpcConfiguration.Builder vpcConfigBuilder = Vpc.VpcConfiguration.newBuilder();
-            vpcConfigBuilder.setRevisionNumber(FORMAT_REVISION_NUMBER)
-                    .setId(vpcEntity.getId())
-                    .setProjectId(vpcEntity.getProjectId());
-
-            if (vpcEntity.getName() != null) {
-                vpcConfigBuilder.setName(vpcEntity.getName());
+            String vpcId = portState.getConfiguration().getVpcId();
+            Vpc.VpcState vpcState = vpcStates.get(vpcId);
+            if (vpcState == null) {
+                vpcState = buildVpcState(networkConfig, vpcId);
+                vpcStates.put(vpcId, vpcState);
             }
+            unicastGoalState.setVpcId(vpcState.getConfiguration().getId());
+            unicastGoalState.getGoalStateBuilder().putVpcStates(vpcState.getConfiguration().getId(), vpcState);
+        }
+    }
 
-            if (vpcEntity.getCidr() != null) {
-                vpcConfigBuilder.setCidr(vpcEntity.getCidr());
-            }
+    private Vpc.VpcState buildVpcState(NetworkConfiguration networkConfig, String vpcId) throws Exception {
+        VpcEntity vpcEntity = getVpcEntity(networkConfig, vpcId);
+        Vpc.VpcConfiguration.Builder vpcConfigBuilder = Vpc.VpcConfiguration.newBuilder();
+        vpcConfigBuilder.setRevisionNumber(FORMAT_REVISION_NUMBER)
+                .setId(vpcEntity.getId())
+                .setProjectId(vpcEntity.getProjectId());
 
-            //set routes here
+        if (vpcEntity.getName() != null) {
+            vpcConfigBuilder.setName(vpcEntity.getName());
+        }
 
-            Vpc.VpcState.Builder vpcStateBuilder = Vpc.VpcState.newBuilder();
-            vpcStateBuilder.setOperationType(Common.OperationType.INFO);
-            vpcStateBuilder.setConfiguration(vpcConfigBuilder.build());
-            Vpc.VpcState vpcState = vpcStateBuilder.build();
-            unicastGoalState.setVpcId(vpcEntity.getId());
-            unicastGoalState.getGoalStateBuilder().putVpcStates(vpcState.getConfiguration().getId(), vpcState);
+        if (vpcEntity.getCidr() != null) {
+            vpcConfigBuilder.setCidr(vpcEntity.getCidr());
         }
+
+        //set routes here
+
+        Vpc.VpcState.Builder vpcStateBuilder = Vpc.VpcState.newBuilder();
+        vpcStateBuilder.setOperationType(Common.OperationType.INFO);
+        vpcStateBuilder.setConfiguration(vpcConfigBuilder.build());
+        return vpcStateBuilder.build();
     }
 }
@@ -0,0 +1,51 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane;
+
+import com.futurewei.alcor.common.db.ignite.MockIgniteServer;
+import com.futurewei.alcor.dataplane.service.impl.DpmServiceImplV2;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Loads the application context with the default application.properties, pulsar
+ * and goal state version 102, against an embedded ignite server.
+ */
+@SpringBootTest
+public class DataPlaneManagerContextTest {
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @BeforeAll
+    public static void startIgnite() {
+        MockIgniteServer.init();
+    }
+
+    @Test
+    public void contextLoadsTest() {
+        assertEquals(1, applicationContext.getBeansOfType(DpmServiceImplV2.class).size());
+        assertTrue(applicationContext.getBean("grpcDataPlaneClient")
+                instanceof com.futurewei.alcor.dataplane.client.grpc.DataPlaneClientImplV2);
+        assertTrue(applicationContext.getBean("mqDataPlaneClient")
+                instanceof com.futurewei.alcor.dataplane.client.pulsar.vpc_mode.DataPlaneClientImplV2);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.cache;
+
+import com.futurewei.alcor.common.db.CacheException;
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.schema.Neighbor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NeighborCacheTest {
+    // Long enough for the background flusher to never run during a test
+    private static final long FLUSH_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_PENDING = 4;
+
+    /**
+     * Neighbor cache whose putAll can be held until the test releases it.
+     */
+    private static class BlockingCache<K, V> extends MockCache<K, V> {
+        private volatile CountDownLatch entered;
+        private volatile CountDownLatch release;
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> items) throws CacheException {
+            if (release != null) {
+                entered.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.putAll(items);
+        }
+    }
+
+    private BlockingCache<String, Neighbor.NeighborState> neighborStates;
+    private NeighborCache neighborCache;
+
+    @BeforeEach
+    public void setUp() {
+        neighborStates = new BlockingCache<>();
+        CacheFactory cacheFactory = Mockito.mock(CacheFactory.class);
+        Mockito.when(cacheFactory.getCache(Neighbor.NeighborState.class)).thenAnswer(invocation -> neighborStates);
+        neighborCache = new NeighborCache(cacheFactory, FLUSH_INTERVAL, MAX_PENDING);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        neighborStates.release = null;
+        neighborCache.shutdown();
+    }
+
+    private static Neighbor.NeighborState neighborState(String ip, String portId) {
+        return Neighbor.NeighborState.newBuilder()
+                .setConfiguration(Neighbor.NeighborConfiguration.newBuilder()
+                        .setId(portId)
+                        .addFixedIps(Neighbor.NeighborConfiguration.FixedIp.newBuilder().setIpAddress(ip)))
+                .build();
+    }
+
+    @Test
+    public void readBufferedStateTest() throws Exception {
+        Neighbor.NeighborState neighborState = neighborState("10.0.0.1", "port1");
+        neighborCache.setNeighborState(neighborState);
+
+        assertNull(neighborStates.get("10.0.0.1"));
+        assertEquals(neighborState, neighborCache.getNeiborByIP("10.0.0.1"));
+
+        neighborCache.flush();
+        assertEquals(neighborState, neighborStates.get("10.0.0.1"));
+        assertEquals(neighborState, neighborCache.getNeiborByIP("10.0.0.1"));
+    }
+
+    @Test
+    public void flushWhenFullTest() throws Exception {
+        for (int i = 0; i < MAX_PENDING - 1; i++) {
+            neighborCache.setNeighborState(neighborState("10.0.0." + i, "port" + i));
+        }
+        assertEquals(0, neighborStates.size());
+
+        neighborCache.setNeighborState(neighborState("10.0.0.100", "port100"));
+        assertEquals(MAX_PENDING, neighborStates.size());
+    }
+
+    @Test
+    public void replaceDuringFlushTest() throws Exception {
+        Neighbor.NeighborState oldState = neighborState("10.0.0.1", "port1");
+        Neighbor.NeighborState newState = neighborState("10.0.0.1", "port2");
+        neighborCache.setNeighborState(oldState);
+
+        neighborStates.entered = new CountDownLatch(1);
+        neighborStates.release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> flush = executor.submit(() -> {
+                neighborCache.flush();
+                return null;
+            });
+            assertTrue(neighborStates.entered.await(10, TimeUnit.SECONDS));
+
+            // Replaced while the old state is being written
+            neighborCache.setNeighborState(newState);
+            neighborStates.release.countDown();
+            flush.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        neighborStates.release = null;
+
+        assertEquals(oldState, neighborStates.get("10.0.0.1"));
+        assertEquals(newState, neighborCache.getNeiborByIP("10.0.0.1"));
+
+        neighborCache.flush();
+        assertEquals(newState, neighborStates.get("10.0.0.1"));
+    }
+
+    @Test
+    public void flushOnShutdownTest() throws Exception {
+        neighborCache.setNeighborState(neighborState("10.0.0.1", "port1"));
+        neighborCache.setNeighborState(neighborState("10.0.0.2", "port2"));
+        assertEquals(0, neighborStates.size());
+
+        neighborCache.shutdown();
+        assertEquals(2, neighborStates.size());
+    }
+}
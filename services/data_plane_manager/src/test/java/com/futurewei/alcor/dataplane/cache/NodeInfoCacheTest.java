@@ -0,0 +1,166 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.cache;
+
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.ICache;
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.dataplane.exception.NodeInfoNotFound;
+import com.futurewei.alcor.web.changelog.NodeChangeSnapshot;
+import com.futurewei.alcor.web.changelog.NodeInfoReplica;
+import com.futurewei.alcor.web.entity.node.NodeChangeEvent;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+import com.futurewei.alcor.web.entity.node.NodeInfoJson;
+import com.futurewei.alcor.web.restclient.NodeManagerRestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NodeInfoCacheTest {
+    private ICache<String, NodeInfo> nodeInfos;
+    private NodeManagerRestClient nodeManagerRestClient;
+    private NodeInfoCache nodeInfoCache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        nodeInfos = new MockCache<>();
+        CacheFactory cacheFactory = Mockito.mock(CacheFactory.class);
+        Mockito.when(cacheFactory.getCache(Mockito.eq(NodeInfo.class), Mockito.anyString()))
+                .thenAnswer(invocation -> nodeInfos);
+        nodeInfoCache = new NodeInfoCache(cacheFactory, 60);
+
+        nodeManagerRestClient = Mockito.mock(NodeManagerRestClient.class);
+        Mockito.when(nodeManagerRestClient.getNodeInfoByNodeIp(Mockito.anyString())).thenReturn(new ArrayList<>());
+        ReflectionTestUtils.setField(nodeInfoCache, "nodeManagerRestClient", nodeManagerRestClient);
+    }
+
+    private static NodeInfo newNodeInfo(String nodeId, String nodeIp) {
+        return new NodeInfo(nodeId, nodeId, nodeIp, "00:00:00:00:00:01");
+    }
+
+    private static List<String> getNodeIds(List<NodeInfo> nodeInfos) {
+        List<String> nodeIds = new ArrayList<>();
+        nodeInfos.forEach(nodeInfo -> nodeIds.add(nodeInfo.getId()));
+        Collections.sort(nodeIds);
+        return nodeIds;
+    }
+
+    @Test
+    public void loadOnMissThenServeFromIndexTest() throws Exception {
+        // Written through another instance, so only the distributed cache has them
+        nodeInfos.put("node1", newNodeInfo("node1", "10.0.0.1"));
+        nodeInfos.put("node2", newNodeInfo("node2", "10.0.0.1"));
+
+        assertEquals(Arrays.asList("node1", "node2"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1")));
+
+        nodeInfos.remove("node1");
+        nodeInfos.remove("node2");
+        assertEquals(Arrays.asList("node1", "node2"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1")));
+    }
+
+    @Test
+    public void indexOwnWritesTest() throws Exception {
+        nodeInfoCache.addNodeInfo(newNodeInfo("node1", "10.0.0.1"));
+        nodeInfoCache.addNodeInfoBulk(Arrays.asList(newNodeInfo("node2", "10.0.0.1"), newNodeInfo("node3", "10.0.0.3")));
+        assertEquals(Arrays.asList("node1", "node2"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1")));
+
+        // A node moved to another ip leaves the index entry of its old ip
+        nodeInfoCache.updateNodeInfo(newNodeInfo("node1", "10.0.0.3"));
+        assertEquals(Collections.singletonList("node2"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1")));
+        assertEquals(Arrays.asList("node1", "node3"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.3")));
+
+        nodeInfoCache.deleteNodeInfo("node2");
+        assertThrows(NodeInfoNotFound.class, () -> nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1"));
+    }
+
+    @Test
+    public void unindexLoadedNodeTest() throws Exception {
+        nodeInfos.put("node1", newNodeInfo("node1", "10.0.0.1"));
+        assertEquals(1, nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1").size());
+
+        nodeInfoCache.deleteNodeInfo("node1");
+        assertThrows(NodeInfoNotFound.class, () -> nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1"));
+    }
+
+    @Test
+    public void notFoundIsNotIndexedTest() throws Exception {
+        assertThrows(NodeInfoNotFound.class, () -> nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1"));
+
+        // Created through another instance right after the miss
+        nodeInfos.put("node1", newNodeInfo("node1", "10.0.0.1"));
+        assertEquals(Collections.singletonList("node1"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1")));
+    }
+
+    private NodeInfoReplica setReadyReplica(NodeInfo... nodeInfos) {
+        NodeInfoReplica nodeInfoReplica = new NodeInfoReplica();
+        nodeInfoReplica.onSnapshot(new NodeChangeSnapshot(1, Arrays.asList(nodeInfos), Collections.emptyList()));
+        ReflectionTestUtils.setField(nodeInfoCache, "nodeInfoReplica", nodeInfoReplica);
+        return nodeInfoReplica;
+    }
+
+    @Test
+    public void replicaServesLookupsTest() throws Exception {
+        setReadyReplica(newNodeInfo("node1", "10.0.0.1"), newNodeInfo("node2", "10.0.0.1"));
+
+        assertEquals("node1", nodeInfoCache.getNodeInfo("node1").getId());
+        assertEquals(Arrays.asList("node1", "node2"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1")));
+        Mockito.verifyNoInteractions(nodeManagerRestClient);
+    }
+
+    @Test
+    public void deletedNodeIsNotServedFromFallbackTest() throws Exception {
+        // Left in the distributed cache and the local index by an earlier lookup
+        nodeInfos.put("node1", newNodeInfo("node1", "10.0.0.1"));
+        assertEquals(1, nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1").size());
+        Mockito.when(nodeManagerRestClient.getNodeInfo("node1")).thenReturn(new NodeInfoJson());
+
+        NodeInfoReplica nodeInfoReplica = setReadyReplica(newNodeInfo("node1", "10.0.0.1"));
+        nodeInfoReplica.onChange(NodeChangeEvent.nodeDeleted("node1"));
+
+        assertNull(nodeInfoCache.getNodeInfo("node1"));
+        assertThrows(NodeInfoNotFound.class, () -> nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1"));
+    }
+
+    @Test
+    public void replicaMissAsksNodeManagerTest() throws Exception {
+        setReadyReplica();
+        NodeInfo nodeInfo = newNodeInfo("node1", "10.0.0.1");
+        Mockito.when(nodeManagerRestClient.getNodeInfo("node1")).thenReturn(new NodeInfoJson(nodeInfo));
+        Mockito.when(nodeManagerRestClient.getNodeInfoByNodeIp("10.0.0.1")).thenReturn(Collections.singletonList(nodeInfo));
+
+        // Created but not replicated yet
+        assertEquals("node1", nodeInfoCache.getNodeInfo("node1").getId());
+        assertEquals(Collections.singletonList("node1"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1")));
+        assertNull(nodeInfos.get("node1"));
+    }
+
+    @Test
+    public void replicaNotReadyUsesFallbackTest() throws Exception {
+        ReflectionTestUtils.setField(nodeInfoCache, "nodeInfoReplica", new NodeInfoReplica());
+        nodeInfos.put("node1", newNodeInfo("node1", "10.0.0.1"));
+
+        assertEquals("node1", nodeInfoCache.getNodeInfo("node1").getId());
+        assertEquals(Collections.singletonList("node1"), getNodeIds(nodeInfoCache.getNodeInfoByNodeIp("10.0.0.1")));
+    }
+}
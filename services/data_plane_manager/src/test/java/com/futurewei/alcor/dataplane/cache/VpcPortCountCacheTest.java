@@ -0,0 +1,120 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.cache;
+
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.ICache;
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.web.entity.port.PortHostInfo;
+import com.futurewei.alcor.web.entity.subnet.InternalSubnetPorts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VpcPortCountCacheTest {
+    private CacheFactory cacheFactory;
+    private SubnetPortsCacheV2 subnetPortsCache;
+    private PortHostInfoCache portHostInfoCache;
+    private VpcPortCountCache vpcPortCountCache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Transaction transaction = Mockito.mock(Transaction.class);
+        Mockito.when(transaction.start()).thenReturn(transaction);
+        ICache<String, InternalSubnetPorts> subnetPorts = new MockCache<>(transaction);
+        ICache<String, PortHostInfo> portHostInfos = new MockCache<>(transaction);
+        ICache<String, Integer> vpcPortCounts = new MockCache<>(transaction);
+
+        cacheFactory = Mockito.mock(CacheFactory.class);
+        Mockito.when(cacheFactory.getCache(InternalSubnetPorts.class)).thenAnswer(invocation -> subnetPorts);
+        Mockito.when(cacheFactory.getCache(PortHostInfo.class)).thenAnswer(invocation -> portHostInfos);
+        Mockito.when(cacheFactory.getCache(Mockito.eq(Integer.class), Mockito.anyString()))
+                .thenAnswer(invocation -> vpcPortCounts);
+
+        subnetPortsCache = new SubnetPortsCacheV2(cacheFactory);
+        portHostInfoCache = new PortHostInfoCache(cacheFactory);
+        vpcPortCountCache = new VpcPortCountCache(cacheFactory, subnetPortsCache, portHostInfoCache);
+    }
+
+    /**
+     * Put ports the way DpmServiceImplV2.insertPorts does, through the given instance
+     */
+    private void insertPorts(VpcPortCountCache vpcPortCountCache, String vpcId, String subnetId,
+                             String... portIps) throws Exception {
+        InternalSubnetPorts subnet = new InternalSubnetPorts();
+        subnet.setSubnetId(subnetId);
+        subnet.setVpcId(vpcId);
+        Map<String, InternalSubnetPorts> internalSubnetPorts = Collections.singletonMap(subnetId, subnet);
+
+        Map<String, PortHostInfo> portHostInfoMap = new HashMap<>();
+        for (String portIp : portIps) {
+            portHostInfoMap.put(subnetId + "/" + portIp,
+                    new PortHostInfo(portIp, portIp, "86:ea:77:ad:52:55", "node1", "10.0.0.1", subnetId));
+        }
+
+        try (Transaction tx = subnetPortsCache.getTransaction().start()) {
+            subnetPortsCache.updateSubnetPorts(internalSubnetPorts);
+            List<PortHostInfo> addedPorts = portHostInfoCache.updatePortHostInfo(portHostInfoMap);
+            vpcPortCountCache.addPorts(internalSubnetPorts, addedPorts);
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void portsAddedBeforeFirstCountAreCountedOnceTest() throws Exception {
+        insertPorts(vpcPortCountCache, "vpc1", "subnet1", "11.0.0.1", "11.0.0.2", "11.0.0.3");
+        insertPorts(vpcPortCountCache, "vpc1", "subnet2", "11.0.1.1", "11.0.1.2");
+        insertPorts(vpcPortCountCache, "vpc2", "subnet3", "11.0.2.1");
+
+        assertEquals(5, vpcPortCountCache.getVpcPortCount("vpc1"));
+        assertEquals(1, vpcPortCountCache.getVpcPortCount("vpc2"));
+        assertEquals(0, vpcPortCountCache.getVpcPortCount("vpc3"));
+    }
+
+    @Test
+    public void portsAddedAfterFirstCountAreIncrementedTest() throws Exception {
+        insertPorts(vpcPortCountCache, "vpc1", "subnet1", "11.0.0.1", "11.0.0.2");
+        assertEquals(2, vpcPortCountCache.getVpcPortCount("vpc1"));
+
+        insertPorts(vpcPortCountCache, "vpc1", "subnet1", "11.0.0.3");
+        insertPorts(vpcPortCountCache, "vpc1", "subnet2", "11.0.1.1", "11.0.1.2");
+        assertEquals(5, vpcPortCountCache.getVpcPortCount("vpc1"));
+
+        // Ports pushed again are already in the cache
+        insertPorts(vpcPortCountCache, "vpc1", "subnet1", "11.0.0.1", "11.0.0.2", "11.0.0.3");
+        assertEquals(5, vpcPortCountCache.getVpcPortCount("vpc1"));
+    }
+
+    @Test
+    public void portsAddedByAnotherInstanceAreCountedTest() throws Exception {
+        VpcPortCountCache otherInstance = new VpcPortCountCache(cacheFactory, subnetPortsCache, portHostInfoCache);
+        insertPorts(vpcPortCountCache, "vpc1", "subnet1", "11.0.0.1");
+        assertEquals(1, vpcPortCountCache.getVpcPortCount("vpc1"));
+
+        insertPorts(otherInstance, "vpc1", "subnet1", "11.0.0.2", "11.0.0.3");
+
+        assertEquals(3, vpcPortCountCache.getVpcPortCount("vpc1"));
+        assertEquals(3, otherInstance.getVpcPortCount("vpc1"));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.client.grpc;
+
+import com.futurewei.alcor.schema.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GoalStateSplitterTest {
+    private static final int MAX_CHUNK_BYTES = 2048;
+    private static final int HOST_COUNT = 3;
+    private static final int PORTS_PER_HOST = 20;
+    private static final String VPC_ID = "vpc1";
+    private static final String SUBNET_ID = "subnet1";
+    private static final String OVERSIZED_PORT_ID = "oversized-port";
+
+    private static Goalstate.ResourceIdType resource(Common.ResourceType type, String id) {
+        return Goalstate.ResourceIdType.newBuilder().setType(type).setId(id).build();
+    }
+
+    private static Port.PortState portState(String portId, String name) {
+        return Port.PortState.newBuilder()
+                .setOperationType(Common.OperationType.CREATE)
+                .setConfiguration(Port.PortConfiguration.newBuilder()
+                        .setId(portId)
+                        .setName(name)
+                        .setVpcId(VPC_ID)
+                        .addFixedIps(Port.PortConfiguration.FixedIp.newBuilder()
+                                .setSubnetId(SUBNET_ID)
+                                .setIpAddress("11.11.11." + portId.hashCode() % 256)))
+                .build();
+    }
+
+    /**
+     * A goal state for HOST_COUNT hosts sharing one vpc and subnet, each host with its own
+     * ports, plus neighbor states no host refers to.
+     */
+    private static Goalstate.GoalStateV2 buildGoalState(boolean withOversizedState) {
+        Goalstate.GoalStateV2.Builder builder = Goalstate.GoalStateV2.newBuilder()
+                .setFormatVersion(102)
+                .setEndOfBatch(true)
+                .putVpcStates(VPC_ID, Vpc.VpcState.newBuilder()
+                        .setConfiguration(Vpc.VpcConfiguration.newBuilder().setId(VPC_ID)).build())
+                .putSubnetStates(SUBNET_ID, Subnet.SubnetState.newBuilder()
+                        .setConfiguration(Subnet.SubnetConfiguration.newBuilder().setId(SUBNET_ID).setVpcId(VPC_ID)).build());
+
+        for (int host = 0; host < HOST_COUNT; host++) {
+            String hostIp = "10.213.43." + host;
+            Goalstate.HostResources.Builder hostResources = Goalstate.HostResources.newBuilder()
+                    .addResources(resource(Common.ResourceType.VPC, VPC_ID))
+                    .addResources(resource(Common.ResourceType.SUBNET, SUBNET_ID));
+            for (int i = 0; i < PORTS_PER_HOST; i++) {
+                String portId = "port-" + host + "-" + i;
+                builder.putPortStates(portId, portState(portId, "port name " + portId));
+                hostResources.addResources(resource(Common.ResourceType.PORT, portId));
+            }
+
+            if (withOversizedState && host == 0) {
+                char[] name = new char[MAX_CHUNK_BYTES * 2];
+                Arrays.fill(name, 'x');
+                builder.putPortStates(OVERSIZED_PORT_ID, portState(OVERSIZED_PORT_ID, new String(name)));
+                hostResources.addResources(resource(Common.ResourceType.PORT, OVERSIZED_PORT_ID));
+            }
+
+            builder.putHostResources(hostIp, hostResources.build());
+        }
+
+        for (int i = 0; i < PORTS_PER_HOST; i++) {
+            String neighborId = "neighbor-" + i;
+            builder.putNeighborStates(neighborId, Neighbor.NeighborState.newBuilder()
+                    .setConfiguration(Neighbor.NeighborConfiguration.newBuilder()
+                            .setId(neighborId)
+                            .setVpcId(VPC_ID)
+                            .setHostIpAddress("10.213.44." + i))
+                    .build());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Merge chunks the way the receiving network config manager does, every state map is
+     * unioned and the resources of each host are concatenated without duplicates.
+     */
+    private static Goalstate.GoalStateV2 merge(List<Goalstate.GoalStateV2> chunks) {
+        Goalstate.GoalStateV2.Builder builder = Goalstate.GoalStateV2.newBuilder();
+        Map<String, Set<Goalstate.ResourceIdType>> hostResources = new LinkedHashMap<>();
+        for (Goalstate.GoalStateV2 chunk : chunks) {
+            chunk.getHostResourcesMap().forEach((hostIp, resources) ->
+                    hostResources.computeIfAbsent(hostIp, k -> new LinkedHashSet<>()).addAll(resources.getResourcesList()));
+            builder.setFormatVersion(chunk.getFormatVersion())
+                    .putAllVpcStates(chunk.getVpcStatesMap())
+                    .putAllSubnetStates(chunk.getSubnetStatesMap())
+                    .putAllPortStates(chunk.getPortStatesMap())
+                    .putAllNeighborStates(chunk.getNeighborStatesMap());
+        }
+
+        hostResources.forEach((hostIp, resources) ->
+                builder.putHostResources(hostIp, Goalstate.HostResources.newBuilder().addAllResources(resources).build()));
+        return builder.setEndOfBatch(true).build();
+    }
+
+    private static Map<String, Set<Goalstate.ResourceIdType>> hostResourceSets(Goalstate.GoalStateV2 goalState) {
+        Map<String, Set<Goalstate.ResourceIdType>> hostResources = new HashMap<>();
+        goalState.getHostResourcesMap().forEach((hostIp, resources) ->
+                hostResources.put(hostIp, new HashSet<>(resources.getResourcesList())));
+        return hostResources;
+    }
+
+    private static int stateCount(Goalstate.GoalStateV2 goalState) {
+        return goalState.getVpcStatesCount() + goalState.getSubnetStatesCount() +
+                goalState.getPortStatesCount() + goalState.getNeighborStatesCount();
+    }
+
+    private static void assertRoundTrip(Goalstate.GoalStateV2 goalState, List<Goalstate.GoalStateV2> chunks) {
+        Goalstate.GoalStateV2 merged = merge(chunks);
+
+        // The splitter sorts the resources of a host by type, so compare them as sets
+        assertEquals(hostResourceSets(goalState), hostResourceSets(merged));
+        assertEquals(goalState.toBuilder().clearHostResources().build(),
+                merged.toBuilder().clearHostResources().build());
+
+        int states = 0;
+        for (Goalstate.GoalStateV2 chunk : chunks) {
+            states += stateCount(chunk);
+        }
+        assertEquals(stateCount(goalState), states, "every state must be carried by exactly one chunk");
+    }
+
+    private static void assertOnlyLastChunkEndsBatch(List<Goalstate.GoalStateV2> chunks) {
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(i == chunks.size() - 1, chunks.get(i).getEndOfBatch());
+        }
+    }
+
+    @Test
+    public void splitWithinBudgetReturnsGoalStateTest() {
+        Goalstate.GoalStateV2 goalState = buildGoalState(false);
+
+        List<Goalstate.GoalStateV2> chunks = GoalStateSplitter.split(goalState, goalState.getSerializedSize());
+
+        assertEquals(1, chunks.size());
+        assertSame(goalState, chunks.get(0));
+    }
+
+    @Test
+    public void splitThenMergeReturnsGoalStateTest() {
+        Goalstate.GoalStateV2 goalState = buildGoalState(false);
+
+        List<Goalstate.GoalStateV2> chunks = GoalStateSplitter.split(goalState, MAX_CHUNK_BYTES);
+
+        assertTrue(chunks.size() > 1);
+        for (Goalstate.GoalStateV2 chunk : chunks) {
+            assertTrue(chunk.getSerializedSize() <= MAX_CHUNK_BYTES,
+                    "chunk of " + chunk.getSerializedSize() + " bytes is over budget");
+            assertEquals(goalState.getFormatVersion(), chunk.getFormatVersion());
+        }
+        assertOnlyLastChunkEndsBatch(chunks);
+        assertRoundTrip(goalState, chunks);
+    }
+
+    @Test
+    public void splitPutsOversizedStateInItsOwnChunkTest() {
+        Goalstate.GoalStateV2 goalState = buildGoalState(true);
+
+        List<Goalstate.GoalStateV2> chunks = GoalStateSplitter.split(goalState, MAX_CHUNK_BYTES);
+
+        int oversizedChunks = 0;
+        for (Goalstate.GoalStateV2 chunk : chunks) {
+            if (chunk.getSerializedSize() <= MAX_CHUNK_BYTES) {
+                continue;
+            }
+
+            oversizedChunks++;
+            assertEquals(1, stateCount(chunk));
+            assertTrue(chunk.getPortStatesMap().containsKey(OVERSIZED_PORT_ID));
+        }
+        assertEquals(1, oversizedChunks);
+        assertOnlyLastChunkEndsBatch(chunks);
+        assertRoundTrip(goalState, chunks);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.client.kafka;
+
+import com.futurewei.alcor.dataplane.entity.MulticastGoalStateV2;
+import com.futurewei.alcor.dataplane.entity.UnicastGoalStateV2;
+import com.futurewei.alcor.schema.Goalstate.GoalStateV2;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+public class DataPlaneClientImplV2Test {
+    private static final String UNICAST_TOPIC = "goal-state";
+    private static final String MULTICAST_TOPIC = "goal-state-multicast";
+    private static final String HOST_IP1 = "10.0.0.1";
+    private static final String HOST_IP2 = "10.0.0.2";
+
+    private static EmbeddedKafkaBroker broker;
+    private static Producer<String, byte[]> producer;
+    private static DataPlaneClientImplV2 dataPlaneClient;
+
+    @BeforeAll
+    public static void setUp() {
+        broker = new EmbeddedKafkaBroker(1, true, 4, UNICAST_TOPIC, MULTICAST_TOPIC);
+        broker.afterPropertiesSet();
+
+        producer = new KafkaProducer<>(KafkaConfiguration.producerConfigs(
+                broker.getBrokersAsString(), "lz4", 5, 65536));
+        dataPlaneClient = new DataPlaneClientImplV2(producer, UNICAST_TOPIC, MULTICAST_TOPIC);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        producer.close();
+        broker.destroy();
+    }
+
+    private Consumer<String, byte[]> createConsumer(String topic) {
+        Map<String, Object> configs = KafkaTestUtils.consumerProps(topic + "-group", "false", broker);
+        Consumer<String, byte[]> consumer = new KafkaConsumer<>(configs,
+                new StringDeserializer(), new ByteArrayDeserializer());
+        List<TopicPartition> partitions = new ArrayList<>();
+        consumer.partitionsFor(topic).forEach(p -> partitions.add(new TopicPartition(topic, p.partition())));
+        consumer.assign(partitions);
+        consumer.seekToBeginning(partitions);
+        return consumer;
+    }
+
+    private List<ConsumerRecord<String, byte[]>> poll(Consumer<String, byte[]> consumer, int count) {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (records.size() < count && System.currentTimeMillis() < deadline) {
+            ConsumerRecords<String, byte[]> polled = consumer.poll(Duration.ofMillis(100));
+            polled.forEach(records::add);
+        }
+
+        return records;
+    }
+
+    private GoalStateV2 buildGoalState(int formatVersion) {
+        return GoalStateV2.newBuilder().setFormatVersion(formatVersion).build();
+    }
+
+    @Test
+    public void sendUnicastGoalStatesTest() throws Exception {
+        List<UnicastGoalStateV2> unicastGoalStates = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            unicastGoalStates.add(new UnicastGoalStateV2(i % 2 == 0 ? HOST_IP1 : HOST_IP2, buildGoalState(i)));
+        }
+
+        try (Consumer<String, byte[]> consumer = createConsumer(UNICAST_TOPIC)) {
+            Assert.assertTrue(dataPlaneClient.sendGoalStates(unicastGoalStates).isEmpty());
+
+            List<ConsumerRecord<String, byte[]>> records = poll(consumer, 10);
+            Assert.assertEquals(10, records.size());
+
+            // All goal states of a host are in one partition, in the order they were sent
+            Map<String, Integer> partitions = new HashMap<>();
+            Map<String, Integer> lastVersions = new HashMap<>();
+            for (ConsumerRecord<String, byte[]> record : records) {
+                Assert.assertEquals(record.partition(),
+                        (int) partitions.computeIfAbsent(record.key(), k -> record.partition()));
+
+                int version = GoalStateV2.parseFrom(record.value()).getFormatVersion();
+                Assert.assertTrue(version > lastVersions.getOrDefault(record.key(), 0));
+                lastVersions.put(record.key(), version);
+            }
+        }
+    }
+
+    @Test
+    public void sendMulticastGoalStateTest() throws Exception {
+        MulticastGoalStateV2 multicastGoalState = new MulticastGoalStateV2(buildGoalState(100));
+        multicastGoalState.addHostVpcPair(HOST_IP1, "vpc1");
+        multicastGoalState.addHostVpcPair(HOST_IP2, "vpc1");
+
+        try (Consumer<String, byte[]> consumer = createConsumer(MULTICAST_TOPIC)) {
+            Assert.assertTrue(dataPlaneClient.sendGoalStates(new ArrayList<>(), multicastGoalState).isEmpty());
+
+            // Written once for all of its hosts
+            List<ConsumerRecord<String, byte[]>> records = poll(consumer, 2);
+            Assert.assertEquals(1, records.size());
+
+            ConsumerRecord<String, byte[]> record = records.get(0);
+            Assert.assertEquals(100, GoalStateV2.parseFrom(record.value()).getFormatVersion());
+            String hostIps = new String(record.headers().lastHeader(DataPlaneClientImplV2.HOST_IPS_HEADER).value(),
+                    StandardCharsets.UTF_8);
+            Assert.assertEquals(new HashSet<>(Arrays.asList(HOST_IP1, HOST_IP2)),
+                    new HashSet<>(Arrays.asList(hostIps.split(","))));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.client.pulsar;
+
+import org.apache.pulsar.client.api.BatcherBuilder;
+import org.apache.pulsar.client.api.HashingScheme;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerBuilder;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ProducerCacheTest {
+    private static final long IDLE_TIMEOUT_MS = 20;
+
+    private PulsarClient pulsarClient;
+    private ProducerBuilder<byte[]> producerBuilder;
+    private final Map<String, Producer<byte[]>> topicProducers = new HashMap<>();
+    private final Map<String, CompletableFuture<MessageId>> pendingSends = new HashMap<>();
+    private final Map<String, TypedMessageBuilder<byte[]>> messageBuilders = new HashMap<>();
+    private ProducerCache<byte[]> producerCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        pulsarClient = mock(PulsarClient.class);
+        producerBuilder = mock(ProducerBuilder.class, RETURNS_SELF);
+        when(pulsarClient.newProducer(Schema.BYTES)).thenReturn(producerBuilder);
+
+        String[] topic = new String[1];
+        when(producerBuilder.topic(anyString())).thenAnswer(invocation -> {
+            topic[0] = invocation.getArgument(0);
+            return producerBuilder;
+        });
+        when(producerBuilder.createAsync()).thenAnswer(invocation -> {
+            Producer<byte[]> producer = mock(Producer.class);
+            String producerTopic = topic[0];
+            when(producer.sendAsync(any())).thenAnswer(send -> {
+                CompletableFuture<MessageId> future = new CompletableFuture<>();
+                pendingSends.put(producerTopic, future);
+                return future;
+            });
+            when(producer.closeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+            TypedMessageBuilder<byte[]> messageBuilder = mock(TypedMessageBuilder.class, RETURNS_SELF);
+            when(messageBuilder.sendAsync()).thenReturn(CompletableFuture.completedFuture(MessageId.earliest));
+            when(producer.newMessage()).thenReturn(messageBuilder);
+            messageBuilders.put(producerTopic, messageBuilder);
+            topicProducers.put(producerTopic, producer);
+            return CompletableFuture.completedFuture(producer);
+        });
+
+        producerCache = new ProducerCache<>(pulsarClient, Schema.BYTES, 1000, IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void waitIdle() throws InterruptedException {
+        Thread.sleep(IDLE_TIMEOUT_MS * 2);
+    }
+
+    @Test
+    public void reuseProducerOfTopicTest() {
+        producerCache.sendAsync("topic1", new byte[1]);
+        producerCache.sendAsync("topic1", new byte[1]);
+        producerCache.sendAsync("topic2", new byte[1]);
+
+        verify(producerBuilder, times(2)).createAsync();
+        verify(topicProducers.get("topic1"), times(2)).sendAsync(any());
+    }
+
+    @Test
+    public void keepProducerWithSendInFlightTest() throws Exception {
+        CompletableFuture<MessageId> result = producerCache.sendAsync("topic1", new byte[1]);
+        Producer<byte[]> producer = topicProducers.get("topic1");
+
+        // topic1 is idle for longer than the timeout, but its send has not completed
+        waitIdle();
+        producerCache.sendAsync("topic2", new byte[1]);
+        verify(producer, never()).closeAsync();
+
+        pendingSends.get("topic1").complete(MessageId.earliest);
+        assertEquals(MessageId.earliest, result.get());
+
+        waitIdle();
+        producerCache.sendAsync("topic2", new byte[1]);
+        verify(producer, times(1)).closeAsync();
+
+        // The next send to topic1 gets a new producer instead of the closed one
+        producerCache.sendAsync("topic1", new byte[1]);
+        assertTrue(topicProducers.get("topic1") != producer);
+        verify(producer, times(1)).sendAsync(any());
+    }
+
+    @Test
+    public void sendWithKeyTest() throws Exception {
+        ProducerCache<byte[]> keyedProducerCache = new ProducerCache<>(pulsarClient, Schema.BYTES,
+                BatcherBuilder.KEY_BASED, HashingScheme.Murmur3_32Hash, 1000, IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        byte[] value = new byte[1];
+
+        assertEquals(MessageId.earliest, keyedProducerCache.sendAsync("topic1", "key1", value).get());
+        verify(producerBuilder).batcherBuilder(BatcherBuilder.KEY_BASED);
+        verify(producerBuilder).hashingScheme(HashingScheme.Murmur3_32Hash);
+        verify(messageBuilders.get("topic1")).key("key1");
+        verify(messageBuilders.get("topic1")).value(value);
+        verify(topicProducers.get("topic1"), never()).sendAsync(any());
+    }
+
+    @Test
+    public void recreateFailedProducerTest() {
+        when(producerBuilder.createAsync()).thenReturn(failedFuture(new IllegalStateException("broker down")));
+        CompletableFuture<MessageId> result = producerCache.sendAsync("topic1", new byte[1]);
+        assertTrue(result.isCompletedExceptionally());
+
+        producerCache.sendAsync("topic1", new byte[1]);
+        verify(producerBuilder, times(2)).createAsync();
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+}
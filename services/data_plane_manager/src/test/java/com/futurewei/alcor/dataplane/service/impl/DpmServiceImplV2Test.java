@@ -0,0 +1,214 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.service.impl;
+
+import com.futurewei.alcor.dataplane.client.DataPlaneClient;
+import com.futurewei.alcor.dataplane.config.Config;
+import com.futurewei.alcor.dataplane.entity.MulticastGoalStateV2;
+import com.futurewei.alcor.dataplane.entity.UnicastGoalStateV2;
+import com.futurewei.alcor.schema.Common;
+import com.futurewei.alcor.schema.Goalstate;
+import com.futurewei.alcor.schema.Neighbor;
+import com.futurewei.alcor.schema.Port;
+import com.futurewei.alcor.web.entity.dataplane.InternalPortEntity;
+import com.futurewei.alcor.web.entity.dataplane.v2.NetworkConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DpmServiceImplV2Test {
+    private DpmServiceImplV2 dpmService;
+    private DataPlaneClient<UnicastGoalStateV2, MulticastGoalStateV2> dataPlaneClient;
+
+    // thread name => hosts built on it
+    private final Map<String, Set<String>> buildThreads = new ConcurrentHashMap<>();
+
+    private static Goalstate.ResourceIdType resource(Common.ResourceType type, String id) {
+        return Goalstate.ResourceIdType.newBuilder().setType(type).setId(id).build();
+    }
+
+    private static MulticastGoalStateV2 multicastGoalState(String hostIp, String vpcId,
+                                                           Goalstate.ResourceIdType... resources) throws Exception {
+        MulticastGoalStateV2 multicastGoalState = new MulticastGoalStateV2();
+        multicastGoalState.getGoalStateBuilder().putHostResources(hostIp,
+                Goalstate.HostResources.newBuilder().addAllResources(Arrays.asList(resources)).build());
+        for (Goalstate.ResourceIdType resource : resources) {
+            if (resource.getType() == Common.ResourceType.NEIGHBOR) {
+                multicastGoalState.getGoalStateBuilder().putNeighborStates(resource.getId(),
+                        Neighbor.NeighborState.newBuilder()
+                                .setConfiguration(Neighbor.NeighborConfiguration.newBuilder().setId(resource.getId()))
+                                .build());
+            }
+        }
+        multicastGoalState.addHostVpcPair(hostIp, vpcId);
+        return multicastGoalState;
+    }
+
+    /**
+     * A DpmServiceImplV2 whose port service writes one port state per port entity, and whose
+     * neighbor service adds a neighbor of every port to the multicast goal state of the host.
+     */
+    @SuppressWarnings("unchecked")
+    private void setUp(int threads, int queueSize, CyclicBarrier barrier) throws Exception {
+        Config config = new Config();
+        config.goalStateMessageVersion = 102;
+        config.goalStateBuildThreads = threads;
+        config.goalStateBuildQueueSize = queueSize;
+        dpmService = new DpmServiceImplV2(config);
+
+        PortService portService = Mockito.mock(PortService.class);
+        Mockito.doAnswer(invocation -> {
+            List<InternalPortEntity> portEntities = invocation.getArgument(1);
+            UnicastGoalStateV2 unicastGoalState = invocation.getArgument(2);
+            buildThreads.computeIfAbsent(Thread.currentThread().getName(), k -> ConcurrentHashMap.newKeySet())
+                    .add(unicastGoalState.getHostIp());
+            if (barrier != null) {
+                barrier.await(10, TimeUnit.SECONDS);
+            }
+            for (InternalPortEntity portEntity : portEntities) {
+                unicastGoalState.getGoalStateBuilder().putPortStates(portEntity.getId(), Port.PortState.newBuilder()
+                        .setConfiguration(Port.PortConfiguration.newBuilder().setId(portEntity.getId()))
+                        .build());
+            }
+            return null;
+        }).when(portService).buildPortState(Mockito.any(), Mockito.anyList(), Mockito.any(UnicastGoalStateV2.class));
+
+        NeighborService neighborService = Mockito.mock(NeighborService.class);
+        Mockito.doAnswer(invocation -> {
+            UnicastGoalStateV2 unicastGoalState = invocation.getArgument(0);
+            MulticastGoalStateV2 hostMulticastGoalState = invocation.getArgument(1);
+            MulticastGoalStateV2 neighbors = multicastGoalState(unicastGoalState.getHostIp(), "vpc1",
+                    unicastGoalState.getGoalStateBuilder().getPortStatesMap().keySet().stream()
+                            .map(portId -> resource(Common.ResourceType.NEIGHBOR, portId + "_n"))
+                            .toArray(Goalstate.ResourceIdType[]::new));
+            DpmServiceImplV2.mergeMulticastGoalState(hostMulticastGoalState, neighbors);
+            return null;
+        }).when(neighborService).buildNeighborStatesL2(Mockito.any(), Mockito.any(), Mockito.any());
+
+        ReflectionTestUtils.setField(dpmService, "portService", portService);
+        ReflectionTestUtils.setField(dpmService, "neighborService", neighborService);
+        ReflectionTestUtils.setField(dpmService, "vpcService", Mockito.mock(VpcService.class));
+        ReflectionTestUtils.setField(dpmService, "subnetService", Mockito.mock(SubnetService.class));
+        ReflectionTestUtils.setField(dpmService, "securityGroupService", Mockito.mock(SecurityGroupService.class));
+        ReflectionTestUtils.setField(dpmService, "dhcpService", Mockito.mock(DhcpService.class));
+        ReflectionTestUtils.setField(dpmService, "routerService", Mockito.mock(RouterService.class));
+
+        dataPlaneClient = Mockito.mock(DataPlaneClient.class);
+        Mockito.when(dataPlaneClient.sendGoalStates(Mockito.anyList(), Mockito.any(MulticastGoalStateV2.class)))
+                .thenReturn(new ArrayList<>());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (dpmService != null) {
+            dpmService.shutdown();
+        }
+    }
+
+    private static Map<String, List<InternalPortEntity>> buildHostPortEntities(int hosts, int portsPerHost) {
+        Map<String, List<InternalPortEntity>> hostPortEntities = new LinkedHashMap<>();
+        for (int i = 0; i < hosts; i++) {
+            List<InternalPortEntity> portEntities = new ArrayList<>();
+            for (int j = 0; j < portsPerHost; j++) {
+                InternalPortEntity portEntity = new InternalPortEntity();
+                portEntity.setId("port" + i + "-" + j);
+                portEntities.add(portEntity);
+            }
+            hostPortEntities.put("10.0.0." + i, portEntities);
+        }
+        return hostPortEntities;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertGoalStatesSent(Map<String, List<InternalPortEntity>> hostPortEntities) throws Exception {
+        ArgumentCaptor<List<UnicastGoalStateV2>> unicastCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<MulticastGoalStateV2> multicastCaptor = ArgumentCaptor.forClass(MulticastGoalStateV2.class);
+        Mockito.verify(dataPlaneClient).sendGoalStates(unicastCaptor.capture(), multicastCaptor.capture());
+
+        List<UnicastGoalStateV2> unicastGoalStates = unicastCaptor.getValue();
+        assertEquals(hostPortEntities.size(), unicastGoalStates.size());
+        Goalstate.GoalStateV2 multicastGoalState = multicastCaptor.getValue().getGoalState();
+        for (UnicastGoalStateV2 unicastGoalState : unicastGoalStates) {
+            String hostIp = unicastGoalState.getHostIp();
+            List<InternalPortEntity> portEntities = hostPortEntities.get(hostIp);
+            assertNotNull(portEntities);
+            assertEquals(portEntities.size(), unicastGoalState.getGoalState().getPortStatesCount());
+            assertEquals(portEntities.size(), multicastGoalState.getHostResourcesOrThrow(hostIp).getResourcesCount());
+            assertEquals(Collections.singleton("vpc1"), multicastCaptor.getValue().getHostVpcMap().get(hostIp));
+        }
+        assertEquals(hostPortEntities.values().stream().mapToInt(List::size).sum(),
+                multicastGoalState.getNeighborStatesCount());
+    }
+
+    @Test
+    public void mergeMulticastGoalStateTest() throws Exception {
+        MulticastGoalStateV2 multicastGoalState = multicastGoalState("10.0.0.1", "vpc1",
+                resource(Common.ResourceType.NEIGHBOR, "n1"),
+                resource(Common.ResourceType.NEIGHBOR, "n2"));
+        DpmServiceImplV2.mergeMulticastGoalState(multicastGoalState, multicastGoalState("10.0.0.1", "vpc2",
+                resource(Common.ResourceType.NEIGHBOR, "n2"),
+                resource(Common.ResourceType.NEIGHBOR, "n3")));
+        DpmServiceImplV2.mergeMulticastGoalState(multicastGoalState, multicastGoalState("10.0.0.2", "vpc1",
+                resource(Common.ResourceType.NEIGHBOR, "n1")));
+
+        Goalstate.GoalStateV2 goalState = multicastGoalState.getGoalStateBuilder().build();
+        // The resources of a host are united without duplicates, in first seen order
+        assertEquals(Arrays.asList(resource(Common.ResourceType.NEIGHBOR, "n1"),
+                resource(Common.ResourceType.NEIGHBOR, "n2"),
+                resource(Common.ResourceType.NEIGHBOR, "n3")),
+                goalState.getHostResourcesOrThrow("10.0.0.1").getResourcesList());
+        assertEquals(Collections.singletonList(resource(Common.ResourceType.NEIGHBOR, "n1")),
+                goalState.getHostResourcesOrThrow("10.0.0.2").getResourcesList());
+        assertEquals(new HashSet<>(Arrays.asList("n1", "n2", "n3")), goalState.getNeighborStatesMap().keySet());
+        assertEquals(new HashSet<>(Arrays.asList("vpc1", "vpc2")), multicastGoalState.getHostVpcMap().get("10.0.0.1"));
+        assertEquals(Collections.singleton("vpc1"), multicastGoalState.getHostVpcMap().get("10.0.0.2"));
+    }
+
+    @Test
+    public void buildUnicastGoalStatesInParallelTest() throws Exception {
+        int hosts = 4;
+        // Every build waits for all the others, so this only completes if all hosts are built at once
+        setUp(hosts, 16, new CyclicBarrier(hosts));
+        Map<String, List<InternalPortEntity>> hostPortEntities = buildHostPortEntities(hosts, 3);
+
+        ReflectionTestUtils.invokeMethod(dpmService, "doCreatePortConfiguration",
+                new NetworkConfiguration(), hostPortEntities, dataPlaneClient);
+
+        assertEquals(hosts, buildThreads.size());
+        assertGoalStatesSent(hostPortEntities);
+    }
+
+    @Test
+    public void buildOnCallerWhenQueueFullTest() throws Exception {
+        setUp(1, 1, null);
+        Map<String, List<InternalPortEntity>> hostPortEntities = buildHostPortEntities(32, 2);
+
+        ReflectionTestUtils.invokeMethod(dpmService, "doCreatePortConfiguration",
+                new NetworkConfiguration(), hostPortEntities, dataPlaneClient);
+
+        assertTrue(buildThreads.containsKey(Thread.currentThread().getName()));
+        assertGoalStatesSent(hostPortEntities);
+    }
+}
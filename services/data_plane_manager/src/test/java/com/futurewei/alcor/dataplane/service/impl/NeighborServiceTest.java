@@ -0,0 +1,158 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.service.impl;
+
+import com.futurewei.alcor.dataplane.cache.NeighborCache;
+import com.futurewei.alcor.dataplane.entity.MulticastGoalStateV2;
+import com.futurewei.alcor.dataplane.entity.UnicastGoalStateV2;
+import com.futurewei.alcor.schema.Common;
+import com.futurewei.alcor.schema.Port;
+import com.futurewei.alcor.web.entity.dataplane.NeighborEntry;
+import com.futurewei.alcor.web.entity.dataplane.NeighborInfo;
+import com.futurewei.alcor.web.entity.dataplane.v2.NetworkConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NeighborServiceTest {
+    private static final String VPC_ID = "vpc1";
+    private static final String SUBNET_ID = "subnet1";
+    private static final String LOCAL_HOST_IP = "10.213.43.187";
+    private static final String REMOTE_HOST_IP = "10.213.43.188";
+    private static final int LOCAL_PORT_COUNT = 2;
+    private static final int REMOTE_PORT_COUNT = 3;
+
+    private NeighborService neighborService;
+    private Map<String, NeighborInfo> neighborInfos;
+    private UnicastGoalStateV2 unicastGoalState;
+    private MulticastGoalStateV2 multicastGoalState;
+
+    private static String portId(String hostIp, int i) {
+        return (LOCAL_HOST_IP.equals(hostIp) ? "local-port" : "remote-port") + i;
+    }
+
+    private static String portIp(String hostIp, int i) {
+        return (LOCAL_HOST_IP.equals(hostIp) ? "11.11.11." : "11.11.12.") + i;
+    }
+
+    private void addNeighborInfos(String hostIp, int count) {
+        for (int i = 0; i < count; i++) {
+            String mac = String.format("86:ea:77:ad:%s:%02x", LOCAL_HOST_IP.equals(hostIp) ? "52" : "53", i);
+            neighborInfos.put(portIp(hostIp, i), new NeighborInfo(hostIp, hostIp,
+                    portId(hostIp, i), mac, portIp(hostIp, i), VPC_ID, SUBNET_ID));
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        neighborService = new NeighborService();
+        ReflectionTestUtils.setField(neighborService, "neighborCache", Mockito.mock(NeighborCache.class));
+
+        neighborInfos = new HashMap<>();
+        addNeighborInfos(LOCAL_HOST_IP, LOCAL_PORT_COUNT);
+        addNeighborInfos(REMOTE_HOST_IP, REMOTE_PORT_COUNT);
+
+        unicastGoalState = new UnicastGoalStateV2();
+        unicastGoalState.setHostIp(LOCAL_HOST_IP);
+        for (int i = 0; i < LOCAL_PORT_COUNT; i++) {
+            Port.PortConfiguration portConfiguration = Port.PortConfiguration.newBuilder()
+                    .setId(portId(LOCAL_HOST_IP, i))
+                    .setVpcId(VPC_ID)
+                    .addFixedIps(Port.PortConfiguration.FixedIp.newBuilder()
+                            .setSubnetId(SUBNET_ID)
+                            .setIpAddress(portIp(LOCAL_HOST_IP, i))
+                            .build())
+                    .build();
+            unicastGoalState.getGoalStateBuilder().putPortStates(portConfiguration.getId(),
+                    Port.PortState.newBuilder().setConfiguration(portConfiguration).build());
+        }
+
+        multicastGoalState = new MulticastGoalStateV2();
+    }
+
+    private NetworkConfiguration buildNetworkConfig() {
+        NetworkConfiguration networkConfig = new NetworkConfiguration();
+        networkConfig.setOpType(Common.OperationType.CREATE);
+        networkConfig.setNeighborInfos(neighborInfos);
+        return networkConfig;
+    }
+
+    private void assertNeighborStates() {
+        Set<String> remotePortIds = new HashSet<>();
+        for (int i = 0; i < REMOTE_PORT_COUNT; i++) {
+            remotePortIds.add(portId(REMOTE_HOST_IP, i));
+        }
+
+        Set<String> localPortIds = new HashSet<>();
+        for (int i = 0; i < LOCAL_PORT_COUNT; i++) {
+            localPortIds.add(portId(LOCAL_HOST_IP, i));
+        }
+
+        assertEquals(remotePortIds, unicastGoalState.getGoalStateBuilder().getNeighborStatesMap().keySet());
+        assertEquals(localPortIds, multicastGoalState.getGoalStateBuilder().getNeighborStatesMap().keySet());
+        assertEquals(Collections.singleton(REMOTE_HOST_IP), multicastGoalState.getHostIps());
+    }
+
+    @Test
+    public void buildNeighborStatesFromL2NeighborSetsTest() throws Exception {
+        NetworkConfiguration networkConfig = buildNetworkConfig();
+        networkConfig.setL2NeighborSets(Collections.singletonMap(SUBNET_ID, new HashSet<>(neighborInfos.keySet())));
+
+        neighborService.buildNeighborStates(networkConfig, LOCAL_HOST_IP, unicastGoalState, multicastGoalState);
+
+        assertNeighborStates();
+    }
+
+    @Test
+    public void buildNeighborStatesFromLegacyNeighborTableTest() throws Exception {
+        Map<String, List<NeighborEntry>> neighborTable = new HashMap<>();
+        for (int i = 0; i < LOCAL_PORT_COUNT; i++) {
+            String localIp = portIp(LOCAL_HOST_IP, i);
+            List<NeighborEntry> neighborEntries = new ArrayList<>();
+            for (String neighborIp : neighborInfos.keySet()) {
+                if (!neighborIp.equals(localIp)) {
+                    neighborEntries.add(new NeighborEntry(NeighborEntry.NeighborType.L2, localIp, neighborIp));
+                }
+            }
+            neighborTable.put(localIp, neighborEntries);
+        }
+
+        NetworkConfiguration networkConfig = buildNetworkConfig();
+        networkConfig.setNeighborTable(neighborTable);
+
+        neighborService.buildNeighborStates(networkConfig, LOCAL_HOST_IP, unicastGoalState, multicastGoalState);
+
+        assertNeighborStates();
+    }
+
+    @Test
+    public void buildNeighborStatesWithoutRemoteNeighborsTest() throws Exception {
+        neighborInfos.keySet().removeIf(ip -> REMOTE_HOST_IP.equals(neighborInfos.get(ip).getHostIp()));
+        NetworkConfiguration networkConfig = buildNetworkConfig();
+        networkConfig.setL2NeighborSets(Collections.singletonMap(SUBNET_ID, new HashSet<>(neighborInfos.keySet())));
+
+        neighborService.buildNeighborStates(networkConfig, LOCAL_HOST_IP, unicastGoalState, multicastGoalState);
+
+        assertEquals(0, unicastGoalState.getGoalStateBuilder().getNeighborStatesCount());
+        assertEquals(0, multicastGoalState.getGoalStateBuilder().getNeighborStatesCount());
+        assertTrue(multicastGoalState.getHostIps().isEmpty());
+    }
+}
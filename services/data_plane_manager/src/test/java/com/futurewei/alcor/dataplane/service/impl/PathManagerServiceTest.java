@@ -0,0 +1,105 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.dataplane.service.impl;
+
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.dataplane.cache.VpcPathCache;
+import com.futurewei.alcor.dataplane.cache.VpcPortCountCache;
+import com.futurewei.alcor.web.entity.port.PortEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathManagerServiceTest {
+    private static final int UPPER_VPC_SIZE = 100;
+    private static final int LOWER_VPC_SIZE = 50;
+    private static final boolean GRPC = true;
+    private static final boolean MQ = false;
+
+    private VpcPortCountCache vpcPortCountCache;
+    private VpcPathCache vpcPathCache;
+    private PathManagerService pathManagerService;
+
+    private PathManagerService newPathManagerService() {
+        PathManagerService pathManagerService = new PathManagerService();
+        ReflectionTestUtils.setField(pathManagerService, "vpcPortCountCache", vpcPortCountCache);
+        ReflectionTestUtils.setField(pathManagerService, "vpcPathCache", vpcPathCache);
+        ReflectionTestUtils.setField(pathManagerService, "PATH_MODE", "AUTO");
+        ReflectionTestUtils.setField(pathManagerService, "UPPER_VPC_SIZE", UPPER_VPC_SIZE);
+        ReflectionTestUtils.setField(pathManagerService, "LOWER_VPC_SIZE", LOWER_VPC_SIZE);
+        return pathManagerService;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        CacheFactory cacheFactory = Mockito.mock(CacheFactory.class);
+        MockCache<String, Boolean> vpcPaths = new MockCache<>();
+        Mockito.when(cacheFactory.getCache(Boolean.class)).thenAnswer(invocation -> vpcPaths);
+        vpcPathCache = new VpcPathCache(cacheFactory);
+        vpcPortCountCache = Mockito.mock(VpcPortCountCache.class);
+        pathManagerService = newPathManagerService();
+    }
+
+    private boolean isFastPath(PathManagerService pathManagerService, String vpcId, int numberOfPorts) throws Exception {
+        Mockito.when(vpcPortCountCache.getVpcPortCount(vpcId)).thenReturn(numberOfPorts);
+        PortEntity portEntity = new PortEntity();
+        portEntity.setVpcId(vpcId);
+        return pathManagerService.isFastPath(portEntity);
+    }
+
+    @Test
+    public void newVpcPathBySizeTest() throws Exception {
+        assertEquals(GRPC, isFastPath(pathManagerService, "vpc1", UPPER_VPC_SIZE));
+        assertEquals(MQ, isFastPath(pathManagerService, "vpc2", UPPER_VPC_SIZE + 1));
+        assertEquals(GRPC, vpcPathCache.getCurrentPathByVpcId("vpc1"));
+        assertEquals(MQ, vpcPathCache.getCurrentPathByVpcId("vpc2"));
+    }
+
+    @Test
+    public void switchPathWithHysteresisTest() throws Exception {
+        assertEquals(GRPC, isFastPath(pathManagerService, "vpc1", 10));
+        assertEquals(GRPC, isFastPath(pathManagerService, "vpc1", UPPER_VPC_SIZE));
+        assertEquals(MQ, isFastPath(pathManagerService, "vpc1", UPPER_VPC_SIZE + 1));
+
+        // Between the bounds the vpc stays on its current path
+        assertEquals(MQ, isFastPath(pathManagerService, "vpc1", UPPER_VPC_SIZE));
+        assertEquals(MQ, isFastPath(pathManagerService, "vpc1", LOWER_VPC_SIZE));
+        assertEquals(GRPC, isFastPath(pathManagerService, "vpc1", LOWER_VPC_SIZE - 1));
+        assertEquals(GRPC, isFastPath(pathManagerService, "vpc1", UPPER_VPC_SIZE));
+    }
+
+    @Test
+    public void pathSwitchedByAnotherInstanceTest() throws Exception {
+        PathManagerService otherInstance = newPathManagerService();
+        assertEquals(GRPC, isFastPath(pathManagerService, "vpc1", LOWER_VPC_SIZE));
+        assertEquals(MQ, isFastPath(otherInstance, "vpc1", UPPER_VPC_SIZE + 1));
+
+        // The path switched by the other instance is kept until the vpc shrinks below the lower bound
+        assertEquals(MQ, isFastPath(pathManagerService, "vpc1", LOWER_VPC_SIZE));
+    }
+
+    @Test
+    public void fixedPathModeTest() throws Exception {
+        ReflectionTestUtils.setField(pathManagerService, "PATH_MODE", "GRPC");
+        assertEquals(GRPC, isFastPath(pathManagerService, "vpc1", UPPER_VPC_SIZE + 1));
+        ReflectionTestUtils.setField(pathManagerService, "PATH_MODE", "MQ");
+        assertEquals(MQ, isFastPath(pathManagerService, "vpc1", 0));
+    }
+}
@@ -17,7 +17,8 @@ package com.futurewei.alcor.macmanager.service.implement;
 
 import com.futurewei.alcor.common.db.CacheException;
 import com.futurewei.alcor.common.db.ICacheFactory;
-import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.common.db.TransactionConflictException;
+import com.futurewei.alcor.common.db.TransactionRetry;
 import com.futurewei.alcor.common.exception.DistributedLockException;
 import com.futurewei.alcor.common.exception.ParameterNullOrEmptyException;
 import com.futurewei.alcor.common.exception.ParameterUnexpectedValueException;
@@ -159,14 +160,19 @@ public class MacServiceImpl implements MacService {
             MacRange range = ensureRange(rangeId);
             final String realRangeId = range.getRangeId();
 
-            boolean flag = false;
-            try(Transaction tx = iCacheFactory.getTransaction().start()) {
-                while (!flag) {
-                    String mac = macPoolApi.allocate(oui, range);
-                    macState.setMacAddress(mac);
-                    flag = trySaveMac(realRangeId, macState);
-                }
-                tx.commit();
+            try {
+                TransactionRetry.run(iCacheFactory.getTransaction(), tx -> {
+                    boolean flag = false;
+                    while (!flag) {
+                        String mac = macPoolApi.allocate(oui, range);
+                        macState.setMacAddress(mac);
+                        flag = trySaveMac(realRangeId, macState);
+                    }
+                    tx.commit();
+                    return null;
+                });
+            } catch (TransactionConflictException e) {
+                throw e;
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -363,11 +369,12 @@ public class MacServiceImpl implements MacService {
         if (rangeId.equals(MacManagerConstant.DEFAULT_RANGE))
             throw (new MacRangeDeleteNotAllowedException(MacManagerConstant.MAC_EXCEPTION_DELETE_DEFAULT_RANGE));
         try {
-            try(Transaction tx = iCacheFactory.getTransaction().start()) {
+            TransactionRetry.run(iCacheFactory.getTransaction(), tx -> {
                 macRangeRepository.deleteItem(rangeId);
                 macRangeMappingRepository.removeRange(rangeId);
                 tx.commit();
-            }
+                return null;
+            });
         } catch (Exception e) {
             logger.error("MacService deleteMacRange() exception:", e);
             throw new MacRepositoryTransactionErrorException(MacManagerConstant.MAC_EXCEPTION_REPOSITORY_EXCEPTION, e);
@@ -401,7 +408,6 @@ public class MacServiceImpl implements MacService {
     public MacStateBulkJson createMacStateBulkInRange(String rangeId, MacStateBulkJson macStateBulkJson) throws Exception {
         // handle exist macs
         List<MacState> macStateList = macStateBulkJson.getMacStates();
-        Iterator<MacState> macStateIterator = macStateList.iterator();
 
         // ensure range is created
         MacRange range = ensureRange(rangeId);
@@ -409,7 +415,19 @@ public class MacServiceImpl implements MacService {
         int needSize = macStateList.size() + BULK_MULTIPLE_MARGINS;
         final String realRangeId = range.getRangeId();
 
-        try(Transaction tx = iCacheFactory.getTransaction().start()) {
+        // an attempt drops and fills in mac states, a retry starts over from those asked for
+        List<MacState> requestedMacStates = new ArrayList<>(macStateList);
+        List<String> requestedMacs = new ArrayList<>();
+        requestedMacStates.forEach(macState -> requestedMacs.add(macState.getMacAddress()));
+
+        TransactionRetry.run(iCacheFactory.getTransaction(), tx -> {
+            macStateList.clear();
+            for (int i = 0; i < requestedMacStates.size(); i++) {
+                requestedMacStates.get(i).setMacAddress(requestedMacs.get(i));
+                macStateList.add(requestedMacStates.get(i));
+            }
+
+            Iterator<MacState> macStateIterator = macStateList.iterator();
             Map<String, MacState> newMacStates = new HashMap<>();
             while (macStateIterator.hasNext()) {
                 Set<String> macs = macPoolApi.allocateBulk(oui, range, needSize);
@@ -438,7 +456,8 @@ public class MacServiceImpl implements MacService {
 
             }
             tx.commit();
-        }
+            return null;
+        });
         return macStateBulkJson;
     }
 
@@ -18,6 +18,7 @@ package com.futurewei.alcor.netwconfigmanager;
 import com.futurewei.alcor.common.tracer.TracerConfiguration;
 import com.futurewei.alcor.netwconfigmanager.server.NetworkConfigServer;
 import com.futurewei.alcor.netwconfigmanager.server.grpc.GoalStateProvisionerServer;
+import com.futurewei.alcor.web.changelog.NodeInfoReplicaConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -29,7 +30,7 @@ import javax.annotation.PostConstruct;
 
 @SpringBootApplication
 @EnableAsync
-@Import(TracerConfiguration.class)
+@Import({NodeInfoReplicaConfiguration.class, TracerConfiguration.class})
 public class NetworkConfigManagerApplication {
 
     @Autowired
@@ -25,6 +25,11 @@ import org.springframework.stereotype.Repository;
 import com.futurewei.alcor.common.db.CacheException;
 import com.futurewei.alcor.common.db.Transaction;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
 @Repository
 @ComponentScan(value = "com.futurewei.alcor.common.db")
 public class HostResourceMetadataCache {
@@ -56,11 +61,25 @@ public class HostResourceMetadataCache {
         return resourceState;
     }
 
+    @DurationStatistics
+    public Map<String, ResourceMeta> getResourceMetas(Set<String> hostIds) throws Exception {
+        return this.hostResourceMetas.getAll(hostIds);
+    }
+
     @DurationStatistics
     public void addResourceMeta(ResourceMeta resourceMeta) throws Exception {
         this.hostResourceMetas.put(resourceMeta.getOwnerId(), resourceMeta);
     }
 
+    @DurationStatistics
+    public void addResourceMetas(Collection<ResourceMeta> resourceMetas) throws Exception {
+        Map<String, ResourceMeta> items = new TreeMap<>();
+        for (ResourceMeta resourceMeta : resourceMetas) {
+            items.put(resourceMeta.getOwnerId(), resourceMeta);
+        }
+        this.hostResourceMetas.putAll(items);
+    }
+
     @DurationStatistics
     public void updateResourceMeta(ResourceMeta resourceMeta) throws Exception {
         this.hostResourceMetas.put(resourceMeta.getOwnerId(), resourceMeta);
@@ -0,0 +1,127 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.cache;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process copy of hot cache entries, bounded to maxSize entries which live no longer than ttl.
+ * A value loaded from the remote cache is only kept if its key was not invalidated while it was
+ * being loaded, so a concurrent write can not be shadowed by the value it replaced. Invalidations
+ * are versioned per stripe of keys, so writes to other keys do not discard the load.
+ *
+ * Invalidation is local to the instance that wrote: another NCM instance holding the same key keeps
+ * serving its copy, including of a deleted resource, until the entry expires. The ttl is therefore
+ * the staleness bound across instances.
+ */
+public class NearCache<K, V> {
+    private static final int STRIPES = 4096;
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final int maxSize;
+    private final long ttlMillis;
+
+    public NearCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Take before loading the value of key from the remote cache, and pass to put afterwards.
+     */
+    public long stamp(K key) {
+        return versions.get(stripe(key));
+    }
+
+    public void put(K key, V value, long stamp) {
+        if (maxSize <= 0 || value == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxSize) {
+            evict(now);
+        }
+
+        Entry<V> entry = new Entry<>(value, now + ttlMillis);
+        entries.put(key, entry);
+
+        // Lost the race with a writer of this key, the loaded value may be the old one
+        if (versions.get(stripe(key)) != stamp) {
+            entries.remove(key, entry);
+        }
+    }
+
+    public void invalidate(Collection<? extends K> keys) {
+        for (K key : keys) {
+            invalidate(key);
+        }
+    }
+
+    public void invalidate(K key) {
+        versions.incrementAndGet(stripe(key));
+        entries.remove(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.expireAt <= now);
+
+        // Still full of live entries, drop a tenth of them rather than one per put
+        Iterator<Entry<V>> it = entries.values().iterator();
+        for (int i = entries.size() - maxSize * 9 / 10; i > 0 && it.hasNext(); i--) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.futurewei.alcor.common.logging.Logger;
 import com.futurewei.alcor.common.logging.LoggerFactory;
 import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.common.utils.SpringContextUtil;
+import com.futurewei.alcor.web.changelog.NodeInfoReplica;
 import com.futurewei.alcor.web.entity.node.NodeInfo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
@@ -45,13 +46,26 @@ public class NodeInfoCache {
     private static final Logger LOG = LoggerFactory.getLogger();
     private ICache<String, NodeInfo> nodeInfoCache;
 
-    @Autowired
+    // Nodes replicated from the node change log, present when node.change-log.enabled is true.
+    // Once it is ready a miss is final, nodeInfoCache is not told about deleted nodes.
+    private NodeInfoReplica nodeInfoReplica;
+
     public NodeInfoCache(CacheFactory cacheFactory) {
+        this(cacheFactory, null);
+    }
+
+    @Autowired
+    public NodeInfoCache(CacheFactory cacheFactory, @Autowired(required = false) NodeInfoReplica nodeInfoReplica) {
         this.nodeInfoCache = cacheFactory.getCache(NodeInfo.class, "ncm_nodeinfo_cache");
+        this.nodeInfoReplica = nodeInfoReplica;
     }
 
     @DurationStatistics
     public NodeInfo getNodeInfo(String nodeId) throws Exception {
+        if (nodeInfoReplica != null && nodeInfoReplica.isReady()) {
+            return nodeInfoReplica.getNodeInfo(nodeId);
+        }
+
         NodeInfo nodeInfo = nodeInfoCache.get(nodeId);
 
         return nodeInfo;
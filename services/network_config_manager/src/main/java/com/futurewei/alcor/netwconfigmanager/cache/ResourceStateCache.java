@@ -21,28 +21,55 @@ import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.schema.Port;
 import com.futurewei.alcor.schema.Subnet;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Repository;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 @Repository
 @ComponentScan(value = "com.futurewei.alcor.common.db")
 public class ResourceStateCache <K, V>{
+    private static final int DEFAULT_NEAR_CACHE_SIZE = 100000;
+    // Bounds how long another NCM instance may serve a deleted or replaced state, keep it short
+    private static final long DEFAULT_NEAR_CACHE_TTL = 2;
+
     // Map <ResourceId, ResourceState>
     private ICache<String, Object> hostResourceStates;
 
-    @Autowired
+    // On-heap copy of hot resource states, invalidated by the writes of this instance only,
+    // so writes through other NCM instances become visible here after at most the ttl.
+    // A size of 0 turns it off
+    private NearCache<String, Object> nearResourceStates;
+
     public ResourceStateCache(CacheFactory cacheFactory) {
+        this(cacheFactory, DEFAULT_NEAR_CACHE_SIZE, DEFAULT_NEAR_CACHE_TTL);
+    }
+
+    @Autowired
+    public ResourceStateCache(CacheFactory cacheFactory,
+                              @Value("${ncm.near-cache.size:" + DEFAULT_NEAR_CACHE_SIZE + "}") int nearCacheSize,
+                              @Value("${ncm.near-cache.ttl:" + DEFAULT_NEAR_CACHE_TTL + "}") long nearCacheTtl) {
         this.hostResourceStates = cacheFactory.getCache(Object.class);
+        this.nearResourceStates = new NearCache<>(nearCacheSize, TimeUnit.SECONDS.toMillis(nearCacheTtl));
     }
 
     @DurationStatistics
     public Object getResourceState(String resourceId) throws Exception {
-        Object resourceState = this.hostResourceStates.get(resourceId);
+        Object resourceState = this.nearResourceStates.get(resourceId);
+        if (resourceState != null) {
+            return resourceState;
+        }
+
+        long stamp = this.nearResourceStates.stamp(resourceId);
+        resourceState = this.hostResourceStates.get(resourceId);
+        this.nearResourceStates.put(resourceId, resourceState, stamp);
 
         return resourceState;
     }
@@ -52,28 +79,66 @@ public class ResourceStateCache <K, V>{
         return this.hostResourceStates.getAll();
     }
 
+    /**
+     * Get resource states served by the near cache where possible, and by one bulk get
+     * for the rest. Resources not found are absent from the returned map.
+     */
     @DurationStatistics
     public Map<String, Object> getResourceStates(Set<String> resourceIds) throws Exception {
-        return this.hostResourceStates.getAll(resourceIds);
+        Map<String, Object> resourceStates = new HashMap<>();
+        Set<String> missedIds = new HashSet<>();
+        for (String resourceId : resourceIds) {
+            Object resourceState = this.nearResourceStates.get(resourceId);
+            if (resourceState != null) {
+                resourceStates.put(resourceId, resourceState);
+            } else {
+                missedIds.add(resourceId);
+            }
+        }
+
+        if (missedIds.isEmpty()) {
+            return resourceStates;
+        }
+
+        Map<String, Long> stamps = new HashMap<>();
+        for (String resourceId : missedIds) {
+            stamps.put(resourceId, this.nearResourceStates.stamp(resourceId));
+        }
+
+        Map<String, Object> loadedStates = this.hostResourceStates.getAll(missedIds);
+        if (loadedStates != null) {
+            for (Map.Entry<String, Object> entry : loadedStates.entrySet()) {
+                if (entry.getValue() != null) {
+                    resourceStates.put(entry.getKey(), entry.getValue());
+                    this.nearResourceStates.put(entry.getKey(), entry.getValue(), stamps.get(entry.getKey()));
+                }
+            }
+        }
+
+        return resourceStates;
     }
 
     @DurationStatistics
     public void addResourceState(String resourceId, Object resourceState) throws Exception {
         this.hostResourceStates.put(resourceId, resourceState);
+        this.nearResourceStates.invalidate(resourceId);
     }
 
     @DurationStatistics
     public void addResourceStates(SortedMap<? extends String, ?> items) throws Exception {
         this.hostResourceStates.putAll(items);
+        this.nearResourceStates.invalidate(items.keySet());
     }
 
     @DurationStatistics
     public void updateResourceState(String resourceId, Object resourceState) throws Exception {
         this.hostResourceStates.put(resourceId, resourceState);
+        this.nearResourceStates.invalidate(resourceId);
     }
 
     @DurationStatistics
     public void deleteResourceState(String resourceId) throws Exception {
         this.hostResourceStates.remove(resourceId);
+        this.nearResourceStates.invalidate(resourceId);
     }
 }
@@ -18,10 +18,17 @@ package com.futurewei.alcor.netwconfigmanager.cache;
 import com.futurewei.alcor.common.db.CacheFactory;
 import com.futurewei.alcor.common.db.ICache;
 import com.futurewei.alcor.common.stats.DurationStatistics;
+import com.futurewei.alcor.netwconfigmanager.entity.ResourceMeta;
+import com.futurewei.alcor.netwconfigmanager.entity.VpcPortResourceMeta;
 import com.futurewei.alcor.netwconfigmanager.entity.VpcResourceMeta;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 
 import com.futurewei.alcor.common.logging.Logger;
@@ -32,40 +39,170 @@ import com.futurewei.alcor.common.logging.LoggerFactory;
 public class VpcResourceCache {
     private static final Logger LOG = LoggerFactory.getLogger();
 
-    // Map <VNI, Map<PIP, ResourceMetadata>
-    private ICache<String, VpcResourceMeta> vpcResourceMetas;
+    private static final String VNI_FIELD = "vni";
+
+    // Map <VNI/PIP, ResourceMetadata>, enumerated per VNI through the vni index
+    private ICache<String, VpcPortResourceMeta> vpcPortResourceMetas;
+
+    // Legacy Map <VNI, Map<PIP, ResourceMetadata>> written by older NCM versions,
+    // migrated into vpcPortResourceMetas the first time its VNI is accessed
+    private ICache<String, VpcResourceMeta> legacyVpcResourceMetas;
 
     @Autowired
     public VpcResourceCache(CacheFactory cacheFactory) {
-        this.vpcResourceMetas = cacheFactory.getCache(VpcResourceMeta.class);
+        this.vpcPortResourceMetas = cacheFactory.getCache(VpcPortResourceMeta.class);
+        this.legacyVpcResourceMetas = cacheFactory.getCache(VpcResourceMeta.class);
+    }
+
+    private static String getKey(String vni, String privateIp) {
+        return vni + "/" + privateIp;
     }
 
+    /**
+     * Move the legacy per VNI entry of a VPC, if any, into per port entries.
+     * Port entries already written by this version are newer and are kept.
+     * Returns true if a legacy entry was migrated.
+     */
+    private boolean migrateLegacyResourceMeta(String vni) throws Exception {
+        VpcResourceMeta legacyResourceMeta = this.legacyVpcResourceMetas.get(vni);
+        if (legacyResourceMeta == null) {
+            return false;
+        }
+
+        Map<String, VpcPortResourceMeta> portResourceMetas = new HashMap<>();
+        for (Map.Entry<String, ResourceMeta> entry : legacyResourceMeta.getResourceMetaMap().entrySet()) {
+            portResourceMetas.put(getKey(vni, entry.getKey()),
+                    new VpcPortResourceMeta(vni, entry.getKey(), entry.getValue()));
+        }
+
+        Map<String, VpcPortResourceMeta> existing = this.vpcPortResourceMetas.getAll(portResourceMetas.keySet());
+        if (existing != null) {
+            for (Map.Entry<String, VpcPortResourceMeta> entry : existing.entrySet()) {
+                if (entry.getValue() != null) {
+                    portResourceMetas.remove(entry.getKey());
+                }
+            }
+        }
+
+        this.vpcPortResourceMetas.putAll(portResourceMetas);
+        this.legacyVpcResourceMetas.remove(vni);
+        LOG.log(Level.INFO, "[migrateLegacyResourceMeta] vni: " + vni + ", migrated ports: " + portResourceMetas.size());
+        return true;
+    }
+
+    @DurationStatistics
+    public ResourceMeta getResourceMeta(String vni, String privateIp) throws Exception {
+        VpcPortResourceMeta portResourceMeta = this.vpcPortResourceMetas.get(getKey(vni, privateIp));
+        if (portResourceMeta == null && migrateLegacyResourceMeta(vni)) {
+            portResourceMeta = this.vpcPortResourceMetas.get(getKey(vni, privateIp));
+        }
+
+        return portResourceMeta == null ? null : portResourceMeta.getResourceMeta();
+    }
+
+    /**
+     * Bulk get the resource metadata of the given private ips in a VPC.
+     * Ips without metadata are absent from the returned map.
+     */
+    @DurationStatistics
+    public Map<String, ResourceMeta> getResourceMetas(String vni, Set<String> privateIps) throws Exception {
+        Set<String> keys = new HashSet<>();
+        for (String privateIp : privateIps) {
+            keys.add(getKey(vni, privateIp));
+        }
+
+        Map<String, ResourceMeta> resourceMetas = new HashMap<>();
+        Map<String, VpcPortResourceMeta> portResourceMetas = this.vpcPortResourceMetas.getAll(keys);
+        collectResourceMetas(resourceMetas, portResourceMetas);
+        if (resourceMetas.size() < keys.size() && migrateLegacyResourceMeta(vni)) {
+            collectResourceMetas(resourceMetas, this.vpcPortResourceMetas.getAll(keys));
+        }
+
+        return resourceMetas;
+    }
+
+    private static void collectResourceMetas(Map<String, ResourceMeta> resourceMetas,
+                                             Map<String, VpcPortResourceMeta> portResourceMetas) {
+        if (portResourceMetas == null) {
+            return;
+        }
+
+        for (VpcPortResourceMeta portResourceMeta : portResourceMetas.values()) {
+            if (portResourceMeta != null) {
+                resourceMetas.put(portResourceMeta.getPrivateIp(), portResourceMeta.getResourceMeta());
+            }
+        }
+    }
+
+    /**
+     * Enumerate all port resource metadata of a VPC through the vni index.
+     */
     @DurationStatistics
     public VpcResourceMeta getResourceMeta(String vni) throws Exception {
         long sTime = System.currentTimeMillis();
-        long uMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-        LOG.log(Level.FINE, "[getResourceMeta(vni)]GRM: time " + sTime + " usedmem1 " + uMem + " vni: " + vni);
-        VpcResourceMeta resourceMeta = this.vpcResourceMetas.get(vni);
-        uMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        migrateLegacyResourceMeta(vni);
+        Map<String, Object[]> filterParams = new HashMap<>();
+        filterParams.put(VNI_FIELD, new String[]{vni});
+        Map<String, VpcPortResourceMeta> portResourceMetas = this.vpcPortResourceMetas.getAll(filterParams);
+        if (portResourceMetas == null || portResourceMetas.isEmpty()) {
+            return null;
+        }
+
+        HashMap<String, ResourceMeta> resourceMetaMap = new HashMap<>();
+        for (VpcPortResourceMeta portResourceMeta : portResourceMetas.values()) {
+            resourceMetaMap.put(portResourceMeta.getPrivateIp(), portResourceMeta.getResourceMeta());
+        }
+
+        LOG.log(Level.FINE, "[getResourceMeta(vni)] vni: " + vni + ", ports: " + resourceMetaMap.size() +
+                ", elapsed time in milliseconds: " + (System.currentTimeMillis() - sTime));
+        return new VpcResourceMeta(vni, resourceMetaMap);
+    }
 
-        long fTime = System.currentTimeMillis() - sTime;
+    @DurationStatistics
+    public void addResourceMeta(String vni, String privateIp, ResourceMeta resourceMeta) throws Exception {
+        this.vpcPortResourceMetas.put(getKey(vni, privateIp), new VpcPortResourceMeta(vni, privateIp, resourceMeta));
+    }
+
+    /**
+     * Write the given port entries of a VPC, entries of other ports in the VPC are left untouched.
+     */
+    @DurationStatistics
+    public void addResourceMetas(String vni, Map<String, ResourceMeta> resourceMetas) throws Exception {
+        Map<String, VpcPortResourceMeta> portResourceMetas = new HashMap<>();
+        for (Map.Entry<String, ResourceMeta> entry : resourceMetas.entrySet()) {
+            portResourceMetas.put(getKey(vni, entry.getKey()),
+                    new VpcPortResourceMeta(vni, entry.getKey(), entry.getValue()));
+        }
 
-        LOG.log(Level.FINE, "[getResourceMeta(vni)]GRM: time " + fTime + " usedmem2 " + uMem);
-        return resourceMeta;
+        this.vpcPortResourceMetas.putAll(portResourceMetas);
     }
 
     @DurationStatistics
     public void addResourceMeta(VpcResourceMeta resourceMeta) throws Exception {
-        this.vpcResourceMetas.put(resourceMeta.getVni(), resourceMeta);
+        addResourceMetas(resourceMeta.getVni(), resourceMeta.getResourceMetaMap());
     }
 
     @DurationStatistics
     public void updateResourceMeta(VpcResourceMeta resourceMeta) throws Exception {
-        this.vpcResourceMetas.put(resourceMeta.getVni(), resourceMeta);
+        addResourceMetas(resourceMeta.getVni(), resourceMeta.getResourceMetaMap());
+    }
+
+    @DurationStatistics
+    public void deleteResourceMeta(String vni, String privateIp) throws Exception {
+        // Migrate first so the deleted port does not come back from the legacy entry
+        migrateLegacyResourceMeta(vni);
+        this.vpcPortResourceMetas.remove(getKey(vni, privateIp));
     }
 
     @DurationStatistics
     public void deleteResourceMeta(String vni) throws Exception {
-        this.vpcResourceMetas.remove(vni);
+        this.legacyVpcResourceMetas.remove(vni);
+
+        Map<String, Object[]> filterParams = new HashMap<>();
+        filterParams.put(VNI_FIELD, new String[]{vni});
+        Map<String, VpcPortResourceMeta> portResourceMetas = this.vpcPortResourceMetas.getAll(filterParams);
+        if (portResourceMetas != null && !portResourceMetas.isEmpty()) {
+            this.vpcPortResourceMetas.removeAll(portResourceMetas.keySet());
+        }
     }
 }
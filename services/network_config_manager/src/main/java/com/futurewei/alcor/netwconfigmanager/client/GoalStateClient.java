@@ -25,4 +25,16 @@ import java.util.Map;
 @Component
 public interface GoalStateClient {
     List<String> sendGoalStates(Map<String, HostGoalState> hostGoalStates) throws Exception;
+
+    /**
+     * Send goal states to hosts, when awaitReplies is false return as soon as the goal states are handed
+     * to the outbound streams, and failures are only logged
+     */
+    List<String> sendGoalStates(Map<String, HostGoalState> hostGoalStates, boolean awaitReplies) throws Exception;
+
+    /**
+     * Send to each host only the resource states which are new or changed since the host last acknowledged
+     * them, a host reconnecting gets the full goal state again
+     */
+    List<String> sendGoalStateChanges(Map<String, HostGoalState> hostGoalStates, boolean awaitReplies) throws Exception;
 }
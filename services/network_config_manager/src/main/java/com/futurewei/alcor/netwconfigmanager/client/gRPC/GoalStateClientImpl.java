@@ -18,306 +18,161 @@ package com.futurewei.alcor.netwconfigmanager.client.gRPC;
 import com.futurewei.alcor.common.logging.Logger;
 import com.futurewei.alcor.common.logging.LoggerFactory;
 import com.futurewei.alcor.common.stats.DurationStatistics;
-import com.futurewei.alcor.netwconfigmanager.cache.ResourceStateCache;
 import com.futurewei.alcor.netwconfigmanager.client.GoalStateClient;
 import com.futurewei.alcor.netwconfigmanager.config.Config;
 import com.futurewei.alcor.netwconfigmanager.entity.HostGoalState;
 import com.futurewei.alcor.netwconfigmanager.service.ResourceInfo;
 import com.futurewei.alcor.schema.*;
-import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
-import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
-import io.grpc.netty.shaded.io.netty.channel.epoll.EpollSocketChannel;
-import io.grpc.stub.ClientCallStreamObserver;
-import io.grpc.stub.ServerCallStreamObserver;
-import io.grpc.stub.StreamObserver;
-import io.jaegertracing.Configuration;
-import io.jaegertracing.internal.JaegerTracer;
-import io.jaegertracing.internal.samplers.ConstSampler;
-import io.lettuce.core.dynamic.annotation.Param;
-import io.netty.util.concurrent.DefaultThreadFactory;
-import io.opentracing.Scope;
-import io.opentracing.Span;
-import io.opentracing.contrib.tracerresolver.TracerResolver;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.grpc.TracingClientInterceptor;
 import io.opentracing.util.GlobalTracer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
-import io.opentracing.Tracer;
-import io.opentracing.contrib.grpc.TracingClientInterceptor;
 
 @Service("grpcGoalStateClient")
 public class GoalStateClientImpl implements GoalStateClient {
     private static final Logger logger = LoggerFactory.getLogger();
 
-    private int hostAgentPort;
-
-    private final ExecutorService executor;
+    private static final int hostAgentPort = 50001;
 
     @Autowired
     private ResourceInfo resourceInfo;
 
-    // each host_ip should have this amount of gRPC channels
-    @Value("${grpc.number-of-channels-per-host:1}")
-    private int numberOfGrpcChannelPerHost;
-
-    // when a channel is set up, send this amount of default GoalStates for warmup.
-    @Value("${grpc.number-of-warmups-per-channel:1}")
-    private int numberOfWarmupsPerChannel;
-
     // prints out UUID and time, when sending a GoalState to any of the monitorHosts
     private ArrayList<String> monitorHosts;
 
-    private ConcurrentHashMap<String, ArrayList<GrpcChannelStub>> hostIpGrpcChannelStubMap;
+    private final Function<String, ManagedChannel> channelFactory;
+
+    // one channel and one long-lived goal state stream per host
+    private final ConcurrentHashMap<String, ManagedChannel> hostIpChannelMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HostGoalStateStream> hostIpStreamMap = new ConcurrentHashMap<>();
 
     private final Tracer tracer;
 
     @Autowired
-    public GoalStateClientImpl(@Value("${grpc.number-of-channels-per-host:1}") int numberOfGrpcChannelPerHost, @Value("${grpc.number-of-warmups-per-channel:1}") int numberOfWarmupsPerChannel, @Value("")ArrayList<String> monitorHosts) {
-
-        if ((this.numberOfGrpcChannelPerHost = numberOfGrpcChannelPerHost) < 1) {
-            this.numberOfGrpcChannelPerHost = 1;
-         }
-
-        if ((this.numberOfWarmupsPerChannel = numberOfWarmupsPerChannel) < 0) {
-            this.numberOfWarmupsPerChannel = 0;
-        }
+    public GoalStateClientImpl(@Value("") ArrayList<String> monitorHosts) {
+        this(monitorHosts, hostIp -> ManagedChannelBuilder.forAddress(hostIp, hostAgentPort)
+                .usePlaintext()
+                .keepAliveWithoutCalls(true)
+                .keepAliveTime(Long.MAX_VALUE, TimeUnit.SECONDS)
+                .build());
+    }
 
+    GoalStateClientImpl(ArrayList<String> monitorHosts, Function<String, ManagedChannel> channelFactory) {
         this.monitorHosts = monitorHosts;
         logger.log(Level.FINE, "Printing out all monitorHosts");
         for (String host : this.monitorHosts) {
             logger.log(Level.FINE, "Monitoring this host: " + host);
         }
         logger.log(Level.FINE, "Done printing out all monitorHosts");
-        this.hostAgentPort = 50001;
-
-        this.executor = new ThreadPoolExecutor(100,
-                200,
-                50,
-                TimeUnit.SECONDS,
-                new LinkedBlockingDeque<>(),
-                new DefaultThreadFactory("grpc-thread-pool"));
-        //TODO: Setup a connection pool. one ACA, one client.
-        this.hostIpGrpcChannelStubMap = new ConcurrentHashMap();
-        Configuration.SamplerConfiguration samplerConfiguration = Configuration.SamplerConfiguration.fromEnv()
-                .withType(ConstSampler.TYPE)
-                .withParam(1);
-        Configuration.ReporterConfiguration reporterConfiguration = Configuration.ReporterConfiguration.fromEnv()
-                .withLogSpans(true);
 
+        this.channelFactory = channelFactory;
+        this.tracer = GlobalTracer.get();
+        logger.log(Level.INFO, "[GoalStateClientImpl] Got this global tracer: " + this.tracer.toString());
+    }
 
-        this.tracer = GlobalTracer.get();//Configuration.fromEnv().getTracer();
-                 //TracerResolver.resolveTracer();
-        logger.log(Level.INFO, "[GoalStateClientImpl] Got this global tracer: "+this.tracer.toString());
-        logger.log(Level.FINE, "This instance has " + numberOfGrpcChannelPerHost + " channels, and " + numberOfWarmupsPerChannel + " warmups");
+    @Override
+    @DurationStatistics
+    public List<String> sendGoalStates(Map<String, HostGoalState> hostGoalStates) throws Exception {
+        return sendGoalStates(hostGoalStates, true);
+    }
 
+    @Override
+    @DurationStatistics
+    public List<String> sendGoalStates(Map<String, HostGoalState> hostGoalStates, boolean awaitReplies) throws Exception {
+        return sendGoalStates(hostGoalStates, awaitReplies, false);
     }
 
     @Override
     @DurationStatistics
-    public List<String> sendGoalStates(Map<String, HostGoalState> hostGoalStates) throws Exception {
+    public List<String> sendGoalStateChanges(Map<String, HostGoalState> hostGoalStates, boolean awaitReplies) throws Exception {
+        return sendGoalStates(hostGoalStates, awaitReplies, true);
+    }
 
-        final CountDownLatch finishLatch = new CountDownLatch(hostGoalStates.values().size());
+    private List<String> sendGoalStates(Map<String, HostGoalState> hostGoalStates, boolean awaitReplies, boolean changesOnly) throws Exception {
         logger.log(Level.INFO, "Host goal states size: " + hostGoalStates.values().size());
-        List<String> replies = new ArrayList<>();
 
         boolean isAttache = !hostGoalStates.values().parallelStream().anyMatch(hostGoalState -> hostGoalState.getGoalState().getPortStatesCount() > 0);
+        Map<String, CompletableFuture<Goalstateprovisioner.GoalStateOperationReply>> futures = new HashMap<>();
         for (HostGoalState hostGoalState : hostGoalStates.values()) {
-            doSendGoalState(hostGoalState, finishLatch, replies, isAttache);
-        }
-
-        if (!finishLatch.await(5, TimeUnit.MINUTES)) {
-            logger.log(Level.WARNING, "Send goal states can not finish within 1 minutes");
-            return Arrays.asList("Send goal states can not finish within 1 minutes");
-        }
-        if (replies.size() > 0) {
-            return replies;
+            futures.put(hostGoalState.getHostIp(), doSendGoalState(hostGoalState, isAttache, changesOnly));
         }
-        return new ArrayList<>();
 
-
-    }
-
-    @DurationStatistics
-    private GrpcChannelStub getOrCreateGrpcChannel(String hostIp) {
-        if (!this.hostIpGrpcChannelStubMap.containsKey(hostIp)) {
-            this.hostIpGrpcChannelStubMap.put(hostIp, createGrpcChannelStubArrayList(hostIp));
-            logger.log(Level.INFO, "[getOrCreateGrpcChannel] Created a channel and stub to host IP: " + hostIp);
+        if (!awaitReplies) {
+            return new ArrayList<>();
         }
-        int usingChannelWithThisIndex = ThreadLocalRandom.current().nextInt(0, numberOfGrpcChannelPerHost);
-        ManagedChannel chan = this.hostIpGrpcChannelStubMap.get(hostIp).get(usingChannelWithThisIndex).channel;
-        //checks the channel status, reconnects if the channel is IDLE
 
-        ConnectivityState channelState = chan.getState(true);
-        if (channelState != ConnectivityState.READY && channelState != ConnectivityState.CONNECTING && channelState != ConnectivityState.IDLE) {
-            GrpcChannelStub newChannelStub = createGrpcChannelStub(hostIp);
-            this.hostIpGrpcChannelStubMap.get(hostIp).set(usingChannelWithThisIndex, newChannelStub);
-            logger.log(Level.INFO, "[getOrCreateGrpcChannel] Replaced a channel and stub to host IP: " + hostIp);
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).get(5, TimeUnit.MINUTES);
+        } catch (TimeoutException e) {
+            logger.log(Level.WARNING, "Send goal states can not finish within 5 minutes");
+            return Arrays.asList("Send goal states can not finish within 5 minutes");
+        } catch (ExecutionException e) {
+            // collected per host below
         }
-        logger.log(Level.FINE, "[getOrCreateGrpcChannel] Using channel and stub index " + usingChannelWithThisIndex + " to host IP: " + hostIp);
-        return this.hostIpGrpcChannelStubMap.get(hostIp).get(usingChannelWithThisIndex);
-    }
 
-    @DurationStatistics
-    private ArrayList<GrpcChannelStub> createGrpcChannelStubArrayList(String hostIp) {
-        long start = System.currentTimeMillis();
-        ArrayList<GrpcChannelStub> arr = new ArrayList<>();
-        List<Future<Integer>> channels_warmup_future = new ArrayList<>();
-        for (int i = 0; i < numberOfGrpcChannelPerHost; i++) {
-            GrpcChannelStub channelStub = createGrpcChannelStub(hostIp);
-            // wait until all warmups for all channels are finished.
-            Future<Integer> channel_warmup_future = this.executor.submit(()->{
-                warmUpChannelStub(channelStub, hostIp);
-                arr.add(channelStub);
-                return 1;
-            });
-            channels_warmup_future.add(channel_warmup_future);
-        }
-        channels_warmup_future.parallelStream().filter(Objects::nonNull).map(future -> {
+        List<String> replies = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<Goalstateprovisioner.GoalStateOperationReply>> entry : futures.entrySet()) {
             try {
-                return future.get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }).collect(Collectors.toList());
-        long end = System.currentTimeMillis();
-        logger.log(Level.FINE, "[createGrpcChannelStubArrayList] Created " + numberOfGrpcChannelPerHost + " gRPC channel stubs for host " + hostIp + ", elapsed Time in milli seconds: " + (end - start));
-        return arr;
-    }
-
-    // try to warmup a gRPC channel and its stub, by sending an empty GoalState`.
-    @DurationStatistics
-    void warmUpChannelStub(GrpcChannelStub channelStub, String hostIp) {
-        GoalStateProvisionerGrpc.GoalStateProvisionerStub asyncStub = channelStub.stub;
-
-        StreamObserver<Goalstateprovisioner.GoalStateOperationReply> responseObserver = new StreamObserver<>() {
-            @Override
-            public void onNext(Goalstateprovisioner.GoalStateOperationReply reply) {
-                logger.log(Level.INFO, "Receive warmup response from ACA@" + hostIp + " | " + reply.toString());
-
-            }
-
-            @Override
-            public void onError(Throwable t) {
-                logger.log(Level.WARNING, "Receive warmup error from ACA@" + hostIp + " |  " + t.getMessage());
-
-            }
-
-            @Override
-            public void onCompleted() {
-                logger.log(Level.INFO, "Complete receiving warmup message from ACA@" + hostIp);
-            }
-        };
-
-        StreamObserver<Goalstate.GoalStateV2> requestObserver = asyncStub.pushGoalStatesStream(responseObserver);
-        try {
-            Goalstate.GoalStateV2 goalState = Goalstate.GoalStateV2.getDefaultInstance();
-            logger.log(Level.INFO, "Sending GS to Host " + hostIp + " as follows | " + goalState.toString());
-            for (int i = 0; i < numberOfWarmupsPerChannel; i++) {
-                requestObserver.onNext(goalState);
+                Goalstateprovisioner.GoalStateOperationReply reply = entry.getValue().get();
+                if (reply.getOperationStatusesList().stream().anyMatch(item -> item.getOperationStatus().equals(Common.OperationStatus.FAILURE))) {
+                    replies.add(reply.toString());
+                }
+            } catch (ExecutionException e) {
+                replies.add("Send goal states to host " + entry.getKey() + " failed: " + e.getCause().getMessage());
             }
-        } catch (RuntimeException e) {
-            // Cancel RPC
-            logger.log(Level.WARNING, "[doSendGoalState] Sending GS, but error happened | " + e.getMessage());
-            requestObserver.onError(e);
-            throw e;
         }
-        // Mark the end of requests
-        logger.log(Level.INFO, "Sending warmup GS to Host " + hostIp + " is completed");
-        return;
+
+        return replies;
     }
 
     @DurationStatistics
-    private GrpcChannelStub createGrpcChannelStub(String hostIp) {
-        // adding tracing stuffs for each channel
-        TracingClientInterceptor tracingClientInterceptor = TracingClientInterceptor
-                .newBuilder()
-                .withTracer(this.tracer)
-                .withVerbosity()
-                .withStreaming()
-                .build();
-
-
-        ManagedChannel channel = ManagedChannelBuilder.forAddress(hostIp, this.hostAgentPort)
-                .usePlaintext()
-                .keepAliveWithoutCalls(true)
-                .keepAliveTime(Long.MAX_VALUE, TimeUnit.SECONDS)
-                .build();
-        GoalStateProvisionerGrpc.GoalStateProvisionerStub asyncStub = GoalStateProvisionerGrpc.newStub(tracingClientInterceptor.intercept(channel));
-        return new GrpcChannelStub(channel, asyncStub);
-
+    private HostGoalStateStream getOrCreateStream(String hostIp) {
+        return hostIpStreamMap.computeIfAbsent(hostIp, ip -> {
+            ManagedChannel channel = hostIpChannelMap.computeIfAbsent(ip, channelFactory);
+            TracingClientInterceptor tracingClientInterceptor = TracingClientInterceptor
+                    .newBuilder()
+                    .withTracer(this.tracer)
+                    .withVerbosity()
+                    .withStreaming()
+                    .build();
+            GoalStateProvisionerGrpc.GoalStateProvisionerStub asyncStub =
+                    GoalStateProvisionerGrpc.newStub(tracingClientInterceptor.intercept(channel));
+            logger.log(Level.INFO, "[getOrCreateStream] Created a channel and stream to host IP: " + ip);
+            return new HostGoalStateStream(ip, asyncStub);
+        });
     }
 
-    private void doSendGoalState(HostGoalState hostGoalState, CountDownLatch finishLatch, List<String> replies, boolean isAttache) throws InterruptedException {
+    private CompletableFuture<Goalstateprovisioner.GoalStateOperationReply> doSendGoalState(HostGoalState hostGoalState, boolean isAttache, boolean changesOnly) {
         String hostIp = hostGoalState.getHostIp();
-        logger.log(Level.FINE, "Setting up a channel to ACA on: " + hostIp);
         long start = System.currentTimeMillis();
-        long end = 0;
-        GrpcChannelStub channelStub = getOrCreateGrpcChannel(hostIp);
-        long chan_established = System.currentTimeMillis();
-        logger.log(Level.FINE, "[doSendGoalState] Established channel, elapsed Time in milli seconds: " + (chan_established - start));
-        GoalStateProvisionerGrpc.GoalStateProvisionerStub asyncStub = channelStub.stub;
-
-        long stub_established = System.currentTimeMillis();
-        logger.log(Level.FINE, "[doSendGoalState] Established stub, elapsed Time after channel established in milli seconds: " + (stub_established - chan_established));
-
-        Map<String, List<Goalstateprovisioner.GoalStateOperationReply.GoalStateOperationStatus>> result = new HashMap<>();
-
-        StreamObserver<Goalstateprovisioner.GoalStateOperationReply> responseObserver = new StreamObserver<>() {
-            @Override
-            public void onNext(Goalstateprovisioner.GoalStateOperationReply reply) {
-                logger.log(Level.INFO, "Receive response from ACA@" + hostIp + " | " + reply.toString());
-                result.put(hostIp, reply.getOperationStatusesList());
-                if (reply.getOperationStatusesList().stream().filter(item -> item.getOperationStatus().equals(Common.OperationStatus.FAILURE)).collect(Collectors.toList()).size() > 0) {
-                    replies.add(reply.toString());
-                    while (finishLatch.getCount() > 0) {
-                        finishLatch.countDown();
-                    }
-                }
-            }
-
-            @Override
-            public void onError(Throwable t) {
-                logger.log(Level.WARNING, "Receive error from ACA@" + hostIp + " |  " + t.getMessage());
-            }
-
-            @Override
-            public void onCompleted() {
-                logger.log(Level.INFO, "Complete receiving message from ACA@" + hostIp);
-                finishLatch.countDown();
-            }
-        };
-
-        StreamObserver<Goalstate.GoalStateV2> requestObserver = asyncStub.pushGoalStatesStream(responseObserver);
-        long requestObserverEstablished = System.currentTimeMillis();
-        logger.log(Level.FINE, "[doSendGoalState] Established RequestObserver, elapsed Time after stub established in milli seconds: " + (requestObserverEstablished - stub_established));
         try {
-            long before_get_goalState = System.currentTimeMillis();
             Goalstate.GoalStateV2 goalState = hostGoalState.getGoalState();
-            Set<String> resourceIds = goalState.getHostResourcesMap().get(hostIp).getResourcesList().stream().filter(resourceIdType -> resourceIdType.getType().equals(Common.ResourceType.NEIGHBOR)).map(resourceIdType -> resourceIdType.getId()).collect(Collectors.toSet());
             Goalstate.GoalStateV2.Builder goalstateBuilder = Goalstate.GoalStateV2.newBuilder();
             goalstateBuilder.mergeFrom(goalState);
             if (isAttache || goalstateBuilder.getPortStatesCount() > 0) {
+                Goalstate.HostResources hostResources = goalState.getHostResourcesMap().get(hostIp);
+                Set<String> resourceIds = hostResources == null ? new HashSet<>() :
+                        hostResources.getResourcesList().stream().filter(resourceIdType -> resourceIdType.getType().equals(Common.ResourceType.NEIGHBOR)).map(resourceIdType -> resourceIdType.getId()).collect(Collectors.toSet());
                 Map<String, Neighbor.NeighborState> neighborStateMap = resourceInfo.getNeighborStates(resourceIds);
                 if (neighborStateMap.size() > 0) {
                     goalstateBuilder.putAllNeighborStates(neighborStateMap);
                 }
             }
             long after_get_goalState = System.currentTimeMillis();
-            logger.log(Level.FINE, "Sending GS with size " + goalState.getSerializedSize() + " to Host " + hostIp + " as follows | " + goalstateBuilder.build());
+            logger.log(Level.FINE, "[doSendGoalState] Get goalstatev2 from HostGoalState in milliseconds: " + (after_get_goalState - start));
 
-            requestObserver.onNext(goalstateBuilder.build());
-            long after_onNext = System.currentTimeMillis();
-            logger.log(Level.FINE, "[doSendGoalState] Get goalstatev2 from HostGoalState in milliseconds: " + (after_get_goalState - before_get_goalState));
-            logger.log(Level.FINE, "[doSendGoalState] Call onNext in milliseconds: " + (after_onNext - after_get_goalState));
+            CompletableFuture<Goalstateprovisioner.GoalStateOperationReply> future = getOrCreateStream(hostIp).send(goalstateBuilder.build(), changesOnly);
 
             if (hostGoalState.getGoalState().getNeighborStatesCount() == 1 && monitorHosts.contains(hostIp)) {
                 long sent_gs_time = System.currentTimeMillis();
@@ -327,24 +182,20 @@ public class GoalStateClientImpl implements GoalStateClient {
                 String neighbor_id = hostGoalState.getGoalState().getNeighborStatesMap().keySet().iterator().next();
                 logger.log(Level.FINE, "Sending neighbor ID: " + neighbor_id + " at: " + sent_gs_time);
             }
-        } catch (RuntimeException e) {
-            // Cancel RPC
-            logger.log(Level.WARNING, "[doSendGoalState] Sending GS, but error happened | " + e.getMessage());
-            requestObserver.onError(e);
-            throw e;
+            logger.log(Level.FINE, "[doSendGoalState] Handed GS to the stream of host " + hostIp + " in milliseconds: " + (System.currentTimeMillis() - start));
+            return future;
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.log(Level.WARNING, "[doSendGoalState] Sending GS to host " + hostIp + ", but error happened | " + e.getMessage());
+            CompletableFuture<Goalstateprovisioner.GoalStateOperationReply> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
         }
-        // Mark the end of requests
-        logger.log(Level.INFO, "Sending GS to Host " + hostIp + " is completed");
-
-        end = System.currentTimeMillis();
-        long onNext_called = System.currentTimeMillis();
-        logger.log(Level.FINE, "[doSendGoalState] Whole function call took time in milliseconds: "+(end - start) +
-                " \nFrom established stub to onNext called, elapsed Time after channel established in milli seconds: " + (onNext_called - requestObserverEstablished));
-        requestObserver.onCompleted();
+    }
 
-//        shutdown(channel);
+    @PreDestroy
+    public void shutdown() {
+        hostIpStreamMap.values().forEach(HostGoalStateStream::close);
+        hostIpChannelMap.values().forEach(this::shutdown);
     }
 
     @DurationStatistics
@@ -355,14 +206,4 @@ public class GoalStateClientImpl implements GoalStateClient {
             logger.log(Level.WARNING, "Timed out forcefully shutting down connection: {}", e.getMessage());
         }
     }
-
-    private class GrpcChannelStub {
-        public ManagedChannel channel;
-        public GoalStateProvisionerGrpc.GoalStateProvisionerStub stub;
-
-        public GrpcChannelStub(ManagedChannel channel, GoalStateProvisionerGrpc.GoalStateProvisionerStub stub) {
-            this.channel = channel;
-            this.stub = stub;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,348 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.client.gRPC;
+
+import com.futurewei.alcor.common.logging.Logger;
+import com.futurewei.alcor.common.logging.LoggerFactory;
+import com.futurewei.alcor.netwconfigmanager.util.NetworkConfigManagerUtil;
+import com.futurewei.alcor.schema.Common;
+import com.futurewei.alcor.schema.GoalStateProvisionerGrpc;
+import com.futurewei.alcor.schema.Goalstate;
+import com.futurewei.alcor.schema.Goalstateprovisioner;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+/**
+ * A long-lived pushGoalStatesStream to one host agent.
+ *
+ * Goal states are written only while the stream is ready. Goal states sent while it is not are
+ * coalesced into one queued message, which is written by the onReady handler. Every message
+ * written is kept in flight until the agent replies. A reply is correlated to its message by the
+ * resource ids in its operation statuses, or to the oldest message if it carries none.
+ *
+ * A hash of the last state sent or queued per resource is remembered, so that a goal state can be
+ * sent as changes only. Since the agent applies the messages of a stream in order, that is the
+ * state it ends up with unless its reply reports a failure, which forgets the resource. A deleted
+ * resource is forgotten once its DELETE is sent. All of them are forgotten when the stream closes,
+ * the first goal state on a new stream is then sent in full.
+ */
+class HostGoalStateStream {
+    private static final Logger logger = LoggerFactory.getLogger();
+
+    private static class PendingMessage {
+        private Goalstate.GoalStateV2 goalState;
+
+        // resource id => hash of its state in goalState
+        private final Map<String, Long> stateHashes = new HashMap<>();
+        private final List<CompletableFuture<Goalstateprovisioner.GoalStateOperationReply>> futures = new ArrayList<>();
+
+        private PendingMessage(Goalstate.GoalStateV2 goalState) {
+            this.goalState = goalState;
+        }
+
+        private void complete(Goalstateprovisioner.GoalStateOperationReply reply) {
+            futures.forEach(future -> future.complete(reply));
+        }
+
+        private void fail(Throwable t) {
+            futures.forEach(future -> future.completeExceptionally(t));
+        }
+    }
+
+    private class Call implements ClientResponseObserver<Goalstate.GoalStateV2, Goalstateprovisioner.GoalStateOperationReply> {
+        private ClientCallStreamObserver<Goalstate.GoalStateV2> requestStream;
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<Goalstate.GoalStateV2> requestStream) {
+            this.requestStream = requestStream;
+            requestStream.setOnReadyHandler(() -> onReady(this));
+        }
+
+        @Override
+        public void onNext(Goalstateprovisioner.GoalStateOperationReply reply) {
+            onReply(this, reply);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            logger.log(Level.WARNING, "Receive error from ACA@" + hostIp + " | " + t.getMessage());
+            onClosed(this, t);
+        }
+
+        @Override
+        public void onCompleted() {
+            logger.log(Level.INFO, "Complete receiving message from ACA@" + hostIp);
+            onClosed(this, new IllegalStateException("Goal state stream to " + hostIp + " is closed by host"));
+        }
+    }
+
+    private final String hostIp;
+    private final GoalStateProvisionerGrpc.GoalStateProvisionerStub stub;
+
+    private Call call;
+    private PendingMessage queued;
+    private final Deque<PendingMessage> inFlights = new ArrayDeque<>();
+
+    // resource id => hash of the last resource state sent or queued on the current stream
+    private final Map<String, Long> sentStates = new HashMap<>();
+
+    HostGoalStateStream(String hostIp, GoalStateProvisionerGrpc.GoalStateProvisionerStub stub) {
+        this.hostIp = hostIp;
+        this.stub = stub;
+    }
+
+    synchronized CompletableFuture<Goalstateprovisioner.GoalStateOperationReply> send(Goalstate.GoalStateV2 goalState) {
+        return send(goalState, false);
+    }
+
+    /**
+     * @param changesOnly leave out the resource states already sent or queued
+     */
+    synchronized CompletableFuture<Goalstateprovisioner.GoalStateOperationReply> send(Goalstate.GoalStateV2 goalState, boolean changesOnly) {
+        if (changesOnly) {
+            goalState = getChanges(goalState);
+            if (goalState == null) {
+                logger.log(Level.FINE, "No changed resources to send to ACA@" + hostIp);
+                return CompletableFuture.completedFuture(Goalstateprovisioner.GoalStateOperationReply.getDefaultInstance());
+            }
+        }
+
+        CompletableFuture<Goalstateprovisioner.GoalStateOperationReply> future = new CompletableFuture<>();
+        if (queued == null) {
+            queued = new PendingMessage(goalState);
+        } else {
+            queued.goalState = NetworkConfigManagerUtil.consolidateGoalState(queued.goalState, goalState);
+            logger.log(Level.FINE, "Coalesced queued goal states to ACA@" + hostIp);
+        }
+        queued.futures.add(future);
+        record(goalState, queued.stateHashes);
+
+        if (call == null) {
+            call = new Call();
+            stub.pushGoalStatesStream(call);
+            logger.log(Level.INFO, "Opened goal state stream to ACA@" + hostIp);
+        }
+        drain();
+
+        return future;
+    }
+
+    synchronized int getInFlightCount() {
+        return inFlights.size();
+    }
+
+    synchronized int getSentStateCount() {
+        return sentStates.size();
+    }
+
+    synchronized void close() {
+        if (call != null) {
+            call.requestStream.onCompleted();
+        }
+    }
+
+    private void drain() {
+        if (queued == null || call == null || !call.requestStream.isReady()) {
+            return;
+        }
+
+        PendingMessage message = queued;
+        queued = null;
+        inFlights.addLast(message);
+        try {
+            call.requestStream.onNext(message.goalState);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Sending GS to ACA@" + hostIp + ", but error happened | " + e.getMessage());
+            call.requestStream.onError(e);
+            onClosed(call, e);
+        }
+    }
+
+    private synchronized void onReady(Call readyCall) {
+        if (readyCall == call) {
+            drain();
+        }
+    }
+
+    private synchronized void onReply(Call replyCall, Goalstateprovisioner.GoalStateOperationReply reply) {
+        if (replyCall != call || inFlights.isEmpty()) {
+            logger.log(Level.WARNING, "Receive unexpected response from ACA@" + hostIp + " | " + reply.toString());
+            return;
+        }
+
+        PendingMessage message = null;
+        if (reply.getOperationStatusesCount() > 0) {
+            String resourceId = reply.getOperationStatuses(0).getResourceId();
+            for (PendingMessage inFlight : inFlights) {
+                if (inFlight.stateHashes.containsKey(resourceId)) {
+                    message = inFlight;
+                    break;
+                }
+            }
+        }
+        if (message == null) {
+            message = inFlights.peekFirst();
+        }
+
+        inFlights.remove(message);
+        acknowledge(message, reply);
+        message.complete(reply);
+    }
+
+    private synchronized void onClosed(Call closedCall, Throwable t) {
+        if (closedCall != call) {
+            return;
+        }
+
+        // the next send opens a new stream
+        call = null;
+        sentStates.clear();
+        inFlights.forEach(message -> message.fail(t));
+        inFlights.clear();
+        if (queued != null) {
+            queued.fail(t);
+            queued = null;
+        }
+    }
+
+    /**
+     * Remember the states of goalState as sent, and add their hashes to stateHashes.
+     */
+    private void record(Goalstate.GoalStateV2 goalState, Map<String, Long> stateHashes) {
+        for (Map<String, ?> states : getResourceStates(goalState)) {
+            for (Map.Entry<String, ?> entry : states.entrySet()) {
+                Message state = (Message) entry.getValue();
+                long stateHash = hash(state);
+                stateHashes.put(entry.getKey(), stateHash);
+                if (isDelete(state)) {
+                    sentStates.remove(entry.getKey());
+                } else {
+                    sentStates.put(entry.getKey(), stateHash);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the resources the agent failed to apply, unless a newer state of them was sent since.
+     */
+    private void acknowledge(PendingMessage message, Goalstateprovisioner.GoalStateOperationReply reply) {
+        for (Goalstateprovisioner.GoalStateOperationReply.GoalStateOperationStatus status : reply.getOperationStatusesList()) {
+            if (status.getOperationStatus() == Common.OperationStatus.FAILURE) {
+                Long stateHash = message.stateHashes.get(status.getResourceId());
+                if (stateHash != null) {
+                    sentStates.remove(status.getResourceId(), stateHash);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build a goal state of the resource states that differ from the ones sent or queued,
+     * or return null if there is none.
+     */
+    private Goalstate.GoalStateV2 getChanges(Goalstate.GoalStateV2 goalState) {
+        Goalstate.GoalStateV2.Builder builder = Goalstate.GoalStateV2.newBuilder()
+                .setFormatVersion(goalState.getFormatVersion());
+        builder.putAllVpcStates(getChanges(goalState.getVpcStatesMap()));
+        builder.putAllSubnetStates(getChanges(goalState.getSubnetStatesMap()));
+        builder.putAllPortStates(getChanges(goalState.getPortStatesMap()));
+        builder.putAllDhcpStates(getChanges(goalState.getDhcpStatesMap()));
+        builder.putAllNeighborStates(getChanges(goalState.getNeighborStatesMap()));
+        builder.putAllSecurityGroupStates(getChanges(goalState.getSecurityGroupStatesMap()));
+        builder.putAllRouterStates(getChanges(goalState.getRouterStatesMap()));
+        builder.putAllGatewayStates(getChanges(goalState.getGatewayStatesMap()));
+
+        Set<String> changedIds = getResourceIds(builder.build());
+        if (changedIds.isEmpty()) {
+            return null;
+        }
+
+        for (Map.Entry<String, Goalstate.HostResources> entry : goalState.getHostResourcesMap().entrySet()) {
+            Goalstate.HostResources.Builder hostResources = Goalstate.HostResources.newBuilder();
+            for (Goalstate.ResourceIdType resource : entry.getValue().getResourcesList()) {
+                if (changedIds.contains(resource.getId())) {
+                    hostResources.addResources(resource);
+                }
+            }
+            builder.putHostResources(entry.getKey(), hostResources.build());
+        }
+
+        return builder.build();
+    }
+
+    private <V> Map<String, V> getChanges(Map<String, V> states) {
+        Map<String, V> changes = new HashMap<>();
+        for (Map.Entry<String, V> entry : states.entrySet()) {
+            Long sentHash = sentStates.get(entry.getKey());
+            if (sentHash == null || sentHash != hash((Message) entry.getValue())) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * 64 bits of murmur3 over the deterministic serialization of a resource state,
+     * map fields included, so equal states hash equal.
+     */
+    private static long hash(Message state) {
+        byte[] bytes = new byte[state.getSerializedSize()];
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        output.useDeterministicSerialization();
+        try {
+            state.writeTo(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Hashing.murmur3_128().hashBytes(bytes).asLong();
+    }
+
+    private static boolean isDelete(Message state) {
+        Descriptors.FieldDescriptor field = state.getDescriptorForType().findFieldByName("operation_type");
+        return field != null && field.getType() == Descriptors.FieldDescriptor.Type.ENUM &&
+                Common.OperationType.DELETE.getValueDescriptor().equals(state.getField(field));
+    }
+
+    private static List<Map<String, ?>> getResourceStates(Goalstate.GoalStateV2 goalState) {
+        return Arrays.asList(goalState.getVpcStatesMap(),
+                goalState.getSubnetStatesMap(),
+                goalState.getPortStatesMap(),
+                goalState.getDhcpStatesMap(),
+                goalState.getNeighborStatesMap(),
+                goalState.getSecurityGroupStatesMap(),
+                goalState.getRouterStatesMap(),
+                goalState.getGatewayStatesMap());
+    }
+
+    private static Set<String> getResourceIds(Goalstate.GoalStateV2 goalState) {
+        Set<String> resourceIds = new HashSet<>();
+        for (Map<String, ?> states : getResourceStates(goalState)) {
+            resourceIds.addAll(states.keySet());
+        }
+        return resourceIds;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.entity;
+
+import org.apache.ignite.cache.query.annotations.QuerySqlField;
+
+/**
+ * Resource metadata of a single port IP in a VPC, stored under key (VNI, private IP).
+ * The indexed vni column is the secondary index used to enumerate all ports of a VPC.
+ */
+public class VpcPortResourceMeta {
+
+    @QuerySqlField(index = true)
+    private String vni;
+
+    private String privateIp;
+
+    private ResourceMeta resourceMeta;
+
+    public VpcPortResourceMeta() {
+
+    }
+
+    public VpcPortResourceMeta(String vni, String privateIp, ResourceMeta resourceMeta) {
+        this.vni = vni;
+        this.privateIp = privateIp;
+        this.resourceMeta = resourceMeta;
+    }
+
+    public String getVni() {
+        return vni;
+    }
+
+    public void setVni(String vni) {
+        this.vni = vni;
+    }
+
+    public String getPrivateIp() {
+        return privateIp;
+    }
+
+    public void setPrivateIp(String privateIp) {
+        this.privateIp = privateIp;
+    }
+
+    public ResourceMeta getResourceMeta() {
+        return resourceMeta;
+    }
+
+    public void setResourceMeta(ResourceMeta resourceMeta) {
+        this.resourceMeta = resourceMeta;
+    }
+}
@@ -28,6 +28,7 @@ import com.futurewei.alcor.netwconfigmanager.util.DemoUtil;
 import com.futurewei.alcor.netwconfigmanager.util.NetworkConfigManagerUtil;
 import com.futurewei.alcor.schema.*;
 import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.grpc.stub.StreamObserver;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
@@ -53,6 +54,12 @@ import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
@@ -102,6 +109,22 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
     @Value("${jaeger.span-name.ncm_server_on_demand_reply:emptySpanName}")
     private String onDemandReplySpanName;
 
+    // resource state requests of one HostRequest are retrieved in parallel on this amount of threads
+    @Value("${grpc.on-demand-threads:32}")
+    private int numberOfOnDemandThreads;
+
+    private ExecutorService onDemandExecutor;
+
+    // reply to DPM once goal states are stored, and send them down to hosts afterwards
+    @Value("${ncm.push.early-ack:false}")
+    private boolean earlyAck;
+
+    // goal states of different DPM streams are sent down to hosts in parallel on this amount of threads
+    @Value("${grpc.fan-out-threads:8}")
+    private int numberOfFanOutThreads;
+
+    private ExecutorService fanOutExecutor;
+
     @Autowired
     private OnDemandService onDemandService;
 
@@ -137,13 +160,25 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
     }
 
     @PostConstruct
-    public void checkServices() {
+    public void init() {
         if (onDemandService == null) {
             logger.log(Level.SEVERE, "[requestGoalStates] onDemandService is null");
         }
         if (goalStatePersistenceService == null) {
             logger.log(Level.SEVERE, "[requestGoalStates] goalStatePersistenceService is null");
         }
+
+        // bounded queue, a saturated pool makes the gRPC thread run the retrieval itself
+        int threads = Math.max(numberOfOnDemandThreads, 1);
+        this.onDemandExecutor = new ThreadPoolExecutor(threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(threads * 64),
+                new DefaultThreadFactory("on-demand-pool"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.fanOutExecutor = Executors.newFixedThreadPool(Math.max(numberOfFanOutThreads, 1),
+                new DefaultThreadFactory("fan-out-pool"));
     }
 
     @Override
@@ -171,6 +206,12 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
         if (this.server != null) {
             this.server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
         }
+        if (this.onDemandExecutor != null) {
+            this.onDemandExecutor.shutdown();
+        }
+        if (this.fanOutExecutor != null) {
+            this.fanOutExecutor.shutdown();
+        }
     }
 
     @Override
@@ -194,8 +235,25 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
         public StreamObserver<Goalstate.GoalStateV2> pushGoalStatesStream(final StreamObserver<Goalstateprovisioner.GoalStateOperationReply> responseObserver) {
 
             return new StreamObserver<Goalstate.GoalStateV2>() {
+                // fan-outs of one stream are chained, so hosts get its goal states in the order DPM sent them
+                private CompletableFuture<Void> lastFanOut = CompletableFuture.completedFuture(null);
+
+                // chunks of the current batch, applied together once its end_of_batch chunk arrives
+                private List<Goalstate.GoalStateV2> pendingChunks = new ArrayList<>();
+
                 @Override
                 public void onNext(Goalstate.GoalStateV2 value) {
+                    pendingChunks.add(value);
+                    if (value.getEndOfBatch()) {
+                        applyBatch();
+                    }
+                }
+
+                private boolean applyBatch() {
+                    int chunkCount = pendingChunks.size();
+                    Goalstate.GoalStateV2 value = NetworkConfigManagerUtil.mergeGoalStateChunks(pendingChunks);
+                    pendingChunks = new ArrayList<>();
+
                     Span pSpan = tracer.activeSpan();
                     Span span;
 
@@ -209,41 +267,51 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
 
                     Scope cscope = tracer.scopeManager().activate(span);
 
-                    logger.log(Level.FINE, "pushGoalStatesStream : receiving GS V2 message " + value.toString());
+                    logger.log(Level.FINE, "pushGoalStatesStream : receiving GS V2 batch of " + chunkCount +
+                            " chunks, " + value.getSerializedSize() + " bytes");
                     long start = System.currentTimeMillis();
                     Span storeGsSpan = tracer.buildSpan(serverStoreGsSpanName).asChildOf(span.context()).start();
                     Scope storageCscope = tracer.scopeManager().activate(storeGsSpan);
 
 
-                    //store the goal state in cache
-                    Map<String, HostGoalState> hostGoalStates = new HashMap<>();
+                    //store the goal state in cache, concurrent streams are batched and partitioned by the persistence service
+                    Map<String, HostGoalState> hostGoalStates;
                     try {
                         hostGoalStates = goalStatePersistenceService.updateGoalStates(value);
                     } catch (Exception e) {
                         e.printStackTrace();
+                        storeGsSpan.finish();
+                        span.finish();
                         responseObserver.onError(e);
+                        return false;
                     }
 
                     storeGsSpan.finish();
 
-                    Set<String> processedResourceIds = new HashSet<>();
-
                     long end = System.currentTimeMillis();
                     logger.log(Level.FINE, "pushGoalStatesStream : finished putting GS into cache, elapsed time in milliseconds: " + + (end-start));
                     Span filterSendGsSpan = tracer.buildSpan(serverFilterSendGsSpanName).asChildOf(span.context()).start();
-                    Scope filterCscope = tracer.scopeManager().activate(filterSendGsSpan);
-
-                    // filter neighbor/SG update, and send them down to target ACA
-                    try {
-                        Map<String, HostGoalState> filteredGoalStates = NetworkConfigManagerUtil.filterNeighbors(hostGoalStates);
 
-                        //TODO use filteredGoalStates
-                        grpcGoalStateClient.sendGoalStates(hostGoalStates);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        responseObserver.onError(e);
+                    // send the new and changed resources down to target ACA, in early ack mode without
+                    // waiting for replies as the host streams keep the order of the goal states handed over
+                    CompletableFuture<Void> fanOut = lastFanOut.thenRunAsync(() -> {
+                        try {
+                            List<String> replies = grpcGoalStateClient.sendGoalStateChanges(hostGoalStates, !earlyAck);
+                            if (!replies.isEmpty()) {
+                                logger.log(Level.WARNING, "pushGoalStatesStream : send goal states failed: " + replies);
+                            }
+                        } catch (Exception e) {
+                            logger.log(Level.WARNING, "pushGoalStatesStream : send goal states failed: " + e.getMessage());
+                        } finally {
+                            filterSendGsSpan.finish();
+                        }
+                    }, fanOutExecutor);
+                    lastFanOut = fanOut;
+
+                    if (!earlyAck) {
+                        fanOut.join();
                     }
-                    filterSendGsSpan.finish();
+
                     Span replyDPMSpan = tracer.buildSpan(serverReplyDpmSpanName).asChildOf(span.context()).start();
                     Scope replyCscope = tracer.scopeManager().activate(replyDPMSpan);
                     //consolidate response from ACA and send response to DPM
@@ -257,6 +325,7 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
                     replyDPMSpan.finish();
                     span.finish();
                     logger.log(Level.INFO, "[pushGoalStatesStream] Child span after finish: "+span.toString());
+                    return true;
                 }
 
                 @Override
@@ -269,6 +338,10 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
                 @Override
                 public void onCompleted() {
                     logger.log(Level.INFO, "pushGoalStatesStream : onCompleted() ");
+                    // senders which do not mark the end of their batch, e.g. a single goal state
+                    if (!pendingChunks.isEmpty() && !applyBatch()) {
+                        return;
+                    }
                     responseObserver.onCompleted();
                 }
             };
@@ -336,30 +409,55 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
             try {
                 Span retrieveGsSpan = tracer.buildSpan(onDemandRetrieveGsSpanName).asChildOf(span.context()).start();
                 Scope retrieveCscope = tracer.scopeManager().activate(retrieveGsSpan);
-                Map<String, HostGoalState> hostGoalStates = new HashMap<>();
+
+                // Requests sharing (VNI, source IP) need the same source port states, retrieve them once per group
+                Map<String, List<Goalstateprovisioner.HostRequest.ResourceStateRequest>> groupedRequests = new LinkedHashMap<>();
                 for (Goalstateprovisioner.HostRequest.ResourceStateRequest resourceStateRequest : request.getStateRequestsList()) {
-                    HostGoalState hostGoalState = onDemandService.retrieveGoalState(resourceStateRequest, clientIpAddress);
+                    String groupKey = resourceStateRequest.getTunnelId() + "/" + resourceStateRequest.getSourceIp();
+                    groupedRequests.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(resourceStateRequest);
+                }
+
+                // The first group is retrieved on this thread while the others run on the on-demand executor
+                List<List<Goalstateprovisioner.HostRequest.ResourceStateRequest>> groups = new ArrayList<>(groupedRequests.values());
+                List<Future<HostGoalState>> futures = new ArrayList<>(groups.size());
+                for (int i = 1; i < groups.size(); i++) {
+                    List<Goalstateprovisioner.HostRequest.ResourceStateRequest> group = groups.get(i);
+                    futures.add(onDemandExecutor.submit(() -> onDemandService.retrieveGoalState(group, clientIpAddress)));
+                }
+
+                Map<String, HostGoalState> hostGoalStates = new HashMap<>();
+                for (int i = 0; i < groups.size(); i++) {
+                    List<Goalstateprovisioner.HostRequest.ResourceStateRequest> group = groups.get(i);
+                    HostGoalState hostGoalState = null;
+                    try {
+                        hostGoalState = i == 0 ?
+                                onDemandService.retrieveGoalState(group, clientIpAddress) : futures.get(i - 1).get();
+                    } catch (Exception e) {
+                        logger.log(Level.WARNING, "[requestGoalStates] Retrieve goal state failed for vni = " +
+                                group.get(0).getTunnelId() + " | sourceIp = " + group.get(0).getSourceIp() + " | " + e.getMessage());
+                    }
 
                     if (hostGoalState == null) {
-                        logger.log(Level.WARNING, "[requestGoalStates] No resource found for resource state request " +
-                                resourceStateRequest.toString());
-                        failedRequestIds.add(resourceStateRequest.getRequestId());
+                        logger.log(Level.WARNING, "[requestGoalStates] No resource found for resource state requests " +
+                                group.toString());
+                        for (Goalstateprovisioner.HostRequest.ResourceStateRequest resourceStateRequest : group) {
+                            failedRequestIds.add(resourceStateRequest.getRequestId());
+                        }
                         continue;
                     }
 
                     String hostIp = hostGoalState.getHostIp();
                     if (hostGoalStates.containsKey(hostIp)) {
-                        //Case 1: Handle potential overwrite when more than one requests come from the same host
+                        //Case 1: Merge when more than one requests come from the same host
                         HostGoalState existingHostGoalState = hostGoalStates.get(hostIp);
                         HostGoalState updatedHostGoalState = NetworkConfigManagerUtil.consolidateHostGoalState(existingHostGoalState, hostGoalState);
                         hostGoalStates.put(hostIp, updatedHostGoalState);
-                        logger.log(Level.INFO, "[requestGoalStates] Same Host IP detected: " + hostIp +
-                                " | existing GS: " + existingHostGoalState.toString() +
+                        logger.log(Level.FINE, "[requestGoalStates] Same Host IP detected: " + hostIp +
                                 " | updated GS: " + updatedHostGoalState.toString());
                     } else {
                         //Case 2: new host
                         hostGoalStates.put(hostIp, hostGoalState);
-                        logger.log(Level.INFO, "[requestGoalStates] New Host IP: " + hostIp + " | GS: ",
+                        logger.log(Level.FINE, "[requestGoalStates] New Host IP: " + hostIp + " | GS: " +
                                 hostGoalState.toString());
                     }
                 }
@@ -369,7 +467,8 @@ public class GoalStateProvisionerServer implements NetworkConfigServer {
 
                 end = System.currentTimeMillis();
                 logger.log(Level.FINE, "requestGoalStates : Pushing GS with UUID: " + state_request_uuid + " at: " + end);
-                grpcGoalStateClient.sendGoalStates(hostGoalStates);
+                // reply as soon as the goal states are handed to the outbound streams
+                grpcGoalStateClient.sendGoalStates(hostGoalStates, false);
                 sendGsSpan.finish();
                 logger.log(Level.FINE, "[requestGoalStates] From retrieving goalstate to before sending goalstate to host, elapsed Time in milli seconds: "+ (end-start));
             } catch (Exception e) {
@@ -35,6 +35,17 @@ public interface OnDemandService {
      */
     HostGoalState retrieveGoalState(Goalstateprovisioner.HostRequest.ResourceStateRequest resourceStateRequest, String hostIpAddress) throws Exception;
 
+    /**
+     * Retrieve Resource Goal State for a group of resource state requests sharing the same vni and source ip,
+     * the states of all requested destinations are merged into one goal state
+     *
+     * @param resourceStateRequests
+     * @param hostIpAddress
+     * @return HostGoalState
+     * @throws Exception Various exceptions that may occur during the create process
+     */
+    HostGoalState retrieveGoalState(List<Goalstateprovisioner.HostRequest.ResourceStateRequest> resourceStateRequests, String hostIpAddress) throws Exception;
+
     /**
      * Retrieve Vpc Resource metadata according to the received vni.
      *
@@ -44,6 +55,16 @@ public interface OnDemandService {
      */
     VpcResourceMeta retrieveResourceMeta(String vni) throws Exception;
 
+    /**
+     * Retrieve Port Resource metadata according to the received vni and private ip.
+     *
+     * @param vni
+     * @param privateIp
+     * @return ResourceMeta
+     * @throws Exception Various exceptions that may occur during the create process
+     */
+    ResourceMeta retrieveResourceMeta(String vni, String privateIp) throws Exception;
+
     /**
      * Retrieve actual Resource states based on the resource metadata.
      *
@@ -24,15 +24,20 @@ import com.futurewei.alcor.netwconfigmanager.cache.ResourceStateCache;
 import com.futurewei.alcor.netwconfigmanager.cache.VpcResourceCache;
 import com.futurewei.alcor.netwconfigmanager.entity.HostGoalState;
 import com.futurewei.alcor.netwconfigmanager.entity.ResourceMeta;
-import com.futurewei.alcor.netwconfigmanager.entity.VpcResourceMeta;
 import com.futurewei.alcor.netwconfigmanager.service.GoalStatePersistenceService;
 import com.futurewei.alcor.netwconfigmanager.util.NetworkConfigManagerUtil;
 import com.futurewei.alcor.schema.*;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 @Service
@@ -50,39 +55,178 @@ public class GoalStatePersistenceServiceImpl implements GoalStatePersistenceServ
     @Autowired
     private VpcResourceCache vpcResourceCache;
 
+    // host metadata of a host is only read and written by one of these single threaded partitions
+    @Value("${ncm.persistence.host-partitions:8}")
+    private int numberOfHostPartitions;
+
+    // max number of queued goal states whose resource states are written in one putAll
+    @Value("${ncm.persistence.max-write-batch:64}")
+    private int maxWriteBatchSize;
+
+    private ExecutorService[] hostPartitions;
+
+    private final Queue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    private static class PendingWrite {
+        private final Goalstate.GoalStateV2 goalState;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(Goalstate.GoalStateV2 goalState) {
+            this.goalState = goalState;
+        }
+    }
+
     @Override
     @DurationStatistics
     public Map<String, HostGoalState> updateGoalStates(Goalstate.GoalStateV2 goalStateV2) throws Exception {
         //prepare GS message based on host
         Map<String, HostGoalState> hostGoalStates = NetworkConfigManagerUtil.splitClusterToHostGoalState(goalStateV2);
 
-        //aggregate goal state
+        // Stage 1: resource states, written together with those of concurrent callers
+        writeResourceStates(goalStateV2);
+
+        // Stage 2: host metadata, every host is always updated by the same partition thread
+        updateHostGoalStates(hostGoalStates);
+
+        return hostGoalStates;
+    }
+
+    @PostConstruct
+    public void init() {
+        int partitions = Math.max(numberOfHostPartitions, 1);
+        this.hostPartitions = new ExecutorService[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.hostPartitions[i] = Executors.newSingleThreadExecutor(new DefaultThreadFactory("host-partition-" + i));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.hostPartitions != null) {
+            for (ExecutorService hostPartition : this.hostPartitions) {
+                hostPartition.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Group commit of resource states: the caller finding no write in progress becomes
+     * the writer and puts the states of every queued message in one putAll, the other
+     * callers wait for the write carrying their states.
+     */
+    private void writeResourceStates(Goalstate.GoalStateV2 goalStateV2) throws Exception {
+        PendingWrite pendingWrite = new PendingWrite(goalStateV2);
+        pendingWrites.add(pendingWrite);
+
+        // A writer re-checks the queue after releasing the flag, so a write queued by a
+        // caller which failed to take the flag is never left behind
+        while (writing.compareAndSet(false, true)) {
+            try {
+                flushPendingWrites();
+            } finally {
+                writing.set(false);
+            }
+            if (pendingWrites.isEmpty()) {
+                break;
+            }
+        }
+
+        await(pendingWrite.future);
+    }
+
+    private void flushPendingWrites() {
+        List<PendingWrite> batch = new ArrayList<>();
         SortedMap<String, Object> goalStates = new TreeMap<>();
-        goalStates.putAll(goalStateV2.getVpcStatesMap());
-        goalStates.putAll(goalStateV2.getSubnetStatesMap());
-        goalStates.putAll(goalStateV2.getHostResourcesMap());
-        goalStates.putAll(goalStateV2.getDhcpStatesMap());
-        goalStates.putAll(goalStateV2.getGatewayStatesMap());
-        goalStates.putAll(goalStateV2.getNeighborStatesMap());
-        goalStates.putAll(goalStateV2.getPortStatesMap());
-        goalStates.putAll(goalStateV2.getRouterStatesMap());
-        goalStates.putAll(goalStateV2.getSecurityGroupStatesMap());
-        synchronized (this) {
-            hostResourceMetadataCache.getTransaction();
+        PendingWrite pendingWrite;
+        while (batch.size() < maxWriteBatchSize && (pendingWrite = pendingWrites.poll()) != null) {
+            Goalstate.GoalStateV2 goalStateV2 = pendingWrite.goalState;
+            goalStates.putAll(goalStateV2.getVpcStatesMap());
+            goalStates.putAll(goalStateV2.getSubnetStatesMap());
+            goalStates.putAll(goalStateV2.getHostResourcesMap());
+            goalStates.putAll(goalStateV2.getDhcpStatesMap());
+            goalStates.putAll(goalStateV2.getGatewayStatesMap());
+            goalStates.putAll(goalStateV2.getNeighborStatesMap());
+            goalStates.putAll(goalStateV2.getPortStatesMap());
+            goalStates.putAll(goalStateV2.getRouterStatesMap());
+            goalStates.putAll(goalStateV2.getSecurityGroupStatesMap());
+            batch.add(pendingWrite);
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
             resourceStateCache.addResourceStates(goalStates);
-            for (Map.Entry<String, HostGoalState> entry : hostGoalStates.entrySet()) {
-                String hostId = entry.getKey();
-                HostGoalState hostGoalState = entry.getValue();
-
-                try {
-                    updateGoalState(hostId, hostGoalState);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+            logger.log(Level.FINE, "writeResourceStates : wrote " + goalStates.size() +
+                    " resource states of " + batch.size() + " goal states");
+            for (PendingWrite write : batch) {
+                write.future.complete(null);
+            }
+        } catch (Exception e) {
+            for (PendingWrite write : batch) {
+                write.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void updateHostGoalStates(Map<String, HostGoalState> hostGoalStates) throws Exception {
+        Map<Integer, Map<String, HostGoalState>> partitionedHostGoalStates = new HashMap<>();
+        for (Map.Entry<String, HostGoalState> entry : hostGoalStates.entrySet()) {
+            int partition = Math.floorMod(entry.getKey().hashCode(), hostPartitions.length);
+            partitionedHostGoalStates.computeIfAbsent(partition, k -> new HashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+
+        List<Future<?>> futures = new ArrayList<>(partitionedHostGoalStates.size());
+        for (Map.Entry<Integer, Map<String, HostGoalState>> entry : partitionedHostGoalStates.entrySet()) {
+            Map<String, HostGoalState> partitionHostGoalStates = entry.getValue();
+            futures.add(hostPartitions[entry.getKey()].submit(() -> {
+                updatePartitionGoalStates(partitionHostGoalStates);
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            await(future);
+        }
+    }
+
+    private static void await(Future<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void updatePartitionGoalStates(Map<String, HostGoalState> hostGoalStates) throws Exception {
+        // Step 1: Populate host resource metadata cache, one read and one write for all hosts of the partition
+        Map<String, ResourceMeta> existingResourceMetas = hostResourceMetadataCache.getResourceMetas(hostGoalStates.keySet());
+        List<ResourceMeta> updatedResourceMetas = new ArrayList<>(hostGoalStates.size());
+        for (Map.Entry<String, HostGoalState> entry : hostGoalStates.entrySet()) {
+            String hostId = entry.getKey();
+            ResourceMeta latest = NetworkConfigManagerUtil.convertGoalStateToHostResourceMeta(
+                    hostId, entry.getValue().getGoalState().getHostResourcesMap().get(hostId));
+            ResourceMeta existing = existingResourceMetas == null ? null : existingResourceMetas.get(hostId);
+            updatedResourceMetas.add(existing == null ? latest : NetworkConfigManagerUtil.consolidateResourceMeta(existing, latest));
+        }
+        hostResourceMetadataCache.addResourceMetas(updatedResourceMetas);
+
+        // Step 2: Populate vpc resource cache, the ports of a host are only written by its partition
+        for (Map.Entry<String, HostGoalState> entry : hostGoalStates.entrySet()) {
+            try {
+                populateVpcResourceCache(entry.getValue(), processVpcStates(entry.getValue()));
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "updateGoalStates : populate vpc resource cache failed for hostId: " +
+                        entry.getKey() + ", " + e.getMessage());
             }
-            hostResourceMetadataCache.commit();
         }
-        return hostGoalStates;
     }
 
     public Map<String, Neighbor.NeighborState> getNeighborStates(Set<String> resourceIds) throws Exception {
@@ -199,27 +343,25 @@ public class GoalStatePersistenceServiceImpl implements GoalStatePersistenceServ
         logger.log(Level.FINE, "populateVpcResourceCache : beginning");
 
         Map<String, Port.PortState> portStatesMap = hostGoalState.getGoalState().getPortStatesMap();
-        HashMap<String, VpcResourceMeta> vniToVpcReourceMetaDataMap = new HashMap<>();
 
-        // Retrieve all needed VpcResourceMeta from cache to memory
-        for (String resourceId : portStatesMap.keySet()){
-            Port.PortState portState = portStatesMap.get(resourceId);
+        // Collect the private ips touched by this goal state per vni
+        Map<String, Set<String>> vniToPrivateIpsMap = new HashMap<>();
+        for (Port.PortState portState : portStatesMap.values()) {
             String vpcId = portState.getConfiguration().getVpcId();
             String vni = String.valueOf(vpcIdToVniMap.get(vpcId));
-            // don't get the same vni again.
-            if ( ! vniToVpcReourceMetaDataMap.containsKey(vni)){
-                VpcResourceMeta vpcResourceMeta = vpcResourceCache.getResourceMeta(vni);
-                if (vpcResourceMeta == null) {
-                    // This is a new VPC
-                    vpcResourceMeta = new VpcResourceMeta(vni, new HashMap<String, ResourceMeta>());
-                }
-                vniToVpcReourceMetaDataMap.put(vni, vpcResourceMeta);
+            Set<String> privateIps = vniToPrivateIpsMap.computeIfAbsent(vni, k -> new HashSet<>());
+            for (Port.PortConfiguration.FixedIp fixedIp : portState.getConfiguration().getFixedIpsList()) {
+                privateIps.add(fixedIp.getIpAddress());
             }
         }
 
-        // Edit the in-memory VpcResourceData, instead of getting it from cache every time.
-        for (String resourceId : portStatesMap.keySet()) {
-            Port.PortState portState = portStatesMap.get(resourceId);
+        // Retrieve only the existing entries of those ips, other ports of the vpc are not read or written
+        Map<String, Map<String, ResourceMeta>> vniToResourceMetasMap = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : vniToPrivateIpsMap.entrySet()) {
+            vniToResourceMetasMap.put(entry.getKey(), vpcResourceCache.getResourceMetas(entry.getKey(), entry.getValue()));
+        }
+
+        for (Port.PortState portState : portStatesMap.values()) {
             String vpcId = portState.getConfiguration().getVpcId();
             String vni = String.valueOf(vpcIdToVniMap.get(vpcId));
             String portId = portState.getConfiguration().getId();
@@ -228,14 +370,12 @@ public class GoalStatePersistenceServiceImpl implements GoalStatePersistenceServ
             String gatewayId = "";
             String securityGroupId = "";
 
-            VpcResourceMeta vpcResourceMeta = vniToVpcReourceMetaDataMap.get(vni);
-
-            long t3 = System.currentTimeMillis();
+            Map<String, ResourceMeta> resourceMetas = vniToResourceMetasMap.get(vni);
 
             for (Port.PortConfiguration.FixedIp fixedIp : portState.getConfiguration().getFixedIpsList()) {
                 String subnetId = fixedIp.getSubnetId();
                 String portPrivateIp = fixedIp.getIpAddress();
-                ResourceMeta portResourceMeta = vpcResourceMeta.getResourceMeta(portPrivateIp);
+                ResourceMeta portResourceMeta = resourceMetas.get(portPrivateIp);
                 if (portResourceMeta == null) {
                     // new port
                     portResourceMeta = new ResourceMeta(portId);
@@ -250,20 +390,13 @@ public class GoalStatePersistenceServiceImpl implements GoalStatePersistenceServ
                 if (!CommonUtil.isNullOrEmpty(gatewayId)) portResourceMeta.addGatewayId(gatewayId);
                 if (!CommonUtil.isNullOrEmpty(securityGroupId)) portResourceMeta.addSecurityGroupId(securityGroupId);
 
-                vpcResourceMeta.setResourceMeta(portPrivateIp, portResourceMeta);
+                resourceMetas.put(portPrivateIp, portResourceMeta);
             }
-            long t4 = System.currentTimeMillis();
-            logger.log(Level.FINE, "populateVpcResourceCache : looped throught the port states for vpc with vni: "+vni+",  elapsed time in milliseconds: " + (t4 - t3));
-            long t5 = System.currentTimeMillis();
-//            vpcResourceCache.addResourceMeta(vpcResourceMeta);
-            long t6 = System.currentTimeMillis();
-            logger.log(Level.FINE, "populateVpcResourceCache : added resource metadata for vpc with vni: "+vni+",  elapsed time in milliseconds: " + (t6 - t5));
         }
 
-
-        // Commit the changes to the database. This is safe, it is wrapped by a transaction in updateGoalState
-        for(String vni : vniToVpcReourceMetaDataMap.keySet()){
-            vpcResourceCache.addResourceMeta(vniToVpcReourceMetaDataMap.get(vni));
+        // Write back the touched (vni, ip) entries only
+        for (Map.Entry<String, Map<String, ResourceMeta>> entry : vniToResourceMetasMap.entrySet()) {
+            vpcResourceCache.addResourceMetas(entry.getKey(), entry.getValue());
         }
         long end = System.currentTimeMillis();
         logger.log(Level.FINE, "populateVpcResourceCache : end,  elapsed time in milliseconds: " + (end-start));
@@ -29,8 +29,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 
@@ -77,33 +80,35 @@ public class OnDemandServiceImpl implements OnDemandService {
 
         logger.log(Level.INFO, "[retrieveGoalState] receiving request = " + resourceStateRequest.toString());
 
-        String vni = String.valueOf(resourceStateRequest.getTunnelId());
-        String sourceIp = resourceStateRequest.getSourceIp();
-        String destinationIp = resourceStateRequest.getDestinationIp();
+        return retrieveGoalState(Collections.singletonList(resourceStateRequest), hostIpAddress);
+    }
+
+    @Override
+    @DurationStatistics
+    public HostGoalState retrieveGoalState(List<Goalstateprovisioner.HostRequest.ResourceStateRequest> resourceStateRequests, String hostIpAddress) throws Exception {
+        Goalstateprovisioner.HostRequest.ResourceStateRequest firstRequest = resourceStateRequests.get(0);
+        String vni = String.valueOf(firstRequest.getTunnelId());
+        String sourceIp = firstRequest.getSourceIp();
+        Set<String> destinationIps = new HashSet<>();
+        for (Goalstateprovisioner.HostRequest.ResourceStateRequest resourceStateRequest : resourceStateRequests) {
+            destinationIps.add(resourceStateRequest.getDestinationIp());
+        }
 
         logger.log(Level.INFO, "[retrieveGoalState] vni = " + vni +
                 " | sourceIp = " + sourceIp +
-                " | destinationIp = " + destinationIp);
+                " | destinationIps = " + destinationIps);
         long start = System.currentTimeMillis();
-//        ResourceMeta resourceMetadata = retrieveResourceMeta(vni, sourceIp);
-        VpcResourceMeta vpcResourceMetadata = retrieveResourceMeta(vni);
-        if (vpcResourceMetadata == null) {
-            logger.log(Level.INFO, "[retrieveGoalState] retrieved vpc resource metadata is null | vni = " + vni);
-            return null;
-        }
-
-        long end = System.currentTimeMillis();
-        logger.log(Level.FINE, "[retrieveGoalState] retrieved vpc resource metadata, elapsed Time in milli seconds: "+ (end-start));
-        ResourceMeta portResourceMetadata = vpcResourceMetadata.getResourceMeta(sourceIp);
+        ResourceMeta portResourceMetadata = retrieveResourceMeta(vni, sourceIp);
         if (portResourceMetadata == null) {
-            logger.log(Level.INFO, "[retrieveGoalState] retrieved port resource metadata is null | sourceIp = " + sourceIp);
+            logger.log(Level.INFO, "[retrieveGoalState] retrieved port resource metadata is null | vni = " + vni +
+                    " | sourceIp = " + sourceIp);
             return null;
         }
 
         long end1 = System.currentTimeMillis();
-        logger.log(Level.FINE, "[retrieveGoalState] retrieved port resource metadata, elapsed Time in milli seconds: "+ (end1-end));
+        logger.log(Level.FINE, "[retrieveGoalState] retrieved port resource metadata, elapsed Time in milli seconds: "+ (end1-start));
         //populate portResourceMetadata with existing neighbors in the same VPC
-        Set<String> neighborIdSet = vpcResourceMetadata.getNeighborIds(sourceIp, destinationIp, defaultStateProvisionAlgorithm);
+        Set<String> neighborIdSet = retrieveNeighborIds(vni, sourceIp, portResourceMetadata, destinationIps, defaultStateProvisionAlgorithm);
         for (String neighborId : neighborIdSet) {
             portResourceMetadata.addNeighborEntry(neighborId, neighborId); //TODO: consider to store id => ip or vice versa
         }
@@ -111,15 +116,7 @@ public class OnDemandServiceImpl implements OnDemandService {
         long end2 = System.currentTimeMillis();
         logger.log(Level.FINE, "[retrieveGoalState] populated portResourceMetadata with existing neighbors in the same VPC, elapsed Time in milli seconds: "+ (end2-end1));
 
-        List<ResourceMeta> resourceMetas = new ArrayList<>() {
-            {
-                add(portResourceMetadata);
-            }
-        };
-        long end3 = System.currentTimeMillis();
-        logger.log(Level.FINE, "[retrieveGoalState] added portResourceMetadata in the arrayList, elapsed Time in milli seconds: "+ (end3-end2));
-
-        Goalstate.GoalStateV2 goalState = retrieveResourceState(resourceMetas);
+        Goalstate.GoalStateV2 goalState = retrieveResourceState(Collections.singletonList(portResourceMetadata));
         if (goalState == null) {
             logger.log(Level.INFO, "[retrieveGoalState] retrieved goal state is null");
             return null;
@@ -138,6 +135,35 @@ public class OnDemandServiceImpl implements OnDemandService {
         return curResourceMeta;
     }
 
+    @Override
+    @DurationStatistics
+    public ResourceMeta retrieveResourceMeta(String vni, String privateIp) throws Exception {
+        return vpcResourceCache.getResourceMeta(vni, privateIp);
+    }
+
+    private Set<String> retrieveNeighborIds(String vni, String sourceIp, ResourceMeta sourceResourceMeta,
+                                            Set<String> destinationIps, StateProvisionAlgorithm algorithm) throws Exception {
+        VpcResourceMeta vpcResourceMeta;
+        if (algorithm == StateProvisionAlgorithm.Point_To_Point) {
+            // Only the source and destination entries are needed, no need to enumerate the whole vpc
+            HashMap<String, ResourceMeta> resourceMetaMap = new HashMap<>(vpcResourceCache.getResourceMetas(vni, destinationIps));
+            resourceMetaMap.put(sourceIp, sourceResourceMeta);
+            vpcResourceMeta = new VpcResourceMeta(vni, resourceMetaMap);
+        } else {
+            vpcResourceMeta = retrieveResourceMeta(vni);
+            if (vpcResourceMeta == null) {
+                return new HashSet<>();
+            }
+        }
+
+        Set<String> neighborIdSet = new HashSet<>();
+        for (String destinationIp : destinationIps) {
+            neighborIdSet.addAll(vpcResourceMeta.getNeighborIds(sourceIp, destinationIp, algorithm));
+        }
+
+        return neighborIdSet;
+    }
+
     @Override
     @DurationStatistics
     public Goalstate.GoalStateV2 retrieveResourceState(List<ResourceMeta> resourceMetas) throws Exception {
@@ -147,27 +173,42 @@ public class OnDemandServiceImpl implements OnDemandService {
         }
 
         long start = System.currentTimeMillis();
-        // TODO: This triggers quite a few db read access. Need to evaluate performance or rewrite with bulk access
+        Set<String> resourceIds = new HashSet<>();
+        for (ResourceMeta resource : resourceMetas) {
+            resourceIds.addAll(resource.getVpcIds());
+            resourceIds.addAll(resource.getSubnetIds());
+            resourceIds.addAll(resource.getPortIds());
+            resourceIds.addAll(resource.getNeighborIdMap().values());
+            resourceIds.addAll(resource.getDhcpIds());
+            resourceIds.addAll(resource.getRouterIds());
+        }
+        Map<String, Object> resourceStates = resourceStateCache.getResourceStates(resourceIds);
+
         Goalstate.GoalStateV2.Builder builder = Goalstate.GoalStateV2.newBuilder();
         for (ResourceMeta resource : resourceMetas) {
-            String ownerId = resource.getOwnerId();
             for (String vpcId : resource.getVpcIds()) {
-                builder.putVpcStates(vpcId, (Vpc.VpcState) resourceStateCache.getResourceState(vpcId));
+                Object vpcState = resourceStates.get(vpcId);
+                if (vpcState != null) builder.putVpcStates(vpcId, (Vpc.VpcState) vpcState);
             }
             for (String subnetId : resource.getSubnetIds()) {
-                builder.putSubnetStates(subnetId, (Subnet.SubnetState) resourceStateCache.getResourceState(subnetId));
+                Object subnetState = resourceStates.get(subnetId);
+                if (subnetState != null) builder.putSubnetStates(subnetId, (Subnet.SubnetState) subnetState);
             }
             for (String portId : resource.getPortIds()) {
-                builder.putPortStates(portId, (Port.PortState) resourceStateCache.getResourceState(portId));
+                Object portState = resourceStates.get(portId);
+                if (portState != null) builder.putPortStates(portId, (Port.PortState) portState);
             }
             for (String neighborId : resource.getNeighborIdMap().values()) {
-                builder.putNeighborStates(neighborId, (Neighbor.NeighborState) resourceStateCache.getResourceState(neighborId));
+                Object neighborState = resourceStates.get(neighborId);
+                if (neighborState != null) builder.putNeighborStates(neighborId, (Neighbor.NeighborState) neighborState);
             }
             for (String dhcpId : resource.getDhcpIds()) {
-                builder.putDhcpStates(dhcpId, (DHCP.DHCPState) resourceStateCache.getResourceState(dhcpId));
+                Object dhcpState = resourceStates.get(dhcpId);
+                if (dhcpState != null) builder.putDhcpStates(dhcpId, (DHCP.DHCPState) dhcpState);
             }
             for (String routerId : resource.getRouterIds()) {
-                builder.putRouterStates(routerId, (Router.RouterState) resourceStateCache.getResourceState(routerId));
+                Object routerState = resourceStates.get(routerId);
+                if (routerState != null) builder.putRouterStates(routerId, (Router.RouterState) routerState);
             }
         }
 
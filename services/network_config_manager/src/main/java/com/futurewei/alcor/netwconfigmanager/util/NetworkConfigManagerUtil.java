@@ -24,7 +24,10 @@ import com.futurewei.alcor.schema.Router;
 import org.springframework.core.io.Resource;
 
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class NetworkConfigManagerUtil {
 
@@ -119,9 +122,62 @@ public class NetworkConfigManagerUtil {
         return filteredGoalStates;
     }
 
+    /**
+     * merge two goal states of the same host, resource states of newState win on the same resource id
+     * and host resources of the same host are united
+     */
     public static HostGoalState consolidateHostGoalState(HostGoalState existingState, HostGoalState newState) {
-        //TODO: implement consolidation algorithm
-        return newState;
+        return new HostGoalState(newState.getHostIp(),
+                consolidateGoalState(existingState.getGoalState(), newState.getGoalState()));
+    }
+
+    public static Goalstate.GoalStateV2 consolidateGoalState(Goalstate.GoalStateV2 existingGoalState, Goalstate.GoalStateV2 newGoalState) {
+        Goalstate.GoalStateV2.Builder builder = existingGoalState.toBuilder().mergeFrom(newGoalState);
+
+        for (Map.Entry<String, Goalstate.HostResources> entry : newGoalState.getHostResourcesMap().entrySet()) {
+            Goalstate.HostResources existingResources = existingGoalState.getHostResourcesMap().get(entry.getKey());
+            if (existingResources != null) {
+                Set<Goalstate.ResourceIdType> resources = new LinkedHashSet<>(existingResources.getResourcesList());
+                resources.addAll(entry.getValue().getResourcesList());
+                builder.putHostResources(entry.getKey(), Goalstate.HostResources.newBuilder().addAllResources(resources).build());
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * merge the chunks of one goal state batch in a single pass, resource states of later chunks
+     * win on the same resource id and host resources of the same host are united
+     */
+    public static Goalstate.GoalStateV2 mergeGoalStateChunks(List<Goalstate.GoalStateV2> chunks) {
+        if (chunks.size() == 1) {
+            return chunks.get(0);
+        }
+
+        Goalstate.GoalStateV2.Builder builder = Goalstate.GoalStateV2.newBuilder();
+        Map<String, Set<Goalstate.ResourceIdType>> hostResources = new HashMap<>();
+        for (Goalstate.GoalStateV2 chunk : chunks) {
+            for (Map.Entry<String, Goalstate.HostResources> entry : chunk.getHostResourcesMap().entrySet()) {
+                hostResources.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>())
+                        .addAll(entry.getValue().getResourcesList());
+            }
+
+            builder.setFormatVersion(chunk.getFormatVersion())
+                    .putAllVpcStates(chunk.getVpcStatesMap())
+                    .putAllSubnetStates(chunk.getSubnetStatesMap())
+                    .putAllPortStates(chunk.getPortStatesMap())
+                    .putAllDhcpStates(chunk.getDhcpStatesMap())
+                    .putAllNeighborStates(chunk.getNeighborStatesMap())
+                    .putAllSecurityGroupStates(chunk.getSecurityGroupStatesMap())
+                    .putAllRouterStates(chunk.getRouterStatesMap())
+                    .putAllGatewayStates(chunk.getGatewayStatesMap());
+        }
+
+        hostResources.forEach((hostIp, resources) ->
+                builder.putHostResources(hostIp, Goalstate.HostResources.newBuilder().addAllResources(resources).build()));
+
+        return builder.setEndOfBatch(true).build();
     }
 
     public static ResourceMeta convertGoalStateToHostResourceMeta(String hostId, Goalstate.HostResources hostResourceMetadata) {
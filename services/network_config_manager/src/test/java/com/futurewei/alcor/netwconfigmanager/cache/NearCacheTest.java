@@ -0,0 +1,92 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NearCacheTest {
+    private static final long TTL = 60000;
+
+    @Test
+    public void putAndGetTest() {
+        NearCache<String, String> nearCache = new NearCache<>(10, TTL);
+        nearCache.put("key1", "value1", nearCache.stamp("key1"));
+        assertEquals("value1", nearCache.get("key1"));
+        assertNull(nearCache.get("key2"));
+
+        nearCache.invalidate("key1");
+        assertNull(nearCache.get("key1"));
+    }
+
+    @Test
+    public void expiredEntryTest() throws Exception {
+        NearCache<String, String> nearCache = new NearCache<>(10, 1);
+        nearCache.put("key1", "value1", nearCache.stamp("key1"));
+        Thread.sleep(5);
+        assertNull(nearCache.get("key1"));
+        assertEquals(0, nearCache.size());
+    }
+
+    @Test
+    public void invalidatedDuringLoadTest() {
+        NearCache<String, String> nearCache = new NearCache<>(10, TTL);
+        long stamp = nearCache.stamp("key1");
+
+        // A write of key1 lands while the old value is being loaded
+        nearCache.invalidate("key1");
+        nearCache.put("key1", "old", stamp);
+        assertNull(nearCache.get("key1"));
+
+        nearCache.put("key1", "new", nearCache.stamp("key1"));
+        assertEquals("new", nearCache.get("key1"));
+    }
+
+    @Test
+    public void otherKeyInvalidatedDuringLoadTest() {
+        NearCache<String, String> nearCache = new NearCache<>(10, TTL);
+        long stamp1 = nearCache.stamp("key1");
+        long stamp2 = nearCache.stamp("key2");
+
+        nearCache.invalidate(Arrays.asList("key3", "key4"));
+        nearCache.put("key1", "value1", stamp1);
+        nearCache.put("key2", "value2", stamp2);
+        assertEquals("value1", nearCache.get("key1"));
+        assertEquals("value2", nearCache.get("key2"));
+    }
+
+    @Test
+    public void evictWhenFullTest() {
+        NearCache<String, String> nearCache = new NearCache<>(10, TTL);
+        for (int i = 0; i < 20; i++) {
+            String key = "key" + i;
+            nearCache.put(key, "value" + i, nearCache.stamp(key));
+            assertTrue(nearCache.size() <= 10);
+        }
+
+        assertEquals("value19", nearCache.get("key19"));
+    }
+
+    @Test
+    public void disabledTest() {
+        NearCache<String, String> nearCache = new NearCache<>(0, TTL);
+        nearCache.put("key1", "value1", nearCache.stamp("key1"));
+        assertNull(nearCache.get("key1"));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.cache;
+
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.web.changelog.InMemoryNodeChangeLog;
+import com.futurewei.alcor.web.changelog.NodeChangeLogConsumer;
+import com.futurewei.alcor.web.changelog.NodeInfoReplica;
+import com.futurewei.alcor.web.entity.node.NcmInfo;
+import com.futurewei.alcor.web.entity.node.NodeChangeEvent;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NodeInfoCacheTest {
+    private static final int RETENTION = 4;
+
+    private InMemoryNodeChangeLog changeLog;
+    private NodeInfoReplica nodeInfoReplica;
+    private NodeChangeLogConsumer consumer;
+    private MockCache<String, NodeInfo> nodeInfos;
+    private NodeInfoCache nodeInfoCache;
+
+    @BeforeEach
+    public void setUp() {
+        changeLog = new InMemoryNodeChangeLog(RETENTION);
+        nodeInfoReplica = new NodeInfoReplica();
+        consumer = new NodeChangeLogConsumer(changeLog, nodeInfoReplica, 100, 2);
+
+        nodeInfos = new MockCache<>();
+        CacheFactory cacheFactory = Mockito.mock(CacheFactory.class);
+        Mockito.when(cacheFactory.getCache(Mockito.any(Class.class), Mockito.anyString()))
+                .thenAnswer(invocation -> nodeInfos);
+        nodeInfoCache = new NodeInfoCache(cacheFactory, nodeInfoReplica);
+    }
+
+    private static NodeInfo newNodeInfo(String nodeId, String nodeIp) {
+        return new NodeInfo(nodeId, nodeId, nodeIp, "00:00:00:00:00:01");
+    }
+
+    private void append(NodeChangeEvent... events) throws Exception {
+        changeLog.append(Arrays.asList(events));
+    }
+
+    @Test
+    public void snapshotThenIncrementalChangesTest() throws Exception {
+        append(NodeChangeEvent.nodeUpdated(newNodeInfo("node1", "10.0.0.1")),
+                NodeChangeEvent.nodeUpdated(newNodeInfo("node2", "10.0.0.2")),
+                NodeChangeEvent.ncmUpdated(new NcmInfo("ncm1", "http://localhost:9014", 10)));
+        assertFalse(nodeInfoReplica.isReady());
+
+        consumer.poll();
+        assertTrue(nodeInfoReplica.isReady());
+        assertEquals(3, consumer.getVersion());
+        assertEquals("10.0.0.1", nodeInfoCache.getNodeInfo("node1").getLocalIp());
+        assertEquals("ncm1", nodeInfoReplica.getNcmInfo("ncm1").getId());
+
+        append(NodeChangeEvent.nodeUpdated(newNodeInfo("node1", "10.0.0.2")),
+                NodeChangeEvent.nodeDeleted("node2"),
+                NodeChangeEvent.nodeUpdated(newNodeInfo("node3", "10.0.0.3")));
+        consumer.poll();
+
+        assertEquals(6, consumer.getVersion());
+        assertNull(nodeInfoCache.getNodeInfo("node2"));
+        assertTrue(nodeInfoReplica.getNodeInfosByIp("10.0.0.1").isEmpty());
+        List<NodeInfo> nodeInfos = nodeInfoReplica.getNodeInfosByIp("10.0.0.2");
+        assertEquals(1, nodeInfos.size());
+        assertEquals("node1", nodeInfos.get(0).getId());
+        assertEquals("node3", nodeInfoCache.getNodeInfo("node3").getId());
+    }
+
+    @Test
+    public void restartAfterTrimmedChangesTest() throws Exception {
+        append(NodeChangeEvent.nodeUpdated(newNodeInfo("node1", "10.0.0.1")));
+        consumer.poll();
+        assertEquals(1, consumer.getVersion());
+
+        // More changes than the log retains while the consumer is away
+        for (int i = 2; i <= RETENTION + 3; i++) {
+            append(NodeChangeEvent.nodeUpdated(newNodeInfo("node" + i, "10.0.0." + i)));
+        }
+        append(NodeChangeEvent.nodeDeleted("node1"));
+        assertNull(changeLog.readAfter(1, 10));
+
+        consumer.poll();
+        assertEquals(changeLog.getLatestVersion(), consumer.getVersion());
+        assertNull(nodeInfoReplica.getNodeInfo("node1"));
+        assertEquals(RETENTION + 2, nodeInfoReplica.getNodeCount());
+
+        // A new consumer catches up from the snapshot alone
+        NodeInfoReplica restartedReplica = new NodeInfoReplica();
+        new NodeChangeLogConsumer(changeLog, restartedReplica, 100, 2).poll();
+        assertEquals(RETENTION + 2, restartedReplica.getNodeCount());
+        assertEquals(Collections.singletonList(restartedReplica.getNodeInfo("node3")),
+                restartedReplica.getNodeInfosByIp("10.0.0.3"));
+    }
+
+    @Test
+    public void replicaMissIsFinalTest() throws Exception {
+        // Left in ncm_nodeinfo_cache, which is not told about deletes replicated from the log
+        nodeInfoCache.addNodeInfo(newNodeInfo("node1", "10.0.0.1"));
+        assertEquals("node1", nodeInfoCache.getNodeInfo("node1").getId());
+
+        append(NodeChangeEvent.nodeUpdated(newNodeInfo("node1", "10.0.0.1")),
+                NodeChangeEvent.nodeDeleted("node1"));
+        consumer.poll();
+
+        assertNull(nodeInfoCache.getNodeInfo("node1"));
+    }
+
+    @Test
+    public void backfillOnlyOnceTest() throws Exception {
+        assertTrue(changeLog.backfill(0, Arrays.asList(
+                NodeChangeEvent.nodeUpdated(newNodeInfo("node1", "10.0.0.1")),
+                NodeChangeEvent.ncmUpdated(new NcmInfo("ncm1", "http://localhost:9014", 10)))));
+        assertFalse(changeLog.backfill(0, Collections.singletonList(
+                NodeChangeEvent.nodeUpdated(newNodeInfo("node2", "10.0.0.2")))));
+
+        consumer.poll();
+        assertEquals(1, nodeInfoReplica.getNodeCount());
+        assertEquals("node1", nodeInfoCache.getNodeInfo("node1").getId());
+        assertEquals("ncm1", nodeInfoReplica.getNcmInfo("ncm1").getId());
+        assertNull(nodeInfoCache.getNodeInfo("node2"));
+    }
+
+    @Test
+    public void backfillKeepsLaterChangesTest() throws Exception {
+        long sinceVersion = changeLog.getLatestVersion();
+        changeLog.append(Arrays.asList(
+                NodeChangeEvent.nodeUpdated(newNodeInfo("node1", "10.0.0.9")),
+                NodeChangeEvent.nodeDeleted("node2")));
+
+        assertTrue(changeLog.backfill(sinceVersion, Arrays.asList(
+                NodeChangeEvent.nodeUpdated(newNodeInfo("node1", "10.0.0.1")),
+                NodeChangeEvent.nodeUpdated(newNodeInfo("node2", "10.0.0.2")),
+                NodeChangeEvent.nodeUpdated(newNodeInfo("node3", "10.0.0.3")))));
+
+        consumer.poll();
+        assertEquals(2, nodeInfoReplica.getNodeCount());
+        assertEquals("10.0.0.9", nodeInfoCache.getNodeInfo("node1").getLocalIp());
+        assertNull(nodeInfoCache.getNodeInfo("node2"));
+        assertEquals("node3", nodeInfoCache.getNodeInfo("node3").getId());
+    }
+}
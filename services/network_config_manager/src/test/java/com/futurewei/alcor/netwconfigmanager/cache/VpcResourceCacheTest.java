@@ -0,0 +1,124 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.cache;
+
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.ICache;
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.netwconfigmanager.entity.ResourceMeta;
+import com.futurewei.alcor.netwconfigmanager.entity.VpcPortResourceMeta;
+import com.futurewei.alcor.netwconfigmanager.entity.VpcResourceMeta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VpcResourceCacheTest {
+    private static final String VNI1 = "1";
+    private static final String VNI2 = "2";
+
+    private ICache<String, VpcPortResourceMeta> portResourceMetas;
+    private ICache<String, VpcResourceMeta> legacyResourceMetas;
+    private VpcResourceCache vpcResourceCache;
+
+    @BeforeEach
+    public void setUp() {
+        portResourceMetas = new MockCache<>();
+        legacyResourceMetas = new MockCache<>();
+
+        CacheFactory cacheFactory = Mockito.mock(CacheFactory.class);
+        Mockito.when(cacheFactory.getCache(VpcPortResourceMeta.class)).thenAnswer(invocation -> portResourceMetas);
+        Mockito.when(cacheFactory.getCache(VpcResourceMeta.class)).thenAnswer(invocation -> legacyResourceMetas);
+        vpcResourceCache = new VpcResourceCache(cacheFactory);
+    }
+
+    @Test
+    public void addAndGetByVniTest() throws Exception {
+        vpcResourceCache.addResourceMeta(VNI1, "10.0.0.1", new ResourceMeta("host1"));
+        Map<String, ResourceMeta> resourceMetas = new HashMap<>();
+        resourceMetas.put("10.0.0.2", new ResourceMeta("host2"));
+        resourceMetas.put("10.0.0.3", new ResourceMeta("host3"));
+        vpcResourceCache.addResourceMetas(VNI1, resourceMetas);
+        vpcResourceCache.addResourceMeta(VNI2, "10.0.0.1", new ResourceMeta("host4"));
+
+        VpcResourceMeta vpcResourceMeta = vpcResourceCache.getResourceMeta(VNI1);
+        assertEquals(new HashSet<>(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3")),
+                vpcResourceMeta.getResourceMetaMap().keySet());
+        assertEquals("host2", vpcResourceMeta.getResourceMeta("10.0.0.2").getOwnerId());
+        assertEquals("host4", vpcResourceCache.getResourceMeta(VNI2, "10.0.0.1").getOwnerId());
+
+        Map<String, ResourceMeta> found = vpcResourceCache.getResourceMetas(VNI1,
+                new HashSet<>(Arrays.asList("10.0.0.1", "10.0.0.4")));
+        assertEquals(1, found.size());
+        assertEquals("host1", found.get("10.0.0.1").getOwnerId());
+    }
+
+    @Test
+    public void deleteByVniTest() throws Exception {
+        vpcResourceCache.addResourceMeta(VNI1, "10.0.0.1", new ResourceMeta("host1"));
+        vpcResourceCache.addResourceMeta(VNI1, "10.0.0.2", new ResourceMeta("host2"));
+        vpcResourceCache.addResourceMeta(VNI2, "10.0.0.1", new ResourceMeta("host3"));
+
+        vpcResourceCache.deleteResourceMeta(VNI1, "10.0.0.2");
+        assertNull(vpcResourceCache.getResourceMeta(VNI1, "10.0.0.2"));
+        assertEquals(1, vpcResourceCache.getResourceMeta(VNI1).getResourceMetaMap().size());
+
+        vpcResourceCache.deleteResourceMeta(VNI1);
+        assertNull(vpcResourceCache.getResourceMeta(VNI1));
+        assertNull(vpcResourceCache.getResourceMeta(VNI1, "10.0.0.1"));
+        assertEquals(1, portResourceMetas.size());
+        assertEquals("host3", vpcResourceCache.getResourceMeta(VNI2, "10.0.0.1").getOwnerId());
+    }
+
+    @Test
+    public void migrateLegacyResourceMetaTest() throws Exception {
+        HashMap<String, ResourceMeta> legacyMap = new HashMap<>();
+        legacyMap.put("10.0.0.1", new ResourceMeta("host1"));
+        legacyMap.put("10.0.0.2", new ResourceMeta("host2"));
+        legacyResourceMetas.put(VNI1, new VpcResourceMeta(VNI1, legacyMap));
+
+        // A port written by this version is newer than the legacy entry of the same ip
+        vpcResourceCache.addResourceMeta(VNI1, "10.0.0.2", new ResourceMeta("host3"));
+
+        assertEquals("host1", vpcResourceCache.getResourceMeta(VNI1, "10.0.0.1").getOwnerId());
+        assertNull(legacyResourceMetas.get(VNI1));
+        VpcResourceMeta vpcResourceMeta = vpcResourceCache.getResourceMeta(VNI1);
+        assertEquals(2, vpcResourceMeta.getResourceMetaMap().size());
+        assertEquals("host3", vpcResourceMeta.getResourceMeta("10.0.0.2").getOwnerId());
+    }
+
+    @Test
+    public void deleteLegacyPortTest() throws Exception {
+        HashMap<String, ResourceMeta> legacyMap = new HashMap<>();
+        legacyMap.put("10.0.0.1", new ResourceMeta("host1"));
+        legacyMap.put("10.0.0.2", new ResourceMeta("host2"));
+        legacyResourceMetas.put(VNI1, new VpcResourceMeta(VNI1, legacyMap));
+
+        vpcResourceCache.deleteResourceMeta(VNI1, "10.0.0.1");
+        assertNull(vpcResourceCache.getResourceMeta(VNI1, "10.0.0.1"));
+        assertEquals("host2", vpcResourceCache.getResourceMeta(VNI1, "10.0.0.2").getOwnerId());
+
+        legacyResourceMetas.put(VNI2, new VpcResourceMeta(VNI2, legacyMap));
+        vpcResourceCache.deleteResourceMeta(VNI2);
+        assertNull(vpcResourceCache.getResourceMeta(VNI2));
+    }
+}
@@ -0,0 +1,268 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.client.gRPC;
+
+import com.futurewei.alcor.netwconfigmanager.entity.HostGoalState;
+import com.futurewei.alcor.netwconfigmanager.service.ResourceInfo;
+import com.futurewei.alcor.schema.*;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GoalStateClientImplTest {
+    private static final String HOST_IP = "10.0.0.1";
+
+    /**
+     * A host agent replying once per goal state, with a SUCCESS status for every port
+     * unless the port id starts with "fail".
+     */
+    private class FakeAgent extends GoalStateProvisionerGrpc.GoalStateProvisionerImplBase {
+        private final AtomicInteger streams = new AtomicInteger();
+        private final BlockingQueue<Goalstate.GoalStateV2> received = new LinkedBlockingQueue<>();
+        private volatile ServerCallStreamObserver<Goalstateprovisioner.GoalStateOperationReply> serverStream;
+        private volatile boolean manualRequest;
+
+        @Override
+        public StreamObserver<Goalstate.GoalStateV2> pushGoalStatesStream(StreamObserver<Goalstateprovisioner.GoalStateOperationReply> responseObserver) {
+            streams.incrementAndGet();
+            serverStream = (ServerCallStreamObserver<Goalstateprovisioner.GoalStateOperationReply>) responseObserver;
+            if (manualRequest) {
+                serverStream.disableAutoRequest();
+            }
+
+            return new StreamObserver<Goalstate.GoalStateV2>() {
+                @Override
+                public void onNext(Goalstate.GoalStateV2 goalState) {
+                    received.add(goalState);
+                    Goalstateprovisioner.GoalStateOperationReply.Builder reply = Goalstateprovisioner.GoalStateOperationReply.newBuilder();
+                    for (String portId : goalState.getPortStatesMap().keySet()) {
+                        reply.addOperationStatuses(Goalstateprovisioner.GoalStateOperationReply.GoalStateOperationStatus.newBuilder()
+                                .setResourceId(portId)
+                                .setResourceType(Common.ResourceType.PORT)
+                                .setOperationStatus(portId.startsWith("fail") ? Common.OperationStatus.FAILURE : Common.OperationStatus.SUCCESS));
+                    }
+                    responseObserver.onNext(reply.build());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+    }
+
+    private FakeAgent fakeAgent;
+    private Server server;
+    private GoalStateClientImpl goalStateClient;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        String serverName = InProcessServerBuilder.generateName();
+        fakeAgent = new FakeAgent();
+        server = InProcessServerBuilder.forName(serverName).directExecutor().addService(fakeAgent).build().start();
+
+        goalStateClient = new GoalStateClientImpl(new ArrayList<>(),
+                hostIp -> InProcessChannelBuilder.forName(serverName).directExecutor().build());
+        ResourceInfo resourceInfo = resourceIds -> new HashMap<>();
+        ReflectionTestUtils.setField(goalStateClient, "resourceInfo", resourceInfo);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        goalStateClient.shutdown();
+        server.shutdownNow();
+    }
+
+    private static Map<String, HostGoalState> buildHostGoalStates(String... portIds) {
+        Map<String, String> portNames = new HashMap<>();
+        for (String portId : portIds) {
+            portNames.put(portId, portId);
+        }
+        return buildHostGoalStates(portNames);
+    }
+
+    private static Map<String, HostGoalState> buildHostGoalStates(Map<String, String> portNames) {
+        Goalstate.GoalStateV2.Builder goalState = Goalstate.GoalStateV2.newBuilder();
+        Goalstate.HostResources.Builder hostResources = Goalstate.HostResources.newBuilder();
+        for (String portId : portNames.keySet()) {
+            goalState.putPortStates(portId, Port.PortState.newBuilder()
+                    .setConfiguration(Port.PortConfiguration.newBuilder().setId(portId).setName(portNames.get(portId)))
+                    .build());
+            hostResources.addResources(Goalstate.ResourceIdType.newBuilder()
+                    .setType(Common.ResourceType.PORT)
+                    .setId(portId));
+        }
+        goalState.putHostResources(HOST_IP, hostResources.build());
+
+        Map<String, HostGoalState> hostGoalStates = new HashMap<>();
+        hostGoalStates.put(HOST_IP, new HostGoalState(HOST_IP, goalState.build()));
+        return hostGoalStates;
+    }
+
+    @Test
+    public void sendGoalStatesReusesStreamTest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            List<String> replies = goalStateClient.sendGoalStates(buildHostGoalStates("port" + i));
+            assertTrue(replies.isEmpty());
+        }
+
+        assertEquals(1, fakeAgent.streams.get());
+        assertEquals(10, fakeAgent.received.size());
+    }
+
+    @Test
+    public void sendGoalStatesReportsFailureTest() throws Exception {
+        List<String> replies = goalStateClient.sendGoalStates(buildHostGoalStates("fail-port"));
+
+        assertEquals(1, replies.size());
+        assertTrue(replies.get(0).contains("fail-port"));
+    }
+
+    @Test
+    public void sendGoalStatesCoalescesWhileNotReadyTest() throws Exception {
+        fakeAgent.manualRequest = true;
+        HostGoalStateStream stream = (HostGoalStateStream) ReflectionTestUtils.invokeMethod(
+                goalStateClient, "getOrCreateStream", HOST_IP);
+
+        // Nothing requested by the agent yet, so the stream is never ready and all sends are queued
+        List<CompletableFuture<Goalstateprovisioner.GoalStateOperationReply>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(stream.send(buildHostGoalStates("port" + i).get(HOST_IP).getGoalState()));
+        }
+        assertTrue(fakeAgent.received.isEmpty());
+
+        fakeAgent.serverStream.request(1);
+        Goalstate.GoalStateV2 goalState = fakeAgent.received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(goalState);
+        assertEquals(5, goalState.getPortStatesCount());
+        assertEquals(5, goalState.getHostResourcesMap().get(HOST_IP).getResourcesCount());
+
+        for (CompletableFuture<Goalstateprovisioner.GoalStateOperationReply> future : futures) {
+            assertEquals(5, future.get(10, TimeUnit.SECONDS).getOperationStatusesCount());
+        }
+        assertEquals(0, stream.getInFlightCount());
+    }
+
+    @Test
+    public void sendGoalStatesFailsWhenHostClosesTest() throws Exception {
+        server.shutdownNow().awaitTermination();
+
+        List<String> replies = goalStateClient.sendGoalStates(buildHostGoalStates("port"));
+
+        assertEquals(1, replies.size());
+        assertTrue(replies.get(0).contains(HOST_IP));
+    }
+
+    @Test
+    public void sendGoalStateChangesTest() throws Exception {
+        goalStateClient.sendGoalStateChanges(buildHostGoalStates("port0", "port1"), true);
+        assertEquals(2, fakeAgent.received.take().getPortStatesCount());
+
+        Map<String, String> portNames = new HashMap<>();
+        portNames.put("port0", "port0");
+        portNames.put("port1", "port1-renamed");
+        portNames.put("port2", "port2");
+        assertTrue(goalStateClient.sendGoalStateChanges(buildHostGoalStates(portNames), true).isEmpty());
+
+        Goalstate.GoalStateV2 goalState = fakeAgent.received.take();
+        assertEquals(new HashSet<>(Arrays.asList("port1", "port2")), goalState.getPortStatesMap().keySet());
+        assertEquals(2, goalState.getHostResourcesMap().get(HOST_IP).getResourcesCount());
+
+        // Nothing changed, nothing is sent
+        assertTrue(goalStateClient.sendGoalStateChanges(buildHostGoalStates(portNames), true).isEmpty());
+        assertTrue(fakeAgent.received.isEmpty());
+
+        // A full goal state is still sent on request
+        goalStateClient.sendGoalStates(buildHostGoalStates(portNames), true);
+        assertEquals(3, fakeAgent.received.take().getPortStatesCount());
+    }
+
+    @Test
+    public void sendGoalStateChangesResyncsOnReconnectTest() throws Exception {
+        goalStateClient.sendGoalStateChanges(buildHostGoalStates("port0", "fail-port"), true);
+        assertEquals(2, fakeAgent.received.take().getPortStatesCount());
+
+        // The failed port is not acknowledged and is sent again
+        goalStateClient.sendGoalStateChanges(buildHostGoalStates("port0", "fail-port"), true);
+        assertEquals(Collections.singleton("fail-port"), fakeAgent.received.take().getPortStatesMap().keySet());
+
+        // The agent closes the stream, everything is sent again on the new stream
+        fakeAgent.serverStream.onCompleted();
+        goalStateClient.sendGoalStateChanges(buildHostGoalStates("port0", "fail-port"), true);
+        assertEquals(2, fakeAgent.received.take().getPortStatesCount());
+        assertEquals(2, fakeAgent.streams.get());
+    }
+
+    @Test
+    public void sendGoalStateChangesAgainstQueuedTest() throws Exception {
+        fakeAgent.manualRequest = true;
+        HostGoalStateStream stream = (HostGoalStateStream) ReflectionTestUtils.invokeMethod(
+                goalStateClient, "getOrCreateStream", HOST_IP);
+        Goalstate.GoalStateV2 v1 = buildHostGoalStates(Collections.singletonMap("port0", "v1")).get(HOST_IP).getGoalState();
+        Goalstate.GoalStateV2 v2 = buildHostGoalStates(Collections.singletonMap("port0", "v2")).get(HOST_IP).getGoalState();
+
+        CompletableFuture<Goalstateprovisioner.GoalStateOperationReply> future = stream.send(v1, true);
+        fakeAgent.serverStream.request(1);
+        assertEquals("v1", fakeAgent.received.poll(10, TimeUnit.SECONDS).getPortStatesOrThrow("port0").getConfiguration().getName());
+        future.get(10, TimeUnit.SECONDS);
+
+        // v2 is queued, so v1 differs from what the agent is going to have and is sent again
+        stream.send(v2, true);
+        future = stream.send(v1, true);
+        assertFalse(future.isDone());
+
+        fakeAgent.serverStream.request(1);
+        assertEquals("v1", fakeAgent.received.poll(10, TimeUnit.SECONDS).getPortStatesOrThrow("port0").getConfiguration().getName());
+        future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void sendGoalStateChangesForgetsDeletedTest() throws Exception {
+        HostGoalStateStream stream = (HostGoalStateStream) ReflectionTestUtils.invokeMethod(
+                goalStateClient, "getOrCreateStream", HOST_IP);
+        Goalstate.GoalStateV2 goalState = buildHostGoalStates("port0", "port1").get(HOST_IP).getGoalState();
+        stream.send(goalState, true).get(10, TimeUnit.SECONDS);
+        assertEquals(2, stream.getSentStateCount());
+
+        Goalstate.GoalStateV2.Builder deleted = goalState.toBuilder();
+        deleted.putPortStates("port1", goalState.getPortStatesOrThrow("port1").toBuilder()
+                .setOperationType(Common.OperationType.DELETE).build());
+        stream.send(deleted.build(), true).get(10, TimeUnit.SECONDS);
+        assertEquals(1, stream.getSentStateCount());
+
+        fakeAgent.received.clear();
+        stream.send(goalState, true).get(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singleton("port1"), fakeAgent.received.take().getPortStatesMap().keySet());
+    }
+}
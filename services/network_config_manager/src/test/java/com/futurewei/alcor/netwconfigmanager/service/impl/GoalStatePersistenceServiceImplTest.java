@@ -0,0 +1,183 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.service.impl;
+
+import com.futurewei.alcor.common.db.CacheException;
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.ICache;
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.netwconfigmanager.cache.HostResourceMetadataCache;
+import com.futurewei.alcor.netwconfigmanager.cache.ResourceStateCache;
+import com.futurewei.alcor.netwconfigmanager.cache.VpcResourceCache;
+import com.futurewei.alcor.schema.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GoalStatePersistenceServiceImplTest {
+    private static final String VPC_ID = "vpc0";
+    private static final String SUBNET_ID = "subnet0";
+    private static final int HOST_NUM = 16;
+
+    /**
+     * Resource state cache counting putAll calls, each of them taking a while so that
+     * concurrent goal states queue up behind it.
+     */
+    private static class SlowCache<K, V> extends MockCache<K, V> {
+        private final AtomicInteger putAllCount = new AtomicInteger();
+        private volatile boolean failing;
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> items) throws CacheException {
+            putAllCount.incrementAndGet();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) {
+                throw new CacheException("putAll failed");
+            }
+            super.putAll(items);
+        }
+    }
+
+    private SlowCache<String, Object> resourceStates;
+    private ResourceStateCache resourceStateCache;
+    private HostResourceMetadataCache hostResourceMetadataCache;
+    private VpcResourceCache vpcResourceCache;
+    private GoalStatePersistenceServiceImpl goalStatePersistenceService;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        resourceStates = new SlowCache<>();
+        CacheFactory cacheFactory = Mockito.mock(CacheFactory.class);
+        Mockito.when(cacheFactory.getCache(Mockito.any(Class.class))).thenAnswer(invocation ->
+                invocation.getArgument(0) == Object.class ? resourceStates : new MockCache<>());
+
+        resourceStateCache = new ResourceStateCache(cacheFactory);
+        hostResourceMetadataCache = new HostResourceMetadataCache(cacheFactory);
+        vpcResourceCache = new VpcResourceCache(cacheFactory);
+
+        goalStatePersistenceService = new GoalStatePersistenceServiceImpl();
+        ReflectionTestUtils.setField(goalStatePersistenceService, "resourceStateCache", resourceStateCache);
+        ReflectionTestUtils.setField(goalStatePersistenceService, "hostResourceMetadataCache", hostResourceMetadataCache);
+        ReflectionTestUtils.setField(goalStatePersistenceService, "vpcResourceCache", vpcResourceCache);
+        ReflectionTestUtils.setField(goalStatePersistenceService, "numberOfHostPartitions", 4);
+        ReflectionTestUtils.setField(goalStatePersistenceService, "maxWriteBatchSize", 64);
+        goalStatePersistenceService.init();
+
+        executor = Executors.newFixedThreadPool(HOST_NUM);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        goalStatePersistenceService.shutdown();
+    }
+
+    private static String hostIp(int host) {
+        return "192.168.0." + (host + 1);
+    }
+
+    private static String portId(int host) {
+        return "port" + host;
+    }
+
+    private static String portIp(int host) {
+        return "10.0.0." + (host + 1);
+    }
+
+    private static Goalstate.ResourceIdType resource(Common.ResourceType type, String id) {
+        return Goalstate.ResourceIdType.newBuilder().setType(type).setId(id).build();
+    }
+
+    private static Goalstate.GoalStateV2 buildGoalState(int host) {
+        return Goalstate.GoalStateV2.newBuilder()
+                .putVpcStates(VPC_ID, Vpc.VpcState.newBuilder()
+                        .setConfiguration(Vpc.VpcConfiguration.newBuilder().setId(VPC_ID).setTunnelId(21))
+                        .build())
+                .putSubnetStates(SUBNET_ID, Subnet.SubnetState.newBuilder()
+                        .setConfiguration(Subnet.SubnetConfiguration.newBuilder().setId(SUBNET_ID).setVpcId(VPC_ID))
+                        .build())
+                .putPortStates(portId(host), Port.PortState.newBuilder()
+                        .setConfiguration(Port.PortConfiguration.newBuilder()
+                                .setId(portId(host))
+                                .setVpcId(VPC_ID)
+                                .addFixedIps(Port.PortConfiguration.FixedIp.newBuilder()
+                                        .setSubnetId(SUBNET_ID)
+                                        .setIpAddress(portIp(host))))
+                        .build())
+                .putHostResources(hostIp(host), Goalstate.HostResources.newBuilder()
+                        .addResources(resource(Common.ResourceType.VPC, VPC_ID))
+                        .addResources(resource(Common.ResourceType.SUBNET, SUBNET_ID))
+                        .addResources(resource(Common.ResourceType.PORT, portId(host)))
+                        .build())
+                .build();
+    }
+
+    private List<Future<?>> pushConcurrently() {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int host = 0; host < HOST_NUM; host++) {
+            Goalstate.GoalStateV2 goalState = buildGoalState(host);
+            futures.add(executor.submit(() -> {
+                startLatch.await();
+                return goalStatePersistenceService.updateGoalStates(goalState);
+            }));
+        }
+        startLatch.countDown();
+        return futures;
+    }
+
+    @Test
+    public void updateGoalStatesConcurrentlyTest() throws Exception {
+        for (Future<?> future : pushConcurrently()) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        for (int host = 0; host < HOST_NUM; host++) {
+            assertNotNull(resourceStateCache.getResourceState(portId(host)));
+            assertNotNull(hostResourceMetadataCache.getResourceMeta(hostIp(host)));
+            assertEquals(portId(host), vpcResourceCache.getResourceMeta("21", portIp(host)).getOwnerId());
+        }
+        assertNotNull(resourceStateCache.getResourceState(VPC_ID));
+
+        // goal states arriving while a write is in progress go into the next one together
+        assertTrue(resourceStates.putAllCount.get() < HOST_NUM);
+    }
+
+    @Test
+    public void updateGoalStatesWriteFailureTest() {
+        resourceStates.failing = true;
+
+        for (Future<?> future : pushConcurrently()) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof CacheException);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.netwconfigmanager.util;
+
+import com.futurewei.alcor.netwconfigmanager.entity.HostGoalState;
+import com.futurewei.alcor.schema.Common;
+import com.futurewei.alcor.schema.Goalstate;
+import com.futurewei.alcor.schema.Neighbor;
+import com.futurewei.alcor.schema.Port;
+import com.futurewei.alcor.schema.Subnet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NetworkConfigManagerUtilTest {
+    private static final String HOST_IP1 = "10.0.0.1";
+    private static final String HOST_IP2 = "10.0.0.2";
+
+    private static Goalstate.ResourceIdType resource(Common.ResourceType type, String id) {
+        return Goalstate.ResourceIdType.newBuilder().setType(type).setId(id).build();
+    }
+
+    private static Port.PortState portState(String portId, String name) {
+        return Port.PortState.newBuilder()
+                .setConfiguration(Port.PortConfiguration.newBuilder().setId(portId).setName(name))
+                .build();
+    }
+
+    private static Subnet.SubnetState subnetState(String subnetId, String name) {
+        return Subnet.SubnetState.newBuilder()
+                .setConfiguration(Subnet.SubnetConfiguration.newBuilder().setId(subnetId).setName(name))
+                .build();
+    }
+
+    private static Neighbor.NeighborState neighborState(String neighborId) {
+        return Neighbor.NeighborState.newBuilder()
+                .setConfiguration(Neighbor.NeighborConfiguration.newBuilder().setId(neighborId))
+                .build();
+    }
+
+    private static Goalstate.HostResources hostResources(Goalstate.ResourceIdType... resources) {
+        return Goalstate.HostResources.newBuilder().addAllResources(Arrays.asList(resources)).build();
+    }
+
+    @Test
+    public void consolidateOverlappingHostResourcesTest() {
+        Goalstate.GoalStateV2 existingGoalState = Goalstate.GoalStateV2.newBuilder()
+                .putHostResources(HOST_IP1, hostResources(
+                        resource(Common.ResourceType.SUBNET, "subnet1"),
+                        resource(Common.ResourceType.PORT, "port1")))
+                .putSubnetStates("subnet1", subnetState("subnet1", "old"))
+                .putPortStates("port1", portState("port1", "port1"))
+                .build();
+        Goalstate.GoalStateV2 newGoalState = Goalstate.GoalStateV2.newBuilder()
+                .putHostResources(HOST_IP1, hostResources(
+                        resource(Common.ResourceType.SUBNET, "subnet1"),
+                        resource(Common.ResourceType.PORT, "port2")))
+                .putSubnetStates("subnet1", subnetState("subnet1", "new"))
+                .putPortStates("port2", portState("port2", "port2"))
+                .build();
+
+        HostGoalState hostGoalState = NetworkConfigManagerUtil.consolidateHostGoalState(
+                new HostGoalState(HOST_IP1, existingGoalState), new HostGoalState(HOST_IP1, newGoalState));
+
+        assertEquals(HOST_IP1, hostGoalState.getHostIp());
+        Goalstate.GoalStateV2 goalState = hostGoalState.getGoalState();
+        assertEquals(1, goalState.getHostResourcesCount());
+
+        // The overlapping subnet is listed once, in first seen order
+        List<Goalstate.ResourceIdType> resources = goalState.getHostResourcesOrThrow(HOST_IP1).getResourcesList();
+        assertEquals(Arrays.asList(
+                resource(Common.ResourceType.SUBNET, "subnet1"),
+                resource(Common.ResourceType.PORT, "port1"),
+                resource(Common.ResourceType.PORT, "port2")), resources);
+
+        assertEquals(2, goalState.getPortStatesCount());
+        assertEquals(1, goalState.getSubnetStatesCount());
+        assertEquals("new", goalState.getSubnetStatesOrThrow("subnet1").getConfiguration().getName());
+    }
+
+    @Test
+    public void consolidateDisjointHostResourcesTest() {
+        Goalstate.GoalStateV2 existingGoalState = Goalstate.GoalStateV2.newBuilder()
+                .putHostResources(HOST_IP1, hostResources(resource(Common.ResourceType.PORT, "port1")))
+                .putPortStates("port1", portState("port1", "port1"))
+                .build();
+        Goalstate.GoalStateV2 newGoalState = Goalstate.GoalStateV2.newBuilder()
+                .putHostResources(HOST_IP2, hostResources(resource(Common.ResourceType.PORT, "port2")))
+                .putPortStates("port2", portState("port2", "port2"))
+                .build();
+
+        Goalstate.GoalStateV2 goalState = NetworkConfigManagerUtil.consolidateGoalState(existingGoalState, newGoalState);
+
+        assertEquals(2, goalState.getHostResourcesCount());
+        assertEquals(1, goalState.getHostResourcesOrThrow(HOST_IP1).getResourcesCount());
+        assertEquals(1, goalState.getHostResourcesOrThrow(HOST_IP2).getResourcesCount());
+        assertEquals(2, goalState.getPortStatesCount());
+    }
+
+    @Test
+    public void consolidateSameResourcesTest() {
+        Goalstate.GoalStateV2 goalState = Goalstate.GoalStateV2.newBuilder()
+                .putHostResources(HOST_IP1, hostResources(
+                        resource(Common.ResourceType.SUBNET, "subnet1"),
+                        resource(Common.ResourceType.PORT, "port1")))
+                .putSubnetStates("subnet1", subnetState("subnet1", "subnet1"))
+                .putPortStates("port1", portState("port1", "port1"))
+                .build();
+
+        assertEquals(goalState, NetworkConfigManagerUtil.consolidateGoalState(goalState, goalState));
+    }
+
+    @Test
+    public void mergeSingleChunkReturnsItTest() {
+        Goalstate.GoalStateV2 goalState = Goalstate.GoalStateV2.newBuilder()
+                .putHostResources(HOST_IP1, hostResources(resource(Common.ResourceType.PORT, "port1")))
+                .putPortStates("port1", portState("port1", "port1"))
+                .setEndOfBatch(true)
+                .build();
+
+        assertSame(goalState, NetworkConfigManagerUtil.mergeGoalStateChunks(Collections.singletonList(goalState)));
+    }
+
+    @Test
+    public void mergeChunksReturnsSplitGoalStateTest() {
+        Goalstate.GoalStateV2 goalState = Goalstate.GoalStateV2.newBuilder()
+                .setFormatVersion(102)
+                .setEndOfBatch(true)
+                .putHostResources(HOST_IP1, hostResources(
+                        resource(Common.ResourceType.SUBNET, "subnet1"),
+                        resource(Common.ResourceType.PORT, "port1"),
+                        resource(Common.ResourceType.PORT, "port2")))
+                .putHostResources(HOST_IP2, hostResources(
+                        resource(Common.ResourceType.SUBNET, "subnet1"),
+                        resource(Common.ResourceType.PORT, "port3")))
+                .putSubnetStates("subnet1", subnetState("subnet1", "subnet1"))
+                .putPortStates("port1", portState("port1", "port1"))
+                .putPortStates("port2", portState("port2", "port2"))
+                .putPortStates("port3", portState("port3", "port3"))
+                .putNeighborStates("neighbor1", neighborState("neighbor1"))
+                .build();
+
+        // Chunks as the data plane manager splits them: the resources of a host may span
+        // chunks, a state shared by hosts travels once and only the last chunk ends the batch
+        List<Goalstate.GoalStateV2> chunks = Arrays.asList(
+                Goalstate.GoalStateV2.newBuilder()
+                        .setFormatVersion(102)
+                        .putHostResources(HOST_IP1, hostResources(
+                                resource(Common.ResourceType.SUBNET, "subnet1"),
+                                resource(Common.ResourceType.PORT, "port1")))
+                        .putSubnetStates("subnet1", subnetState("subnet1", "subnet1"))
+                        .putPortStates("port1", portState("port1", "port1"))
+                        .build(),
+                Goalstate.GoalStateV2.newBuilder()
+                        .setFormatVersion(102)
+                        .putHostResources(HOST_IP1, hostResources(resource(Common.ResourceType.PORT, "port2")))
+                        .putHostResources(HOST_IP2, hostResources(
+                                resource(Common.ResourceType.SUBNET, "subnet1"),
+                                resource(Common.ResourceType.PORT, "port3")))
+                        .putPortStates("port2", portState("port2", "port2"))
+                        .putPortStates("port3", portState("port3", "port3"))
+                        .build(),
+                Goalstate.GoalStateV2.newBuilder()
+                        .setFormatVersion(102)
+                        .setEndOfBatch(true)
+                        .putNeighborStates("neighbor1", neighborState("neighbor1"))
+                        .build());
+
+        assertEquals(goalState, NetworkConfigManagerUtil.mergeGoalStateChunks(chunks));
+    }
+}
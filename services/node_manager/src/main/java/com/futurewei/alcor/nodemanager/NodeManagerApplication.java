@@ -17,12 +17,13 @@ package com.futurewei.alcor.nodemanager;
 
 import com.futurewei.alcor.common.db.DbBaseConfiguration;
 import com.futurewei.alcor.common.tracer.TracerConfiguration;
+import com.futurewei.alcor.web.changelog.NodeChangeLogConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
-@Import({DbBaseConfiguration.class, TracerConfiguration.class})
+@Import({DbBaseConfiguration.class, NodeChangeLogConfiguration.class, TracerConfiguration.class})
 public class NodeManagerApplication {
 
     public static void main(String[] args) {
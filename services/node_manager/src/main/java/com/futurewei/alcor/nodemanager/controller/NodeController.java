@@ -73,16 +73,33 @@ public class NodeController {
             value = {"/nodes/upload", "/v4/nodes/upload"})
     @DurationStatistics
     public String uploadFile(@RequestParam("file") MultipartFile file) throws Exception {
-        int nNode = 0;
+        NodeUploadStatus status;
         if (file == null) {
             throw new ParameterNullOrEmptyException(NodeManagerConstant.NODE_EXCEPTION_FILE_EMPTY);
         }
         try {
-            nNode = service.getNodeInfoFromUpload(file);
+            status = service.getNodeInfoFromUpload(file);
         } catch (Exception e) {
             throw e;
         }
-        return "{Total nodes: " + nNode + "}";
+        return "{Total nodes: " + status.getCommittedNodes() + ", Upload id: " + status.getUploadId() + "}";
+    }
+
+    @RequestMapping(
+            method = GET,
+            value = {"/nodes/uploads", "/v4/nodes/uploads"})
+    @DurationStatistics
+    public List<NodeUploadStatus> getUploadStatuses() throws Exception {
+        return service.getUploadStatuses();
+    }
+
+    @RequestMapping(
+            method = GET,
+            value = {"/nodes/uploads/{uploadid}", "/v4/nodes/uploads/{uploadid}"})
+    @DurationStatistics
+    public NodeUploadStatus getUploadStatus(@PathVariable String uploadid) throws Exception {
+        RestPreconditionsUtil.verifyParameterNotNullorEmpty(uploadid);
+        return service.getUploadStatus(uploadid);
     }
 
     @RequestMapping(
@@ -33,6 +33,7 @@ import org.springframework.stereotype.Repository;
 import javax.annotation.PostConstruct;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -127,16 +128,20 @@ public class NodeRepository implements ICacheRepository<NodeInfo> {
      */
     public void addItemBulkTransaction(List<NodeInfo> nodes) throws CacheException {
         logger.info("Add nodes: " + nodes.size());
+        // putAll locks the keys in map order, sorted keys keep concurrent bulk adds from deadlocking
+        Map<String, NodeInfo> nodeInfoMap = new TreeMap<>();
+        for (NodeInfo node : nodes) {
+            nodeInfoMap.put(node.getId(), node);
+        }
 
         try (Transaction tx = cache.getTransaction().start()) {
-            for (NodeInfo node : nodes) {
-                cache.put(node.getId(), node);
-            }
+            cache.putAll(nodeInfoMap);
             tx.commit();
         } catch (CacheException e) {
             throw e;
         } catch (Exception e) {
             logger.error("Add bulk nodes error: "+e.getMessage());
+            throw new CacheException("Add bulk nodes error", e);
         }
     }
 
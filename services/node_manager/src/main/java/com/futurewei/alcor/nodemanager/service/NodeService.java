@@ -21,6 +21,7 @@ import com.futurewei.alcor.nodemanager.exception.InvalidDataException;
 import com.futurewei.alcor.web.entity.node.NcmInfo;
 import com.futurewei.alcor.web.entity.node.NcmInfoJson;
 import com.futurewei.alcor.web.entity.node.NodeInfo;
+import com.futurewei.alcor.web.entity.node.NodeUploadStatus;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -28,7 +29,17 @@ import java.util.List;
 import java.util.Map;
 
 public interface NodeService {
-    int getNodeInfoFromUpload(MultipartFile file) throws IOException, Exception;
+    /**
+     * Load the nodes of a node file, the returned status carries the upload id to query it later
+     */
+    NodeUploadStatus getNodeInfoFromUpload(MultipartFile file) throws IOException, Exception;
+
+    /**
+     * Status of the most recent node file uploads, latest first
+     */
+    List<NodeUploadStatus> getUploadStatuses();
+
+    NodeUploadStatus getUploadStatus(String uploadId) throws Exception;
 
     NodeInfo getNodeInfoById(String nodeId) throws ParameterNullOrEmptyException, Exception;
 
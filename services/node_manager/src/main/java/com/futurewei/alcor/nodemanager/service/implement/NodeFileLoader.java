@@ -15,19 +15,18 @@ Copyright(c) 2020 Futurewei Cloud
 */
 package com.futurewei.alcor.nodemanager.service.implement;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.nodemanager.exception.InvalidDataException;
-import com.futurewei.alcor.nodemanager.service.NodeService;
 import com.futurewei.alcor.nodemanager.utils.NodeManagerConstant;
 import com.futurewei.alcor.web.entity.node.NodeInfo;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import com.futurewei.alcor.web.entity.node.NodeUploadStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -35,48 +34,86 @@ import java.util.List;
 
 public class NodeFileLoader {
     private static final Logger logger = LoggerFactory.getLogger(NodeFileLoader.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Receives the valid nodes of a node file chunk by chunk
+     */
+    public interface ChunkHandler {
+        /**
+         * @param chunk index of the chunk, from 0
+         * @param firstNodeIndex position of the first node of the chunk in the file
+         * @param nodeInfos nodes of the chunk
+         */
+        void onChunk(int chunk, int firstNodeIndex, List<NodeInfo> nodeInfos);
+    }
 
     public NodeFileLoader() {
     }
 
     /**
-     * make nodes' list from uploaded node file
+     * stream the nodes of an uploaded node file, only one chunk of them is held in memory.
+     * Nodes are validated as they are read, invalid ones are reported to the status and skipped.
      *
      * @param reader file reader
-     * @return total nodes number
-     * @throws FileNotFoundException invalid file name, IOException file read exception, Parseexception json parsing exception
+     * @param chunkSize maximum number of nodes passed to handler at once
+     * @param status upload status counting parsed and invalid nodes
+     * @param handler receives the valid nodes
+     * @throws IOException file read exception or malformed json, InvalidDataException not a node file
      */
     @DurationStatistics
-    public List<NodeInfo> getHostNodeListFromUpload(Reader reader) throws FileNotFoundException, IOException, ParseException{
-        String strMethodName = "getHostNodeListFromUpload";
-        JSONParser jsonParser = new JSONParser();
-        List<NodeInfo> nodeInfos = new ArrayList<>();
-        logger.info(this.getClass().getName(), strMethodName);
-        try {
-            JSONObject obj = (JSONObject) jsonParser.parse(reader);
-            JSONArray nodeList = (JSONArray) obj.get(NodeManagerConstant.JSON_HOSTS);
-            if(nodeList != null){
-                nodeList.forEach(node -> {
-                    NodeInfo hostNode = null;
+    public void loadHostNodes(Reader reader, int chunkSize, NodeUploadStatus status, ChunkHandler handler)
+            throws IOException, InvalidDataException {
+        String strMethodName = "loadHostNodes";
+        try (JsonParser parser = objectMapper.getFactory().createParser(reader)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new InvalidDataException(NodeManagerConstant.NODE_EXCEPTION_FILE_INVALID);
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY || !NodeManagerConstant.JSON_HOSTS.equals(fieldName)) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                List<NodeInfo> nodeInfos = new ArrayList<>();
+                int nodeIndex = 0;
+                int chunk = 0;
+                int firstNodeIndex = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    JsonNode nodeJson = objectMapper.readTree(parser);
+                    status.nodeParsed();
                     try {
-                        hostNode = this.parseNodeObject((JSONObject) node);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
+                        if (nodeInfos.isEmpty()) {
+                            firstNodeIndex = nodeIndex;
+                        }
+                        nodeInfos.add(parseNodeObject(nodeJson));
+                    } catch (InvalidDataException e) {
+                        logger.error(strMethodName + " node " + nodeIndex + ": " + e.getMessage());
+                        status.nodeInvalid(nodeIndex, e.getMessage());
+                    }
+                    nodeIndex++;
+
+                    if (nodeInfos.size() >= chunkSize) {
+                        handler.onChunk(chunk++, firstNodeIndex, nodeInfos);
+                        nodeInfos = new ArrayList<>();
                     }
-                    if (hostNode != null) nodeInfos.add(hostNode);
-                });
+                }
+
+                if (!nodeInfos.isEmpty()) {
+                    handler.onChunk(chunk, firstNodeIndex, nodeInfos);
+                }
             }
-        } catch (FileNotFoundException e) {
-            logger.error(strMethodName+e.getMessage());
-            throw e;
         } catch (IOException e) {
-            logger.error(strMethodName+e.getMessage());
-            throw e;
-        } catch (ParseException e) {
-            logger.error(strMethodName+e.getMessage());
+            logger.error(strMethodName + e.getMessage());
             throw e;
         }
-        return nodeInfos;
+    }
+
+    private static String getText(JsonNode nodeJson, String fieldName) {
+        JsonNode field = nodeJson.get(fieldName);
+        return field == null || field.isNull() ? null : field.asText();
     }
 
     /**
@@ -86,38 +123,32 @@ public class NodeFileLoader {
      * @return NodeInfo objects
      * @throws InvalidDataException invalid json data
      */
-    private NodeInfo parseNodeObject(JSONObject nodeJson) throws InvalidDataException {
-        String strMethodName = "parseNodeObject";
-        NodeInfo node = null;
-        String id = (String) nodeJson.get(NodeManagerConstant.JSON_ID1);
-        String name = (String)nodeJson.get(NodeManagerConstant.JSON_NAME);
-        String ip = (String) nodeJson.get(NodeManagerConstant.JSON_IP1);
-        String mac = (String) nodeJson.get(NodeManagerConstant.JSON_MAC1);
-        String veth = (String) nodeJson.get(NodeManagerConstant.JSON_VETH1);
-        String dataPathIp = (String) nodeJson.get(NodeManagerConstant.JSON_DATAPATHIP);
+    private NodeInfo parseNodeObject(JsonNode nodeJson) throws InvalidDataException {
+        if (!nodeJson.isObject()) {
+            throw new InvalidDataException(NodeManagerConstant.NODE_EXCEPTION_JSON_EMPTY);
+        }
+
+        String id = getText(nodeJson, NodeManagerConstant.JSON_ID1);
+        String name = getText(nodeJson, NodeManagerConstant.JSON_NAME);
+        String ip = getText(nodeJson, NodeManagerConstant.JSON_IP1);
+        String mac = getText(nodeJson, NodeManagerConstant.JSON_MAC1);
+        String veth = getText(nodeJson, NodeManagerConstant.JSON_VETH1);
+        String dataPathIp = getText(nodeJson, NodeManagerConstant.JSON_DATAPATHIP);
         int gRPCServerPort = NodeManagerConstant.GRPC_SERVER_PORT;
-        try {
-            node = new NodeInfo(id, name, ip, mac, veth, gRPCServerPort);
-            node.setDataPathIp(dataPathIp);
-            String message = "";
-            if (node.validateIp(ip) == false || node.validateIp(dataPathIp) == false)
-                message = NodeManagerConstant.NODE_EXCEPTION_IP_FORMAT_INVALID;
-            if (node.validateMac(mac) == false) ;
-            {
-                if (message != null)
-                    message.concat(" & ");
-                message.concat(NodeManagerConstant.NODE_EXCEPTION_MAC_FORMAT_INVALID);
-            }
-            if (message != null && !message.isEmpty()){
-                logger.error(strMethodName+NodeManagerConstant.NODE_EXCEPTION_IP_FORMAT_INVALID);
-                throw new InvalidDataException(NodeManagerConstant.NODE_EXCEPTION_IP_FORMAT_INVALID);
-            }
-            String ncm_id = (String)nodeJson.get(NodeManagerConstant.JSON_NCM_ID);
-            node.setNcmId(ncm_id);
-        } catch (Exception e) {
-            logger.error(strMethodName+e.getMessage());
-            throw e;
+        if (id == null || id.isEmpty() || ip == null || mac == null) {
+            throw new InvalidDataException(NodeManagerConstant.NODE_EXCEPTION_PARAMETER_NULL_EMPTY);
+        }
+
+        NodeInfo node = new NodeInfo(id, name, ip, mac, veth, gRPCServerPort);
+        if (!node.validateIp(ip) || (dataPathIp != null && !node.validateIp(dataPathIp))) {
+            throw new InvalidDataException(NodeManagerConstant.NODE_EXCEPTION_IP_FORMAT_INVALID);
         }
+        if (!node.validateMac(mac)) {
+            throw new InvalidDataException(NodeManagerConstant.NODE_EXCEPTION_MAC_FORMAT_INVALID);
+        }
+
+        node.setDataPathIp(dataPathIp);
+        node.setNcmId(getText(nodeJson, NodeManagerConstant.JSON_NCM_ID));
         return node;
     }
 }
@@ -26,12 +26,18 @@ import com.futurewei.alcor.nodemanager.processor.NodeContext;
 import com.futurewei.alcor.nodemanager.processor.ProcessorManager;
 import com.futurewei.alcor.nodemanager.service.NodeService;
 import com.futurewei.alcor.nodemanager.utils.NodeManagerConstant;
+import com.futurewei.alcor.web.changelog.NodeChangeLog;
 import com.futurewei.alcor.web.entity.node.NcmInfo;
+import com.futurewei.alcor.web.entity.node.NodeChangeEvent;
 import com.futurewei.alcor.web.entity.node.NodeInfo;
+import com.futurewei.alcor.web.entity.node.NodeUploadStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -39,9 +45,9 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @Service
 @ComponentScan(value = "com.futurewei.alcor.common.utils")
@@ -54,6 +60,67 @@ public class NodeServiceImpl implements NodeService {
     @Autowired
     private NcmInfoRepository ncmInfoRepository;
 
+    // Present when node.change-log.enabled is true, DPM and NCM then replicate
+    // node changes from it instead of being sent each of them
+    @Autowired(required = false)
+    private NodeChangeLog nodeChangeLog;
+
+    @Value("${nodemanager.upload.chunk-size:1000}")
+    private int uploadChunkSize;
+
+    // Most recent uploads, the oldest are dropped past MAX_UPLOAD_STATUSES
+    private static final int MAX_UPLOAD_STATUSES = 16;
+
+    // a chunk already committed is published again this many times before giving up
+    private static final int MAX_PUBLISH_ATTEMPTS = 3;
+    private final Map<String, NodeUploadStatus> uploadStatuses = new LinkedHashMap<>();
+
+    /**
+     * Seed the node change log with the nodes and ncms stored before it was enabled,
+     * otherwise its snapshot would only hold those changed since. Runs in the background
+     * once the application is up, so reading every node does not hold up the start.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillNodeChangeLog() {
+        if (nodeChangeLog == null) {
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                long sinceVersion = nodeChangeLog.getLatestVersion();
+                List<NodeChangeEvent> events = new ArrayList<>();
+                Map<String, NodeInfo> nodeInfos = nodeRepository.findAllItems();
+                if (nodeInfos != null) {
+                    nodeInfos.values().forEach(nodeInfo -> events.add(NodeChangeEvent.nodeUpdated(nodeInfo)));
+                }
+                Map<String, NcmInfo> ncmInfos = ncmInfoRepository.findAllNcmInfo();
+                if (ncmInfos != null) {
+                    ncmInfos.values().forEach(ncmInfo -> events.add(NodeChangeEvent.ncmUpdated(ncmInfo)));
+                }
+
+                if (nodeChangeLog.backfill(sinceVersion, events)) {
+                    logger.info("Backfilled the node change log with {} nodes and ncms", events.size());
+                }
+            } catch (Exception e) {
+                logger.error("Backfill the node change log failed, it is retried on the next start: ", e);
+            }
+        });
+    }
+
+    private boolean publishChanges(List<NodeChangeEvent> events) throws Exception {
+        if (nodeChangeLog == null) {
+            return false;
+        }
+
+        nodeChangeLog.append(events);
+        return true;
+    }
+
+    private boolean publishNodeChanges(List<NodeInfo> nodeInfos) throws Exception {
+        return publishChanges(nodeInfos.stream().map(NodeChangeEvent::nodeUpdated).collect(Collectors.toList()));
+    }
+
     private void handleCreateNodeRequest(NodeInfo nodeInfo) {
         NodeContext nodeContext = new NodeContext(nodeInfo);
         IProcessor processorChain = ProcessorManager.getProcessChain();
@@ -128,33 +195,98 @@ public class NodeServiceImpl implements NodeService {
 
 
     /**
-     * read bulk nodes' information from file
+     * read bulk nodes' information from file, committing and publishing them chunk by chunk
      *
      * @param file nodes' file, e.g.) machine.json
-     * @return total nodes number
-     * @throws IOException file read exception, NodeRepositoryException exception caused by Repository
+     * @return status of the upload, with its id and the number of nodes committed
+     * @throws IOException file read exception, InvalidDataException not a node file
      */
     @DurationStatistics
-    public int getNodeInfoFromUpload(MultipartFile file) throws IOException, NodeRepositoryException, Exception {
+    public NodeUploadStatus getNodeInfoFromUpload(MultipartFile file) throws IOException, NodeRepositoryException, Exception {
         String strMethodName = "getNodeInfoFromUpload";
-        int nReturn = 0;
-        List<NodeInfo> nodeList = new ArrayList<NodeInfo>();
-        try {
-            Reader reader = new BufferedReader(new InputStreamReader(file.getInputStream()));
+        NodeUploadStatus status = new NodeUploadStatus(UUID.randomUUID().toString(), file.getOriginalFilename());
+        synchronized (uploadStatuses) {
+            uploadStatuses.put(status.getUploadId(), status);
+            Iterator<String> iterator = uploadStatuses.keySet().iterator();
+            while (uploadStatuses.size() > MAX_UPLOAD_STATUSES) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        try (Reader reader = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
             NodeFileLoader dataCenterConfigLoader = new NodeFileLoader();
-            nodeList = dataCenterConfigLoader.getHostNodeListFromUpload(reader);
-            augmentNodeInfosWithNcmUri(nodeList);
-            nodeRepository.addItemBulkTransaction(nodeList);
-            nReturn = nodeList.size();
-        } catch (IOException e) {
-            logger.error(strMethodName+e.getMessage());
+            dataCenterConfigLoader.loadHostNodes(reader, uploadChunkSize, status,
+                    (chunk, firstNodeIndex, nodeInfos) -> commitUploadedNodes(status, chunk, firstNodeIndex, nodeInfos));
+            status.finish(NodeUploadStatus.State.COMPLETED);
+        } catch (Exception e) {
+            logger.error(strMethodName + e.getMessage());
+            status.finish(NodeUploadStatus.State.FAILED);
             throw e;
         }
-        catch (CacheException e) {
-            logger.error(strMethodName+e.getMessage());
-            throw new NodeRepositoryException(NodeManagerConstant.NODE_EXCEPTION_REPOSITORY_EXCEPTION, e);
+
+        logger.info("Upload " + status.getUploadId() + " completed, committed nodes: " + status.getCommittedNodes()
+                + ", invalid nodes: " + status.getInvalidNodes() + ", failed nodes: " + status.getFailedNodes()
+                + ", unpublished nodes: " + status.getUnpublishedNodes());
+        return status.copy();
+    }
+
+    /**
+     * commit one chunk of uploaded nodes and notify DPM and NCM of it at once. A failing
+     * chunk is reported to the upload status, the following chunks are still committed.
+     * A committed chunk failing to publish is retried, then reported apart since its
+     * nodes are stored already.
+     */
+    private void commitUploadedNodes(NodeUploadStatus status, int chunk, int firstNodeIndex, List<NodeInfo> nodeInfos) {
+        try {
+            augmentNodeInfosWithNcmUri(nodeInfos);
+            nodeRepository.addItemBulkTransaction(nodeInfos);
+        } catch (Exception e) {
+            logger.error("Commit chunk " + chunk + " of upload " + status.getUploadId() + " error: " + e.getMessage());
+            status.chunkFailed(chunk, firstNodeIndex, nodeInfos.size(), e.getMessage());
+            return;
+        }
+
+        status.chunkCommitted(nodeInfos.size());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (!publishNodeChanges(nodeInfos)) {
+                    this.handleCreateNodeBulkRequest(nodeInfos);
+                }
+                return;
+            } catch (Exception e) {
+                logger.warn("Publish chunk " + chunk + " of upload " + status.getUploadId()
+                        + " attempt " + attempt + " error: " + e.getMessage());
+                if (attempt >= MAX_PUBLISH_ATTEMPTS) {
+                    status.chunkUnpublished(chunk, firstNodeIndex, nodeInfos.size(), e.getMessage());
+                    return;
+                }
+            }
         }
-        return nReturn;
+    }
+
+    @Override
+    public List<NodeUploadStatus> getUploadStatuses() {
+        List<NodeUploadStatus> result = new ArrayList<>();
+        synchronized (uploadStatuses) {
+            uploadStatuses.values().forEach(status -> result.add(status.copy()));
+        }
+
+        Collections.reverse(result);
+        return result;
+    }
+
+    @Override
+    public NodeUploadStatus getUploadStatus(String uploadId) throws Exception {
+        NodeUploadStatus status;
+        synchronized (uploadStatuses) {
+            status = uploadStatuses.get(uploadId);
+        }
+        if (status == null) {
+            throw new NodeRepositoryException(NodeManagerConstant.NODE_EXCEPTION_ENTRY_NOT_FOUND);
+        }
+
+        return status.copy();
     }
 
     /**
@@ -249,7 +381,9 @@ public class NodeServiceImpl implements NodeService {
         if (nodeInfo != null) {
             try {
                 nodeRepository.addItem(nodeInfo);
-                this.handleCreateNodeRequest(nodeInfo);
+                if (!publishNodeChanges(Collections.singletonList(nodeInfo))) {
+                    this.handleCreateNodeRequest(nodeInfo);
+                }
             } catch (CacheException e) {
                 logger.error(strMethodName+e.getMessage());
                 throw new NodeRepositoryException(NodeManagerConstant.NODE_EXCEPTION_REPOSITORY_EXCEPTION, e);
@@ -277,7 +411,9 @@ public class NodeServiceImpl implements NodeService {
             augmentNodeInfosWithNcmUri(nodeInfo);
             try {
                 nodeRepository.addItemBulkTransaction(nodeInfo);
-                this.handleCreateNodeBulkRequest(nodeInfo);
+                if (!publishNodeChanges(nodeInfo)) {
+                    this.handleCreateNodeBulkRequest(nodeInfo);
+                }
             } catch (CacheException e) {
                 logger.error(strMethodName+e.getMessage());
                 throw new NodeRepositoryException(NodeManagerConstant.NODE_EXCEPTION_REPOSITORY_EXCEPTION, e);
@@ -313,7 +449,9 @@ public class NodeServiceImpl implements NodeService {
             try {
                 addNcmUriToNodeInfo(nodeInfo);
                 nodeRepository.addItem(nodeInfo);
-                this.handleUpdateNodeRequest(nodeInfo);
+                if (!publishNodeChanges(Collections.singletonList(nodeInfo))) {
+                    this.handleUpdateNodeRequest(nodeInfo);
+                }
             } catch (CacheException e) {
                 logger.error(strMethodName+e.getMessage());
                 throw new NodeRepositoryException(NodeManagerConstant.NODE_EXCEPTION_REPOSITORY_EXCEPTION, e);
@@ -345,9 +483,14 @@ public class NodeServiceImpl implements NodeService {
         else if (nodeId.equals(node.getId()) == false)
             throw (new ParameterNullOrEmptyException(NodeManagerConstant.NODE_EXCEPTION_NODE_NOT_EXISTING));
         try {
-            addNcmUriToNodeInfo(node);
-            this.handleDeleteNodeRequest(node);
-            nodeRepository.deleteItem(nodeId);
+            if (nodeChangeLog != null) {
+                nodeRepository.deleteItem(nodeId);
+                publishChanges(Collections.singletonList(NodeChangeEvent.nodeDeleted(nodeId)));
+            } else {
+                addNcmUriToNodeInfo(node);
+                this.handleDeleteNodeRequest(node);
+                nodeRepository.deleteItem(nodeId);
+            }
         } catch (CacheException e) {
             logger.error(strMethodName+e.getMessage());
             throw new NodeRepositoryException(NodeManagerConstant.NODE_EXCEPTION_REPOSITORY_EXCEPTION, e);
@@ -388,6 +531,7 @@ public class NodeServiceImpl implements NodeService {
         }
         try {
             ncmInfoRepository.deleteNcmInfo(ncmId);
+            publishChanges(Collections.singletonList(NodeChangeEvent.ncmDeleted(ncmId)));
         } catch (CacheException e) {
             logger.error(strMethodName+e.getMessage());
             throw new NodeRepositoryException(NodeManagerConstant.NODE_EXCEPTION_REPOSITORY_EXCEPTION, e);
@@ -444,9 +588,10 @@ public class NodeServiceImpl implements NodeService {
         addOrUpdateNcmData(ncmInfo, strMethodName);
     }
 
-    private void addOrUpdateNcmData(NcmInfo ncmInfo, String strMethodName) throws NodeRepositoryException {
+    private void addOrUpdateNcmData(NcmInfo ncmInfo, String strMethodName) throws Exception {
         try {
             ncmInfoRepository.addNcmInfo(ncmInfo);
+            publishChanges(Collections.singletonList(NodeChangeEvent.ncmUpdated(ncmInfo)));
         } catch (CacheException e) {
             logger.error(strMethodName+e.getMessage());
             throw new NodeRepositoryException(NodeManagerConstant.NODE_EXCEPTION_REPOSITORY_EXCEPTION, e);
@@ -22,6 +22,7 @@ import com.futurewei.alcor.nodemanager.service.NodeService;
 import com.futurewei.alcor.web.entity.node.NodeInfo;
 import com.futurewei.alcor.web.entity.node.NodeInfoJson;
 import com.futurewei.alcor.web.entity.node.BulkNodeInfoJson;
+import com.futurewei.alcor.web.entity.node.NodeUploadStatus;
 import com.google.gson.Gson;
 import org.junit.Before;
 import org.junit.Test;
@@ -48,6 +49,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -122,10 +124,14 @@ public class NodeControllerTest extends MockIgniteServer {
             + "}";
         MockMultipartFile file = new MockMultipartFile("file", "./machine.json", "application/json",
                 fileContent.getBytes());
+        NodeUploadStatus uploadStatus = new NodeUploadStatus("upload0", "machine.json");
+        uploadStatus.chunkCommitted(2);
+        when(nodeService.getNodeInfoFromUpload(any())).thenReturn(uploadStatus);
         this.mockMvc.perform(MockMvcRequestBuilders.multipart("/nodes/upload")
                 .file(file))
                 .andDo(print())
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(content().string("{Total nodes: 2, Upload id: upload0}"));
     }
 
     @Test
@@ -0,0 +1,70 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.nodemanager.service.implement;
+
+import com.futurewei.alcor.nodemanager.exception.InvalidDataException;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+import com.futurewei.alcor.web.entity.node.NodeUploadStatus;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NodeFileLoaderTest {
+    private static String nodeJson(String id, String ip, String mac) {
+        return "{ \"node_id\": \"" + id + "\", \"node_name\": \"" + id + "\", \"local_ip\": \"" + ip
+                + "\", \"mac_address\": \"" + mac + "\", \"veth\": \"eth1\", \"server_port\": 8080 }";
+    }
+
+    @Test
+    public void loadHostNodesInChunksTest() throws Exception {
+        String fileContent = "{ \"version\": 1, \"host_infos\": ["
+                + nodeJson("node0", "10.213.43.150", "00:00:00:00:AB:C0") + ","
+                + nodeJson("node1", "10.213.43", "00:00:00:00:AB:C1") + ","
+                + nodeJson("node2", "10.213.43.152", "00:00:00:00:AB:C2") + ","
+                + nodeJson("node3", "10.213.43.153", "00:00:00:00:AB") + ","
+                + nodeJson("node4", "10.213.43.154", "00:00:00:00:AB:C4") + ","
+                + nodeJson("node5", "10.213.43.155", "00:00:00:00:AB:C5") + "]}";
+
+        NodeUploadStatus status = new NodeUploadStatus("upload0", "machine.json");
+        List<Integer> firstNodeIndexes = new ArrayList<>();
+        List<List<NodeInfo>> chunks = new ArrayList<>();
+        new NodeFileLoader().loadHostNodes(new StringReader(fileContent), 2, status, (chunk, firstNodeIndex, nodeInfos) -> {
+            assertEquals(chunks.size(), chunk);
+            firstNodeIndexes.add(firstNodeIndex);
+            chunks.add(nodeInfos);
+        });
+
+        assertEquals(6, status.getParsedNodes());
+        assertEquals(2, status.getInvalidNodes());
+        assertEquals(1, status.getErrors().get(0).getNodeIndex());
+        assertEquals(3, status.getErrors().get(1).getNodeIndex());
+        assertEquals(2, chunks.size());
+        assertEquals("node0", chunks.get(0).get(0).getId());
+        assertEquals("node2", chunks.get(0).get(1).getId());
+        assertEquals(4, (int) firstNodeIndexes.get(1));
+        assertEquals("node5", chunks.get(1).get(1).getId());
+    }
+
+    @Test(expected = InvalidDataException.class)
+    public void loadHostNodesNotAnObjectTest() throws Exception {
+        new NodeFileLoader().loadHostNodes(new StringReader("[]"), 2, new NodeUploadStatus("upload0", "machine.json"),
+                (chunk, firstNodeIndex, nodeInfos) -> fail());
+    }
+}
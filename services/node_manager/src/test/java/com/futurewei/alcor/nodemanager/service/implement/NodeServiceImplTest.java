@@ -0,0 +1,106 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.nodemanager.service.implement;
+
+import com.futurewei.alcor.nodemanager.dao.NcmInfoRepository;
+import com.futurewei.alcor.nodemanager.dao.NodeRepository;
+import com.futurewei.alcor.web.changelog.NodeChangeLog;
+import com.futurewei.alcor.web.entity.node.NodeUploadStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class NodeServiceImplTest {
+    private NodeServiceImpl nodeService;
+    private NodeRepository nodeRepository;
+    private NodeChangeLog nodeChangeLog;
+
+    private static MockMultipartFile nodeFile(int nodeCount) {
+        StringBuilder fileContent = new StringBuilder("{ \"host_infos\": [");
+        for (int i = 0; i < nodeCount; i++) {
+            fileContent.append(i == 0 ? "" : ",")
+                    .append("{ \"node_id\": \"node").append(i).append("\", \"node_name\": \"node").append(i)
+                    .append("\", \"local_ip\": \"10.213.43.").append(i + 1)
+                    .append("\", \"mac_address\": \"00:00:00:00:AB:C").append(i)
+                    .append("\", \"veth\": \"eth1\", \"server_port\": 8080 }");
+        }
+        fileContent.append("]}");
+        return new MockMultipartFile("file", "machine.json", "application/json", fileContent.toString().getBytes());
+    }
+
+    @Before
+    public void setUp() {
+        nodeService = new NodeServiceImpl();
+        nodeRepository = Mockito.mock(NodeRepository.class);
+        nodeChangeLog = Mockito.mock(NodeChangeLog.class);
+        ReflectionTestUtils.setField(nodeService, "nodeRepository", nodeRepository);
+        ReflectionTestUtils.setField(nodeService, "ncmInfoRepository", Mockito.mock(NcmInfoRepository.class));
+        ReflectionTestUtils.setField(nodeService, "nodeChangeLog", nodeChangeLog);
+        ReflectionTestUtils.setField(nodeService, "uploadChunkSize", 2);
+    }
+
+    @Test
+    public void uploadReturnsUploadIdTest() throws Exception {
+        NodeUploadStatus status = nodeService.getNodeInfoFromUpload(nodeFile(3));
+
+        assertEquals(3, status.getCommittedNodes());
+        assertEquals(NodeUploadStatus.State.COMPLETED, status.getState());
+        assertEquals(status.getUploadId(), nodeService.getUploadStatus(status.getUploadId()).getUploadId());
+        verify(nodeChangeLog, times(2)).append(anyList());
+    }
+
+    @Test
+    public void publishFailureIsRetriedAndReportedApartTest() throws Exception {
+        when(nodeChangeLog.append(anyList()))
+                .thenThrow(new RuntimeException("publish error"))
+                .thenThrow(new RuntimeException("publish error"))
+                .thenThrow(new RuntimeException("publish error"))
+                .thenThrow(new RuntimeException("publish error"))
+                .thenReturn(2L);
+
+        NodeUploadStatus status = nodeService.getNodeInfoFromUpload(nodeFile(3));
+
+        verify(nodeRepository, times(2)).addItemBulkTransaction(anyList());
+        verify(nodeChangeLog, times(5)).append(anyList());
+        assertEquals(3, status.getCommittedNodes());
+        assertEquals(0, status.getFailedNodes());
+        assertEquals(2, status.getUnpublishedNodes());
+        assertEquals(1, status.getUnpublishedChunks());
+        assertEquals(1, status.getErrors().size());
+        assertEquals(NodeUploadStatus.ErrorKind.PUBLISH_FAILED, status.getErrors().get(0).getKind());
+        assertEquals(Integer.valueOf(0), status.getErrors().get(0).getChunk());
+    }
+
+    @Test
+    public void commitFailureIsNotPublishedTest() throws Exception {
+        doThrow(new RuntimeException("commit error")).doNothing()
+                .when(nodeRepository).addItemBulkTransaction(anyList());
+
+        NodeUploadStatus status = nodeService.getNodeInfoFromUpload(nodeFile(3));
+
+        verify(nodeChangeLog, times(1)).append(anyList());
+        assertEquals(1, status.getCommittedNodes());
+        assertEquals(2, status.getFailedNodes());
+        assertEquals(0, status.getUnpublishedNodes());
+        assertEquals(NodeUploadStatus.ErrorKind.COMMIT_FAILED, status.getErrors().get(0).getKind());
+    }
+}
@@ -45,6 +45,12 @@ import java.util.*;
 public class DataPlaneProcessor extends AbstractProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(DataPlaneProcessor.class);
 
+    /**
+     * Data plane managers older than the L2 neighbor set format only read the
+     * per-port neighbor table, set this to false until all of them are upgraded.
+     */
+    static final String L2_NEIGHBOR_SETS_ENABLED = "port.l2-neighbor-sets.enabled";
+
     private PortEntity getPortEntity(List<PortEntity> portEntities, String portId) {
         for (PortEntity portEntity : portEntities) {
             if (portEntity.getId().equals(portId)) {
@@ -122,7 +128,7 @@ public class DataPlaneProcessor extends AbstractProcessor {
         context.getNetworkConfig().addNeighborEntries(portIp, neighborEntries);
     }
 
-    private void buildL2Neighbors(PortContext context, InternalPortEntity internalPortEntity, PortEntity.FixedIp fixedIp) throws Exception {
+    private void buildL2NeighborEntries(PortContext context, InternalPortEntity internalPortEntity, PortEntity.FixedIp fixedIp) throws Exception {
         Map<String, NeighborInfo> neighborInfos = context.getNetworkConfig().getNeighborInfos();
 
         List<NeighborInfo> l2Neighbors = new ArrayList<>();
@@ -146,7 +152,33 @@ public class DataPlaneProcessor extends AbstractProcessor {
         context.getNetworkConfig().addNeighborEntries(portIp, neighborTable);
     }
 
-    private void setNeighborInfos(PortContext context, InternalPortEntity internalPortEntity) throws Exception {
+    /**
+     * L2 neighbors are shared by all ports of a subnet, so build the neighbor set
+     * once per subnet instead of one NeighborEntry per (local, neighbor) pair.
+     */
+    private void buildL2NeighborSet(PortContext context, InternalPortEntity internalPortEntity, PortEntity.FixedIp fixedIp) throws Exception {
+        NetworkConfig networkConfig = context.getNetworkConfig();
+        Map<String, NeighborInfo> neighborInfos = networkConfig.getNeighborInfos();
+        if (!neighborInfos.containsKey(fixedIp.getIpAddress())) {
+            getNeighborInfo(context, internalPortEntity, fixedIp);
+        }
+
+        String subnetId = fixedIp.getSubnetId();
+        if (networkConfig.containsL2NeighborSet(subnetId)) {
+            return;
+        }
+
+        Set<String> l2NeighborIps = new HashSet<>();
+        for (NeighborInfo neighborInfo : neighborInfos.values()) {
+            if (subnetId.equals(neighborInfo.getSubnetId())) {
+                l2NeighborIps.add(neighborInfo.getPortIp());
+            }
+        }
+
+        networkConfig.addL2NeighborSet(subnetId, l2NeighborIps);
+    }
+
+    private void setNeighborInfos(PortContext context, InternalPortEntity internalPortEntity, boolean l2NeighborSetsEnabled) throws Exception {
         Map<String, NeighborInfo> neighborInfos = context.getNetworkConfig().getNeighborInfos();
         if (internalPortEntity.getFixedIps() == null ||
                 neighborInfos == null ||
@@ -167,11 +199,15 @@ public class DataPlaneProcessor extends AbstractProcessor {
                 }
             }
 
-            buildL2Neighbors(context, internalPortEntity, fixedIp);
+            if (l2NeighborSetsEnabled) {
+                buildL2NeighborSet(context, internalPortEntity, fixedIp);
+            } else {
+                buildL2NeighborEntries(context, internalPortEntity, fixedIp);
+            }
         }
     }
 
-    private void setTheMissingFields(PortContext context, List<PortEntity> portEntities) throws Exception {
+    private void setTheMissingFields(PortContext context, List<PortEntity> portEntities, boolean l2NeighborSetsEnabled) throws Exception {
         List<InternalPortEntity> internalPortEntities = context.getNetworkConfig().getPortEntities();
         for (InternalPortEntity internalPortEntity : internalPortEntities) {
             PortEntity portEntity = getPortEntity(portEntities, internalPortEntity.getId());
@@ -192,7 +228,7 @@ public class DataPlaneProcessor extends AbstractProcessor {
                 internalPortEntity.setSecurityGroups(portEntity.getSecurityGroups());
             }
 
-            setNeighborInfos(context, internalPortEntity);
+            setNeighborInfos(context, internalPortEntity, l2NeighborSetsEnabled);
         }
 
         List<VpcEntity> vpcEntities = context.getNetworkConfig().getVpcEntities();
@@ -277,7 +313,9 @@ public class DataPlaneProcessor extends AbstractProcessor {
             return null;
         }
 
-        setTheMissingFields(context, portEntities);
+        boolean l2NeighborSetsEnabled = SpringContextUtil.getApplicationContext().getEnvironment()
+                .getProperty(L2_NEIGHBOR_SETS_ENABLED, Boolean.class, true);
+        setTheMissingFields(context, portEntities, l2NeighborSetsEnabled);
         List<ResourceOperation> resourceOperationTypes = initializeResourceOperationTypes(context, portEntities);
 
         NetworkConfiguration networkConfiguration = new NetworkConfiguration();
@@ -289,6 +327,7 @@ public class DataPlaneProcessor extends AbstractProcessor {
         networkConfiguration.setPortEntities(networkConfig.getPortEntities());
         networkConfiguration.setNeighborInfos(networkConfig.getNeighborInfos());
         networkConfiguration.setNeighborTable(networkConfig.getNeighborTable());
+        networkConfiguration.setL2NeighborSets(networkConfig.getL2NeighborSets());
         networkConfiguration.setInternalRouterInfos(networkConfig.getRouterInfos());
 
         LOG.info("Network configuration: {}", networkConfiguration);
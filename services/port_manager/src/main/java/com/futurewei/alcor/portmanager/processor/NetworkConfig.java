@@ -23,10 +23,7 @@ import com.futurewei.alcor.web.entity.route.InternalRouterInfo;
 import com.futurewei.alcor.web.entity.securitygroup.SecurityGroup;
 import com.futurewei.alcor.web.entity.vpc.VpcEntity;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class NetworkConfig {
     private List<InternalPortEntity> portEntities;
@@ -43,6 +40,9 @@ public class NetworkConfig {
     //Key: portIp, value: All neighbor information for port
     private Map<String, List<NeighborEntry>> neighborTable;
 
+    //Key: subnetId, value: Ips of all L2 neighbors in the subnet
+    private Map<String, Set<String>> l2NeighborSets;
+
     private List<InternalRouterInfo> routerInfos;
 
     public static class ExtendPortEntity extends InternalPortEntity {
@@ -136,6 +136,22 @@ public class NetworkConfig {
         this.neighborTable.get(portIp).addAll(neighborEntries);
     }
 
+    public Map<String, Set<String>> getL2NeighborSets() {
+        return this.l2NeighborSets;
+    }
+
+    public boolean containsL2NeighborSet(String subnetId) {
+        return this.l2NeighborSets != null && this.l2NeighborSets.containsKey(subnetId);
+    }
+
+    public void addL2NeighborSet(String subnetId, Set<String> neighborIps) {
+        if (this.l2NeighborSets == null) {
+            this.l2NeighborSets = new HashMap<>();
+        }
+
+        this.l2NeighborSets.put(subnetId, neighborIps);
+    }
+
     public List<InternalRouterInfo> getRouterInfos() {
         return this.routerInfos;
     }
@@ -0,0 +1,117 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.portmanager.processor;
+
+import com.futurewei.alcor.web.entity.dataplane.InternalPortEntity;
+import com.futurewei.alcor.web.entity.dataplane.NeighborEntry;
+import com.futurewei.alcor.web.entity.dataplane.NeighborInfo;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+import com.futurewei.alcor.web.entity.port.PortEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataPlaneProcessorTest {
+    private static final int PORT_COUNT = 100;
+    private static final String VPC_ID = "vpc1";
+    private static final String SUBNET_ID = "subnet1";
+    private static final String HOST_ID = "node1";
+    private static final String HOST_IP = "10.213.43.187";
+
+    private DataPlaneProcessor dataPlaneProcessor;
+    private PortContext context;
+    private List<InternalPortEntity> internalPortEntities;
+
+    private static String portIp(int i) {
+        return "11.11.11." + i;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        dataPlaneProcessor = new DataPlaneProcessor();
+        internalPortEntities = new ArrayList<>();
+        Map<String, NeighborInfo> neighborInfos = new HashMap<>();
+
+        for (int i = 0; i < PORT_COUNT; i++) {
+            String portId = "port" + i;
+            String mac = String.format("86:ea:77:ad:52:%02x", i);
+
+            InternalPortEntity internalPortEntity = new InternalPortEntity();
+            internalPortEntity.setId(portId);
+            internalPortEntity.setVpcId(VPC_ID);
+            internalPortEntity.setMacAddress(mac);
+            internalPortEntity.setBindingHostId(HOST_ID);
+            internalPortEntity.setBindingHostIP(HOST_IP);
+            internalPortEntity.setFixedIps(Collections.singletonList(
+                    new PortEntity.FixedIp(SUBNET_ID, portIp(i))));
+            internalPortEntities.add(internalPortEntity);
+
+            neighborInfos.put(portIp(i), new NeighborInfo(
+                    HOST_IP, HOST_ID, portId, mac, portIp(i), VPC_ID, SUBNET_ID));
+        }
+
+        NetworkConfig networkConfig = new NetworkConfig();
+        networkConfig.setPortEntities(internalPortEntities);
+        networkConfig.setNeighborInfos(neighborInfos);
+
+        context = new PortContext();
+        context.setNetworkConfig(networkConfig);
+        context.setNodeInfos(Collections.singletonList(
+                new NodeInfo(HOST_ID, HOST_ID, HOST_IP, "86:ea:77:ad:52:ff")));
+    }
+
+    private void setNeighborInfos(boolean l2NeighborSetsEnabled) {
+        for (InternalPortEntity internalPortEntity : internalPortEntities) {
+            ReflectionTestUtils.invokeMethod(dataPlaneProcessor, "setNeighborInfos",
+                    context, internalPortEntity, l2NeighborSetsEnabled);
+        }
+    }
+
+    @Test
+    public void bulkCreateBuildsOneL2NeighborSetPerSubnetTest() {
+        setNeighborInfos(true);
+
+        NetworkConfig networkConfig = context.getNetworkConfig();
+        Map<String, Set<String>> l2NeighborSets = networkConfig.getL2NeighborSets();
+        assertEquals(1, l2NeighborSets.size());
+        assertEquals(PORT_COUNT, l2NeighborSets.get(SUBNET_ID).size());
+        for (int i = 0; i < PORT_COUNT; i++) {
+            assertTrue(l2NeighborSets.get(SUBNET_ID).contains(portIp(i)));
+        }
+
+        assertNull(networkConfig.getNeighborTable());
+    }
+
+    @Test
+    public void bulkCreateBuildsLegacyNeighborTableWhenSetsDisabledTest() {
+        setNeighborInfos(false);
+
+        NetworkConfig networkConfig = context.getNetworkConfig();
+        Map<String, List<NeighborEntry>> neighborTable = networkConfig.getNeighborTable();
+        assertNull(networkConfig.getL2NeighborSets());
+        assertEquals(PORT_COUNT, neighborTable.size());
+        for (List<NeighborEntry> neighborEntries : neighborTable.values()) {
+            assertEquals(PORT_COUNT - 1, neighborEntries.size());
+            for (NeighborEntry neighborEntry : neighborEntries) {
+                assertEquals(NeighborEntry.NeighborType.L2, neighborEntry.getNeighborType());
+            }
+        }
+    }
+}
@@ -15,12 +15,21 @@ Copyright(c) 2020 Futurewei Cloud
 */
 package com.futurewei.alcor.privateipmanager.allocator;
 
+import java.util.BitSet;
 import java.util.List;
 
 public interface IpAddrAllocator {
 
     String allocate(String ipAddr) throws Exception;
 
+    /**
+     * Allocate num ip addresses, preferring contiguous runs
+     * @param num Number of ip addresses to allocate
+     * @return Index runs of the allocated ip addresses
+     * @throws Exception Not enough free ip addresses, nothing is allocated in that case
+     */
+    List<IpIndexRange> allocate(int num) throws Exception;
+
     List<String> allocateBulk(int num) throws Exception;
 
     int getIpIndex(String ip) throws Exception;
@@ -29,7 +38,17 @@ public interface IpAddrAllocator {
 
     void release(String ipAddr) throws Exception;
 
+    void release(int index);
+
     void releaseBulk(List<String> ipAddrList) throws Exception;
 
     boolean validate(String ipAddr);
+
+    BitSet getBitSet();
+
+    void setBitSet(BitSet bitSet);
+
+    int getNextIndex();
+
+    void setNextIndex(int nextIndex);
 }
@@ -0,0 +1,158 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.privateipmanager.allocator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Free space index over the allocation bitmap of an ip range. It keeps a summary
+ * bitmap with one bit per full 64-bit word of the allocation bitmap, so finding a
+ * free index skips full words 64 at a time instead of scanning them bit by bit.
+ * The summary is not persisted, it is rebuilt from the allocation bitmap on first use.
+ */
+class IpAddrFreeIndex {
+    private static final int WORD_BITS = 64;
+
+    private final BitSet bitSet;
+    private final int capacity;
+    private final BitSet fullWords;
+
+    IpAddrFreeIndex(BitSet bitSet, long ipAddrNum) {
+        this.bitSet = bitSet;
+        this.capacity = (int) Math.min(ipAddrNum, Integer.MAX_VALUE);
+        this.fullWords = new BitSet();
+
+        long[] words = bitSet.toLongArray();
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] == -1L) {
+                fullWords.set(i);
+            }
+        }
+    }
+
+    private boolean isWordFull(int word) {
+        int base = word * WORD_BITS;
+        for (int i = 0; i < WORD_BITS; i++) {
+            if (!bitSet.get(base + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void updateSummary(int fromIndex, int toIndex) {
+        for (int word = fromIndex / WORD_BITS; word <= (toIndex - 1) / WORD_BITS; word++) {
+            fullWords.set(word, isWordFull(word));
+        }
+    }
+
+    private int nextFree(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return -1;
+        }
+
+        // The word that contains fromIndex may only be free below fromIndex
+        int firstWord = fromIndex / WORD_BITS;
+        int firstWordEnd = Math.min((firstWord + 1) * WORD_BITS, toIndex);
+        for (int i = fromIndex; i < firstWordEnd; i++) {
+            if (!bitSet.get(i)) {
+                return i;
+            }
+        }
+
+        long start = (long) fullWords.nextClearBit(firstWord + 1) * WORD_BITS;
+        if (start >= toIndex) {
+            return -1;
+        }
+
+        // Not a full word, so the clear bit lies within it
+        int freeIndex = bitSet.nextClearBit((int) start);
+
+        return freeIndex < toIndex ? freeIndex : -1;
+    }
+
+    /**
+     * Find a free index with next-fit: search from the cursor to the end of
+     * the range, then wrap around to the beginning.
+     * @param cursor Index to start searching from
+     * @return Free index, or -1 if the range is full
+     */
+    int nextFree(int cursor) {
+        if (cursor < 0 || cursor >= capacity) {
+            cursor = 0;
+        }
+
+        int freeIndex = nextFree(cursor, capacity);
+        if (freeIndex < 0) {
+            freeIndex = nextFree(0, cursor);
+        }
+
+        return freeIndex;
+    }
+
+    void set(int index) {
+        bitSet.set(index);
+        updateSummary(index, index + 1);
+    }
+
+    void clear(int index) {
+        bitSet.clear(index);
+        fullWords.clear(index / WORD_BITS);
+    }
+
+    /**
+     * Allocate num indexes as a list of contiguous runs, starting at the cursor.
+     * Either all num indexes are allocated or none of them.
+     * @param cursor Index to start searching from
+     * @param num Number of indexes to allocate
+     * @return Allocated runs, or null if there are less than num free indexes
+     */
+    List<IpIndexRange> allocate(int cursor, int num) {
+        List<IpIndexRange> ranges = new ArrayList<>();
+        int remaining = num;
+        int from = cursor;
+
+        while (remaining > 0) {
+            int first = nextFree(from);
+            if (first < 0) {
+                for (IpIndexRange range: ranges) {
+                    bitSet.clear(range.getFirst(), range.getLast() + 1);
+                    updateSummary(range.getFirst(), range.getLast() + 1);
+                }
+
+                return null;
+            }
+
+            int end = bitSet.nextSetBit(first);
+            if (end < 0 || end > capacity) {
+                end = capacity;
+            }
+            end = (int) Math.min(end, (long) first + remaining);
+
+            bitSet.set(first, end);
+            updateSummary(first, end);
+            ranges.add(new IpIndexRange(first, end - 1));
+
+            remaining -= end - first;
+            from = end;
+        }
+
+        return ranges;
+    }
+}
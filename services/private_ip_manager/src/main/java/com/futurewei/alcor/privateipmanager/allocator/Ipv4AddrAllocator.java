@@ -26,6 +26,8 @@ public class Ipv4AddrAllocator implements IpAddrAllocator {
     private long firstIp;
     private long lastIp;
     private long ipAddrNum;
+    private int nextIndex;    // Next-fit cursor, allocation searches for a free index from here
+    private transient IpAddrFreeIndex freeIndex;
 
     public Ipv4AddrAllocator(long firstIp, long lastIp) {
         this.firstIp = firstIp;
@@ -34,6 +36,15 @@ public class Ipv4AddrAllocator implements IpAddrAllocator {
         bitSet = new BitSet();
     }
 
+    private IpAddrFreeIndex getFreeIndex() {
+        // Transient fields are not restored by deserialization
+        if (freeIndex == null) {
+            freeIndex = new IpAddrFreeIndex(bitSet, ipAddrNum);
+        }
+
+        return freeIndex;
+    }
+
     @Override
     public String allocate(String ipAddr) throws Exception {
         int freeBit;
@@ -46,14 +57,16 @@ public class Ipv4AddrAllocator implements IpAddrAllocator {
 
             freeBit = (int)(ipLong - firstIp);
         } else {
-            freeBit = bitSet.nextClearBit(0);
+            freeBit = getFreeIndex().nextFree(nextIndex);
 
             if (freeBit < 0 || freeBit >= ipAddrNum) {
                 throw new IpAddrNotEnoughException();
             }
+
+            nextIndex = freeBit + 1;
         }
 
-        bitSet.set(freeBit);
+        getFreeIndex().set(freeBit);
 
         return Ipv4AddrUtil.longToIpv4(firstIp + freeBit);
     }
@@ -73,25 +86,28 @@ public class Ipv4AddrAllocator implements IpAddrAllocator {
         return Ipv4AddrUtil.longToIpv4(firstIp + index);
     }
 
+    @Override
+    public List<IpIndexRange> allocate(int num) throws Exception {
+        List<IpIndexRange> ranges = getFreeIndex().allocate(nextIndex, num);
+        if (ranges == null) {
+            throw new IpAddrNotEnoughException();
+        }
+
+        if (ranges.size() > 0) {
+            nextIndex = ranges.get(ranges.size() - 1).getLast() + 1;
+        }
+
+        return ranges;
+    }
+
     @Override
     public List<String> allocateBulk(int num) throws Exception {
-        List<Integer> freeBits = new ArrayList<>();
         List<String> ipv4AddrList = new ArrayList<>();
 
-        int freeBit = 0;
-        while (freeBits.size() < num) {
-            freeBit = bitSet.nextClearBit(freeBit + 1);
-            if (freeBit < 0 || freeBit >= ipAddrNum) {
-                throw new IpAddrNotEnoughException();
+        for (IpIndexRange range: allocate(num)) {
+            for (int index = range.getFirst(); index <= range.getLast(); index++) {
+                ipv4AddrList.add(Ipv4AddrUtil.longToIpv4(firstIp + index));
             }
-
-            freeBits.add(freeBit);
-        }
-
-        for (int bit: freeBits) {
-            bitSet.set(bit);
-            String ipv4Addr = Ipv4AddrUtil.longToIpv4(firstIp + bit);
-            ipv4AddrList.add(ipv4Addr);
         }
 
         return ipv4AddrList;
@@ -103,7 +119,12 @@ public class Ipv4AddrAllocator implements IpAddrAllocator {
             throw new IpAddrInvalidException();
         }
 
-        bitSet.clear((int)(ipLong - firstIp));
+        getFreeIndex().clear((int)(ipLong - firstIp));
+    }
+
+    @Override
+    public void release(int index) {
+        getFreeIndex().clear(index);
     }
 
     @Override
@@ -120,12 +141,15 @@ public class Ipv4AddrAllocator implements IpAddrAllocator {
         return ipLong >= firstIp && ipLong <= lastIp;
     }
 
+    @Override
     public BitSet getBitSet() {
         return bitSet;
     }
 
+    @Override
     public void setBitSet(BitSet bitSet) {
         this.bitSet = bitSet;
+        this.freeIndex = null;
     }
 
     public long getFirstIp() {
@@ -151,4 +175,14 @@ public class Ipv4AddrAllocator implements IpAddrAllocator {
     public void setIpAddrNum(long ipAddrNum) {
         this.ipAddrNum = ipAddrNum;
     }
+
+    @Override
+    public int getNextIndex() {
+        return nextIndex;
+    }
+
+    @Override
+    public void setNextIndex(int nextIndex) {
+        this.nextIndex = nextIndex;
+    }
 }
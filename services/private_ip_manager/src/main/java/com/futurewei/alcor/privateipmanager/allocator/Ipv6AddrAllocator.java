@@ -17,86 +17,106 @@ package com.futurewei.alcor.privateipmanager.allocator;
 
 import com.futurewei.alcor.privateipmanager.exception.IpAddrInvalidException;
 import com.futurewei.alcor.privateipmanager.exception.IpAddrNotEnoughException;
-import com.futurewei.alcor.privateipmanager.utils.Ipv4AddrUtil;
-import com.futurewei.alcor.privateipmanager.utils.Ipv6AddrUtil;
+import com.futurewei.alcor.privateipmanager.utils.Ipv6Addr;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 
 public class Ipv6AddrAllocator implements IpAddrAllocator {
     private BitSet bitSet;
-    private BigInteger firstIp;
-    private BigInteger lastIp;
+    // Not named firstIp/lastIp: those fields held BigIntegers in ranges stored in the single object format
+    private Ipv6Addr firstAddr;
+    private Ipv6Addr lastAddr;
     private long ipAddrNum;
+    private int nextIndex;    // Next-fit cursor, allocation searches for a free index from here
+    private transient IpAddrFreeIndex freeIndex;
 
-    public Ipv6AddrAllocator(BigInteger firstIp, BigInteger lastIp) {
-        this.firstIp = firstIp;
-        this.lastIp = lastIp;
-        ipAddrNum = lastIp.subtract(firstIp).add(BigInteger.valueOf(1)).longValue();
+    public Ipv6AddrAllocator(Ipv6Addr firstAddr, Ipv6Addr lastAddr) {
+        this.firstAddr = firstAddr;
+        this.lastAddr = lastAddr;
+        ipAddrNum = Math.min(lastAddr.subtract(firstAddr), Long.MAX_VALUE - 1) + 1;
         bitSet = new BitSet();
     }
 
+    private int toIndex(String ipAddr) throws Exception {
+        Ipv6Addr addr;
+        try {
+            addr = Ipv6Addr.parse(ipAddr);
+        } catch (IllegalArgumentException e) {
+            throw new IpAddrInvalidException();
+        }
+
+        if (addr.compareTo(firstAddr) < 0 || addr.compareTo(lastAddr) > 0) {
+            throw new IpAddrInvalidException();
+        }
+
+        return (int) addr.subtract(firstAddr);
+    }
+
+
+    private IpAddrFreeIndex getFreeIndex() {
+        // Transient fields are not restored by deserialization
+        if (freeIndex == null) {
+            freeIndex = new IpAddrFreeIndex(bitSet, ipAddrNum);
+        }
+
+        return freeIndex;
+    }
 
     @Override
     public String allocate(String ipAddr) throws Exception {
         int freeBit;
 
         if (ipAddr != null) {
-            BigInteger ipBigInt = Ipv6AddrUtil.ipv6ToBitInt(ipAddr);
-            if (ipBigInt.compareTo(firstIp) < 0 || ipBigInt.compareTo(lastIp) > 0) {
-                throw new IpAddrInvalidException();
-            }
-
-            freeBit = (int)(ipBigInt.subtract(firstIp).longValue());
+            freeBit = toIndex(ipAddr);
         } else {
-            freeBit = bitSet.nextClearBit(0);
+            freeBit = getFreeIndex().nextFree(nextIndex);
 
             if (freeBit < 0 || freeBit >= ipAddrNum) {
                 throw new IpAddrNotEnoughException();
             }
+
+            nextIndex = freeBit + 1;
         }
 
-        bitSet.set(freeBit);
+        getFreeIndex().set(freeBit);
 
-        return Ipv6AddrUtil.bigIntToIpv6(firstIp.add(BigInteger.valueOf(freeBit)));
+        return firstAddr.add(freeBit).toString();
     }
 
     @Override
     public int getIpIndex(String ip) throws Exception {
-        BigInteger ipBigInt = Ipv6AddrUtil.ipv6ToBitInt(ip);
-        if (ipBigInt.compareTo(firstIp) < 0 || ipBigInt.compareTo(lastIp) > 0) {
-            throw new IpAddrInvalidException();
-        }
-
-        return (int)(ipBigInt.subtract(firstIp).longValue());
+        return toIndex(ip);
     }
 
     @Override
     public String getIp(int index) throws Exception {
-        return Ipv6AddrUtil.bigIntToIpv6(firstIp.add(BigInteger.valueOf(index)));
+        return firstAddr.add(index).toString();
+    }
+
+    @Override
+    public List<IpIndexRange> allocate(int num) throws Exception {
+        List<IpIndexRange> ranges = getFreeIndex().allocate(nextIndex, num);
+        if (ranges == null) {
+            throw new IpAddrNotEnoughException();
+        }
+
+        if (ranges.size() > 0) {
+            nextIndex = ranges.get(ranges.size() - 1).getLast() + 1;
+        }
+
+        return ranges;
     }
 
     @Override
     public List<String> allocateBulk(int num) throws Exception {
-        List<Integer> freeBits = new ArrayList<>();
         List<String> ipv6AddrList = new ArrayList<>();
 
-        int freeBit = 0;
-        while (freeBits.size() < num) {
-            freeBit = bitSet.nextClearBit(freeBit + 1);
-            if (freeBit < 0 || freeBit >= ipAddrNum) {
-                throw new IpAddrNotEnoughException();
+        for (IpIndexRange range: allocate(num)) {
+            for (int index = range.getFirst(); index <= range.getLast(); index++) {
+                ipv6AddrList.add(firstAddr.add(index).toString());
             }
-
-            freeBits.add(freeBit);
-        }
-
-        for (int bit: freeBits) {
-            bitSet.set(bit);
-            String ipv6Addr = Ipv6AddrUtil.bigIntToIpv6(firstIp.add(BigInteger.valueOf(bit)));
-            ipv6AddrList.add(ipv6Addr);
         }
 
         return ipv6AddrList;
@@ -104,12 +124,12 @@ public class Ipv6AddrAllocator implements IpAddrAllocator {
 
     @Override
     public void release(String ipAddr) throws Exception {
-        BigInteger ipBigInt = Ipv6AddrUtil.ipv6ToBitInt(ipAddr);
-        if (ipBigInt.compareTo(firstIp) < 0 || ipBigInt.compareTo(lastIp) > 0) {
-            throw new IpAddrInvalidException();
-        }
+        getFreeIndex().clear(toIndex(ipAddr));
+    }
 
-        bitSet.clear((int)(ipBigInt.subtract(firstIp).longValue()));
+    @Override
+    public void release(int index) {
+        getFreeIndex().clear(index);
     }
 
     @Override
@@ -121,33 +141,41 @@ public class Ipv6AddrAllocator implements IpAddrAllocator {
 
     @Override
     public boolean validate(String ipAddr) {
-        BigInteger ipBigInt = Ipv6AddrUtil.ipv6ToBitInt(ipAddr);
+        Ipv6Addr addr;
+        try {
+            addr = Ipv6Addr.parse(ipAddr);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
 
-        return ipBigInt.compareTo(firstIp) >= 0 && ipBigInt.compareTo(lastIp) <= 0;
+        return addr.compareTo(firstAddr) >= 0 && addr.compareTo(lastAddr) <= 0;
     }
 
+    @Override
     public BitSet getBitSet() {
         return bitSet;
     }
 
+    @Override
     public void setBitSet(BitSet bitSet) {
         this.bitSet = bitSet;
+        this.freeIndex = null;
     }
 
-    public BigInteger getFirstIp() {
-        return firstIp;
+    public Ipv6Addr getFirstAddr() {
+        return firstAddr;
     }
 
-    public void setFirstIp(BigInteger firstIp) {
-        this.firstIp = firstIp;
+    public void setFirstAddr(Ipv6Addr firstAddr) {
+        this.firstAddr = firstAddr;
     }
 
-    public BigInteger getLastIp() {
-        return lastIp;
+    public Ipv6Addr getLastAddr() {
+        return lastAddr;
     }
 
-    public void setLastIp(BigInteger lastIp) {
-        this.lastIp = lastIp;
+    public void setLastAddr(Ipv6Addr lastAddr) {
+        this.lastAddr = lastAddr;
     }
 
     public long getIpAddrNum() {
@@ -157,4 +185,14 @@ public class Ipv6AddrAllocator implements IpAddrAllocator {
     public void setIpAddrNum(long ipAddrNum) {
         this.ipAddrNum = ipAddrNum;
     }
+
+    @Override
+    public int getNextIndex() {
+        return nextIndex;
+    }
+
+    @Override
+    public void setNextIndex(int nextIndex) {
+        this.nextIndex = nextIndex;
+    }
 }
@@ -19,6 +19,7 @@ import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.privateipmanager.exception.*;
 import com.futurewei.alcor.privateipmanager.service.implement.IpAddrServiceImpl;
 import com.futurewei.alcor.privateipmanager.utils.Ipv4AddrUtil;
+import com.futurewei.alcor.privateipmanager.utils.Ipv6Addr;
 import com.futurewei.alcor.privateipmanager.utils.Ipv6AddrUtil;
 import com.futurewei.alcor.web.entity.ip.*;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,7 +27,6 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigInteger;
 import java.util.List;
 import java.util.Map;
 
@@ -206,9 +206,9 @@ public class IpAddrController {
                 throw new IpAddrRangeInvalidException();
             }
         } else {
-            BigInteger firstIpBigInt = Ipv6AddrUtil.ipv6ToBitInt(request.getFirstIp());
-            BigInteger lastIpBigInt = Ipv6AddrUtil.ipv6ToBitInt(request.getLastIp());
-            if (firstIpBigInt.compareTo(lastIpBigInt) > 0) {
+            Ipv6Addr firstAddr = Ipv6Addr.parse(request.getFirstIp());
+            Ipv6Addr lastAddr = Ipv6Addr.parse(request.getLastIp());
+            if (firstAddr.compareTo(lastAddr) > 0) {
                 throw new IpAddrRangeInvalidException();
             }
         }
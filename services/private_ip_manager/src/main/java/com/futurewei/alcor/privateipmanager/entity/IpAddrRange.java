@@ -18,20 +18,23 @@ package com.futurewei.alcor.privateipmanager.entity;
 import com.futurewei.alcor.common.db.CacheException;
 import com.futurewei.alcor.common.db.ICache;
 import com.futurewei.alcor.privateipmanager.allocator.IpAddrAllocator;
+import com.futurewei.alcor.privateipmanager.allocator.IpIndexRange;
 import com.futurewei.alcor.privateipmanager.allocator.Ipv4AddrAllocator;
 import com.futurewei.alcor.privateipmanager.allocator.Ipv6AddrAllocator;
 import com.futurewei.alcor.privateipmanager.exception.IpAddrAllocNotFoundException;
 import com.futurewei.alcor.privateipmanager.exception.IpAddrConflictException;
 import com.futurewei.alcor.privateipmanager.exception.IpAddrInvalidException;
 import com.futurewei.alcor.privateipmanager.utils.Ipv4AddrUtil;
-import com.futurewei.alcor.privateipmanager.utils.Ipv6AddrUtil;
+import com.futurewei.alcor.privateipmanager.utils.Ipv6Addr;
 import com.futurewei.alcor.web.entity.ip.IpAddrState;
 import com.futurewei.alcor.web.entity.ip.IpVersion;
 
-import java.math.BigInteger;
 import java.util.*;
 
 public class IpAddrRange {
+    public static final int SINGLE_OBJECT_STORE = 0;
+    public static final int CHUNKED_STORE = 1;
+
     private String id;
     private String vpcId;
     private String subnetId;
@@ -42,6 +45,13 @@ public class IpAddrRange {
     private long totalIps;
     private IpAddrAllocator allocator;
     private Map<Integer, Byte> ips;    // Using Byte to represent the status of ip address, this can reduce IpAddRange size and improve cache performance.
+    private int storeVersion;    // SINGLE_OBJECT_STORE for ranges written before allocation state was split into IpAddrRangeChunk
+    private int chunkCount;
+    private int nextIpIndex;    // Next-fit cursor of the allocator, kept in the header since the allocator is not stored with it
+    private transient BitSet dirtyChunks;
+
+    private IpAddrRange() {
+    }
 
     public IpAddrRange(String id, String vpcId, String subnetId, int ipVersion, String firstIp, String lastIp) {
         this.id = id;
@@ -59,11 +69,11 @@ public class IpAddrRange {
             totalIps = lastIpLong - firstIpLong + 1;
             allocator = new Ipv4AddrAllocator(firstIpLong, lastIpLong);
         } else {
-            BigInteger firstIpBigInt = Ipv6AddrUtil.ipv6ToBitInt(firstIp);
-            BigInteger lastIpBigInt = Ipv6AddrUtil.ipv6ToBitInt(lastIp);
+            Ipv6Addr firstAddr = Ipv6Addr.parse(firstIp);
+            Ipv6Addr lastAddr = Ipv6Addr.parse(lastIp);
 
-            totalIps = lastIpBigInt.subtract(firstIpBigInt).longValue() + 1;
-            allocator = new Ipv6AddrAllocator(firstIpBigInt, lastIpBigInt);
+            allocator = new Ipv6AddrAllocator(firstAddr, lastAddr);
+            totalIps = ((Ipv6AddrAllocator) allocator).getIpAddrNum();
         }
 
         //allocatedIps = new HashMap<>();
@@ -81,7 +91,9 @@ public class IpAddrRange {
         String ipAddr = allocator.allocate(ip);
         IpAddrAlloc ipAddrAlloc = new IpAddrAlloc(ipVersion, subnetId, id, ipAddr, IpAddrState.ACTIVATED.getState());
 
-        ips.put(allocator.getIpIndex(ipAddr), (byte)IpAddrState.ACTIVATED.ordinal());
+        int index = allocator.getIpIndex(ipAddr);
+        ips.put(index, (byte)IpAddrState.ACTIVATED.ordinal());
+        markDirty(index);
         updateUsedIps();
 
         return ipAddrAlloc;
@@ -89,24 +101,32 @@ public class IpAddrRange {
 
     @Deprecated
     public List<IpAddrAlloc> allocateBulk(int num) throws Exception {
-        List<String> ipAddrList = allocator.allocateBulk(num);
         List<IpAddrAlloc> ipAddrAllocs = new ArrayList<>();
-        Map<Integer, Byte> ipAddrAllocMap = new HashMap<>();
-
-        for (String ipAddr: ipAddrList) {
-            IpAddrAlloc ipAddrAlloc = new IpAddrAlloc(ipVersion, subnetId, id, ipAddr, IpAddrState.ACTIVATED.getState());
 
-            ipAddrAllocs.add(ipAddrAlloc);
-            ipAddrAllocMap.put(allocator.getIpIndex(ipAddr), (byte)IpAddrState.ACTIVATED.ordinal());
+        for (IpIndexRange range: allocator.allocate(num)) {
+            for (int index = range.getFirst(); index <= range.getLast(); index++) {
+                ipAddrAllocs.add(new IpAddrAlloc(ipVersion, subnetId, id, allocator.getIp(index), IpAddrState.ACTIVATED.getState()));
+                ips.put(index, (byte)IpAddrState.ACTIVATED.ordinal());
+                markDirty(index);
+            }
         }
 
-        ips.putAll(ipAddrAllocMap);
         updateUsedIps();
 
         return ipAddrAllocs;
     }
 
     public List<IpAddrAlloc> allocateBulk(List<String> ipAddrList) throws Exception {
+        if (ipAddrList.stream().allMatch(Objects::isNull)) {
+            // No specific ip address requested, allocate as many as possible in contiguous runs
+            int num = (int) Math.min(ipAddrList.size(), totalIps - usedIps);
+            if (num <= 0) {
+                return new ArrayList<>();
+            }
+
+            return allocateBulk(num);
+        }
+
         List<IpAddrAlloc> ipAddrAllocList = new ArrayList<>();
         Map<Integer, Byte> ipAddrAllocMap = new HashMap<>();
 
@@ -127,6 +147,7 @@ public class IpAddrRange {
 
         if (ipAddrAllocMap.size() > 0) {
             ips.putAll(ipAddrAllocMap);
+            ipAddrAllocMap.keySet().forEach(this::markDirty);
             updateUsedIps();
         }
 
@@ -141,6 +162,7 @@ public class IpAddrRange {
 
         if (!ips.get(index).equals(IpAddrState.valueOf(state).ordinal())) {
             ips.put(index, (byte)IpAddrState.valueOf(state).ordinal());
+            markDirty(index);
         }
     }
 
@@ -150,22 +172,27 @@ public class IpAddrRange {
             throw new IpAddrAllocNotFoundException();
         }
 
-        allocator.release(ipAddr);
+        allocator.release(index);
         ips.remove(index);
+        markDirty(index);
 
         updateUsedIps();
     }
 
     public void releaseBulk(List<String> ipAddrList) throws Exception {
-        allocator.releaseBulk(ipAddrList);
-        for (String ipAddr: ipAddrList) {
-            int index = allocator.getIpIndex(ipAddr);
-            if (!ips.containsKey(index)) {
+        // Parse each address once, and check all of them before releasing any
+        int[] indexes = new int[ipAddrList.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = allocator.getIpIndex(ipAddrList.get(i));
+            if (!ips.containsKey(indexes[i])) {
                 throw new IpAddrAllocNotFoundException();
             }
+        }
 
-            //TODO:support remove all
+        for (int index: indexes) {
+            allocator.release(index);
             ips.remove(index);
+            markDirty(index);
         }
 
         updateUsedIps();
@@ -174,7 +201,7 @@ public class IpAddrRange {
     public IpAddrAlloc getIpAddr(String ipAddr) throws Exception {
         int index = allocator.getIpIndex(ipAddr);
         if (ips.containsKey(index)) {
-            return new IpAddrAlloc(ipVersion, subnetId, id, ipAddr, ((IpAddrState.values())[(int)ips.get(index)]).toString());
+            return new IpAddrAlloc(ipVersion, subnetId, id, ipAddr, (IpAddrState.values())[(int)ips.get(index)].getState());
         }
 
         if (allocator.validate(ipAddr)) {
@@ -187,11 +214,129 @@ public class IpAddrRange {
     public Collection<IpAddrAlloc> getIpAddrBulk() throws Exception {
         List<IpAddrAlloc> ipAddrAllocs = new ArrayList<>();
         for (Map.Entry<Integer, Byte> entry : ips.entrySet()) {
-            ipAddrAllocs.add(new IpAddrAlloc(ipVersion, subnetId, id, allocator.getIp(entry.getKey()), ((IpAddrState.values())[(int)ips.get(entry.getValue())]).toString()));
+            ipAddrAllocs.add(new IpAddrAlloc(ipVersion, subnetId, id, allocator.getIp(entry.getKey()), (IpAddrState.values())[(int)entry.getValue()].getState()));
         }
         return ipAddrAllocs;
     }
 
+    private BitSet getDirtyChunkSet() {
+        // Transient fields are not restored by deserialization
+        if (dirtyChunks == null) {
+            dirtyChunks = new BitSet();
+        }
+
+        return dirtyChunks;
+    }
+
+    private void markDirty(int ipIndex) {
+        int chunkIndex = IpAddrRangeChunk.getChunkIndex(ipIndex);
+        getDirtyChunkSet().set(chunkIndex);
+        chunkCount = Math.max(chunkCount, chunkIndex + 1);
+    }
+
+    /**
+     * Rebuild the allocator of a range stored in the single object format from
+     * firstIp and lastIp, keeping its allocation bitmap and cursor. Allocators
+     * stored that way may carry fields of an older layout.
+     */
+    public void restoreAllocator() {
+        IpAddrAllocator stored = allocator;
+        IpAddrRange ipAddrRange = new IpAddrRange(id, vpcId, subnetId, ipVersion, firstIp, lastIp);
+        allocator = ipAddrRange.allocator;
+
+        if (stored != null && stored.getBitSet() != null) {
+            allocator.setBitSet(stored.getBitSet());
+            allocator.setNextIndex(stored.getNextIndex());
+        }
+    }
+
+    /**
+     * Mark every chunk that holds allocation state as dirty, used to write a
+     * range stored in the single object format out as chunks.
+     */
+    public void markAllChunksDirty() {
+        BitSet bitSet = allocator.getBitSet();
+        if (bitSet != null && bitSet.length() > 0) {
+            markDirty(bitSet.length() - 1);
+        }
+
+        for (int index: ips.keySet()) {
+            markDirty(index);
+        }
+
+        getDirtyChunkSet().set(0, chunkCount);
+    }
+
+    /**
+     * Get the chunks modified since the range was loaded or last saved
+     * @return Chunks that need to be written back
+     */
+    public List<IpAddrRangeChunk> getDirtyChunks() {
+        List<IpAddrRangeChunk> chunks = new ArrayList<>();
+        BitSet dirty = getDirtyChunkSet();
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            chunks.add(IpAddrRangeChunk.build(id, i, allocator.getBitSet(), ips));
+        }
+
+        return chunks;
+    }
+
+    public void clearDirtyChunks() {
+        getDirtyChunkSet().clear();
+    }
+
+    /**
+     * Build the persistent header of the range, which holds everything except
+     * the allocation bitmap and the ip address states.
+     * @return Header of the range in CHUNKED_STORE format
+     */
+    public IpAddrRange toHeader() {
+        IpAddrRange header = new IpAddrRange();
+        header.id = id;
+        header.vpcId = vpcId;
+        header.subnetId = subnetId;
+        header.ipVersion = ipVersion;
+        header.firstIp = firstIp;
+        header.lastIp = lastIp;
+        header.usedIps = usedIps;
+        header.totalIps = totalIps;
+        header.storeVersion = CHUNKED_STORE;
+        header.chunkCount = chunkCount;
+        header.nextIpIndex = allocator.getNextIndex();
+
+        return header;
+    }
+
+    /**
+     * Rebuild a range from its persistent header and chunks
+     * @param header Header of the range
+     * @param chunks Chunks of the range, missing chunks are treated as empty
+     * @return IpAddrRange with allocator and ip address states restored
+     */
+    public static IpAddrRange fromChunks(IpAddrRange header, Collection<IpAddrRangeChunk> chunks) {
+        IpAddrRange ipAddrRange = new IpAddrRange(header.id, header.vpcId, header.subnetId,
+                header.ipVersion, header.firstIp, header.lastIp);
+        ipAddrRange.storeVersion = CHUNKED_STORE;
+        ipAddrRange.chunkCount = header.chunkCount;
+
+        BitSet bitSet = new BitSet();
+        for (IpAddrRangeChunk chunk: chunks) {
+            if (chunk != null) {
+                chunk.applyTo(bitSet, ipAddrRange.ips);
+            }
+        }
+
+        ipAddrRange.allocator.setBitSet(bitSet);
+        ipAddrRange.allocator.setNextIndex(header.nextIpIndex);
+        ipAddrRange.updateUsedIps();
+
+        return ipAddrRange;
+    }
+
+    public boolean isChunked() {
+        return storeVersion == CHUNKED_STORE;
+    }
+
     public int getIpVersion() {
         return ipVersion;
     }
@@ -264,6 +409,30 @@ public class IpAddrRange {
         this.totalIps = totalIps;
     }
 
+    public int getStoreVersion() {
+        return storeVersion;
+    }
+
+    public void setStoreVersion(int storeVersion) {
+        this.storeVersion = storeVersion;
+    }
+
+    public int getNextIpIndex() {
+        return nextIpIndex;
+    }
+
+    public void setNextIpIndex(int nextIpIndex) {
+        this.nextIpIndex = nextIpIndex;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public void setChunkCount(int chunkCount) {
+        this.chunkCount = chunkCount;
+    }
+
     @Override
     public String toString() {
         return "IpAddrRange{" +
@@ -0,0 +1,130 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.privateipmanager.entity;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * A fixed-size slice of an IpAddrRange: the allocation bitmap and the state of
+ * CHUNK_SIZE consecutive ip addresses. Chunks are stored under rangeId/chunkIndex,
+ * so one allocation only rewrites the chunk that contains the address.
+ */
+public class IpAddrRangeChunk {
+    public static final int CHUNK_SIZE = 256;
+    private static final int WORD_SIZE = 64;
+    private static final byte FREE = -1;
+
+    private String rangeId;
+    private int chunkIndex;
+    private long[] bitmap;
+    private byte[] states;
+
+    public IpAddrRangeChunk() {
+    }
+
+    public IpAddrRangeChunk(String rangeId, int chunkIndex) {
+        this.rangeId = rangeId;
+        this.chunkIndex = chunkIndex;
+        this.bitmap = new long[CHUNK_SIZE / WORD_SIZE];
+        this.states = new byte[CHUNK_SIZE];
+    }
+
+    public static String getKey(String rangeId, int chunkIndex) {
+        return rangeId + "/" + chunkIndex;
+    }
+
+    public static int getChunkIndex(int ipIndex) {
+        return ipIndex / CHUNK_SIZE;
+    }
+
+    /**
+     * Build a chunk from the in-memory state of a range
+     * @param rangeId Id of the range
+     * @param chunkIndex Index of the chunk in the range
+     * @param bitSet Allocation bitmap of the whole range
+     * @param ips State of the allocated ip addresses of the whole range
+     * @return Chunk that covers ip indexes [chunkIndex * CHUNK_SIZE, (chunkIndex + 1) * CHUNK_SIZE)
+     */
+    public static IpAddrRangeChunk build(String rangeId, int chunkIndex, BitSet bitSet, Map<Integer, Byte> ips) {
+        IpAddrRangeChunk chunk = new IpAddrRangeChunk(rangeId, chunkIndex);
+        int base = chunkIndex * CHUNK_SIZE;
+
+        for (int offset = 0; offset < CHUNK_SIZE; offset++) {
+            int ipIndex = base + offset;
+            if (bitSet.get(ipIndex)) {
+                chunk.bitmap[offset / WORD_SIZE] |= 1L << (offset % WORD_SIZE);
+            }
+
+            Byte state = ips.get(ipIndex);
+            chunk.states[offset] = state != null ? state : FREE;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Merge this chunk into the in-memory state of a range
+     * @param bitSet Allocation bitmap of the whole range
+     * @param ips State of the allocated ip addresses of the whole range
+     */
+    public void applyTo(BitSet bitSet, Map<Integer, Byte> ips) {
+        int base = chunkIndex * CHUNK_SIZE;
+
+        for (int offset = 0; offset < CHUNK_SIZE; offset++) {
+            int ipIndex = base + offset;
+            if ((bitmap[offset / WORD_SIZE] & (1L << (offset % WORD_SIZE))) != 0) {
+                bitSet.set(ipIndex);
+            }
+
+            if (states[offset] != FREE) {
+                ips.put(ipIndex, states[offset]);
+            }
+        }
+    }
+
+    public String getRangeId() {
+        return rangeId;
+    }
+
+    public void setRangeId(String rangeId) {
+        this.rangeId = rangeId;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public void setChunkIndex(int chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
+
+    public long[] getBitmap() {
+        return bitmap;
+    }
+
+    public void setBitmap(long[] bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public byte[] getStates() {
+        return states;
+    }
+
+    public void setStates(byte[] states) {
+        this.states = states;
+    }
+}
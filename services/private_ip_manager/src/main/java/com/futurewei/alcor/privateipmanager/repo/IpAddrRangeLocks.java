@@ -0,0 +1,89 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.privateipmanager.repo;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of striped locks keyed by ip range id (or vpc id). Allocations
+ * from different IpAddrRanges take different stripes, so they no longer queue
+ * behind a single repository monitor.
+ */
+public class IpAddrRangeLocks {
+    private static final int DEFAULT_STRIPES = 256;
+
+    private final ReentrantLock[] stripes;
+
+    public IpAddrRangeLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public IpAddrRangeLocks(int stripeNum) {
+        stripes = new ReentrantLock[stripeNum];
+        for (int i = 0; i < stripeNum; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    private int stripeIndex(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % stripes.length;
+    }
+
+    /**
+     * Lock the stripe of a single key
+     * @param key Ip range id or vpc id
+     * @return Stripes that have been locked, pass it to unlock()
+     */
+    public int[] lock(String key) {
+        int[] locked = new int[] {stripeIndex(key)};
+        stripes[locked[0]].lock();
+        return locked;
+    }
+
+    /**
+     * Lock the stripes of multiple keys. Stripes are always taken in ascending
+     * order, so two callers locking overlapping key sets can not deadlock.
+     * @param keys Ip range ids or vpc ids
+     * @return Stripes that have been locked, pass it to unlock()
+     */
+    public int[] lockAll(Collection<String> keys) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (String key: keys) {
+            if (key != null) {
+                indexes.add(stripeIndex(key));
+            }
+        }
+
+        int[] locked = new int[indexes.size()];
+        int i = 0;
+        for (int index: indexes) {
+            stripes[index].lock();
+            locked[i++] = index;
+        }
+
+        return locked;
+    }
+
+    public void unlock(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            stripes[locked[i]].unlock();
+        }
+    }
+}
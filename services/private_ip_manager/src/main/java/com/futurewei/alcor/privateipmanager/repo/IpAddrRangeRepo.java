@@ -18,11 +18,13 @@ package com.futurewei.alcor.privateipmanager.repo;
 import com.futurewei.alcor.common.db.CacheException;
 import com.futurewei.alcor.common.db.CacheFactory;
 import com.futurewei.alcor.common.db.ICache;
-import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.common.db.TransactionConflictException;
+import com.futurewei.alcor.common.db.TransactionRetry;
 import com.futurewei.alcor.common.db.repo.ICacheRepository;
 import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.privateipmanager.entity.IpAddrAlloc;
 import com.futurewei.alcor.privateipmanager.entity.IpAddrRange;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrRangeChunk;
 import com.futurewei.alcor.privateipmanager.entity.VpcIpRange;
 import com.futurewei.alcor.privateipmanager.exception.*;
 import com.futurewei.alcor.web.entity.ip.IpAddrRangeRequest;
@@ -38,7 +40,6 @@ import org.springframework.stereotype.Repository;
 
 import javax.annotation.PostConstruct;
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Repository
@@ -48,17 +49,22 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
 
     private ICache<String, IpAddrRange> ipAddrRangeCache;
     private ICache<String, VpcIpRange> vpcIpRangeCache;
+    private ICache<String, IpAddrRangeChunk> ipAddrRangeChunkCache;
+    private final IpAddrRangeLocks rangeLocks = new IpAddrRangeLocks();
 
     @Autowired
     public IpAddrRangeRepo(CacheFactory cacheFactory) {
         ipAddrRangeCache = cacheFactory.getCache(IpAddrRange.class);
         vpcIpRangeCache = cacheFactory.getCache(VpcIpRange.class);
+        ipAddrRangeChunkCache = cacheFactory.getCache(IpAddrRangeChunk.class);
     }
 
     public IpAddrRangeRepo(ICache<String, IpAddrRange> ipAddrRangeCache,
-                           ICache<String, VpcIpRange> vpcIpRangeCache) {
+                           ICache<String, VpcIpRange> vpcIpRangeCache,
+                           ICache<String, IpAddrRangeChunk> ipAddrRangeChunkCache) {
         this.ipAddrRangeCache = ipAddrRangeCache;
         this.vpcIpRangeCache = vpcIpRangeCache;
+        this.ipAddrRangeChunkCache = ipAddrRangeChunkCache;
     }
 
     private String getIpAddrCacheName(String suffix) {
@@ -70,9 +76,70 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
         LOG.info("IpRangeRepository init done");
     }
 
+    private Set<String> getChunkKeys(String rangeId, int chunkCount) {
+        Set<String> chunkKeys = new TreeSet<>();
+        for (int i = 0; i < chunkCount; i++) {
+            chunkKeys.add(IpAddrRangeChunk.getKey(rangeId, i));
+        }
+
+        return chunkKeys;
+    }
+
+    /**
+     * Load a IpAddrRange together with its allocation state. Ranges written in the
+     * single object format are returned as they are, with every chunk marked dirty,
+     * so the next save migrates them to the chunked format.
+     * @param rangeId Id of the range
+     * @return IpAddrRange or null if not found
+     * @throws CacheException Db operation exception
+     */
+    private IpAddrRange loadIpAddrRange(String rangeId) throws CacheException {
+        IpAddrRange header = ipAddrRangeCache.get(rangeId);
+        if (header == null) {
+            return null;
+        }
+
+        if (!header.isChunked()) {
+            header.restoreAllocator();
+            header.markAllChunksDirty();
+            return header;
+        }
+
+        Map<String, IpAddrRangeChunk> chunks = ipAddrRangeChunkCache.getAll(
+                getChunkKeys(rangeId, header.getChunkCount()));
+
+        return IpAddrRange.fromChunks(header, chunks.values());
+    }
+
+    /**
+     * Write back the header of a IpAddrRange and the chunks modified since it was loaded
+     * @param ipAddrRange IpAddrRange to save
+     * @throws CacheException Db operation exception
+     */
+    private void saveIpAddrRange(IpAddrRange ipAddrRange) throws CacheException {
+        List<IpAddrRangeChunk> dirtyChunks = ipAddrRange.getDirtyChunks();
+        if (dirtyChunks.size() > 0) {
+            Map<String, IpAddrRangeChunk> chunkMap = new HashMap<>();
+            for (IpAddrRangeChunk chunk: dirtyChunks) {
+                chunkMap.put(IpAddrRangeChunk.getKey(chunk.getRangeId(), chunk.getChunkIndex()), chunk);
+            }
+
+            ipAddrRangeChunkCache.putAll(chunkMap);
+        }
+
+        ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange.toHeader());
+        ipAddrRange.clearDirtyChunks();
+    }
+
+    private void removeIpAddrRange(IpAddrRange header) throws CacheException {
+        ipAddrRangeChunkCache.removeAll(getChunkKeys(header.getId(), header.getChunkCount()));
+
+        ipAddrRangeCache.remove(header.getId());
+    }
+
     @Override
     @DurationStatistics
-    public synchronized IpAddrRange findItem(String rangeId) {
+    public IpAddrRange findItem(String rangeId) {
         try {
             return ipAddrRangeCache.get(rangeId);
         } catch (CacheException e) {
@@ -85,7 +152,7 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
 
     @Override
     @DurationStatistics
-    public synchronized Map<String, IpAddrRange> findAllItems() {
+    public Map<String, IpAddrRange> findAllItems() {
         try {
             return ipAddrRangeCache.getAll();
         } catch (CacheException e) {
@@ -111,81 +178,121 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
 
     @Override
     @DurationStatistics
-    public synchronized void addItem(IpAddrRange ipAddrRange) {
+    public void addItem(IpAddrRange ipAddrRange) {
         LOG.error("Add ipAddrRange:{}", ipAddrRange);
 
+        int[] locked = rangeLocks.lock(ipAddrRange.getId());
         try {
-            ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
+            saveIpAddrRange(ipAddrRange);
         } catch (CacheException e) {
             e.printStackTrace();
             LOG.error("IpRangeRepository addItem() exception:", e);
+        } finally {
+            rangeLocks.unlock(locked);
         }
     }
 
     @Override
     @DurationStatistics
     public void addItems(List<IpAddrRange> items) throws CacheException {
-        Map<String, IpAddrRange> ipAddrRangeMap = items.stream().collect(Collectors.toMap(IpAddrRange::getId, Function.identity()));
+        Map<String, IpAddrRangeChunk> chunkMap = new HashMap<>();
+        for (IpAddrRange ipAddrRange: items) {
+            for (IpAddrRangeChunk chunk: ipAddrRange.getDirtyChunks()) {
+                chunkMap.put(IpAddrRangeChunk.getKey(chunk.getRangeId(), chunk.getChunkIndex()), chunk);
+            }
+        }
+
+        Map<String, IpAddrRange> ipAddrRangeMap = items.stream().collect(Collectors.toMap(IpAddrRange::getId, IpAddrRange::toHeader));
+        ipAddrRangeChunkCache.putAll(chunkMap);
         ipAddrRangeCache.putAll(ipAddrRangeMap);
+        items.forEach(IpAddrRange::clearDirtyChunks);
     }
 
     @Override
     @DurationStatistics
-    public synchronized void deleteItem(String rangeId) {
+    public void deleteItem(String rangeId) {
         LOG.error("Delete rangeId:{}", rangeId);
 
+        int[] locked = rangeLocks.lock(rangeId);
         try {
-            ipAddrRangeCache.remove(rangeId);
+            IpAddrRange header = ipAddrRangeCache.get(rangeId);
+            if (header != null) {
+                removeIpAddrRange(header);
+            }
         } catch (CacheException e) {
             e.printStackTrace();
             LOG.error("IpRangeRepository deleteItem() exception:", e);
+        } finally {
+            rangeLocks.unlock(locked);
         }
     }
 
+    /**
+     * Take a snapshot of the ip range ids of each vpc. Allocations by vpc only walk the
+     * snapshot, so the set of range locks they need is known before any lock is taken.
+     */
+    private Map<String, List<String>> getVpcRangeIds(Collection<String> vpcIds) throws Exception {
+        Map<String, List<String>> vpcRangeIds = new HashMap<>();
+        for (String vpcId: vpcIds) {
+            VpcIpRange vpcIpRange = vpcIpRangeCache.get(vpcId);
+            if (vpcIpRange == null) {
+                throw new NotFoundIpRangeFromVpc();
+            }
 
-
-    private IpAddrAlloc doAllocateIpAddr(String vpcId, int ipVersion, String ipAddr) throws Exception {
-        VpcIpRange vpcIpRange = vpcIpRangeCache.get(vpcId);
-        if (vpcIpRange == null) {
-            throw new NotFoundIpRangeFromVpc();
+            vpcRangeIds.put(vpcId, new ArrayList<>(vpcIpRange.getRanges()));
         }
 
+        return vpcRangeIds;
+    }
+
+    private IpAddrAlloc doAllocateIpAddr(List<String> rangeIds, int ipVersion, String ipAddr) throws Exception {
         IpAddrAlloc ipAddrAlloc = null;
-        for (String rangeId: vpcIpRange.getRanges()) {
+        for (String rangeId: rangeIds) {
+            int[] locked = rangeLocks.lock(rangeId);
+            try {
+                ipAddrAlloc = TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                    IpAddrAlloc rangeIpAddrAlloc = doAllocateIpAddr(rangeId, ipVersion, ipAddr);
+                    if (rangeIpAddrAlloc != null) {
+                        tx.commit();
+                    }
+                    return rangeIpAddrAlloc;
+                });
+            } finally {
+                rangeLocks.unlock(locked);
+            }
+
             if (ipAddrAlloc != null) {
                 break;
             }
-            synchronized (this) {
-                try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-                    IpAddrRange ipAddrRange = ipAddrRangeCache.get(rangeId);
-                    if (ipAddrRange == null) {
-                        throw new IpRangeNotFoundException();
-                    }
-
-                    if (ipAddrRange.getIpVersion() != ipVersion) {
-                        continue;
-                    }
+        }
 
-                    try {
-                        ipAddrAlloc = ipAddrRange.allocate(ipAddr);
-                    } catch (Exception e) {
-                        LOG.warn("Allocate ip address from {} failed", ipAddrRange.getId());
-                        continue;
-                    }
+        if (ipAddrAlloc == null) {
+            throw new IpAddrNotEnoughException();
+        }
 
-                    ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
-                    tx.commit();
-                }
-            }
+        return ipAddrAlloc;
+    }
 
+    private IpAddrAlloc doAllocateIpAddr(String rangeId, int ipVersion, String ipAddr) throws Exception {
+        IpAddrRange ipAddrRange = loadIpAddrRange(rangeId);
+        if (ipAddrRange == null) {
+            throw new IpRangeNotFoundException();
+        }
 
-            break;
+        if (ipAddrRange.getIpVersion() != ipVersion) {
+            return null;
         }
 
-        if (ipAddrAlloc == null) {
-            throw new IpAddrNotEnoughException();
+        IpAddrAlloc ipAddrAlloc;
+        try {
+            ipAddrAlloc = ipAddrRange.allocate(ipAddr);
+        } catch (Exception e) {
+            LOG.warn("Allocate ip address from {} failed", ipAddrRange.getId());
+            return null;
         }
 
+        saveIpAddrRange(ipAddrRange);
+
         return ipAddrAlloc;
     }
 
@@ -197,8 +304,22 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
      */
     @DurationStatistics
     public IpAddrAlloc allocateIpAddr(IpAddrRequest request) throws Exception {
-            IpAddrAlloc ipAddrAlloc = allocateIpAddrMethod(request);
-            return ipAddrAlloc;
+        if (request.getRangeId() == null) {
+            List<String> rangeIds = getVpcRangeIds(Collections.singletonList(request.getVpcId()))
+                    .get(request.getVpcId());
+            return doAllocateIpAddr(rangeIds, request.getIpVersion(), request.getIp());
+        }
+
+        int[] locked = rangeLocks.lock(request.getRangeId());
+        try {
+            return TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                IpAddrAlloc ipAddrAlloc = allocateIpAddrMethod(request, null);
+                tx.commit();
+                return ipAddrAlloc;
+            });
+        } finally {
+            rangeLocks.unlock(locked);
+        }
     }
 
     /**
@@ -209,33 +330,43 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
      */
     @DurationStatistics
     @Deprecated
-    public synchronized Map<String, List<IpAddrAlloc>> allocateIpAddrBulk(Map<String, Integer> requests) throws Exception {
+    public Map<String, List<IpAddrAlloc>> allocateIpAddrBulk(Map<String, Integer> requests) throws Exception {
         Map<String, List<IpAddrAlloc>> result = new HashMap<>();
 
-        try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-            for (Map.Entry<String, Integer> entry: requests.entrySet()) {
-                IpAddrRange ipAddrRange = ipAddrRangeCache.get(entry.getKey());
-                if (ipAddrRange == null) {
-                    throw new IpRangeNotFoundException();
-                }
+        int[] locked = rangeLocks.lockAll(requests.keySet());
+        try {
+            TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                result.clear();
+                for (Map.Entry<String, Integer> entry: requests.entrySet()) {
+                    IpAddrRange ipAddrRange = loadIpAddrRange(entry.getKey());
+                    if (ipAddrRange == null) {
+                        throw new IpRangeNotFoundException();
+                    }
 
-                List<IpAddrAlloc> ipAddrAllocs = ipAddrRange.allocateBulk(entry.getValue());
-                ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
+                    List<IpAddrAlloc> ipAddrAllocs = ipAddrRange.allocateBulk(entry.getValue());
+                    saveIpAddrRange(ipAddrRange);
 
-                result.put(entry.getKey(), ipAddrAllocs);
-            }
+                    result.put(entry.getKey(), ipAddrAllocs);
+                }
 
-            tx.commit();
+                tx.commit();
+                return null;
+            });
+        } catch (TransactionConflictException e) {
+            LOG.warn("Transaction conflict, giving up: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             LOG.warn("Transaction exception: ");
             LOG.warn(e.getMessage());
+        } finally {
+            rangeLocks.unlock(locked);
         }
 
         return result;
     }
 
     private List<IpAddrAlloc> doAllocateIpAddr(String rangeId, List<IpAddrRequest> ipRequests) throws Exception {
-        IpAddrRange ipAddrRange = ipAddrRangeCache.get(rangeId);
+        IpAddrRange ipAddrRange = loadIpAddrRange(rangeId);
         if (ipAddrRange == null) {
             throw new IpRangeNotFoundException();
         }
@@ -245,26 +376,21 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
                 .collect(Collectors.toList());
 
         List<IpAddrAlloc> result = ipAddrRange.allocateBulk(ips);
-        ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
+        saveIpAddrRange(ipAddrRange);
 
         return result;
     }
 
-    private List<IpAddrAlloc> doAllocateIpAddr(String vpcId, int ipVersion, List<String> ips) throws Exception {
+    private List<IpAddrAlloc> doAllocateIpAddr(List<String> rangeIds, int ipVersion, List<String> ips) throws Exception {
         List<IpAddrAlloc> result = new ArrayList<>();
 
-        VpcIpRange vpcIpRange = vpcIpRangeCache.get(vpcId);
-        if (vpcIpRange == null) {
-            throw new NotFoundIpRangeFromVpc();
-        }
-
         List<String> requestIps = ips.subList(0, ips.size());
-        for (String rangeId: vpcIpRange.getRanges()) {
+        for (String rangeId: rangeIds) {
             if (result.size() == ips.size()) {
                 break;
             }
 
-            IpAddrRange ipAddrRange = ipAddrRangeCache.get(rangeId);
+            IpAddrRange ipAddrRange = loadIpAddrRange(rangeId);
             if (ipAddrRange == null) {
                 throw new IpRangeNotFoundException();
             }
@@ -279,7 +405,7 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
             if (ipAddrAllocs.size() > 0) {
                 result.addAll(ipAddrAllocs);
                 requestIps = ips.subList(result.size(), ips.size());
-                ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
+                saveIpAddrRange(ipAddrRange);
             }
         }
 
@@ -290,65 +416,122 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
         return result;
     }
 
+    /**
+     * Lock every ip range that a batch of requests may touch, in stripe order.
+     * @param rangeIds Ip range ids addressed directly by the requests
+     * @param vpcRangeIds Snapshot of the ip range ids of the vpcs addressed by the requests
+     * @return Stripes that have been locked
+     */
+    private int[] lockRanges(Collection<String> rangeIds, Map<String, List<String>> vpcRangeIds) {
+        Set<String> lockKeys = new HashSet<>(rangeIds);
+        for (List<String> ranges: vpcRangeIds.values()) {
+            lockKeys.addAll(ranges);
+        }
+
+        return rangeLocks.lockAll(lockKeys);
+    }
+
     @DurationStatistics
-    public synchronized List<IpAddrAlloc> allocateIpAddrBulk(Map<String, List<IpAddrRequest>> rangeRequests,
-                                                             Map<String, List<IpAddrRequest>> vpcIpv4Requests,
-                                                             Map<String, List<IpAddrRequest>> vpcIpv6Requests) throws Exception {
+    public List<IpAddrAlloc> allocateIpAddrBulk(Map<String, List<IpAddrRequest>> rangeRequests,
+                                                Map<String, List<IpAddrRequest>> vpcIpv4Requests,
+                                                Map<String, List<IpAddrRequest>> vpcIpv6Requests) throws Exception {
         List<IpAddrAlloc> result = new ArrayList<>();
-        try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-            allocateIpAddrBulkMethod(rangeRequests,vpcIpv4Requests,vpcIpv6Requests,result);
-            tx.commit();
+
+        Set<String> vpcIds = new HashSet<>(vpcIpv4Requests.keySet());
+        vpcIds.addAll(vpcIpv6Requests.keySet());
+        Map<String, List<String>> vpcRangeIds = getVpcRangeIds(vpcIds);
+
+        int[] locked = lockRanges(rangeRequests.keySet(), vpcRangeIds);
+        try {
+            TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                result.clear();
+                allocateIpAddrBulkMethod(rangeRequests, vpcIpv4Requests, vpcIpv6Requests, vpcRangeIds, result);
+                tx.commit();
+                return null;
+            });
+        } catch (TransactionConflictException e) {
+            LOG.warn("Transaction conflict, giving up: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             LOG.warn("Transaction exception: ");
             LOG.warn(e.getMessage());
+        } finally {
+            rangeLocks.unlock(locked);
         }
 
         return result;
     }
 
     @DurationStatistics
-    public synchronized void modifyIpAddrState(String rangeId, String ipAddr, String state) throws Exception {
-        try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-            IpAddrRange ipAddrRange = ipAddrRangeCache.get(rangeId);
-            if (ipAddrRange == null) {
-                throw new IpRangeNotFoundException();
-            }
+    public void modifyIpAddrState(String rangeId, String ipAddr, String state) throws Exception {
+        int[] locked = rangeLocks.lock(rangeId);
+        try {
+            TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                IpAddrRange ipAddrRange = loadIpAddrRange(rangeId);
+                if (ipAddrRange == null) {
+                    throw new IpRangeNotFoundException();
+                }
 
-            ipAddrRange.modifyIpAddrState(ipAddr, state);
-            ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
+                ipAddrRange.modifyIpAddrState(ipAddr, state);
+                saveIpAddrRange(ipAddrRange);
 
-            tx.commit();
+                tx.commit();
+                return null;
+            });
+        } catch (TransactionConflictException e) {
+            LOG.warn("Transaction conflict, giving up: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             LOG.warn("Transaction exception: ");
             LOG.warn(e.getMessage());
+        } finally {
+            rangeLocks.unlock(locked);
         }
     }
 
     @DurationStatistics
-    public synchronized void releaseIpAddr(String rangeId, String ipAddr) throws Exception {
-        try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-            releaseIpAddrMethod(rangeId,ipAddr);
-            tx.commit();
+    public void releaseIpAddr(String rangeId, String ipAddr) throws Exception {
+        int[] locked = rangeLocks.lock(rangeId);
+        try {
+            TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                releaseIpAddrMethod(rangeId,ipAddr);
+                tx.commit();
+                return null;
+            });
+        } catch (TransactionConflictException e) {
+            LOG.warn("Transaction conflict, giving up: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             LOG.warn("Transaction exception: ");
             LOG.warn(e.getMessage());
+        } finally {
+            rangeLocks.unlock(locked);
         }
     }
 
     @DurationStatistics
-    public synchronized void releaseIpAddrBulk(SortedMap<String, List<String>> requests) throws Exception {
-        try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-            releaseIpAddrBulkMethod(requests);
-            tx.commit();
+    public void releaseIpAddrBulk(SortedMap<String, List<String>> requests) throws Exception {
+        int[] locked = rangeLocks.lockAll(requests.keySet());
+        try {
+            TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                releaseIpAddrBulkMethod(requests);
+                tx.commit();
+                return null;
+            });
+        } catch (TransactionConflictException e) {
+            LOG.warn("Transaction conflict, giving up: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             LOG.warn("Transaction exception: ");
             LOG.warn(e.getMessage());
+        } finally {
+            rangeLocks.unlock(locked);
         }
     }
 
     @DurationStatistics
-    public synchronized IpAddrAlloc getIpAddr(String rangeId, String ipAddr) throws Exception {
-        IpAddrRange ipAddrRange = ipAddrRangeCache.get(rangeId);
+    public IpAddrAlloc getIpAddr(String rangeId, String ipAddr) throws Exception {
+        IpAddrRange ipAddrRange = loadIpAddrRange(rangeId);
         if (ipAddrRange == null) {
             throw new IpRangeNotFoundException();
         }
@@ -357,8 +540,8 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
     }
 
     @DurationStatistics
-    public synchronized Collection<IpAddrAlloc> getIpAddrBulk(String rangeId) throws Exception {
-        IpAddrRange ipAddrRange = ipAddrRangeCache.get(rangeId);
+    public Collection<IpAddrAlloc> getIpAddrBulk(String rangeId) throws Exception {
+        IpAddrRange ipAddrRange = loadIpAddrRange(rangeId);
         if (ipAddrRange == null) {
             throw new IpRangeNotFoundException();
         }
@@ -367,141 +550,186 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
     }
 
     @DurationStatistics
-    public synchronized void createIpAddrRange(IpAddrRangeRequest request) throws Exception {
-        try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-            IpAddrRange ipAddrRange = new IpAddrRange(request.getId(), request.getVpcId(), request.getSubnetId(),
-                    request.getIpVersion(), request.getFirstIp(), request.getLastIp());
-
-            VpcIpRange vpcIpRange = vpcIpRangeCache.get(request.getVpcId());
-            if (vpcIpRange == null) {
-                vpcIpRange = new VpcIpRange();
-                List<String> ranges = new ArrayList<>();
-                ranges.add(ipAddrRange.getId());
-
-                vpcIpRange.setVpcId(ipAddrRange.getVpcId());
-                vpcIpRange.setRanges(ranges);
-            } else {
-                vpcIpRange.getRanges().add(ipAddrRange.getId());
-            }
+    public void createIpAddrRange(IpAddrRangeRequest request) throws Exception {
+        int[] locked = rangeLocks.lockAll(Arrays.asList(request.getVpcId(), request.getId()));
+        try {
+            TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                IpAddrRange ipAddrRange = new IpAddrRange(request.getId(), request.getVpcId(), request.getSubnetId(),
+                        request.getIpVersion(), request.getFirstIp(), request.getLastIp());
+
+                VpcIpRange vpcIpRange = vpcIpRangeCache.get(request.getVpcId());
+                if (vpcIpRange == null) {
+                    vpcIpRange = new VpcIpRange();
+                    List<String> ranges = new ArrayList<>();
+                    ranges.add(ipAddrRange.getId());
+
+                    vpcIpRange.setVpcId(ipAddrRange.getVpcId());
+                    vpcIpRange.setRanges(ranges);
+                } else {
+                    vpcIpRange.getRanges().add(ipAddrRange.getId());
+                }
 
-            vpcIpRangeCache.put(vpcIpRange.getVpcId(), vpcIpRange);
+                vpcIpRangeCache.put(vpcIpRange.getVpcId(), vpcIpRange);
 
-            if (ipAddrRangeCache.get(request.getId()) != null) {
-                LOG.warn("Create ip address range failed: IpAddressRange already exists");
-                throw new IpAddrRangeExistException();
-            }
-            ipAddrRangeCache.put(request.getId(), ipAddrRange);
+                if (ipAddrRangeCache.get(request.getId()) != null) {
+                    LOG.warn("Create ip address range failed: IpAddressRange already exists");
+                    throw new IpAddrRangeExistException();
+                }
+                saveIpAddrRange(ipAddrRange);
 
-            request.setUsedIps(ipAddrRange.getUsedIps());
-            request.setTotalIps(ipAddrRange.getTotalIps());
+                request.setUsedIps(ipAddrRange.getUsedIps());
+                request.setTotalIps(ipAddrRange.getTotalIps());
 
-            tx.commit();
+                tx.commit();
+                return null;
+            });
+        } catch (TransactionConflictException e) {
+            LOG.warn("Transaction conflict, giving up: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             LOG.warn("Transaction exception: ");
             LOG.warn(e.getMessage());
+        } finally {
+            rangeLocks.unlock(locked);
         }
 
     }
 
     @DurationStatistics
-    public synchronized IpAddrRange deleteIpAddrRange(String rangeId, String vpcId) throws Exception {
+    public IpAddrRange deleteIpAddrRange(String rangeId, String vpcId) throws Exception {
         IpAddrRange ipAddrRange = null;
-        try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-            VpcIpRange vpcIpRange = vpcIpRangeCache.get(vpcId);
-            if (vpcIpRange != null) {
-                vpcIpRange.getRanges().remove(ipAddrRange.getId());
-
-                if (vpcIpRange.getRanges().size() == 0) {
-                    vpcIpRangeCache.remove(vpcIpRange.getVpcId());
+        int[] locked = rangeLocks.lockAll(Arrays.asList(vpcId, rangeId));
+        try {
+            ipAddrRange = TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                VpcIpRange vpcIpRange = vpcIpRangeCache.get(vpcId);
+                if (vpcIpRange != null) {
+                    vpcIpRange.getRanges().remove(rangeId);
+
+                    if (vpcIpRange.getRanges().size() == 0) {
+                        vpcIpRangeCache.remove(vpcIpRange.getVpcId());
+                    } else {
+                        vpcIpRangeCache.put(vpcIpRange.getVpcId(), vpcIpRange);
+                    }
                 } else {
-                    vpcIpRangeCache.put(vpcIpRange.getVpcId(), vpcIpRange);
+                    LOG.warn("Can not find VpcIpRange by vpcId: {}", vpcId);
                 }
-            } else {
-                LOG.warn("Can not find VpcIpRange by vpcId: {}", ipAddrRange.getVpcId());
-            }
 
-            ipAddrRange = ipAddrRangeCache.get(rangeId);
-            if (ipAddrRange == null) {
-                LOG.warn("Delete ip address range failed: Ip address range not found");
-                throw new IpAddrRangeNotFoundException();
-            }
+                IpAddrRange range = ipAddrRangeCache.get(rangeId);
+                if (range == null) {
+                    LOG.warn("Delete ip address range failed: Ip address range not found");
+                    throw new IpAddrRangeNotFoundException();
+                }
 
-            ipAddrRangeCache.remove(rangeId);
+                removeIpAddrRange(range);
 
-            tx.commit();
+                tx.commit();
+                return range;
+            });
+        } catch (TransactionConflictException e) {
+            LOG.warn("Transaction conflict, giving up: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             LOG.warn("Transaction exception: ");
             LOG.warn(e.getMessage());
+        } finally {
+            rangeLocks.unlock(locked);
         }
         return  ipAddrRange;
     }
 
     @DurationStatistics
-    public synchronized IpAddrRange getIpAddrRange(String rangeId) throws Exception {
+    public IpAddrRange getIpAddrRange(String rangeId) throws Exception {
         return ipAddrRangeCache.get(rangeId);
     }
 
     @DurationStatistics
-    public synchronized List<IpAddrAlloc> updateIpAddr(IpAddrUpdateRequest request,SortedMap<String, List<String>> rangeToIpAddrList,Map<String, List<IpAddrRequest>> rangeRequests,
-                                                       Map<String, List<IpAddrRequest>> vpcIpv4Requests,Map<String, List<IpAddrRequest>> vpcIpv6Requests) throws Exception {
+    public List<IpAddrAlloc> updateIpAddr(IpAddrUpdateRequest request,SortedMap<String, List<String>> rangeToIpAddrList,Map<String, List<IpAddrRequest>> rangeRequests,
+                                          Map<String, List<IpAddrRequest>> vpcIpv4Requests,Map<String, List<IpAddrRequest>> vpcIpv6Requests) throws Exception {
         List<IpAddrAlloc> result = null;
 
-        try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-            if (request.getOldIpAddrRequests().size() > 0) {
-                if (request.getOldIpAddrRequests().size() > 1) {
-                    releaseIpAddrBulkMethod(rangeToIpAddrList);
-                } else {
-                    releaseIpAddrMethod(request.getOldIpAddrRequests().get(0).getRangeId(), request.getOldIpAddrRequests().get(0).getIp());
-                }
+        Set<String> rangeIds = new HashSet<>(rangeToIpAddrList.keySet());
+        rangeIds.addAll(rangeRequests.keySet());
+        Set<String> vpcIds = new HashSet<>(vpcIpv4Requests.keySet());
+        vpcIds.addAll(vpcIpv6Requests.keySet());
+        for (IpAddrRequest ipAddrRequest: request.getOldIpAddrRequests()) {
+            rangeIds.add(ipAddrRequest.getRangeId());
+        }
+        for (IpAddrRequest ipAddrRequest: request.getNewIpAddrRequests()) {
+            if (ipAddrRequest.getRangeId() != null) {
+                rangeIds.add(ipAddrRequest.getRangeId());
+            } else {
+                vpcIds.add(ipAddrRequest.getVpcId());
             }
-            if (request.getNewIpAddrRequests().size() > 0) {
-                result = new ArrayList<>();
-                if (request.getNewIpAddrRequests().size() > 1) {
-                    allocateIpAddrBulkMethod(rangeRequests, vpcIpv4Requests, vpcIpv6Requests,result);
-                } else {
-                    IpAddrAlloc ipAddrAlloc = allocateIpAddrMethod(request.getNewIpAddrRequests().get(0));
-                    result.add(ipAddrAlloc);
+        }
+        Map<String, List<String>> vpcRangeIds = getVpcRangeIds(vpcIds);
+
+        int[] locked = lockRanges(rangeIds, vpcRangeIds);
+        try {
+            result = TransactionRetry.run(ipAddrRangeCache.getTransaction(), tx -> {
+                if (request.getOldIpAddrRequests().size() > 0) {
+                    if (request.getOldIpAddrRequests().size() > 1) {
+                        releaseIpAddrBulkMethod(rangeToIpAddrList);
+                    } else {
+                        releaseIpAddrMethod(request.getOldIpAddrRequests().get(0).getRangeId(), request.getOldIpAddrRequests().get(0).getIp());
+                    }
                 }
-            }
-            tx.commit();
+                List<IpAddrAlloc> allocs = null;
+                if (request.getNewIpAddrRequests().size() > 0) {
+                    allocs = new ArrayList<>();
+                    if (request.getNewIpAddrRequests().size() > 1) {
+                        allocateIpAddrBulkMethod(rangeRequests, vpcIpv4Requests, vpcIpv6Requests, vpcRangeIds, allocs);
+                    } else {
+                        IpAddrAlloc ipAddrAlloc = allocateIpAddrMethod(request.getNewIpAddrRequests().get(0), vpcRangeIds);
+                        allocs.add(ipAddrAlloc);
+                    }
+                }
+                tx.commit();
+                return allocs;
+            });
+        } catch (TransactionConflictException e) {
+            LOG.warn("Transaction conflict, giving up: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             LOG.warn("Transaction exception: ");
             LOG.warn(e.getMessage());
+        } finally {
+            rangeLocks.unlock(locked);
         }
         return result;
     }
 
     private void releaseIpAddrBulkMethod(SortedMap<String, List<String>> requests) throws Exception{
         for (Map.Entry<String, List<String>> entry: requests.entrySet()) {
-            IpAddrRange ipAddrRange = ipAddrRangeCache.get(entry.getKey());
+            IpAddrRange ipAddrRange = loadIpAddrRange(entry.getKey());
             if (ipAddrRange == null) {
                 throw new IpRangeNotFoundException();
             }
 
             ipAddrRange.releaseBulk(entry.getValue());
-            ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
+            saveIpAddrRange(ipAddrRange);
         }
     }
 
     private void releaseIpAddrMethod(String rangeId, String ipAddr) throws Exception {
-        IpAddrRange ipAddrRange = ipAddrRangeCache.get(rangeId);
+        IpAddrRange ipAddrRange = loadIpAddrRange(rangeId);
         if (ipAddrRange == null) {
             throw new IpRangeNotFoundException();
         }
 
         ipAddrRange.release(ipAddr);
-        ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
+        saveIpAddrRange(ipAddrRange);
     }
 
     private void allocateIpAddrBulkMethod(Map<String, List<IpAddrRequest>> rangeRequests,
                                           Map<String, List<IpAddrRequest>> vpcIpv4Requests,
-                                          Map<String, List<IpAddrRequest>> vpcIpv6Requests, List<IpAddrAlloc> result) throws Exception {
+                                          Map<String, List<IpAddrRequest>> vpcIpv6Requests,
+                                          Map<String, List<String>> vpcRangeIds, List<IpAddrAlloc> result) throws Exception {
         for (Map.Entry<String, List<IpAddrRequest>> entry: rangeRequests.entrySet()) {
             result.addAll(doAllocateIpAddr(entry.getKey(), entry.getValue()));
         }
 
         for (Map.Entry<String, List<IpAddrRequest>> entry: vpcIpv4Requests.entrySet()) {
-            result.addAll(doAllocateIpAddr(entry.getKey(),
+            result.addAll(doAllocateIpAddr(vpcRangeIds.get(entry.getKey()),
                     IpVersion.IPV4.getVersion(),
                     entry.getValue().stream()
                             .map(IpAddrRequest::getIp)
@@ -509,7 +737,7 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
         }
 
         for (Map.Entry<String, List<IpAddrRequest>> entry: vpcIpv6Requests.entrySet()) {
-            result.addAll(doAllocateIpAddr(entry.getKey(),
+            result.addAll(doAllocateIpAddr(vpcRangeIds.get(entry.getKey()),
                     IpVersion.IPV6.getVersion(),
                     entry.getValue().stream()
                             .map(IpAddrRequest::getIp)
@@ -518,27 +746,30 @@ public class IpAddrRangeRepo implements ICacheRepository<IpAddrRange> {
 
     }
 
-    @DurationStatistics
-    private IpAddrAlloc allocateIpAddrMethod(IpAddrRequest request) throws Exception {
-        IpAddrAlloc ipAddrAlloc;
+    /**
+     * Allocate a ip address, the caller must hold the lock of every range
+     * the request may touch and must have started a transaction.
+     */
+    private IpAddrAlloc allocateIpAddrMethod(IpAddrRequest request, Map<String, List<String>> vpcRangeIds) throws Exception {
         if (request.getRangeId() == null) {
-            ipAddrAlloc = doAllocateIpAddr(request.getVpcId(), request.getIpVersion(), request.getIp());
-        } else {
-            synchronized (this) {
-                try (Transaction tx = ipAddrRangeCache.getTransaction().start()) {
-                    IpAddrRange ipAddrRange = ipAddrRangeCache.get(request.getRangeId());
-                    if (ipAddrRange == null) {
-                        throw new IpRangeNotFoundException();
-                    }
-
-                    ipAddrAlloc = ipAddrRange.allocate(request.getIp());
-                    ipAddrRangeCache.put(ipAddrRange.getId(), ipAddrRange);
-                    tx.commit();
+            for (String rangeId: vpcRangeIds.get(request.getVpcId())) {
+                IpAddrAlloc ipAddrAlloc = doAllocateIpAddr(rangeId, request.getIpVersion(), request.getIp());
+                if (ipAddrAlloc != null) {
+                    return ipAddrAlloc;
                 }
             }
 
+            throw new IpAddrNotEnoughException();
+        }
 
+        IpAddrRange ipAddrRange = loadIpAddrRange(request.getRangeId());
+        if (ipAddrRange == null) {
+            throw new IpRangeNotFoundException();
         }
+
+        IpAddrAlloc ipAddrAlloc = ipAddrRange.allocate(request.getIp());
+        saveIpAddrRange(ipAddrRange);
+
         return ipAddrAlloc;
     }
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.privateipmanager.utils;
+
+/**
+ * A 128-bit ipv6 address held in two longs. Parsing, formatting, comparison and
+ * offset arithmetic work on the two longs directly instead of going through
+ * BigInteger, byte arrays and InetAddress.
+ */
+public final class Ipv6Addr implements Comparable<Ipv6Addr> {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int GROUP_NUM = 8;
+    private static final int GROUP_BITS = 16;
+
+    private final long high;
+    private final long low;
+
+    public Ipv6Addr(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    private static IllegalArgumentException invalid(String ip) {
+        return new IllegalArgumentException("Invalid ipv6 address: " + ip);
+    }
+
+    private static long shiftHigh(long high, long low, int bits) {
+        if (bits == 0) {
+            return high;
+        } else if (bits < 64) {
+            return (high << bits) | (low >>> (64 - bits));
+        } else if (bits < 128) {
+            return low << (bits - 64);
+        }
+
+        return 0;
+    }
+
+    private static long shiftLow(long low, int bits) {
+        return bits < 64 ? low << bits : 0;
+    }
+
+    private static int parseIpv4(String ip, int start, int end) {
+        int value = 0;
+        int octets = 0;
+        int octet = -1;
+
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || octets == 4) {
+                    throw invalid(ip);
+                }
+                value = (value << 8) | octet;
+                octets++;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    throw invalid(ip);
+                }
+            } else {
+                throw invalid(ip);
+            }
+        }
+
+        if (octets != 4) {
+            throw invalid(ip);
+        }
+
+        return value;
+    }
+
+    /**
+     * Parse the textual form of an ipv6 address, with or without :: compression
+     * and with an optional trailing dotted ipv4 part.
+     * @param ip Ipv6 address string
+     * @return Parsed address
+     * @throws IllegalArgumentException if ip is not a valid ipv6 address
+     */
+    public static Ipv6Addr parse(String ip) {
+        if (ip == null || ip.length() < 2) {
+            throw invalid(ip);
+        }
+
+        int len = ip.length();
+        long headHigh = 0, headLow = 0, tailHigh = 0, tailLow = 0;
+        int headCount = 0, tailCount = 0;
+        boolean compressed = false;
+        int i = 0;
+
+        if (ip.charAt(0) == ':') {
+            if (ip.charAt(1) != ':') {
+                throw invalid(ip);
+            }
+            compressed = true;
+            i = 2;
+        }
+
+        while (i < len) {
+            int start = i;
+            int value = 0;
+            int groups = 1;
+
+            while (i < len && ip.charAt(i) != ':' && ip.charAt(i) != '.') {
+                int digit = Character.digit(ip.charAt(i), 16);
+                if (digit < 0 || i - start >= 4) {
+                    throw invalid(ip);
+                }
+                value = (value << 4) | digit;
+                i++;
+            }
+
+            if (i < len && ip.charAt(i) == '.') {
+                value = parseIpv4(ip, start, len);
+                groups = 2;
+                i = len;
+            } else if (i == start) {
+                throw invalid(ip);
+            }
+
+            if (compressed) {
+                tailHigh = shiftHigh(tailHigh, tailLow, GROUP_BITS * groups);
+                tailLow = shiftLow(tailLow, GROUP_BITS * groups) | (value & 0xffffffffL);
+                tailCount += groups;
+            } else {
+                headHigh = shiftHigh(headHigh, headLow, GROUP_BITS * groups);
+                headLow = shiftLow(headLow, GROUP_BITS * groups) | (value & 0xffffffffL);
+                headCount += groups;
+            }
+
+            if (i == len) {
+                break;
+            }
+
+            // ip.charAt(i) is ':'
+            i++;
+            if (i < len && ip.charAt(i) == ':') {
+                if (compressed) {
+                    throw invalid(ip);
+                }
+                compressed = true;
+                i++;
+            } else if (i == len) {
+                throw invalid(ip);
+            }
+        }
+
+        int count = headCount + tailCount;
+        if (compressed ? count > GROUP_NUM - 1 : count != GROUP_NUM) {
+            throw invalid(ip);
+        }
+
+        int headShift = GROUP_BITS * (GROUP_NUM - headCount);
+        return new Ipv6Addr(shiftHigh(headHigh, headLow, headShift) | tailHigh,
+                shiftLow(headLow, headShift) | tailLow);
+    }
+
+    /**
+     * Check if a string is a valid ipv6 address
+     * @param ip Ipv6 address string
+     * @return true if ip can be parsed
+     */
+    public static boolean isValid(String ip) {
+        try {
+            parse(ip);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Add a non negative offset
+     * @param offset Offset to add
+     * @return this + offset, wrapping around at 2^128
+     */
+    public Ipv6Addr add(long offset) {
+        long newLow = low + offset;
+        long carry = Long.compareUnsigned(newLow, low) < 0 ? 1 : 0;
+
+        return new Ipv6Addr(high + carry, newLow);
+    }
+
+    /**
+     * Get the distance from another address
+     * @param other Address that is not greater than this one
+     * @return this - other, or Long.MAX_VALUE if it does not fit in a long
+     */
+    public long subtract(Ipv6Addr other) {
+        long diffLow = low - other.low;
+        long borrow = Long.compareUnsigned(low, other.low) < 0 ? 1 : 0;
+        long diffHigh = high - other.high - borrow;
+
+        if (diffHigh != 0 || diffLow < 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return diffLow;
+    }
+
+    @Override
+    public int compareTo(Ipv6Addr other) {
+        int result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Ipv6Addr)) {
+            return false;
+        }
+
+        Ipv6Addr other = (Ipv6Addr) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+
+    /**
+     * Format as eight colon separated hex groups without leading zeros,
+     * the same form InetAddress uses for ipv6 addresses.
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[39];
+        int pos = 0;
+
+        for (int group = 0; group < GROUP_NUM; group++) {
+            long word = group < 4 ? high : low;
+            int value = (int) (word >>> (GROUP_BITS * (3 - group % 4))) & 0xffff;
+
+            if (group > 0) {
+                chars[pos++] = ':';
+            }
+
+            boolean leading = true;
+            for (int shift = 12; shift >= 0; shift -= 4) {
+                int digit = (value >>> shift) & 0xf;
+                if (digit != 0 || !leading || shift == 0) {
+                    chars[pos++] = HEX_DIGITS[digit];
+                    leading = false;
+                }
+            }
+        }
+
+        return new String(chars, 0, pos);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.privateipmanager.allocator;
+
+import com.futurewei.alcor.privateipmanager.exception.IpAddrNotEnoughException;
+import com.futurewei.alcor.privateipmanager.utils.Ipv4AddrUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Ipv4AddrAllocatorTest {
+    private Ipv4AddrAllocator buildAllocator(String firstIp, String lastIp) {
+        return new Ipv4AddrAllocator(Ipv4AddrUtil.ipv4ToLong(firstIp), Ipv4AddrUtil.ipv4ToLong(lastIp));
+    }
+
+    @Test
+    public void allocateBulkFromFirstIndexTest() throws Exception {
+        Ipv4AddrAllocator allocator = buildAllocator("10.0.0.1", "10.0.0.254");
+
+        List<String> ips = allocator.allocateBulk(3);
+
+        assertEquals("10.0.0.1", ips.get(0));
+        assertEquals("10.0.0.3", ips.get(2));
+    }
+
+    @Test
+    public void allocateContiguousRunsTest() throws Exception {
+        Ipv4AddrAllocator allocator = buildAllocator("10.0.0.1", "10.0.0.254");
+        allocator.allocate("10.0.0.5");
+
+        List<IpIndexRange> ranges = allocator.allocate(10);
+
+        assertEquals(2, ranges.size());
+        assertEquals(0, ranges.get(0).getFirst());
+        assertEquals(3, ranges.get(0).getLast());
+        assertEquals(5, ranges.get(1).getFirst());
+        assertEquals(10, ranges.get(1).getLast());
+    }
+
+    @Test
+    public void allocateNotEnoughTest() throws Exception {
+        Ipv4AddrAllocator allocator = buildAllocator("10.0.0.1", "10.0.0.10");
+        allocator.allocate(8);
+
+        assertThrows(IpAddrNotEnoughException.class, () -> allocator.allocate(3));
+
+        // A failed bulk allocation must not leak indexes
+        assertEquals(2, allocator.allocate(2).stream().mapToInt(IpIndexRange::size).sum());
+        assertThrows(IpAddrNotEnoughException.class, () -> allocator.allocate(null));
+    }
+
+    @Test
+    public void nextFitAllocateTest() throws Exception {
+        Ipv4AddrAllocator allocator = buildAllocator("10.0.0.1", "10.0.0.4");
+        allocator.allocate(null);
+        allocator.allocate(null);
+        allocator.release("10.0.0.1");
+
+        assertEquals("10.0.0.3", allocator.allocate(null));
+        assertEquals("10.0.0.4", allocator.allocate(null));
+        assertEquals("10.0.0.1", allocator.allocate(null));
+    }
+
+    @Test
+    public void allocateFromAlmostFullRangeTest() throws Exception {
+        Ipv4AddrAllocator allocator = buildAllocator("10.0.0.0", "10.0.255.255");
+        int total = (int) allocator.getIpAddrNum();
+        allocator.allocate(total);
+
+        // Free 1% of the range and allocate it back one by one
+        for (int i = 0; i < total; i += 100) {
+            allocator.release(allocator.getIp(i));
+        }
+
+        int freeNum = (total + 99) / 100;
+        for (int i = 0; i < freeNum; i++) {
+            assertEquals(0, allocator.getIpIndex(allocator.allocate(null)) % 100);
+        }
+
+        assertThrows(IpAddrNotEnoughException.class, () -> allocator.allocate(null));
+    }
+}
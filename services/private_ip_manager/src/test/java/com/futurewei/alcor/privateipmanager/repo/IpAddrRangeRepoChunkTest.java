@@ -0,0 +1,126 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.privateipmanager.repo;
+
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.privateipmanager.config.UnitTestConfig;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrAlloc;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrRange;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrRangeChunk;
+import com.futurewei.alcor.privateipmanager.entity.VpcIpRange;
+import com.futurewei.alcor.web.entity.ip.IpAddrRangeRequest;
+import com.futurewei.alcor.web.entity.ip.IpAddrRequest;
+import com.futurewei.alcor.web.entity.ip.IpAddrState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class IpAddrRangeRepoChunkTest {
+    private static final String FIRST_IP = "10.0.0.1";
+    private static final String LAST_IP = "10.0.255.254";
+
+    private IpAddrRangeRepo ipAddrRangeRepo;
+    private MockCache<String, IpAddrRange> ipAddrRangeCache;
+    private MockCache<String, IpAddrRangeChunk> ipAddrRangeChunkCache;
+
+    @BeforeEach
+    public void beforeEachTestCase() throws Exception {
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.start()).thenReturn(transaction);
+
+        ipAddrRangeCache = new MockCache<>(transaction);
+        ipAddrRangeChunkCache = spy(new MockCache<>(transaction));
+        ipAddrRangeRepo = new IpAddrRangeRepo(ipAddrRangeCache, new MockCache<String, VpcIpRange>(), ipAddrRangeChunkCache);
+    }
+
+    private IpAddrRequest buildIpAddrRequest(String ip) {
+        return new IpAddrRequest(UnitTestConfig.ipv4, UnitTestConfig.vpcId,
+                UnitTestConfig.subnetId, UnitTestConfig.rangeId, ip, null);
+    }
+
+    @Test
+    public void allocateWritesOneChunkTest() throws Exception {
+        ipAddrRangeRepo.createIpAddrRange(new IpAddrRangeRequest(UnitTestConfig.rangeId, UnitTestConfig.vpcId,
+                UnitTestConfig.subnetId, UnitTestConfig.ipv4, FIRST_IP, LAST_IP));
+
+        ipAddrRangeRepo.allocateIpAddr(buildIpAddrRequest(null));
+        ipAddrRangeRepo.allocateIpAddr(buildIpAddrRequest("10.0.200.1"));
+
+        assertEquals(2, ipAddrRangeChunkCache.size());
+        verify(ipAddrRangeChunkCache, times(2)).putAll(anyMap());
+
+        IpAddrRange header = ipAddrRangeCache.get(UnitTestConfig.rangeId);
+        assertTrue(header.isChunked());
+        assertNull(header.getAllocator());
+        assertEquals(2, header.getUsedIps());
+
+        IpAddrAlloc ipAddrAlloc = ipAddrRangeRepo.getIpAddr(UnitTestConfig.rangeId, "10.0.200.1");
+        assertEquals(IpAddrState.ACTIVATED.getState(), ipAddrAlloc.getState());
+
+        ipAddrRangeRepo.releaseIpAddr(UnitTestConfig.rangeId, "10.0.200.1");
+        ipAddrAlloc = ipAddrRangeRepo.getIpAddr(UnitTestConfig.rangeId, "10.0.200.1");
+        assertEquals(IpAddrState.FREE.getState(), ipAddrAlloc.getState());
+        assertEquals(1, ipAddrRangeCache.get(UnitTestConfig.rangeId).getUsedIps());
+    }
+
+    @Test
+    public void migrateSingleObjectRangeTest() throws Exception {
+        IpAddrRange legacyRange = new IpAddrRange(UnitTestConfig.rangeId, UnitTestConfig.vpcId,
+                UnitTestConfig.subnetId, UnitTestConfig.ipv4, FIRST_IP, LAST_IP);
+        legacyRange.allocate("10.0.0.1");
+        legacyRange.allocate("10.0.100.1");
+        legacyRange.setStoreVersion(IpAddrRange.SINGLE_OBJECT_STORE);
+        ipAddrRangeCache.put(UnitTestConfig.rangeId, legacyRange);
+
+        ipAddrRangeRepo.allocateIpAddr(buildIpAddrRequest(null));
+
+        IpAddrRange header = ipAddrRangeCache.get(UnitTestConfig.rangeId);
+        assertTrue(header.isChunked());
+        assertEquals(3, header.getUsedIps());
+
+        Map<String, IpAddrRangeChunk> chunks = ipAddrRangeChunkCache.getAll();
+        assertTrue(chunks.containsKey(IpAddrRangeChunk.getKey(UnitTestConfig.rangeId, 0)));
+        assertTrue(chunks.containsKey(IpAddrRangeChunk.getKey(UnitTestConfig.rangeId, 100)));
+
+        assertEquals(IpAddrState.ACTIVATED.getState(),
+                ipAddrRangeRepo.getIpAddr(UnitTestConfig.rangeId, "10.0.0.2").getState());
+        assertEquals(IpAddrState.ACTIVATED.getState(),
+                ipAddrRangeRepo.getIpAddr(UnitTestConfig.rangeId, "10.0.100.1").getState());
+    }
+
+    @Test
+    public void deleteRemovesChunksAtOnceTest() throws Exception {
+        ipAddrRangeRepo.createIpAddrRange(new IpAddrRangeRequest(UnitTestConfig.rangeId, UnitTestConfig.vpcId,
+                UnitTestConfig.subnetId, UnitTestConfig.ipv4, FIRST_IP, LAST_IP));
+        ipAddrRangeRepo.allocateIpAddr(buildIpAddrRequest("10.0.0.1"));
+        ipAddrRangeRepo.allocateIpAddr(buildIpAddrRequest("10.0.200.1"));
+
+        ipAddrRangeRepo.deleteIpAddrRange(UnitTestConfig.rangeId, UnitTestConfig.vpcId);
+
+        assertEquals(0, ipAddrRangeChunkCache.size());
+        assertNull(ipAddrRangeCache.get(UnitTestConfig.rangeId));
+        verify(ipAddrRangeChunkCache, times(1)).removeAll(anySet());
+        verify(ipAddrRangeChunkCache, never()).remove(anyString());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.privateipmanager.repo;
+
+import com.futurewei.alcor.common.db.CacheException;
+import com.futurewei.alcor.common.db.MockCache;
+import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.privateipmanager.config.UnitTestConfig;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrAlloc;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrRange;
+import com.futurewei.alcor.privateipmanager.entity.IpAddrRangeChunk;
+import com.futurewei.alcor.privateipmanager.entity.VpcIpRange;
+import com.futurewei.alcor.web.entity.ip.IpAddrRangeRequest;
+import com.futurewei.alcor.web.entity.ip.IpAddrRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IpAddrRangeRepoConcurrencyTest {
+    private static final int RANGE_NUM = 16;
+    private static final int ALLOCATIONS_PER_THREAD = 200;
+    private static final long COMMIT_LATENCY_MS = 1;
+
+    private IpAddrRangeRepo ipAddrRangeRepo;
+    private MockCache<String, IpAddrRange> ipAddrRangeCache;
+    private List<String> rangeIds;
+
+    /**
+     * Transaction stand-in that emulates the commit round trip of Ignite, so
+     * allocations from different threads overlap while holding their range locks.
+     */
+    private static class LatencyTransaction implements Transaction {
+        @Override
+        public Transaction start() throws CacheException {
+            return this;
+        }
+
+        @Override
+        public void commit() throws CacheException {
+            try {
+                Thread.sleep(COMMIT_LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void rollback() throws CacheException {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @BeforeEach
+    public void beforeEachTestCase() throws Exception {
+        ipAddrRangeCache = new MockCache<>(new LatencyTransaction());
+        ipAddrRangeRepo = new IpAddrRangeRepo(ipAddrRangeCache, new MockCache<String, VpcIpRange>(),
+                new MockCache<String, IpAddrRangeChunk>());
+        rangeIds = new ArrayList<>();
+
+        for (int i = 0; i < RANGE_NUM; i++) {
+            String rangeId = UUID.randomUUID().toString();
+            IpAddrRangeRequest request = new IpAddrRangeRequest(rangeId, UnitTestConfig.vpcId,
+                    UUID.randomUUID().toString(), UnitTestConfig.ipv4,
+                    "10." + i + ".0.1", "10." + i + ".255.254");
+            ipAddrRangeRepo.createIpAddrRange(request);
+            rangeIds.add(rangeId);
+        }
+    }
+
+    private void runAllocations(int threadNum, Set<String> allocatedIps) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<List<IpAddrAlloc>>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threadNum; t++) {
+            final int threadIndex = t;
+            futures.add(executor.submit(() -> {
+                List<IpAddrAlloc> result = new ArrayList<>();
+                startLatch.await();
+                for (int i = 0; i < ALLOCATIONS_PER_THREAD; i++) {
+                    String rangeId = rangeIds.get((threadIndex + i) % RANGE_NUM);
+                    IpAddrRequest request = new IpAddrRequest(UnitTestConfig.ipv4,
+                            UnitTestConfig.vpcId, null, rangeId, null, null);
+                    result.add(ipAddrRangeRepo.allocateIpAddr(request));
+                }
+                return result;
+            }));
+        }
+
+        startLatch.countDown();
+        for (Future<List<IpAddrAlloc>> future: futures) {
+            for (IpAddrAlloc ipAddrAlloc: future.get(60, TimeUnit.SECONDS)) {
+                assertTrue(allocatedIps.add(ipAddrAlloc.getRangeId() + "/" + ipAddrAlloc.getIpAddr()),
+                        "Ip address allocated twice: " + ipAddrAlloc.getIpAddr());
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void concurrentAllocateAcrossRangesTest() throws Exception {
+        Set<String> allocatedIps = new HashSet<>();
+        int threadNum = 8;
+
+        runAllocations(1, allocatedIps);
+        runAllocations(threadNum, allocatedIps);
+
+        long usedIps = 0;
+        for (String rangeId: rangeIds) {
+            usedIps += ipAddrRangeCache.get(rangeId).getUsedIps();
+        }
+        assertEquals(allocatedIps.size(), usedIps);
+        assertEquals((threadNum + 1) * ALLOCATIONS_PER_THREAD, allocatedIps.size());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.privateipmanager.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Ipv6AddrTest {
+    @Test
+    public void parseAndFormatTest() {
+        assertEquals("0:0:0:0:0:0:0:0", Ipv6Addr.parse("::").toString());
+        assertEquals("0:0:0:0:0:0:0:1", Ipv6Addr.parse("::1").toString());
+        assertEquals("2001:db8:0:0:0:0:0:0", Ipv6Addr.parse("2001:db8::").toString());
+        assertEquals("fe80:0:0:0:1:2:3:4", Ipv6Addr.parse("FE80::1:2:3:4").toString());
+        assertEquals("0:0:0:0:0:ffff:c0a8:101", Ipv6Addr.parse("::ffff:192.168.1.1").toString());
+        assertEquals("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff",
+                Ipv6Addr.parse("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff").toString());
+    }
+
+    @Test
+    public void sameAsIpv6AddrUtilTest() {
+        String[] ips = {"2001:db8::ff00:42:8329", "fe80::1:2:3:4", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"};
+
+        for (String ip : ips) {
+            assertEquals(Ipv6AddrUtil.bigIntToIpv6(Ipv6AddrUtil.ipv6ToBitInt(ip)),
+                    Ipv6Addr.parse(ip).toString());
+        }
+    }
+
+    @Test
+    public void invalidAddressTest() {
+        String[] ips = {"", ":", "1:::2", "1::2::3", "12345::", "g::1", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7"};
+
+        for (String ip : ips) {
+            assertFalse(Ipv6Addr.isValid(ip), ip);
+        }
+    }
+
+    @Test
+    public void addCarryTest() {
+        Ipv6Addr addr = Ipv6Addr.parse("2001:db8::ffff:ffff:ffff:fffe");
+
+        assertEquals(Ipv6AddrUtil.bigIntToIpv6(Ipv6AddrUtil.ipv6ToBitInt(addr.toString()).add(BigInteger.valueOf(3))),
+                addr.add(3).toString());
+    }
+
+    @Test
+    public void subtractAndCompareTest() {
+        Ipv6Addr first = Ipv6Addr.parse("2001:db8::ffff:ffff:ffff:ff00");
+        Ipv6Addr last = Ipv6Addr.parse("2001:db8:0:1::10");
+
+        assertEquals(0x110, last.subtract(first));
+        assertTrue(first.compareTo(last) < 0);
+        assertTrue(Ipv6Addr.parse("ffff::").compareTo(Ipv6Addr.parse("::1")) > 0);
+        assertEquals(Long.MAX_VALUE, Ipv6Addr.parse("ffff::").subtract(Ipv6Addr.parse("::")));
+    }
+}
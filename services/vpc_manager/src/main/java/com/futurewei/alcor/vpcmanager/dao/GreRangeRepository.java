@@ -19,6 +19,7 @@ import com.futurewei.alcor.common.db.CacheException;
 import com.futurewei.alcor.common.db.CacheFactory;
 import com.futurewei.alcor.common.db.ICache;
 import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.common.db.TransactionRetry;
 import com.futurewei.alcor.common.db.repo.ICacheRepository;
 import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.vpcmanager.config.ConstantsConfig;
@@ -134,23 +135,20 @@ public class GreRangeRepository implements ICacheRepository<NetworkGRERange> {
      */
     @DurationStatistics
     public synchronized Long allocateGreKey (String rangeId) throws Exception {
-        Long key;
-
-        try (Transaction tx = cache.getTransaction().start()) {
+        return TransactionRetry.run(cache.getTransaction(), tx -> {
             NetworkGRERange networkGRERange = cache.get(rangeId);
             if (networkGRERange == null) {
                 throw new RangeNotFoundException();
             }
 
-            key = networkGRERange.allocateKey();
+            Long key = networkGRERange.allocateKey();
             if (!key.equals(ConstantsConfig.keyNotEnoughReturnValue)) {
                 cache.put(networkGRERange.getId(), networkGRERange);
             }
 
             tx.commit();
-        }
-
-        return key;
+            return key;
+        });
     }
 
     /**
@@ -161,7 +159,7 @@ public class GreRangeRepository implements ICacheRepository<NetworkGRERange> {
      */
     @DurationStatistics
     public synchronized void releaseGreKey(String rangId, Long key) throws Exception {
-        try (Transaction tx = cache.getTransaction().start()) {
+        TransactionRetry.run(cache.getTransaction(), tx -> {
             NetworkGRERange networkGRERange = cache.get(rangId);
             if (networkGRERange == null) {
                 throw new RangeNotFoundException();
@@ -171,7 +169,8 @@ public class GreRangeRepository implements ICacheRepository<NetworkGRERange> {
             cache.put(networkGRERange.getId(), networkGRERange);
 
             tx.commit();
-        }
+            return null;
+        });
     }
 
     @DurationStatistics
@@ -19,6 +19,7 @@ import com.futurewei.alcor.common.db.CacheException;
 import com.futurewei.alcor.common.db.CacheFactory;
 import com.futurewei.alcor.common.db.ICache;
 import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.common.db.TransactionRetry;
 import com.futurewei.alcor.common.db.repo.ICacheRepository;
 import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.vpcmanager.config.ConstantsConfig;
@@ -133,23 +134,20 @@ public class VlanRangeRepository implements ICacheRepository<NetworkVlanRange> {
      */
     @DurationStatistics
     public synchronized Long allocateVlanKey (String rangeId) throws Exception {
-        Long key;
-
-        try (Transaction tx = cache.getTransaction().start()) {
+        return TransactionRetry.run(cache.getTransaction(), tx -> {
             NetworkVlanRange networkVlanRange = cache.get(rangeId);
             if (networkVlanRange == null) {
                 throw new RangeNotFoundException();
             }
 
-            key = networkVlanRange.allocateKey();
+            Long key = networkVlanRange.allocateKey();
             if (!key.equals(ConstantsConfig.keyNotEnoughReturnValue)) {
                 cache.put(networkVlanRange.getId(), networkVlanRange);
             }
 
             tx.commit();
-        }
-
-        return key;
+            return key;
+        });
     }
 
     /**
@@ -160,7 +158,7 @@ public class VlanRangeRepository implements ICacheRepository<NetworkVlanRange> {
      */
     @DurationStatistics
     public synchronized void releaseVlanKey(String rangId, Long key) throws Exception {
-        try (Transaction tx = cache.getTransaction().start()) {
+        TransactionRetry.run(cache.getTransaction(), tx -> {
             NetworkVlanRange networkVlanRange = cache.get(rangId);
             if (networkVlanRange == null) {
                 throw new RangeNotFoundException();
@@ -170,7 +168,8 @@ public class VlanRangeRepository implements ICacheRepository<NetworkVlanRange> {
             cache.put(networkVlanRange.getId(), networkVlanRange);
 
             tx.commit();
-        }
+            return null;
+        });
     }
 
     @DurationStatistics
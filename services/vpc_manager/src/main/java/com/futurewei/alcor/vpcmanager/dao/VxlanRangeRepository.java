@@ -19,6 +19,7 @@ import com.futurewei.alcor.common.db.CacheException;
 import com.futurewei.alcor.common.db.CacheFactory;
 import com.futurewei.alcor.common.db.ICache;
 import com.futurewei.alcor.common.db.Transaction;
+import com.futurewei.alcor.common.db.TransactionRetry;
 import com.futurewei.alcor.common.db.repo.ICacheRepository;
 import com.futurewei.alcor.common.stats.DurationStatistics;
 import com.futurewei.alcor.vpcmanager.config.ConstantsConfig;
@@ -134,23 +135,20 @@ public class VxlanRangeRepository implements ICacheRepository<NetworkVxlanRange>
      */
     @DurationStatistics
     public synchronized Long allocateVxlanKey (String rangeId) throws Exception {
-        Long key;
-
-        try (Transaction tx = cache.getTransaction().start()) {
+        return TransactionRetry.run(cache.getTransaction(), tx -> {
             NetworkVxlanRange networkVxlanRange = cache.get(rangeId);
             if (networkVxlanRange == null) {
                 throw new RangeNotFoundException();
             }
 
-            key = networkVxlanRange.allocateKey();
+            Long key = networkVxlanRange.allocateKey();
             if (!key.equals(ConstantsConfig.keyNotEnoughReturnValue)) {
                 cache.put(networkVxlanRange.getId(), networkVxlanRange);
             }
 
             tx.commit();
-        }
-
-        return key;
+            return key;
+        });
     }
 
     /**
@@ -161,7 +159,7 @@ public class VxlanRangeRepository implements ICacheRepository<NetworkVxlanRange>
      */
     @DurationStatistics
     public synchronized void releaseVxlanKey(String rangId, Long key) throws Exception {
-        try (Transaction tx = cache.getTransaction().start()) {
+        TransactionRetry.run(cache.getTransaction(), tx -> {
             NetworkVxlanRange networkVxlanRange = cache.get(rangId);
             if (networkVxlanRange == null) {
                 throw new RangeNotFoundException();
@@ -171,7 +169,8 @@ public class VxlanRangeRepository implements ICacheRepository<NetworkVxlanRange>
             cache.put(networkVxlanRange.getId(), networkVxlanRange);
 
             tx.commit();
-        }
+            return null;
+        });
     }
 
     @DurationStatistics
@@ -0,0 +1,237 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.changelog;
+
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.DistributedLockFactory;
+import com.futurewei.alcor.common.db.ICache;
+import com.futurewei.alcor.common.db.IDistributedLock;
+import com.futurewei.alcor.web.entity.node.NcmInfo;
+import com.futurewei.alcor.web.entity.node.NodeChangeEvent;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+
+import java.util.*;
+
+/**
+ * A change log stored in the shared cache, so that it outlives the processes reading it.
+ * Appends are serialized by a distributed lock. Events are written before the latest
+ * version is moved, a reader never sees a version whose event is not there yet.
+ * Besides the latest retention events, the log keeps the current nodes and ncms
+ * for readers to start from.
+ */
+public class CacheNodeChangeLog implements NodeChangeLog {
+    private static final String LOCK_KEY = "node_change_log";
+    private static final String LATEST_VERSION = "latest";
+    private static final String OLDEST_VERSION = "oldest";
+    // version of the last event appended by the backfill, present once it ran
+    private static final String BACKFILLED_VERSION = "backfilled";
+    private static final int BACKFILL_READ_BATCH = 1000;
+
+    private final int retention;
+    private final ICache<String, NodeChangeEvent> events;
+    private final ICache<String, Long> versions;
+    private final ICache<String, NodeInfo> nodeInfos;
+    private final ICache<String, NcmInfo> ncmInfos;
+    private final IDistributedLock lock;
+
+    public CacheNodeChangeLog(CacheFactory cacheFactory, DistributedLockFactory lockFactory, int retention) {
+        this.retention = retention;
+        this.events = cacheFactory.getCache(NodeChangeEvent.class, "nmm_node_change_log");
+        this.versions = cacheFactory.getCache(Long.class, "nmm_node_change_log_versions");
+        this.nodeInfos = cacheFactory.getCache(NodeInfo.class, "nmm_node_change_log_nodes");
+        this.ncmInfos = cacheFactory.getCache(NcmInfo.class, "nmm_node_change_log_ncms");
+        this.lock = lockFactory.getDistributedLock(NodeChangeEvent.class);
+    }
+
+    @Override
+    public long append(List<NodeChangeEvent> newEvents) throws Exception {
+        if (newEvents.isEmpty()) {
+            return getLatestVersion();
+        }
+
+        lock.lock(LOCK_KEY);
+        try {
+            return doAppend(newEvents);
+        } finally {
+            lock.unlock(LOCK_KEY);
+        }
+    }
+
+    @Override
+    public boolean backfill(long sinceVersion, List<NodeChangeEvent> newEvents) throws Exception {
+        lock.lock(LOCK_KEY);
+        try {
+            if (versions.get(BACKFILLED_VERSION) != null) {
+                return false;
+            }
+
+            Set<String> changedKeys = new HashSet<>();
+            long latestVersion = getLatestVersion();
+            while (sinceVersion < latestVersion) {
+                List<NodeChangeEvent> changedEvents = readAfter(sinceVersion, BACKFILL_READ_BATCH);
+                if (changedEvents == null) {
+                    return false;
+                }
+                for (NodeChangeEvent event : changedEvents) {
+                    changedKeys.add(keyOf(event));
+                    sinceVersion = event.getVersion();
+                }
+            }
+
+            List<NodeChangeEvent> backfillEvents = new ArrayList<>();
+            for (NodeChangeEvent event : newEvents) {
+                if (!changedKeys.contains(keyOf(event))) {
+                    backfillEvents.add(event);
+                }
+            }
+
+            versions.put(BACKFILLED_VERSION, backfillEvents.isEmpty() ? latestVersion : doAppend(backfillEvents));
+            return true;
+        } finally {
+            lock.unlock(LOCK_KEY);
+        }
+    }
+
+    // nodes and ncms may share ids
+    private static String keyOf(NodeChangeEvent event) {
+        switch (event.getType()) {
+            case NODE_UPDATED:
+            case NODE_DELETED:
+                return "node/" + event.getId();
+            default:
+                return "ncm/" + event.getId();
+        }
+    }
+
+    private long doAppend(List<NodeChangeEvent> newEvents) throws Exception {
+        long version = getLatestVersion();
+        Map<String, NodeChangeEvent> eventMap = new HashMap<>();
+        Map<String, NodeInfo> updatedNodeInfos = new HashMap<>();
+        Map<String, NcmInfo> updatedNcmInfos = new HashMap<>();
+        Set<String> deletedNodeIds = new HashSet<>();
+        Set<String> deletedNcmIds = new HashSet<>();
+
+        for (NodeChangeEvent newEvent : newEvents) {
+            NodeChangeEvent event = new NodeChangeEvent(newEvent.getType(), newEvent.getId(),
+                    newEvent.getNodeInfo(), newEvent.getNcmInfo());
+            event.setVersion(++version);
+            eventMap.put(String.valueOf(version), event);
+
+            switch (event.getType()) {
+                case NODE_UPDATED:
+                    updatedNodeInfos.put(event.getId(), event.getNodeInfo());
+                    deletedNodeIds.remove(event.getId());
+                    break;
+                case NODE_DELETED:
+                    updatedNodeInfos.remove(event.getId());
+                    deletedNodeIds.add(event.getId());
+                    break;
+                case NCM_UPDATED:
+                    updatedNcmInfos.put(event.getId(), event.getNcmInfo());
+                    deletedNcmIds.remove(event.getId());
+                    break;
+                case NCM_DELETED:
+                    updatedNcmInfos.remove(event.getId());
+                    deletedNcmIds.add(event.getId());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        events.putAll(eventMap);
+        nodeInfos.putAll(updatedNodeInfos);
+        for (String nodeId : deletedNodeIds) {
+            nodeInfos.remove(nodeId);
+        }
+        ncmInfos.putAll(updatedNcmInfos);
+        for (String ncmId : deletedNcmIds) {
+            ncmInfos.remove(ncmId);
+        }
+        versions.put(LATEST_VERSION, version);
+
+        trim(version);
+
+        return version;
+    }
+
+    private void trim(long latestVersion) throws Exception {
+        long oldestVersion = getOldestVersion();
+        long newOldestVersion = Math.max(oldestVersion, latestVersion - retention + 1);
+        if (newOldestVersion == oldestVersion) {
+            return;
+        }
+
+        // Move the oldest version first, readers asking for trimmed events start over
+        versions.put(OLDEST_VERSION, newOldestVersion);
+        for (long version = oldestVersion; version < newOldestVersion; version++) {
+            events.remove(String.valueOf(version));
+        }
+    }
+
+    @Override
+    public List<NodeChangeEvent> readAfter(long version, int maxEvents) throws Exception {
+        long latestVersion = getLatestVersion();
+        if (version >= latestVersion) {
+            return Collections.emptyList();
+        }
+        if (version + 1 < getOldestVersion()) {
+            return null;
+        }
+
+        long lastVersion = Math.min(latestVersion, version + maxEvents);
+        Set<String> keys = new HashSet<>();
+        for (long v = version + 1; v <= lastVersion; v++) {
+            keys.add(String.valueOf(v));
+        }
+
+        Map<String, NodeChangeEvent> eventMap = events.getAll(keys);
+        List<NodeChangeEvent> result = new ArrayList<>(keys.size());
+        for (long v = version + 1; v <= lastVersion; v++) {
+            NodeChangeEvent event = eventMap == null ? null : eventMap.get(String.valueOf(v));
+            if (event == null) {
+                // Trimmed since the oldest version was read
+                return null;
+            }
+            result.add(event);
+        }
+
+        return result;
+    }
+
+    @Override
+    public NodeChangeSnapshot getSnapshot() throws Exception {
+        // Read the version first, the nodes read afterwards are at least as new as it
+        long version = getLatestVersion();
+        Map<String, NodeInfo> nodeInfoMap = nodeInfos.getAll();
+        Map<String, NcmInfo> ncmInfoMap = ncmInfos.getAll();
+
+        return new NodeChangeSnapshot(version,
+                nodeInfoMap == null ? Collections.emptyList() : new ArrayList<>(nodeInfoMap.values()),
+                ncmInfoMap == null ? Collections.emptyList() : new ArrayList<>(ncmInfoMap.values()));
+    }
+
+    @Override
+    public long getLatestVersion() throws Exception {
+        Long version = versions.get(LATEST_VERSION);
+        return version == null ? 0 : version;
+    }
+
+    private long getOldestVersion() throws Exception {
+        Long version = versions.get(OLDEST_VERSION);
+        return version == null ? 1 : version;
+    }
+}
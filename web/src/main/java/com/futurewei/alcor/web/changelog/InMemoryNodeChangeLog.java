@@ -0,0 +1,147 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.changelog;
+
+import com.futurewei.alcor.web.entity.node.NcmInfo;
+import com.futurewei.alcor.web.entity.node.NodeChangeEvent;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A change log kept in the memory of one process, used by tests and single process
+ * deployments. Only the latest retention events are kept. Node and ncm infos are kept
+ * by reference, they must not be modified once appended.
+ */
+public class InMemoryNodeChangeLog implements NodeChangeLog {
+    private final int retention;
+    private final Deque<NodeChangeEvent> events = new ArrayDeque<>();
+    private final Map<String, NodeInfo> nodeInfos = new HashMap<>();
+    private final Map<String, NcmInfo> ncmInfos = new HashMap<>();
+    private long latestVersion;
+    private boolean backfilled;
+
+    public InMemoryNodeChangeLog(int retention) {
+        this.retention = retention;
+    }
+
+    @Override
+    public synchronized long append(List<NodeChangeEvent> newEvents) {
+        for (NodeChangeEvent newEvent : newEvents) {
+            NodeChangeEvent event = copyOf(newEvent);
+            event.setVersion(++latestVersion);
+            events.addLast(event);
+            apply(event);
+        }
+
+        while (events.size() > retention) {
+            events.removeFirst();
+        }
+
+        return latestVersion;
+    }
+
+    @Override
+    public synchronized boolean backfill(long sinceVersion, List<NodeChangeEvent> newEvents) {
+        if (backfilled) {
+            return false;
+        }
+
+        List<NodeChangeEvent> changedEvents = readAfter(sinceVersion, Integer.MAX_VALUE);
+        if (changedEvents == null) {
+            return false;
+        }
+
+        Set<String> changedKeys = new HashSet<>();
+        changedEvents.forEach(event -> changedKeys.add(keyOf(event)));
+        append(newEvents.stream()
+                .filter(event -> !changedKeys.contains(keyOf(event)))
+                .collect(Collectors.toList()));
+        backfilled = true;
+        return true;
+    }
+
+    @Override
+    public synchronized List<NodeChangeEvent> readAfter(long version, int maxEvents) {
+        if (version >= latestVersion) {
+            return Collections.emptyList();
+        }
+        if (events.isEmpty() || events.getFirst().getVersion() > version + 1) {
+            return null;
+        }
+
+        List<NodeChangeEvent> result = new ArrayList<>();
+        for (NodeChangeEvent event : events) {
+            if (result.size() >= maxEvents) {
+                break;
+            }
+            if (event.getVersion() > version) {
+                result.add(copyOf(event));
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized NodeChangeSnapshot getSnapshot() {
+        return new NodeChangeSnapshot(latestVersion, new ArrayList<>(nodeInfos.values()),
+                new ArrayList<>(ncmInfos.values()));
+    }
+
+    @Override
+    public synchronized long getLatestVersion() {
+        return latestVersion;
+    }
+
+    private void apply(NodeChangeEvent event) {
+        switch (event.getType()) {
+            case NODE_UPDATED:
+                nodeInfos.put(event.getId(), event.getNodeInfo());
+                break;
+            case NODE_DELETED:
+                nodeInfos.remove(event.getId());
+                break;
+            case NCM_UPDATED:
+                ncmInfos.put(event.getId(), event.getNcmInfo());
+                break;
+            case NCM_DELETED:
+                ncmInfos.remove(event.getId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    // nodes and ncms may share ids
+    private static String keyOf(NodeChangeEvent event) {
+        switch (event.getType()) {
+            case NODE_UPDATED:
+            case NODE_DELETED:
+                return "node/" + event.getId();
+            default:
+                return "ncm/" + event.getId();
+        }
+    }
+
+    private static NodeChangeEvent copyOf(NodeChangeEvent event) {
+        NodeChangeEvent copy = new NodeChangeEvent(event.getType(), event.getId(),
+                event.getNodeInfo(), event.getNcmInfo());
+        copy.setVersion(event.getVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.changelog;
+
+import com.futurewei.alcor.web.entity.node.NodeChangeEvent;
+
+import java.util.List;
+
+/**
+ * A versioned log of NodeInfo and NcmInfo mutations. Node manager appends to it,
+ * data plane manager and network config manager replicate nodes from it.
+ */
+public interface NodeChangeLog {
+    /**
+     * Append events in order, assigning each the next version
+     * @param events events to append
+     * @return version of the last event appended
+     * @throws Exception cache or lock exception
+     */
+    long append(List<NodeChangeEvent> events) throws Exception;
+
+    /**
+     * Seed the log once with the nodes and ncms stored before it existed. Events of a
+     * node or ncm appended after sinceVersion are newer than the stores were read, they
+     * are dropped from events.
+     * @param sinceVersion latest version before the stores were read
+     * @param events current nodes and ncms as update events
+     * @return whether the log was backfilled, false if it had been before or if events
+     * after sinceVersion have been trimmed
+     * @throws Exception cache or lock exception
+     */
+    boolean backfill(long sinceVersion, List<NodeChangeEvent> events) throws Exception;
+
+    /**
+     * Read the events following a version, oldest first
+     * @param version last version the reader has applied
+     * @param maxEvents maximum number of events to return
+     * @return events, empty if the reader is up to date, or null if events after
+     * version have been trimmed and the reader has to start over from a snapshot
+     * @throws Exception cache exception
+     */
+    List<NodeChangeEvent> readAfter(long version, int maxEvents) throws Exception;
+
+    /**
+     * Get the current nodes and ncms along with a version they are at least as new as
+     * @return snapshot of the log
+     * @throws Exception cache exception
+     */
+    NodeChangeSnapshot getSnapshot() throws Exception;
+
+    long getLatestVersion() throws Exception;
+}
@@ -0,0 +1,48 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.changelog;
+
+import com.futurewei.alcor.common.db.CacheFactory;
+import com.futurewei.alcor.common.db.DistributedLockFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides the node change log when node.change-log.enabled is true. With
+ * node.change-log.type=memory the log only lives in this process, which is meant for tests.
+ */
+@Configuration
+@ComponentScan(value = "com.futurewei.alcor.common.db")
+@ConditionalOnProperty(name = "node.change-log.enabled", havingValue = "true")
+public class NodeChangeLogConfiguration {
+    @Value("${node.change-log.type:cache}")
+    private String type;
+
+    @Value("${node.change-log.retention:100000}")
+    private int retention;
+
+    @Bean
+    public NodeChangeLog nodeChangeLog(CacheFactory cacheFactory, DistributedLockFactory lockFactory) {
+        if ("memory".equals(type)) {
+            return new InMemoryNodeChangeLog(retention);
+        }
+
+        return new CacheNodeChangeLog(cacheFactory, lockFactory, retention);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.changelog;
+
+import com.futurewei.alcor.web.entity.node.NodeChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails a change log into a listener. The first poll, and any poll finding the events
+ * it needs trimmed, starts over from a snapshot of the log, so a restarted process
+ * catches up with a snapshot and the events appended after it.
+ */
+public class NodeChangeLogConsumer {
+    private static final Logger LOG = LoggerFactory.getLogger(NodeChangeLogConsumer.class);
+
+    private final NodeChangeLog changeLog;
+    private final NodeChangeListener listener;
+    private final long pollInterval;
+    private final int batchSize;
+    private ScheduledExecutorService poller;
+
+    // version of the last event applied, negative until a snapshot has been applied
+    private long version = -1;
+
+    public NodeChangeLogConsumer(NodeChangeLog changeLog, NodeChangeListener listener, long pollInterval, int batchSize) {
+        this.changeLog = changeLog;
+        this.listener = listener;
+        this.pollInterval = pollInterval;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Catch up with the log, then keep polling it every pollInterval milliseconds
+     */
+    public void start() {
+        poll();
+
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "node-change-log-consumer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    /**
+     * Apply the events appended since the last poll
+     */
+    public synchronized void poll() {
+        try {
+            if (version < 0) {
+                applySnapshot();
+            }
+
+            while (true) {
+                List<NodeChangeEvent> events = changeLog.readAfter(version, batchSize);
+                if (events == null) {
+                    LOG.warn("Node change log trimmed after version {}, starting over from a snapshot", version);
+                    applySnapshot();
+                    continue;
+                }
+
+                for (NodeChangeEvent event : events) {
+                    listener.onChange(event);
+                    version = event.getVersion();
+                }
+
+                if (events.size() < batchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Poll node change log error: ", e);
+        }
+    }
+
+    private void applySnapshot() throws Exception {
+        NodeChangeSnapshot snapshot = changeLog.getSnapshot();
+        listener.onSnapshot(snapshot);
+        version = snapshot.getVersion();
+        LOG.info("Applied node change log snapshot, version: {}, nodes: {}, ncms: {}",
+                version, snapshot.getNodeInfos().size(), snapshot.getNcmInfos().size());
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.changelog;
+
+import com.futurewei.alcor.web.entity.node.NcmInfo;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+
+import java.util.Collection;
+
+/**
+ * The nodes and ncms of a change log. They may include changes newer than version,
+ * readers replay the events after version on top of them.
+ */
+public class NodeChangeSnapshot {
+    private final long version;
+    private final Collection<NodeInfo> nodeInfos;
+    private final Collection<NcmInfo> ncmInfos;
+
+    public NodeChangeSnapshot(long version, Collection<NodeInfo> nodeInfos, Collection<NcmInfo> ncmInfos) {
+        this.version = version;
+        this.nodeInfos = nodeInfos;
+        this.ncmInfos = ncmInfos;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Collection<NodeInfo> getNodeInfos() {
+        return nodeInfos;
+    }
+
+    public Collection<NcmInfo> getNcmInfos() {
+        return ncmInfos;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.changelog;
+
+import com.futurewei.alcor.web.entity.node.NcmInfo;
+import com.futurewei.alcor.web.entity.node.NodeChangeEvent;
+import com.futurewei.alcor.web.entity.node.NodeInfo;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local copy of the nodes and ncms of a change log, indexed by node id, node ip
+ * and ncm id. Lookups never leave the process.
+ */
+public class NodeInfoReplica implements NodeChangeListener {
+    private static class Indexes {
+        private final Map<String, NodeInfo> nodeInfos = new ConcurrentHashMap<>();
+        private final Map<String, List<NodeInfo>> nodeInfosByIp = new ConcurrentHashMap<>();
+        private final Map<String, NcmInfo> ncmInfos = new ConcurrentHashMap<>();
+    }
+
+    // replaced as a whole by a snapshot, so readers never see a half applied one
+    private volatile Indexes indexes = new Indexes();
+    private volatile boolean ready;
+
+    @Override
+    public synchronized void onSnapshot(NodeChangeSnapshot snapshot) {
+        Indexes newIndexes = new Indexes();
+        for (NodeInfo nodeInfo : snapshot.getNodeInfos()) {
+            putNodeInfo(newIndexes, nodeInfo);
+        }
+        for (NcmInfo ncmInfo : snapshot.getNcmInfos()) {
+            newIndexes.ncmInfos.put(ncmInfo.getId(), ncmInfo);
+        }
+
+        indexes = newIndexes;
+        ready = true;
+    }
+
+    @Override
+    public synchronized void onChange(NodeChangeEvent event) {
+        switch (event.getType()) {
+            case NODE_UPDATED:
+                putNodeInfo(indexes, event.getNodeInfo());
+                break;
+            case NODE_DELETED:
+                removeNodeInfo(indexes, event.getId());
+                break;
+            case NCM_UPDATED:
+                indexes.ncmInfos.put(event.getId(), event.getNcmInfo());
+                break;
+            case NCM_DELETED:
+                indexes.ncmInfos.remove(event.getId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void putNodeInfo(Indexes indexes, NodeInfo nodeInfo) {
+        removeNodeInfo(indexes, nodeInfo.getId());
+        indexes.nodeInfos.put(nodeInfo.getId(), nodeInfo);
+        if (nodeInfo.getLocalIp() == null) {
+            return;
+        }
+
+        indexes.nodeInfosByIp.compute(nodeInfo.getLocalIp(), (ip, nodeInfos) -> {
+            List<NodeInfo> newNodeInfos = nodeInfos == null ? new ArrayList<>() : new ArrayList<>(nodeInfos);
+            newNodeInfos.add(nodeInfo);
+            return Collections.unmodifiableList(newNodeInfos);
+        });
+    }
+
+    private static void removeNodeInfo(Indexes indexes, String nodeId) {
+        NodeInfo oldNodeInfo = indexes.nodeInfos.remove(nodeId);
+        if (oldNodeInfo == null || oldNodeInfo.getLocalIp() == null) {
+            return;
+        }
+
+        indexes.nodeInfosByIp.computeIfPresent(oldNodeInfo.getLocalIp(), (ip, nodeInfos) -> {
+            List<NodeInfo> newNodeInfos = new ArrayList<>(nodeInfos);
+            newNodeInfos.removeIf(nodeInfo -> nodeId.equals(nodeInfo.getId()));
+            return newNodeInfos.isEmpty() ? null : Collections.unmodifiableList(newNodeInfos);
+        });
+    }
+
+    /**
+     * Whether a snapshot has been applied, before that every lookup misses
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public NodeInfo getNodeInfo(String nodeId) {
+        return indexes.nodeInfos.get(nodeId);
+    }
+
+    public List<NodeInfo> getNodeInfosByIp(String nodeIp) {
+        return indexes.nodeInfosByIp.getOrDefault(nodeIp, Collections.emptyList());
+    }
+
+    public NcmInfo getNcmInfo(String ncmId) {
+        return indexes.ncmInfos.get(ncmId);
+    }
+
+    public int getNodeCount() {
+        return indexes.nodeInfos.size();
+    }
+}
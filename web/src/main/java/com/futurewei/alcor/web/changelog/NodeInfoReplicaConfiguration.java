@@ -0,0 +1,46 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.changelog;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Replicates the nodes of the node change log into a local {@link NodeInfoReplica}
+ */
+@Configuration
+@Import(NodeChangeLogConfiguration.class)
+@ConditionalOnProperty(name = "node.change-log.enabled", havingValue = "true")
+public class NodeInfoReplicaConfiguration {
+    @Value("${node.change-log.poll-interval:100}")
+    private long pollInterval;
+
+    @Value("${node.change-log.batch-size:1000}")
+    private int batchSize;
+
+    @Bean
+    public NodeInfoReplica nodeInfoReplica() {
+        return new NodeInfoReplica();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public NodeChangeLogConsumer nodeChangeLogConsumer(NodeChangeLog nodeChangeLog, NodeInfoReplica nodeInfoReplica) {
+        return new NodeChangeLogConsumer(nodeChangeLog, nodeInfoReplica, pollInterval, batchSize);
+    }
+}
@@ -27,6 +27,7 @@ import lombok.Data;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Data
 public class NetworkConfiguration {
@@ -53,6 +54,10 @@ public class NetworkConfiguration {
   @JsonProperty("neighbor_table")
   private Map<String, List<NeighborEntry>> neighborTable;
 
+  // Key: subnetId, value: ips of all L2 neighbors in the subnet
+  @JsonProperty("l2_neighbor_sets")
+  private Map<String, Set<String>> l2NeighborSets;
+
   @JsonProperty("routers_internal")
   private List<InternalRouterInfo> internalRouterInfos;
 
@@ -164,8 +169,16 @@ public class NetworkConfiguration {
     this.neighborTable = neighborTable;
   }
 
+  public Map<String, Set<String>> getL2NeighborSets() {
+    return l2NeighborSets;
+  }
+
+  public void setL2NeighborSets(Map<String, Set<String>> l2NeighborSets) {
+    this.l2NeighborSets = l2NeighborSets;
+  }
+
   @Override
   public String toString() {
-    return "NetworkConfiguration{" + "rsType=" + rsType + ", opType=" + opType + ", portEntities=" + portEntities + ", vpcs=" + vpcs + ", subnets=" + subnets + ", securityGroups=" + securityGroups + ", neighborInfos=" + neighborInfos + ", neighborTable=" + neighborTable + ", routerInfo=" + internalRouterInfos + '}';
+    return "NetworkConfiguration{" + "rsType=" + rsType + ", opType=" + opType + ", portEntities=" + portEntities + ", vpcs=" + vpcs + ", subnets=" + subnets + ", securityGroups=" + securityGroups + ", neighborInfos=" + neighborInfos + ", neighborTable=" + neighborTable + ", l2NeighborSets=" + l2NeighborSets + ", routerInfo=" + internalRouterInfos + '}';
   }
 }
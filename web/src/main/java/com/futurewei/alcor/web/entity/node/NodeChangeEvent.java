@@ -0,0 +1,73 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.entity.node;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * A NodeInfo or NcmInfo mutation published by node manager. Events carry the whole
+ * entity, so applying them again or on top of a newer snapshot is harmless.
+ */
+@Data
+public class NodeChangeEvent implements Serializable {
+    public enum Type {
+        NODE_UPDATED,
+        NODE_DELETED,
+        NCM_UPDATED,
+        NCM_DELETED
+    }
+
+    // assigned by the change log, strictly increasing from 1
+    private long version;
+
+    private Type type;
+
+    // id of the node or ncm the event is about
+    private String id;
+
+    private NodeInfo nodeInfo;
+
+    private NcmInfo ncmInfo;
+
+    public NodeChangeEvent() {
+
+    }
+
+    public NodeChangeEvent(Type type, String id, NodeInfo nodeInfo, NcmInfo ncmInfo) {
+        this.type = type;
+        this.id = id;
+        this.nodeInfo = nodeInfo;
+        this.ncmInfo = ncmInfo;
+    }
+
+    public static NodeChangeEvent nodeUpdated(NodeInfo nodeInfo) {
+        return new NodeChangeEvent(Type.NODE_UPDATED, nodeInfo.getId(), nodeInfo, null);
+    }
+
+    public static NodeChangeEvent nodeDeleted(String nodeId) {
+        return new NodeChangeEvent(Type.NODE_DELETED, nodeId, null, null);
+    }
+
+    public static NodeChangeEvent ncmUpdated(NcmInfo ncmInfo) {
+        return new NodeChangeEvent(Type.NCM_UPDATED, ncmInfo.getId(), null, ncmInfo);
+    }
+
+    public static NodeChangeEvent ncmDeleted(String ncmId) {
+        return new NodeChangeEvent(Type.NCM_DELETED, ncmId, null, null);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+MIT License
+Copyright(c) 2020 Futurewei Cloud
+
+    Permission is hereby granted,
+    free of charge, to any person obtaining a copy of this software and associated documentation files(the "Software"), to deal in the Software without restriction,
+    including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and / or sell copies of the Software, and to permit persons
+    to whom the Software is furnished to do so, subject to the following conditions:
+
+    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+    
+    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+    FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+    WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package com.futurewei.alcor.web.entity.node;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a node file upload. Nodes are committed chunk by chunk, an invalid node,
+ * a chunk failing to commit or a committed chunk failing to publish is reported here
+ * and the upload goes on with the rest.
+ */
+@Data
+public class NodeUploadStatus {
+    // errors past this many are only counted
+    private static final int MAX_ERRORS = 1000;
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    public enum ErrorKind {
+        INVALID_NODE,
+        COMMIT_FAILED,
+        // the nodes are stored but DPM and NCM were not told of them
+        PUBLISH_FAILED
+    }
+
+    @Data
+    public static class UploadError {
+        @JsonProperty("kind")
+        private ErrorKind kind;
+
+        // chunk concerned, null for an invalid node
+        @JsonProperty("chunk")
+        private Integer chunk;
+
+        // position of the first node concerned in the file, from 0
+        @JsonProperty("node_index")
+        private int nodeIndex;
+
+        @JsonProperty("node_count")
+        private int nodeCount;
+
+        @JsonProperty("message")
+        private String message;
+
+        public UploadError() {
+
+        }
+
+        public UploadError(ErrorKind kind, Integer chunk, int nodeIndex, int nodeCount, String message) {
+            this.kind = kind;
+            this.chunk = chunk;
+            this.nodeIndex = nodeIndex;
+            this.nodeCount = nodeCount;
+            this.message = message;
+        }
+    }
+
+    @JsonProperty("upload_id")
+    private String uploadId;
+
+    @JsonProperty("file_name")
+    private String fileName;
+
+    @JsonProperty("state")
+    private State state;
+
+    @JsonProperty("parsed_nodes")
+    private int parsedNodes;
+
+    @JsonProperty("invalid_nodes")
+    private int invalidNodes;
+
+    @JsonProperty("committed_nodes")
+    private int committedNodes;
+
+    @JsonProperty("failed_nodes")
+    private int failedNodes;
+
+    @JsonProperty("committed_chunks")
+    private int committedChunks;
+
+    @JsonProperty("failed_chunks")
+    private int failedChunks;
+
+    // committed nodes not published to DPM and NCM, counted in committed_nodes too
+    @JsonProperty("unpublished_nodes")
+    private int unpublishedNodes;
+
+    @JsonProperty("unpublished_chunks")
+    private int unpublishedChunks;
+
+    @JsonProperty("errors")
+    private List<UploadError> errors = new ArrayList<>();
+
+    @JsonProperty("start_time")
+    private long startTime;
+
+    @JsonProperty("end_time")
+    private long endTime;
+
+    public NodeUploadStatus() {
+
+    }
+
+    public NodeUploadStatus(String uploadId, String fileName) {
+        this.uploadId = uploadId;
+        this.fileName = fileName;
+        this.state = State.RUNNING;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public synchronized NodeUploadStatus copy() {
+        NodeUploadStatus copy = new NodeUploadStatus(uploadId, fileName);
+        copy.state = state;
+        copy.parsedNodes = parsedNodes;
+        copy.invalidNodes = invalidNodes;
+        copy.committedNodes = committedNodes;
+        copy.failedNodes = failedNodes;
+        copy.committedChunks = committedChunks;
+        copy.failedChunks = failedChunks;
+        copy.unpublishedNodes = unpublishedNodes;
+        copy.unpublishedChunks = unpublishedChunks;
+        copy.errors = new ArrayList<>(errors);
+        copy.startTime = startTime;
+        copy.endTime = endTime;
+        return copy;
+    }
+
+    public synchronized void nodeParsed() {
+        parsedNodes++;
+    }
+
+    public synchronized void nodeInvalid(int nodeIndex, String message) {
+        invalidNodes++;
+        addError(new UploadError(ErrorKind.INVALID_NODE, null, nodeIndex, 1, message));
+    }
+
+    public synchronized void chunkCommitted(int nodeCount) {
+        committedChunks++;
+        committedNodes += nodeCount;
+    }
+
+    public synchronized void chunkFailed(int chunk, int nodeIndex, int nodeCount, String message) {
+        failedChunks++;
+        failedNodes += nodeCount;
+        addError(new UploadError(ErrorKind.COMMIT_FAILED, chunk, nodeIndex, nodeCount, message));
+    }
+
+    public synchronized void chunkUnpublished(int chunk, int nodeIndex, int nodeCount, String message) {
+        unpublishedChunks++;
+        unpublishedNodes += nodeCount;
+        addError(new UploadError(ErrorKind.PUBLISH_FAILED, chunk, nodeIndex, nodeCount, message));
+    }
+
+    private void addError(UploadError error) {
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(error);
+        }
+    }
+
+    public synchronized void finish(State state) {
+        this.state = state;
+        this.endTime = System.currentTimeMillis();
+    }
+}
@@ -27,6 +27,7 @@ public class InternalSubnetPorts {
     private String gatewayPortMac;
     private String name;
     private String cidr;
+    @QuerySqlField(index = true)
     private String vpcId;
     private Long tunnelId;
     private Boolean dhcpEnable;